@@ -0,0 +1,103 @@
+package org.soas.solr.update.processor;
+
+import org.chasen.crfpp.Model;
+import org.chasen.crfpp.Tagger;
+
+import java.io.IOException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CRF++ models, each loaded once, and the taggers created from them.
+ * A model is shared by all its taggers; a tagger holds the sequence being
+ * tagged, so it is borrowed by one thread at a time and then released
+ * for the next document to use. Taggers are only created when none is
+ * idle, so there are never more of them per model than there are
+ * threads tagging with it at once.
+ */
+class CrfppTaggerPool {
+    private final static Logger log = LoggerFactory.getLogger(CrfppTaggerPool.class);
+
+    private static class Entry {
+        final Model model;
+        final Queue<Tagger> idle = new ConcurrentLinkedQueue<Tagger>();
+
+        Entry(Model model) {
+            this.model = model;
+        }
+    }
+
+    private final Map<String,Entry> models = new ConcurrentHashMap<String,Entry>();
+    private volatile boolean closed = false;
+
+    /** Returns an idle tagger for modelFile, loading the model if this is
+     *  the first time it is asked for. Give it back with {@link #release}. */
+    Tagger borrow(String modelFile) throws IOException {
+        Entry e = entry(modelFile);
+        Tagger tagger = e.idle.poll();
+        if (tagger == null) {
+            tagger = e.model.createTagger();
+            if (tagger == null) {
+                throw new IOException("Cannot create a tagger for CRF++ model " + modelFile);
+            }
+        }
+        tagger.clear();
+        return tagger;
+    }
+
+    /** Makes a tagger borrowed for modelFile available again. */
+    void release(String modelFile, Tagger tagger) {
+        Entry e = models.get(modelFile);
+        if (closed || e == null) {
+            tagger.delete();
+        }
+        else {
+            e.idle.offer(tagger);
+        }
+    }
+
+    private Entry entry(String modelFile) throws IOException {
+        Entry e = models.get(modelFile);
+        if (e == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("CRF++ models have been closed");
+                }
+                e = models.get(modelFile);
+                if (e == null) {
+                    log.info("Loading model " + modelFile);
+                    Model model;
+                    try {
+                        model = new Model("-v1 -m " + modelFile);
+                    }
+                    catch (RuntimeException re) {
+                        throw new IOException("Cannot load CRF++ model " + modelFile, re);
+                    }
+                    e = new Entry(model);
+                    models.put(modelFile, e);
+                }
+            }
+        }
+        return e;
+    }
+
+    /** Frees the models and idle taggers, once the core has stopped
+     *  indexing. A tagger released after this is freed then. */
+    synchronized void close() {
+        closed = true;
+        for (Entry e : models.values()) {
+            Tagger tagger;
+            while ((tagger = e.idle.poll()) != null) {
+                tagger.delete();
+            }
+            e.model.delete();
+        }
+        models.clear();
+    }
+}
@@ -5,14 +5,22 @@ import org.apache.solr.update.processor.UpdateRequestProcessor;
 
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.util.plugin.SolrCoreAware;
 
-public class CrfppTaggerUPF extends UpdateRequestProcessorFactory {
+public class CrfppTaggerUPF extends UpdateRequestProcessorFactory implements SolrCoreAware {
     
 	protected SolrParams defaults;
 	protected SolrParams appends;
 	protected SolrParams invariants;
+	
+	/* Loading a model takes far longer than tagging a document with it, so
+	   each model (one per fold) is loaded once and its taggers are reused
+	   by all the requests of the core. */
+	private final CrfppTaggerPool taggers = new CrfppTaggerPool();
 
 	/**
 	 * The UpdateRequestProcessor may be initialized in solrconfig.xml similarly
@@ -53,8 +61,22 @@ public class CrfppTaggerUPF extends UpdateRequestProcessorFactory {
         p = SolrParams.wrapAppended(p, appends);
         p = SolrParams.wrapDefaults(invariants, p);
         
-        return new CrfppTaggerUpdateProcessor(p, next);
+        return new CrfppTaggerUpdateProcessor(req, p, next, taggers);
     }
+    
+	@Override
+	public void inform(SolrCore core) {
+	    core.addCloseHook(new CloseHook() {
+	        @Override
+	        public void preClose(SolrCore core) {
+	        }
+	        
+	        @Override
+	        public void postClose(SolrCore core) {
+	            taggers.close();
+	        }
+	    });
+	}
   
     static {
         try {
@@ -4,10 +4,8 @@ import org.chasen.crfpp.Tagger;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
-import java.util.LinkedList;
 
-import org.apache.commons.lang3.StringUtils;
+import org.thdl.tib.solr.util.TaggedTokens;
 
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 
@@ -16,6 +14,8 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
 
+import org.apache.solr.request.SolrQueryRequest;
+
 import org.apache.solr.update.AddUpdateCommand;
 
 import java.io.IOException;
@@ -59,8 +59,21 @@ public class CrfppTaggerUpdateProcessor extends UpdateRequestProcessor {
 	protected SolrParams appends;
 	protected SolrParams invariants;
 	
+	private final SolrQueryRequest req;
+	private final CrfppTaggerPool taggers;
+	
 	public CrfppTaggerUpdateProcessor(SolrParams params, UpdateRequestProcessor next) {
+	    this(null, params, next, null);
+	}
+	
+	/** @param req the request, whose context carries the tokens of the
+	 *  fields between processors; may be null
+	 *  @param taggers the models loaded so far and their idle taggers; if
+	 *  null, each field is tagged by a tagger that loads its model */
+	CrfppTaggerUpdateProcessor(SolrQueryRequest req, SolrParams params, UpdateRequestProcessor next, CrfppTaggerPool taggers) {
 	    super(next);
+	    this.req = req;
+	    this.taggers = taggers;
 	    initParams(params);
 	}
 	
@@ -112,7 +125,7 @@ public class CrfppTaggerUpdateProcessor extends UpdateRequestProcessor {
                     String val = (String)guessField.getValue();
                     
                     if (!val.equals("")) {
-                        String[] syllables = val.split(splitInput);
+                        TaggedTokens syllables = TaggedTokens.of(req, val, splitInput, "|");
                                 
                         String suffix = "";
                         if (!uuidFieldName.equals("") && folds != null) {
@@ -125,33 +138,33 @@ public class CrfppTaggerUpdateProcessor extends UpdateRequestProcessor {
                         String path = (String)pathField.getValue();
                         String modelFile = path + "/" + model + suffix + ".lm";
                         
-                        log.info("Model = " + modelFile);
+                        log.debug("Model = " + modelFile);
                         
                         //use lm extension for language model
                         //Tagger tagger = new Tagger("-m " + modelFile + " -v 3 -n2");
-                        Tagger tagger = new Tagger("-v1 -m " + modelFile);
-                        tagger.clear();
-
-                        for (int i=0; i<syllables.length; i++) {
-                            //tagger.add(syllables[i]);
-                            tagger.add(syllables[i].replace('|','\t'));
+                        Tagger tagger;
+                        if (taggers != null) {
+                            tagger = taggers.borrow(modelFile);
+                        }
+                        else {
+                            tagger = new Tagger("-v1 -m " + modelFile);
+                            tagger.clear();
                         }
                         
-                        if (tagger.parse()) {
-                            List<String> tags = new LinkedList<String>();
-                              
-                            for (int i = 0; i < tagger.size(); ++i) {
-                                String tag = "";
-                                for (int j = 0; j < tagger.xsize(); ++j) {
-                                    tag = tag + tagger.x(i, j) + tagDelimiter;
-                                }
-                                tag = tag + tagger.y2(i);
-                                tags.add(tag);
+                        try {
+                            String result = tag(tagger, syllables);
+                            if (result != null) {
+                                guessField.setValue(result, 1.0f);
+                                doc.put(field, guessField);
+                            }
+                        }
+                        finally {
+                            if (taggers != null) {
+                                taggers.release(modelFile, tagger);
+                            }
+                            else {
+                                tagger.delete();
                             }
-                              
-                            String result = StringUtils.join(tags.iterator(), delimitOutput);
-                            guessField.setValue(result, 1.0f);
-                            doc.put(field, guessField);
                         }
                     }
                 }
@@ -160,4 +173,36 @@ public class CrfppTaggerUpdateProcessor extends UpdateRequestProcessor {
         
         super.processAdd(cmd);
     }
+    
+    /** Tags syllables, returning the text of the tagged tokens, or null if
+     *  the tagger fails. */
+    private String tag(Tagger tagger, TaggedTokens syllables) {
+        for (int i=0; i<syllables.size(); i++) {
+            //tagger.add(syllables.getToken(i));
+            tagger.add(syllables.getToken(i).replace('|','\t'));
+        }
+        
+        if (!tagger.parse()) {
+            return null;
+        }
+        
+        String[] surfaces = new String[(int)tagger.size()];
+        String[] tags = new String[surfaces.length];
+        StringBuilder tag = new StringBuilder();
+          
+        for (int i = 0; i < surfaces.length; ++i) {
+            if (tagger.xsize() == 0) {
+                surfaces[i] = tagger.y2(i);
+                continue;
+            }
+            surfaces[i] = tagger.x(i, 0);
+            tag.setLength(0);
+            for (int j = 1; j < tagger.xsize(); ++j) {
+                tag.append(tagger.x(i, j)).append(tagDelimiter);
+            }
+            tags[i] = tag.append(tagger.y2(i)).toString();
+        }
+          
+        return new TaggedTokens(surfaces, tags, tagDelimiter, delimitOutput).attach(req);
+    }
 }
@@ -1,9 +1,6 @@
 package org.soas.solr.update.processor;
 
-import java.util.List;
-import java.util.LinkedList;
-
-import org.apache.commons.lang3.StringUtils;
+import org.thdl.tib.solr.util.TaggedTokens;
 
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldValueMutatingUpdateProcessor;
@@ -50,18 +47,12 @@ public class DropTagsUPF extends FieldMutatingUpdateProcessorFactory {
     }
   
     @Override
-    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    public UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
         return new FieldValueMutatingUpdateProcessor(getSelector(), next) {
             protected Object mutateValue(final Object src) {
                 if (src instanceof CharSequence) {
-                    CharSequence s = (CharSequence)src;
-                    String[] tokens = s.toString().split("\\s+");
-                    List<String> syllables = new LinkedList<String>();
-                    
-                    for (int j=0; j<tokens.length; j++) {
-                        syllables.add(tokens[j].substring(0, tokens[j].indexOf(tagDelimiter)));
-                    }
-                    return StringUtils.join(syllables.iterator(), delimitOutput);
+                    TaggedTokens tokens = TaggedTokens.of(req, src, tagDelimiter);
+                    return tokens.withTags(null, tagDelimiter, delimitOutput).attach(req);
                 }
                 else 
                 {
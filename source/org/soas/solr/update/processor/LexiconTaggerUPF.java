@@ -1,7 +1,5 @@
 package org.soas.solr.update.processor;
 
-import java.util.List;
-import java.util.LinkedList;
 import java.util.HashMap;
 //import java.util.Arrays;
 
@@ -10,7 +8,7 @@ import java.io.FileInputStream;
 import java.io.DataInputStream;
 import java.io.BufferedReader;
 
-import org.apache.commons.lang3.StringUtils;
+import org.thdl.tib.solr.util.TaggedTokens;
 
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldValueMutatingUpdateProcessor;
@@ -95,36 +93,28 @@ public class LexiconTaggerUPF extends FieldMutatingUpdateProcessorFactory {
     }
   
     @Override
-    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    public UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
         return new FieldValueMutatingUpdateProcessor(getSelector(), next) {
             protected Object mutateValue(final Object src) {
                 if (src instanceof CharSequence) {
-                    CharSequence s = (CharSequence)src;
-                    String[] in = s.toString().split("\\s+");
-                    List<String> out = new LinkedList<String>();
-                    for (int j=0; j<in.length; j++) {
-                        int k = in[j].indexOf('|');
-                        if (k == -1) {
-                            if (lexicon.containsKey(in[j])) {
-                                out.add(in[j] + tagDelimiter + lexicon.get(in[j]));
-                            }
-                            else {
-                                out.add(in[j]);
-                            }
+                    TaggedTokens in = TaggedTokens.of(req, src, "|");
+                    String[] tags = new String[in.size()];
+                    for (int j=0; j<in.size(); j++) {
+                        String word = in.getSurface(j);
+                        String pos = in.getTag(j);
+                        String lex = lexicon.get(word);
+                        if (pos == null) {
+                            tags[j] = lex;
+                        }
+                        else if (lex != null) {
+                            tags[j] = lex + tagDelimiter + pos;
                         }
                         else {
-                            String word = in[j].substring(0,k);
-                            String pos =  in[j].substring(k+1);
-                            if (lexicon.containsKey(word)) {
-                                out.add(word + tagDelimiter + lexicon.get(word) + tagDelimiter + pos);
-                            }
-                            else {
-                                out.add(word + tagDelimiter + pos);
-                            }
+                            tags[j] = pos;
                         }
                     }
                     
-                    return StringUtils.join(out.iterator(), delimitOutput);
+                    return in.withTags(tags, tagDelimiter, delimitOutput).attach(req);
                 }
                 else 
                 {
@@ -1,7 +1,5 @@
 package org.soas.solr.update.processor;
 
-import java.util.List;
-import java.util.LinkedList;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Map;
@@ -15,6 +13,8 @@ import java.io.BufferedReader;
 
 import org.apache.commons.lang3.StringUtils;
 
+import org.thdl.tib.solr.util.TaggedTokens;
+
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldValueMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessorFactory;
@@ -36,6 +36,7 @@ public class PruneMinorUPF extends FieldMutatingUpdateProcessorFactory {
 	private static final String DELIMIT_OUTPUT_PARAM = "delimitOutput";
 	private static final String DELIMIT_OUTPUT_DEFAULT = " ";
 	private static final String TAG_MAPPING_PARAM = "tagMapping";
+	private static final Pattern BRACKETS = Pattern.compile("[\\[\\]]+");
     private String tagDelimiter, delimitOutput;
 
     private Map<String,String> remap = new HashMap<String,String>();
@@ -92,33 +93,31 @@ public class PruneMinorUPF extends FieldMutatingUpdateProcessorFactory {
     }
   
     @Override
-    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    public UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
         return new FieldValueMutatingUpdateProcessor(getSelector(), next) {
             protected Object mutateValue(final Object src) {
                 if (src instanceof CharSequence) {
-                    CharSequence s = (CharSequence)src;
-                    String[] tokens = s.toString().split("\\s+");
-                    List<String> words = new LinkedList<String>();
-                    Pattern pattern = Pattern.compile("[\\[\\]]+");
+                    TaggedTokens tokens = TaggedTokens.of(req, src, tagDelimiter);
+                    String[] pruned = new String[tokens.size()];
                     
-                    for (int j=0; j<tokens.length; j++) {
-                        int n = tokens[j].indexOf(tagDelimiter);
-                        
-                        String tagString = tokens[j].substring(n+1);
-                        if (tagString.charAt(0) != '[') {
-                            String mappedTag = remap.containsKey(tagString) ? remap.get(tagString) : tagString;
-                            words.add(tokens[j].substring(0, n) + tagDelimiter + mappedTag);
+                    for (int j=0; j<tokens.size(); j++) {
+                        String tagString = tokens.getTag(j);
+                        if (tagString == null || tagString.isEmpty()) {
+                            pruned[j] = tagString;
+                        }
+                        else if (tagString.charAt(0) != '[') {
+                            pruned[j] = remap.containsKey(tagString) ? remap.get(tagString) : tagString;
                         }
                         else {
-                            String[] tags = pattern.split(tagString.substring(1));
+                            String[] tags = BRACKETS.split(tagString.substring(1));
                             Set<String> major = new TreeSet<String>();
                             for (int k=0; k<tags.length; k++) {
                                 major.add(remap.containsKey(tags[k]) ? remap.get(tags[k]) : tags[k]);
                             }
-                            words.add(tokens[j].substring(0, n) + tagDelimiter + "[" + StringUtils.join(major.iterator(), "][") + "]");
+                            pruned[j] = "[" + StringUtils.join(major.iterator(), "][") + "]";
                         }
                     }
-                    return StringUtils.join(words.iterator(), delimitOutput);
+                    return tokens.withTags(pruned, tagDelimiter, delimitOutput).attach(req);
                 }
                 else 
                 {
@@ -29,8 +29,7 @@ import java.util.LinkedList;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.thdl.tib.solr.util.TaggedTokens;
 
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
@@ -129,7 +128,7 @@ public class SegScoreUPF extends UpdateRequestProcessorFactory {
 	}
 	    
 	@Override
-	public final UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) 
+	public final UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) 
     {
 		return new UpdateRequestProcessor(next) {
 			@Override
@@ -157,15 +156,12 @@ public class SegScoreUPF extends UpdateRequestProcessorFactory {
                         }
 				      		
                         if (doc.containsKey(guessFieldName + "_" + next)) {
-                            String guess = ((String)doc.getField(guessFieldName + "_" + next).getValue()).trim();
-                            Pattern pattern = Pattern.compile("\\S+");
-                            Matcher guessMatcher = pattern.matcher(guess);
+                            TaggedTokens guess = TaggedTokens.of(req, doc.getField(guessFieldName + "_" + next).getValue(), "|");
                             
                             int g_count = 0;
                             
                             if (doc.containsKey(wordsFieldName)) {
-                                String words = ((String)doc.getField(wordsFieldName).getValue()).trim();
-                                Matcher wordsMatcher = pattern.matcher(words);
+                                TaggedTokens words = TaggedTokens.of(req, doc.getField(wordsFieldName).getValue(), "|");
                                 
                                 int correct = 0;
                                 int w_count = 0;
@@ -177,27 +173,29 @@ public class SegScoreUPF extends UpdateRequestProcessorFactory {
                                 
                                 List<String> out = new LinkedList<String>();
                  
-                                while (wordsMatcher.find()) {
-                                    w_start = wordsMatcher.start() - w_count;
-                                    w_end = wordsMatcher.end() - w_count;
+                                // offsets are in the text without spaces, tags included
+                                while (w_count < words.size()) {
+                                    w_start = w_end;
+                                    w_end = w_start + words.getToken(w_count).length();
                                     w_count += 1;
                                     
-                                    //debug: out = out.concat(" w{" + w_start + "," + w_end + "}:" + words.substring(wordsMatcher.start(), wordsMatcher.end()));
+                                    //debug: out = out.concat(" w{" + w_start + "," + w_end + "}:" + words.getToken(w_count-1));
                                     
-                                    while (g_end < w_end && guessMatcher.find()) {
-                                        g_start = guessMatcher.start() - g_count;
-                                        g_end = guessMatcher.end() - g_count;
+                                    while (g_end < w_end && g_count < guess.size()) {
+                                        String g_token = guess.getToken(g_count);
+                                        g_start = g_end;
+                                        g_end = g_start + g_token.length();
                                         g_count += 1;
-                                        //debug: out = out.concat(" g{" + g_start + "," + g_end + "}:" + guess.substring(guessMatcher.start(), guessMatcher.end()));
+                                        //debug: out = out.concat(" g{" + g_start + "," + g_end + "}:" + g_token);
                                         if (g_start == w_start && g_end == w_end) {
                                             //debug: out = out.concat("|Y");
                                             if (null != highlightField) {
-                                                out.add(guess.substring(guessMatcher.start(), guessMatcher.end()));
+                                                out.add(g_token);
                                             }
                                             correct += 1;
                                         }
                                         else if (null != highlightField) {
-                                            out.add(prefix + guess.substring(guessMatcher.start(), guessMatcher.end()) + suffix);
+                                            out.add(prefix + g_token + suffix);
                                         }
                                     }
                                 }
@@ -220,9 +218,7 @@ public class SegScoreUPF extends UpdateRequestProcessorFactory {
                                 } 
                             }
                             else {
-                                while (guessMatcher.find()) {
-                                    g_count++;
-                                }
+                                g_count = guess.size();
                                 SolrInputField guessCountField = new SolrInputField(guessCountFieldName + "_" + next);
                                 guessCountField.addValue(new Integer(g_count), 1.0f);
                                 doc.put(guessCountFieldName + "_" + next, guessCountField);
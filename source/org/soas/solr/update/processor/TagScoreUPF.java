@@ -29,8 +29,7 @@ import java.util.LinkedList;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.thdl.tib.solr.util.TaggedTokens;
 
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
@@ -119,7 +118,7 @@ public class TagScoreUPF extends UpdateRequestProcessorFactory {
 	}
 	    
 	@Override
-	public final UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) 
+	public final UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) 
     {
 		return new UpdateRequestProcessor(next) {
 			@Override
@@ -141,15 +140,12 @@ public class TagScoreUPF extends UpdateRequestProcessorFactory {
                         }
                         
                         if (doc.containsKey(guessFieldName + "_" + next)) {
-                            String guess = ((String)doc.getField(guessFieldName + "_" + next).getValue()).trim();
-                            Pattern pattern = Pattern.compile("\\S+");
-                            Matcher guessMatcher = pattern.matcher(guess);
+                            TaggedTokens guess = TaggedTokens.of(req, doc.getField(guessFieldName + "_" + next).getValue(), "|");
                             
                             int g_count = 0;
                             
                             if (doc.containsKey(wordsFieldName)) {
-                                String words = ((String)doc.getField(wordsFieldName).getValue()).trim();
-                                Matcher wordsMatcher = pattern.matcher(words);
+                                TaggedTokens words = TaggedTokens.of(req, doc.getField(wordsFieldName).getValue(), "|");
                         
                                 int correct = 0;
                                 int w_count = 0;
@@ -159,42 +155,33 @@ public class TagScoreUPF extends UpdateRequestProcessorFactory {
                                 int g_start = 0;
                                 int g_end = 0;
                                 
-                                int w_taglength = 0;
-                                int g_taglength = 0;
-                        
-                                String w_tag = new String("");
-                                String g_tag = new String("");
+                                String w_tag = null;
+                                String g_tag = null;
                                 
                                 List<String> errorEOut = new LinkedList<String>();
          
-                                while (wordsMatcher.find()) {
-                                    w_start = wordsMatcher.start() - w_count - w_taglength;
-                                    
-                                    w_tag = words.substring(words.indexOf('|', wordsMatcher.start()), wordsMatcher.end());
-                                    w_taglength += w_tag.length();
-                                    
-                                    w_end = wordsMatcher.end() - w_count - w_taglength;
+                                while (w_count < words.size()) {
+                                    w_start = words.getStart(w_count);
+                                    w_end = words.getEnd(w_count);
+                                    w_tag = words.getTag(w_count);
                                     w_count += 1;
                                     
-                                    while (g_end < w_end && guessMatcher.find()) {
-                                        g_start = guessMatcher.start() - g_count - g_taglength;
-                                        
-                                        g_tag = guess.substring(guess.indexOf('|', guessMatcher.start()), guessMatcher.end());
-                                        g_taglength += g_tag.length();
-                                        
-                                        g_end = guessMatcher.end() - g_count - g_taglength;
+                                    while (g_end < w_end && g_count < guess.size()) {
+                                        g_start = guess.getStart(g_count);
+                                        g_end = guess.getEnd(g_count);
+                                        g_tag = guess.getTag(g_count);
                                         g_count += 1;
                                         
-                                        if (g_start == w_start && g_end == w_end && w_tag.equals(g_tag)) {
+                                        if (g_start == w_start && g_end == w_end && StringUtils.equals(w_tag, g_tag)) {
                                             if (null != errorEField) {
-                                                errorEOut.add("A|" + guess.substring(guessMatcher.start(), guessMatcher.end()));
+                                                errorEOut.add("A|" + guess.getToken(g_count-1));
                                             }
                                             correct += 1;
                                         }
                                         else {
                                             //prefix = "<" + errorTag + " data-correct='" + words.substring(wordsMatcher.start(), wordsMatcher.end()) + "'>";
                                             if (null != errorEField) {
-                                                errorEOut.add("E|" + guess.substring(guessMatcher.start(), guessMatcher.end()));
+                                                errorEOut.add("E|" + guess.getToken(g_count-1));
                                             }
                                         }
                                     }
@@ -218,9 +205,7 @@ public class TagScoreUPF extends UpdateRequestProcessorFactory {
                                 }
                             }
                             else {
-                                while (guessMatcher.find()) {
-                                    g_count++;
-                                }
+                                g_count = guess.size();
                                 SolrInputField guessCountField = new SolrInputField(guessCountFieldName + "_" + next);
                                 guessCountField.addValue(new Integer(g_count), 1.0f);
                                 doc.put(guessCountFieldName + "_" + next, guessCountField);
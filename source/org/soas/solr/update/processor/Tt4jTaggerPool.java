@@ -0,0 +1,117 @@
+package org.soas.solr.update.processor;
+
+import org.annolab.tt4j.TreeTaggerWrapper;
+
+import java.io.IOException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TreeTagger wrappers kept warm between documents. A wrapper runs a
+ * tree-tagger process with its model loaded and keeps it running after
+ * tagging, so it is borrowed by one thread at a time for one model and
+ * then released for the next document to use, rather than starting a
+ * process for every field. Wrappers are only created when none is idle
+ * for the model.
+ */
+class Tt4jTaggerPool {
+    private final static Logger log = LoggerFactory.getLogger(Tt4jTaggerPool.class);
+
+    /** The system property TT4J finds the TreeTagger installation by. */
+    static final String HOME_PROPERTY = "treetagger.home";
+    /** The installation used if neither solrconfig.xml nor the JVM names one. */
+    static final String HOME_DEFAULT = "/opt/treetagger";
+
+    private final Map<String,Queue<TreeTaggerWrapper<String>>> idle = new ConcurrentHashMap<String,Queue<TreeTaggerWrapper<String>>>();
+    private volatile boolean closed = false;
+
+    /** Points TT4J to the TreeTagger installation directory, whose "bin"
+     *  subdirectory holds the tree-tagger executable. If home is null,
+     *  an installation already set for the JVM is kept. */
+    static void setHome(String home) {
+        if (home != null) {
+            System.setProperty(HOME_PROPERTY, home);
+        }
+        else if (System.getProperty(HOME_PROPERTY) == null) {
+            System.setProperty(HOME_PROPERTY, HOME_DEFAULT);
+        }
+    }
+
+    /** Returns a new wrapper for modelFile. */
+    static TreeTaggerWrapper<String> newWrapper(String modelFile) throws IOException {
+        setHome(null);
+        TreeTaggerWrapper<String> tt = new TreeTaggerWrapper<String>();
+        //tt.setPerformanceMode(true);
+        //tt.setStrictMode(true);
+        try {
+            tt.setModel(modelFile);
+        }
+        catch (IOException ioe) {
+            tt.destroy();
+            throw ioe;
+        }
+        return tt;
+    }
+
+    /** Returns an idle wrapper for modelFile, or a new one. Give it back
+     *  with {@link #release}, or with {@link #discard} if tagging failed. */
+    TreeTaggerWrapper<String> borrow(String modelFile) throws IOException {
+        if (closed) {
+            throw new IOException("TreeTagger wrappers have been closed");
+        }
+        Queue<TreeTaggerWrapper<String>> q = idle.get(modelFile);
+        TreeTaggerWrapper<String> tt = (q == null) ? null : q.poll();
+        if (tt == null) {
+            log.info("Starting TreeTagger with model " + modelFile);
+            tt = newWrapper(modelFile);
+        }
+        return tt;
+    }
+
+    /** Makes a wrapper borrowed for modelFile available again. */
+    void release(String modelFile, TreeTaggerWrapper<String> tt) {
+        tt.setHandler(null);
+        if (closed) {
+            tt.destroy();
+            return;
+        }
+        Queue<TreeTaggerWrapper<String>> q = idle.get(modelFile);
+        if (q == null) {
+            synchronized (this) {
+                q = idle.get(modelFile);
+                if (q == null) {
+                    q = new ConcurrentLinkedQueue<TreeTaggerWrapper<String>>();
+                    idle.put(modelFile, q);
+                }
+            }
+        }
+        q.offer(tt);
+        if (closed && q.remove(tt)) {
+            tt.destroy();
+        }
+    }
+
+    /** Stops a borrowed wrapper whose process may be in a bad state. */
+    void discard(TreeTaggerWrapper<String> tt) {
+        tt.destroy();
+    }
+
+    /** Stops the processes of the idle wrappers. A wrapper released after
+     *  this is stopped then. */
+    synchronized void close() {
+        closed = true;
+        for (Queue<TreeTaggerWrapper<String>> q : idle.values()) {
+            TreeTaggerWrapper<String> tt;
+            while ((tt = q.poll()) != null) {
+                tt.destroy();
+            }
+        }
+        idle.clear();
+    }
+}
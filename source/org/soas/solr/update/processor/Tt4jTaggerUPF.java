@@ -5,14 +5,25 @@ import org.apache.solr.update.processor.UpdateRequestProcessor;
 
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.util.plugin.SolrCoreAware;
 
-public class Tt4jTaggerUPF extends UpdateRequestProcessorFactory {
+public class Tt4jTaggerUPF extends UpdateRequestProcessorFactory implements SolrCoreAware {
     
+	/** The TreeTagger installation directory; see {@link Tt4jTaggerPool#setHome}. */
+	private static final String HOME_PARAM = "treetaggerHome";
+	
 	protected SolrParams defaults;
 	protected SolrParams appends;
 	protected SolrParams invariants;
+	
+	/* Starting tree-tagger and loading its model costs far more than
+	   tagging a document, so the processes are kept running and reused
+	   by all the requests of the core. */
+	private final Tt4jTaggerPool taggers = new Tt4jTaggerPool();
 
 	/**
 	 * The UpdateRequestProcessor may be initialized in solrconfig.xml similarly
@@ -40,6 +51,7 @@ public class Tt4jTaggerUPF extends UpdateRequestProcessorFactory {
                 invariants = SolrParams.toSolrParams((NamedList) o);
             }
         }
+        Tt4jTaggerPool.setHome(defaults == null ? null : defaults.get(HOME_PARAM));
     }
 
     @Override
@@ -49,6 +61,20 @@ public class Tt4jTaggerUPF extends UpdateRequestProcessorFactory {
         p = SolrParams.wrapAppended(p, appends);
         p = SolrParams.wrapDefaults(invariants, p);
         
-        return new Tt4jTaggerUpdateProcessor(p, next);
+        return new Tt4jTaggerUpdateProcessor(p, next, taggers);
     }
+    
+	@Override
+	public void inform(SolrCore core) {
+	    core.addCloseHook(new CloseHook() {
+	        @Override
+	        public void preClose(SolrCore core) {
+	        }
+	        
+	        @Override
+	        public void postClose(SolrCore core) {
+	            taggers.close();
+	        }
+	    });
+	}
 }
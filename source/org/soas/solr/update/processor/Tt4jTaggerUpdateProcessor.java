@@ -4,7 +4,6 @@ import org.annolab.tt4j.TreeTaggerWrapper;
 import org.annolab.tt4j.TreeTaggerException;
 import org.annolab.tt4j.TokenHandler;
 
-import static java.util.Arrays.asList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -41,6 +40,8 @@ public class Tt4jTaggerUpdateProcessor extends UpdateRequestProcessor {
     
     private static final String MODEL_PARAM = "model";
     
+    private static final Pattern TOKEN = Pattern.compile("\\S+");
+    
 	private static final String TAG_DELIMITER_PARAM = "tagDelimiter";
 	private static final String DELIMIT_OUTPUT_PARAM = "delimitOutput";
     
@@ -63,8 +64,17 @@ public class Tt4jTaggerUpdateProcessor extends UpdateRequestProcessor {
 	protected SolrParams appends;
 	protected SolrParams invariants;
 	
+	private final Tt4jTaggerPool taggers;
+	
 	public Tt4jTaggerUpdateProcessor(SolrParams params, UpdateRequestProcessor next) {
+	    this(params, next, null);
+	}
+	
+	/** @param taggers the wrappers kept warm between documents; if null,
+	 *  each field is tagged by a wrapper started for it */
+	Tt4jTaggerUpdateProcessor(SolrParams params, UpdateRequestProcessor next, Tt4jTaggerPool taggers) {
 	    super(next);
+	    this.taggers = taggers;
 	    initParams(params);
 	}
 	
@@ -127,32 +137,28 @@ public class Tt4jTaggerUpdateProcessor extends UpdateRequestProcessor {
                         String path = (String)pathField.getValue();
                         String modelFile = path + "/" + model + suffix + ".lm";
                         
-                        log.info("Model = " + modelFile);
+                        log.debug("Model = " + modelFile);
                         
                         final List<String> tags = new LinkedList<String>();
                         
-                        // Point TT4J to the TreeTagger installation directory. The executable is expected
-                        // in the "bin" subdirectory - in this example at "/opt/treetagger/bin/tree-tagger"
-                        System.setProperty("treetagger.home", "/opt/treetagger");
-                        TreeTaggerWrapper tt = new TreeTaggerWrapper<String>();
-                        //tt.setPerformanceMode(true);
-                        //tt.setStrictMode(true);
+                        TreeTaggerWrapper<String> tt = null;
+                        boolean tagged = false;
                         try {
-                            tt.setModel(modelFile); //move to initParams
+                            tt = (taggers != null) ? taggers.borrow(modelFile) : Tt4jTaggerPool.newWrapper(modelFile);
                             tt.setHandler(new TokenHandler<String>() {
                                     public void token(String token, String pos, String lemma) {
                                         tags.add(token + tagDelimiter + pos);
                                     }
                             });
-                            Pattern pattern = Pattern.compile("\\S+");
-                            Matcher matcher = pattern.matcher(val);
-                            List<String> tokens = new LinkedList(); 
+                            Matcher matcher = TOKEN.matcher(val);
+                            List<String> tokens = new LinkedList<String>(); 
                             while (matcher.find()) {
                                 String s = matcher.group().replace('|', '\t').replace('/', '\t');
                                 //log.info("Token = " + s);
                                 tokens.add(s);
                             }
                             tt.process(tokens);
+                            tagged = true;
                         }
                         catch (IOException ioe) {
                             log.error("Failed", ioe);
@@ -161,7 +167,17 @@ public class Tt4jTaggerUpdateProcessor extends UpdateRequestProcessor {
                             log.error("Failed", tte);
                         }
                         finally {
-                            tt.destroy();
+                            if (tt != null) {
+                                if (taggers == null) {
+                                    tt.destroy();
+                                }
+                                else if (tagged) {
+                                    taggers.release(modelFile, tt);
+                                }
+                                else {
+                                    taggers.discard(tt);
+                                }
+                            }
                         }
                               
                         String result = StringUtils.join(tags.iterator(), delimitOutput);
@@ -30,6 +30,8 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
+import org.thdl.tib.solr.util.TaggedTokens;
+
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
 import org.apache.solr.common.util.NamedList;
@@ -52,6 +54,8 @@ public class WhereDifferentUPF extends UpdateRequestProcessorFactory {
 	public static final String DIFFERENT_PARAM = "different";
 	public static final String CHANGE_PARAM = "change";
 	public static final String DIFF_DELIM_PARAM = "diffDelim";
+	
+	private static final Pattern TAG_SPLITTER = Pattern.compile("\\]\\[");
   
 	private String posFieldName = null;
 	private String compareFieldName = null;
@@ -110,7 +114,7 @@ public class WhereDifferentUPF extends UpdateRequestProcessorFactory {
 	}
 	    
 	@Override
-	public final UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) 
+	public final UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) 
     {
 		return new UpdateRequestProcessor(next) {
 			@Override
@@ -127,31 +131,30 @@ public class WhereDifferentUPF extends UpdateRequestProcessorFactory {
 				        String next = (String)it.next();
                         
 				        if (doc.containsKey(posFieldName + "_" + next) && doc.containsKey(compareFieldName + "_" + next)) {
-                            String posFieldValue = (String)doc.getFieldValue(posFieldName + "_" + next);
-                            String[] pos = posFieldValue.split("\\s+");
-				            String compareFieldValue = (String)doc.getFieldValue(compareFieldName + "_" + next);
-				            String[] compare = compareFieldValue.split("\\s+");
+                            Object posFieldValue = doc.getFieldValue(posFieldName + "_" + next);
+                            TaggedTokens pos = TaggedTokens.of(req, posFieldValue, "|");
+				            Object compareFieldValue = doc.getFieldValue(compareFieldName + "_" + next);
+				            TaggedTokens compare = TaggedTokens.of(req, compareFieldValue, "|");
 				            
 				            //log.info("posFieldValue = " + posFieldValue);
 				            //log.info("compareFieldValue = " + compareFieldValue);
 
-				            if (compare.length == pos.length && !(compare.length == 1 && compare[0].equals(compareFieldValue))) {
+				            if (compare.size() == pos.size() && !(compare.size() == 1 && compare.getToken(0).equals(compareFieldValue.toString()))) {
 				                //Pattern oneTag = Pattern.compile("\\[?([^\\]]+)\\]?");
-				                Pattern splitter = Pattern.compile("\\]\\[");
                                 StringBuffer sbDiff = new StringBuffer();
                                 StringBuffer sbChange = new StringBuffer();
-                                for (int i=0; i<compare.length; i++) {
-                                    sbDiff.append(pos[i]);
-                                    String tags = compare[i].substring(compare[i].indexOf('|')+1);
-                                    if (tags.charAt(0) == '[') {
+                                for (int i=0; i<compare.size(); i++) {
+                                    sbDiff.append(pos.getToken(i));
+                                    String tags = compare.getTag(i) != null ? compare.getTag(i) : compare.getSurface(i);
+                                    if (tags.startsWith("[")) {
                                         tags = tags.substring(1, tags.length()-1); //strip [ and ]
                                     }
                                     
                                     //Matcher m = oneTag.matcher(tags);
                                     //if (m.matches()) {
                                     
-                                    String[] tagList = splitter.split(tags);
-                                    String posRef = pos[i].substring(pos[i].indexOf('|')+1);
+                                    String[] tagList = TAG_SPLITTER.split(tags);
+                                    String posRef = pos.getTag(i) != null ? pos.getTag(i) : pos.getSurface(i);
                                     boolean match = false;
                                     for (int k=0; k<tagList.length; k++) {
                                         //String tag = m.group(1); //tags.substring(1, tags.length()-1);
@@ -4,7 +4,7 @@ import java.util.Vector ;
 import org.thdl.tib.scanner.Definitions ;
 import org.thdl.tib.scanner.DictionarySource ;
 import org.thdl.tib.scanner.ByteDictionarySource ;
-import org.thdl.tib.scanner.FileSyllableListTree ;
+import org.thdl.tib.scanner.BitDictionarySource ;
 import org.thdl.tib.dictionary.SimpleDictionaryEntryDefinition ;
 
 class SimpleDictionaryEntryDefinitions extends Vector implements DictionaryEntryDefinitions
@@ -24,7 +24,7 @@ class SimpleDictionaryEntryDefinitions extends Vector implements DictionaryEntry
 
     int i,j;
 
-    if (FileSyllableListTree.versionNumber==2)
+    if (source instanceof BitDictionarySource)
     {
       this.add ( new SimpleDictionaryEntryDefinition ( "(" + source.getTag(0) + ") " + defArr[0] ) ) ;
       for (i=1; i<defArr.length; i++)
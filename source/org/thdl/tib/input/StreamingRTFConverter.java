@@ -0,0 +1,601 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.input;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.thdl.tib.text.DuffCode;
+import org.thdl.tib.text.TibetanMachineWeb;
+import org.thdl.tib.text.tshegbar.UnicodeUtils;
+import org.thdl.util.ThdlOptions;
+
+/** Does the TMW->Unicode, TMW->TM, and TM->TMW conversions of {@link
+ *  TibetanConverter} in one pass over the RTF, without reading the
+ *  document into a {@link org.thdl.tib.text.TibetanDocument}.  The
+ *  Swing RTF reader needs memory proportional to the document (many
+ *  times its size, in fact), so large documents ran out of memory;
+ *  this needs only a bounded amount.
+ *
+ *  <p>The RTF is tokenized and copied to the output as is, except
+ *  that runs of glyphs in the fonts being converted are replaced by
+ *  groups like <code>{\f12 ...}</code> in the new fonts, and the new
+ *  fonts are added to the end of the font table.  A run ends at a
+ *  change of font size, at text in any other font, at a brace, and at
+ *  any control word other than those that merely switch between the
+ *  fonts being converted.  As {@link
+ *  org.thdl.tib.text.TibetanDocument} does, TMW runs are converted to
+ *  Unicode a whole run at a time so that {@link
+ *  UnicodeUtils#fixSomeOrderingErrorsInTibetanUnicode(StringBuffer)}
+ *  can fix them, and '{', '}', and '\' in Tahoma are taken to be the
+ *  TMW glyphs that Word sometimes turns into Tahoma.</p>
+ *
+ *  <p>Glyphs that cannot be converted are described on standard
+ *  error just as the Swing-based conversion describes them, but they
+ *  are left in place rather than gathered at the top of an otherwise
+ *  empty document.  Paragraph styles' fonts are not applied to the
+ *  text; only explicit <code>\f</code> and <code>\fs</code> control
+ *  words are.</p>
+ */
+final class StreamingRTFConverter implements FontConverterConstants {
+    /** Destinations whose text is not part of the document. */
+    private static final HashSet skippedDestinations
+        = new HashSet(Arrays.asList(new String[] {
+            "author", "bkmkend", "bkmkstart", "colortbl", "comment",
+            "colorschememapping", "datastore", "doccomm", "falt",
+            "filetbl", "fldinst", "fontemb", "fontfile", "generator",
+            "info", "keywords", "latentstyles", "listoverridetable",
+            "listtable", "object", "operator", "panose", "pict",
+            "private", "revtbl", "rsidtbl", "stylesheet", "subject",
+            "themedata", "title", "xmlnstbl"
+        }));
+
+    /** Control words that cannot change how a run looks, since its
+     *  font is given explicitly and a change of size ends it.  When
+     *  they come in the middle of a run of glyphs, the run goes on, and
+     *  they are written after it. */
+    private static final HashSet harmlessInRuns
+        = new HashSet(Arrays.asList(new String[] {
+            "af", "afs", "charrsid", "dbch", "f", "fs", "hich", "insrsid",
+            "lang", "langfe", "langfenp", "langnp", "loch", "noproof", "uc"
+        }));
+
+    /** Runs are cut at a tsheg or space once they are this long, and
+     *  anywhere once they are four times this long. */
+    private static final int longRun = 4096;
+
+    private static final int BODY = 0;
+    private static final int FONT_TABLE = 1;
+    private static final int SKIPPED = 2;
+
+    /** Stands for Tahoma, not a TMW font, in {@link #fontNumbers}. */
+    private static final int TAHOMA = -1;
+
+    /** The state that RTF groups save and restore. */
+    private static class State implements Cloneable {
+        int font = -1;
+        int fontSize = 24; // in half-points
+        int uc = 1;
+        int destination = BODY;
+        boolean isFontTable = false;
+
+        State copy() {
+            try {
+                State s = (State)clone();
+                s.isFontTable = false;
+                return s;
+            } catch (CloneNotSupportedException e) {
+                throw new Error(e.toString());
+            }
+        }
+    }
+
+    private final String ct;
+    private final boolean fromTMW;
+    private final String unicodeFont;
+    private final InputStream in;
+    private final OutputStream out;
+    private final StringBuffer errors;
+
+    /** The next byte, or -2 if it has not been read yet. */
+    private int next = -2;
+    /** The byte after next, or -2 if it has not been read yet. */
+    private int afterNext = -2;
+    /** The raw bytes of the token being read. */
+    private final ByteArrayOutputStream token = new ByteArrayOutputStream();
+    /** Tokens read since the run began that are written after it. */
+    private final ByteArrayOutputStream deferred = new ByteArrayOutputStream();
+
+    private State state = new State();
+    private final ArrayList stack = new ArrayList();
+
+    /** RTF font number to font name */
+    private final HashMap fontNames = new HashMap();
+    /** RTF font number to the number of the TM or TMW font we convert
+     *  from, or zero, or {@link #TAHOMA} */
+    private final HashMap fontNumbers = new HashMap();
+    private int defaultFont = 0;
+    private int maxFont = -1;
+    private int fontTableFont = -1;
+    private final StringBuffer fontTableName = new StringBuffer();
+    /** For each font we convert to, by TM or TMW font number (or just
+     *  the Unicode font, at 0), its RTF font number; null until the
+     *  font table has been read. */
+    private int targetFonts[] = null;
+    private String targetNames[];
+
+    /** The converted run not yet written. */
+    private final StringBuffer run = new StringBuffer();
+    private int runFontSize = -1;
+    /** TM or TMW font number of the current or last run in this
+     *  paragraph, or zero. */
+    private int runFont = 0;
+
+    private final HashSet problemGlyphs = new HashSet();
+    private boolean errorReturn = false;
+    private long numAttemptedReplacements = 0;
+    /** Roughly the offset the current character would have in a
+     *  TibetanDocument, for error messages. */
+    private long position = 0;
+
+    private StreamingRTFConverter(InputStream in, OutputStream out,
+                                  String ct, StringBuffer errors) {
+        this.in = in;
+        this.out = out;
+        this.ct = ct;
+        this.errors = errors;
+        fromTMW = (TM_TO_TMW != ct);
+        unicodeFont = ThdlOptions.getStringOption("thdl.tmw.to.unicode.font",
+                                                  "Tibetan Machine Uni");
+        if (TMW_TO_UNI == ct) {
+            targetNames = new String[] { unicodeFont };
+        } else if (TMW_TO_TM == ct) {
+            targetNames = TibetanMachineWeb.tmFontNames;
+        } else {
+            targetNames = TibetanMachineWeb.tmwFontNames;
+        }
+    }
+
+    /** Reads RTF from in, closes in, converts it as {@link
+     *  TibetanConverter} does in mode ct, which must be {@link
+     *  #TMW_TO_UNI}, {@link #TMW_TO_TM}, or {@link #TM_TO_TMW}, and
+     *  writes the result to out, which is flushed but not closed.
+     *  @return the exit code TibetanConverter would give */
+    static int convert(InputStream in, PrintStream out, String ct) {
+        StringBuffer errors = new StringBuffer();
+        StreamingRTFConverter c
+            = new StreamingRTFConverter(new BufferedInputStream(in, 65536),
+                                        new BufferedOutputStream(out, 65536),
+                                        ct, errors);
+        int exitCode = 0;
+        try {
+            c.convert();
+            c.out.flush();
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+            exitCode = 40;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // we don't care about the input so much...
+        }
+        if (0 == exitCode && c.errorReturn) {
+            System.err.println(errors);
+            exitCode = 42;
+        }
+        if (out.checkError())
+            exitCode = 41;
+        if (c.numAttemptedReplacements < 1)
+            exitCode = 43;
+        return exitCode;
+    }
+
+    private void convert() throws IOException {
+        int c;
+        while (-1 != (c = peek())) {
+            token.reset();
+            read();
+            token.write(c);
+            if ('{' == c) {
+                stack.add(state);
+                state = state.copy();
+                passThrough(false);
+            } else if ('}' == c) {
+                if (state.isFontTable)
+                    endFontTable();
+                if (!stack.isEmpty())
+                    state = (State)stack.remove(stack.size() - 1);
+                passThrough(false);
+            } else if ('\\' == c) {
+                controlWordOrSymbol();
+            } else if ('\r' == c || '\n' == c) {
+                passThrough(true);
+            } else {
+                text(c);
+            }
+        }
+        flushRun();
+        deferred.writeTo(out);
+        deferred.reset();
+    }
+
+    /** Reads the rest of a control word or symbol whose backslash has
+     *  been read. */
+    private void controlWordOrSymbol() throws IOException {
+        int c = read();
+        if (-1 == c)
+            return;
+        token.write(c);
+        if (!isLetter(c)) {
+            switch (c) {
+            case '\\': case '{': case '}':
+                text(c);
+                return;
+            case '~':
+                text(0xA0);
+                return;
+            case '\'':
+                text(hexEscape());
+                return;
+            case '*':
+                state.destination = SKIPPED;
+                passThrough(false);
+                return;
+            case '\r': case '\n':
+                paragraph();
+                return;
+            default:
+                passThrough(false);
+                return;
+            }
+        }
+        StringBuffer word = new StringBuffer();
+        word.append((char)c);
+        while (isLetter(peek()))
+            word.append((char)readIntoToken());
+        boolean hasParameter = false;
+        boolean negative = false;
+        int parameter = 0;
+        if ('-' == peek()) {
+            readIntoToken();
+            negative = true;
+        }
+        while (peek() >= '0' && peek() <= '9') {
+            hasParameter = true;
+            parameter = 10*parameter + (readIntoToken() - '0');
+        }
+        if (negative)
+            parameter = -parameter;
+        if (' ' == peek())
+            readIntoToken();
+        String w = word.toString();
+
+        if ("bin".equals(w)) {
+            // binary data; never text
+            for (int i = 0; i < parameter && -1 != peek(); i++)
+                readIntoToken();
+            passThrough(false);
+            return;
+        }
+        if ("u".equals(w) && hasParameter) {
+            if (parameter < 0)
+                parameter += 65536;
+            skipFallback(state.uc);
+            text(parameter);
+            return;
+        }
+        if ("fonttbl".equals(w)) {
+            state.destination = FONT_TABLE;
+            state.isFontTable = true;
+        } else if (skippedDestinations.contains(w)) {
+            state.destination = SKIPPED;
+        } else if (FONT_TABLE == state.destination) {
+            if ("f".equals(w)) {
+                fontTableFont = parameter;
+                fontTableName.setLength(0);
+                if (parameter > maxFont)
+                    maxFont = parameter;
+            }
+        } else if (BODY == state.destination) {
+            if ("f".equals(w)) {
+                state.font = parameter;
+            } else if ("fs".equals(w)) {
+                state.fontSize = hasParameter ? parameter : 24;
+            } else if ("plain".equals(w)) {
+                state.font = defaultFont;
+                state.fontSize = 24;
+            } else if ("deff".equals(w)) {
+                defaultFont = parameter;
+            } else if ("par".equals(w) || "line".equals(w)
+                       || "sect".equals(w) || "page".equals(w)
+                       || "cell".equals(w) || "row".equals(w)) {
+                paragraph();
+                return;
+            } else if ("tab".equals(w)) {
+                ++position;
+            }
+        }
+        if ("uc".equals(w))
+            state.uc = parameter;
+        passThrough(harmlessInRuns.contains(w));
+    }
+
+    /** Handles the token just read, which ends a paragraph. */
+    private void paragraph() throws IOException {
+        if (BODY == state.destination) {
+            ++position;
+            flushRun();
+            runFont = 0;
+        }
+        passThrough(false);
+    }
+
+    /** Writes the token just read, or saves it until the current run
+     *  is written if it need not end the run. */
+    private void passThrough(boolean harmless) throws IOException {
+        if (run.length() > 0) {
+            if (harmless) {
+                token.writeTo(deferred);
+                return;
+            }
+            flushRun();
+        }
+        token.writeTo(out);
+    }
+
+    /** Handles the character ch, which came from the token just
+     *  read. */
+    private void text(int ch) throws IOException {
+        if (FONT_TABLE == state.destination) {
+            if (';' == ch) {
+                String name = fontTableName.toString().trim();
+                int fontNum = (fromTMW
+                               ? TibetanMachineWeb.getTMWFontNumber(name)
+                               : TibetanMachineWeb.getTMFontNumber(name));
+                if (0 == fontNum && fromTMW && "Tahoma".equals(name))
+                    fontNum = TAHOMA;
+                fontNames.put(Integer.valueOf(fontTableFont), name);
+                fontNumbers.put(Integer.valueOf(fontTableFont),
+                                Integer.valueOf(fontNum));
+                fontTableName.setLength(0);
+            } else {
+                fontTableName.append((char)ch);
+            }
+            passThrough(false);
+            return;
+        }
+        if (BODY != state.destination) {
+            passThrough(false);
+            return;
+        }
+        ++position;
+        Integer font = Integer.valueOf((state.font < 0) ? defaultFont : state.font);
+        Integer n = (Integer)fontNumbers.get(font);
+        int fontNum = (null == n) ? 0 : n.intValue();
+        int glyph = ch;
+        if (TAHOMA == fontNum) {
+            // Word sometimes puts these TMW glyphs in Tahoma:
+            if ('{' == ch || '}' == ch)
+                fontNum = 1;
+            else if ('\\' == ch)
+                fontNum = 2;
+            else
+                fontNum = 0;
+        }
+        if (0 == fontNum || null == targetFonts) {
+            passThrough(false);
+            return;
+        }
+        ++numAttemptedReplacements;
+
+        String unicode = null;
+        DuffCode dc = null;
+        if (TMW_TO_UNI == ct) {
+            unicode = TibetanMachineWeb.mapTMWtoUnicode(fontNum - 1, glyph);
+        } else if (TMW_TO_TM == ct) {
+            dc = TibetanMachineWeb.mapTMWtoTM(fontNum - 1, glyph, runFont);
+        } else {
+            dc = TibetanMachineWeb.mapTMtoTMW(fontNum - 1, glyph, runFont);
+        }
+        if (null == unicode && null == dc) {
+            noteProblemGlyph((String)fontNames.get(font), glyph);
+            passThrough(false);
+            return;
+        }
+        if (run.length() > 0
+            && (state.fontSize != runFontSize
+                || (null != dc && dc.getFontNum() != runFont)))
+            flushRun();
+        if (0 == run.length()) {
+            runFontSize = state.fontSize;
+            if (null != dc)
+                runFont = dc.getFontNum();
+        }
+        if (null != unicode)
+            run.append(unicode);
+        else
+            run.append(dc.getCharacter());
+        // Cut long runs where it does no harm so that memory use is
+        // bounded:
+        if ((run.length() >= longRun && (' ' == glyph || '-' == glyph))
+            || run.length() >= 4*longRun)
+            flushRun();
+    }
+
+    private void noteProblemGlyph(String fontName, int glyph) {
+        errorReturn = true;
+        String key = fontName + "\t" + glyph;
+        if (problemGlyphs.add(key)) {
+            String mode = ((TMW_TO_UNI == ct)
+                           ? "TMW->Unicode"
+                           : ((TMW_TO_TM == ct) ? "TMW->TM" : "TM->TMW"));
+            errors.append(mode
+                          + " conversion failed for a glyph:\nFont is "
+                          + fontName + ", glyph number is " + glyph
+                          + "; first position found (from zero) is "
+                          + (position - 1) + "\n");
+        }
+    }
+
+    /** Writes the current run, if any, in its new font, and then the
+     *  formatting read since it began. */
+    private void flushRun() throws IOException {
+        if (run.length() > 0) {
+            int font;
+            if (TMW_TO_UNI == ct) {
+                UnicodeUtils.fixSomeOrderingErrorsInTibetanUnicode(run);
+                font = targetFonts[0];
+            } else {
+                font = targetFonts[runFont];
+            }
+            StringBuffer sb = new StringBuffer(run.length() + 16);
+            sb.append("{\\f").append(font).append("\\uc1 ");
+            for (int i = 0; i < run.length(); i++) {
+                char ch = run.charAt(i);
+                if ('\\' == ch || '{' == ch || '}' == ch) {
+                    sb.append('\\').append(ch);
+                } else if ('\t' == ch) {
+                    sb.append("\\tab ");
+                } else if (ch >= 32 && ch < 127) {
+                    sb.append(ch);
+                } else if (ch >= 0xA0 && ch < 256 && TMW_TO_UNI != ct) {
+                    sb.append("\\'").append(Character.forDigit(ch >> 4, 16))
+                        .append(Character.forDigit(ch & 15, 16));
+                } else {
+                    sb.append("\\u").append((int)(short)ch).append('?');
+                }
+            }
+            sb.append('}');
+            writeAscii(sb);
+            run.setLength(0);
+        }
+        deferred.writeTo(out);
+        deferred.reset();
+    }
+
+    /** Adds the fonts we convert to, if they are not there already,
+     *  to the end of the font table, whose closing brace has just been
+     *  read. */
+    private void endFontTable() throws IOException {
+        targetFonts = new int[targetNames.length];
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < targetNames.length; i++) {
+            if (null == targetNames[i])
+                continue;
+            targetFonts[i] = -1;
+            for (int f = 0; f <= maxFont; f++) {
+                if (targetNames[i].equals(fontNames.get(Integer.valueOf(f)))) {
+                    targetFonts[i] = f;
+                    break;
+                }
+            }
+            if (-1 == targetFonts[i]) {
+                targetFonts[i] = ++maxFont;
+                sb.append("{\\f").append(maxFont).append("\\fnil ")
+                    .append(targetNames[i]).append(";}");
+            }
+        }
+        writeAscii(sb);
+    }
+
+    private void writeAscii(StringBuffer sb) throws IOException {
+        out.write(sb.toString().getBytes("US-ASCII"));
+    }
+
+    /** Skips the n characters, the ones for readers that do not know
+     *  \\u, that follow \\u. */
+    private void skipFallback(int n) throws IOException {
+        while (n > 0) {
+            int c = peek();
+            if (-1 == c || '{' == c || '}' == c)
+                return;
+            if ('\r' == c || '\n' == c) {
+                readIntoToken();
+                continue;
+            }
+            if ('\\' == c) {
+                // a control word ends the fallback, and is read as usual
+                if ('\'' != peekAfterNext())
+                    return;
+                readIntoToken();
+                readIntoToken();
+                hexEscape();
+            } else {
+                readIntoToken();
+            }
+            --n;
+        }
+    }
+
+    /** Reads the two hex digits following \\'. */
+    private int hexEscape() throws IOException {
+        int hi = Character.digit((char)readIntoToken(), 16);
+        int lo = Character.digit((char)readIntoToken(), 16);
+        return (hi < 0 || lo < 0) ? '?' : (hi << 4) | lo;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private int peek() throws IOException {
+        if (-2 == next) {
+            if (-2 == afterNext) {
+                next = in.read();
+            } else {
+                next = afterNext;
+                afterNext = -2;
+            }
+        }
+        return next;
+    }
+
+    /** Returns the byte after the one {@link #peek} returns, without
+     *  reading either. */
+    private int peekAfterNext() throws IOException {
+        if (-1 == peek())
+            return -1;
+        if (-2 == afterNext)
+            afterNext = in.read();
+        return afterNext;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        next = -2;
+        return c;
+    }
+
+    private int readIntoToken() throws IOException {
+        int c = read();
+        if (-1 != c)
+            token.write(c);
+        return c;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.rtf.RTFEditorKit;
+
+import junit.framework.TestCase;
+
+import org.thdl.util.ThdlOptions;
+
+/**
+ * Tests {@link org.thdl.tib.input.StreamingRTFConverter} at the unit
+ * level.
+ */
+public class StreamingRTFConverterTest extends TestCase {
+    /** Plain vanilla constructor for StreamingRTFConverterTest. */
+    public StreamingRTFConverterTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() {
+        System.setProperty("java.awt.headless", "true");
+        ThdlOptions.forTestingOnlyInitializeWithoutDefaultOptionsFile();
+        ThdlOptions.setUserPreference("thdl.tmw.to.unicode.font",
+                                      "Tibetan Machine Uni");
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(StreamingRTFConverterTest.class);
+    }
+
+    /** Returns the text of the RTF document, noting each change of
+     *  font or size, and leaving off the final newlines, which the
+     *  Swing RTF writer adds. */
+    private static String describe(byte rtf[]) throws Exception {
+        DefaultStyledDocument d = new DefaultStyledDocument();
+        new RTFEditorKit().read(new ByteArrayInputStream(rtf), d, 0);
+        StringBuffer sb = new StringBuffer();
+        String lastFont = null;
+        int lastSize = -1;
+        for (int i = 0; i < d.getLength(); i++) {
+            AttributeSet a = d.getCharacterElement(i).getAttributes();
+            String font = StyleConstants.getFontFamily(a);
+            int size = StyleConstants.getFontSize(a);
+            char ch = d.getText(i, 1).charAt(0);
+            if ('\n' != ch && (!font.equals(lastFont) || size != lastSize)) {
+                sb.append("[" + font + " " + size + "]");
+                lastFont = font;
+                lastSize = size;
+            }
+            sb.append(ch);
+        }
+        while (sb.length() > 0 && '\n' == sb.charAt(sb.length() - 1))
+            sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+
+    private static byte[] convert(byte input[], String ct, boolean stream,
+                                  int rc) {
+        ThdlOptions.setUserPreference("thdl.stream.rtf.conversions", stream);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(rc,
+                     TibetanConverter.reallyConvert(new ByteArrayInputStream(input),
+                                                    new PrintStream(out), ct,
+                                                    "All", false, false));
+        return out.toByteArray();
+    }
+
+    private static byte[] read(String testFile) throws IOException {
+        File f = new File("source" + File.separator
+                          + "org" + File.separator
+                          + "thdl" + File.separator
+                          + "tib" + File.separator
+                          + "input" + File.separator
+                          + testFile);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FileInputStream in = new FileInputStream(f);
+        byte buf[] = new byte[4096];
+        int n;
+        while (-1 != (n = in.read(buf)))
+            baos.write(buf, 0, n);
+        in.close();
+        return baos.toByteArray();
+    }
+
+    private static void assertSameAsSwing(String testFile, String ct)
+        throws Exception {
+        byte input[] = read(testFile);
+        assertEquals(describe(convert(input, ct, false, 0)),
+                     describe(convert(input, ct, true, 0)));
+    }
+
+    /** Tests that streaming gives the same text in the same fonts and
+     *  sizes as converting a TibetanDocument does. */
+    public void testSameAsSwing() throws Exception {
+        assertSameAsSwing("TMW_RTF_TO_THDL_WYLIETest1.rtf",
+                          FontConverterConstants.TMW_TO_UNI);
+        assertSameAsSwing("TMW_RTF_TO_THDL_WYLIETest1.rtf",
+                          FontConverterConstants.TMW_TO_TM);
+        assertSameAsSwing("TMW_RTF_TO_THDL_WYLIETest2.rtf",
+                          FontConverterConstants.TM_TO_TMW);
+    }
+
+    /** Tests groups, Unicode escapes, Tahoma curly braces, and a glyph
+     *  that cannot be converted, which is left in place. */
+    public void testWordStyleRTF() throws Exception {
+        String rtf
+            = "{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0\\froman Times;}"
+            + "{\\f1\\fnil{\\*\\panose 0000}TibetanMachineWeb;}"
+            + "{\\f2\\fnil Tahoma;}}\n"
+            + "\\pard\\plain\\f1\\fs48 {\\b ka}\\f2 \\{\\f1 -\\u200\\'3f"
+            + "\\f0 abc\\par}";
+        String out
+            = new String(convert(rtf.getBytes("US-ASCII"),
+                                 FontConverterConstants.TMW_TO_UNI, true,
+                                 42),
+                         "US-ASCII");
+        assertEquals("{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0\\froman Times;}"
+                     + "{\\f1\\fnil{\\*\\panose 0000}TibetanMachineWeb;}"
+                     + "{\\f2\\fnil Tahoma;}{\\f3\\fnil Tibetan Machine Uni;}}\n"
+                     + "\\pard\\plain\\f1\\fs48 {\\b {\\f3\\uc1 \\u3853?\\u3923?}}"
+                     + "\\f2 {\\f3\\uc1 \\u3962?\\u3851?}\\f1 \\u200\\'3f"
+                     + "\\f0 abc\\par}",
+                     out);
+    }
+
+    /** Tests that a control word ending the characters that follow \\u
+     *  for readers without Unicode is still read as a control word,
+     *  and that hex escapes among those characters are skipped. */
+    public void testControlWordAfterUnicodeFallback() throws Exception {
+        String rtf
+            = "{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0\\froman Times;}"
+            + "{\\f1\\fnil TibetanMachineWeb;}}\n"
+            + "\\pard\\plain\\f1\\fs48 ka\\uc2\\u200?\\par ka"
+            + "\\u201\\'3f\\'3f\\par}";
+        String out
+            = new String(convert(rtf.getBytes("US-ASCII"),
+                                 FontConverterConstants.TMW_TO_UNI, true,
+                                 42),
+                         "US-ASCII");
+        assertEquals("{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0\\froman Times;}"
+                     + "{\\f1\\fnil TibetanMachineWeb;}"
+                     + "{\\f2\\fnil Tibetan Machine Uni;}}\n"
+                     + "\\pard\\plain\\f1\\fs48 {\\f2\\uc1 \\u3853?\\u3923?}"
+                     + "\\uc2\\u200?\\par {\\f2\\uc1 \\u3853?\\u3923?}"
+                     + "\\u201\\'3f\\'3f\\par}",
+                     out);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.input;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import org.thdl.util.OrderedTaskRunner;
+import org.thdl.util.ThdlLazyException;
+
+/** Does one {@link TibetanConverter} conversion on many files inside
+ *  a single JVM.  Starting a JVM, reading in the TibetanMachineWeb
+ *  tables, and warming up the JIT take longer than converting a small
+ *  file, so converting thousands of files one invocation at a time
+ *  is mostly overhead.
+ *
+ *  <p>The input is a directory (every file in it, not recursively),
+ *  a pattern like <code>texts/*.acip</code> in which <code>*</code>
+ *  and <code>?</code> are wildcards for the last path component, a
+ *  manifest file named like <code>@list.txt</code> with one path per
+ *  line, or a single file.  The output for <code>foo.acip</code> goes
+ *  to <code>foo.acip.txt</code> (or <code>.rtf</code> for RTF output)
+ *  in the output directory.  For each input, in order, a line
+ *  <code>exit-code TAB input TAB output</code> is printed; the exit
+ *  code is the one TibetanConverter would have given for that file
+ *  alone.</p>
+ */
+final class TibetanBatchConverter implements FontConverterConstants {
+    /** Not instantiable. */
+    private TibetanBatchConverter() { }
+
+    /** The result of converting one file. */
+    private static class Result {
+        final File input;
+        final File output;
+        final int exitCode;
+        Result(File input, File output, int exitCode) {
+            this.input = input;
+            this.output = output;
+            this.exitCode = exitCode;
+        }
+    }
+
+    /** Converts each file named by inputSpec to a file in outputDir
+     *  using up to threads threads, printing a report to out.  The
+     *  other parameters are as for {@link
+     *  TibetanConverter#reallyConvert(InputStream, PrintStream, String,
+     *  String, boolean, boolean)}.
+     *  @return zero if every file's exit code was zero, 52 if some
+     *  file's was not, and 53 if no input files were found
+     *  @throws IOException if the report cannot be written or the
+     *  manifest cannot be read */
+    static int convert(String inputSpec, String outputDir, PrintStream out,
+                       final String ct, final String warningLevel,
+                       final boolean shortMessages, final boolean colors,
+                       int threads)
+        throws IOException
+    {
+        File inputs[] = findInputs(inputSpec);
+        if (0 == inputs.length) {
+            out.println("No input files found for " + inputSpec);
+            return 53;
+        }
+        File dir = new File(outputDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            out.println("Cannot create the output directory " + outputDir);
+            return 53;
+        }
+        File outputs[] = outputFiles(inputs, dir, outputExtension(ct));
+
+        final PrintStream report = out;
+        final int failures[] = new int[] { 0 };
+        OrderedTaskRunner.Consumer consumer
+            = new OrderedTaskRunner.Consumer() {
+                    public void consume(Object result) {
+                        Result r = (Result)result;
+                        if (0 != r.exitCode)
+                            ++failures[0];
+                        report.println(r.exitCode + "\t" + r.input.getPath()
+                                       + "\t" + r.output.getPath());
+                        report.flush();
+                    }
+                };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        OrderedTaskRunner runner
+            = new OrderedTaskRunner(executor, consumer, 2*threads);
+        try {
+            for (int i = 0; i < inputs.length; i++) {
+                final File input = inputs[i];
+                final File output = outputs[i];
+                runner.submit(new Callable() {
+                        public Object call() {
+                            return new Result(input, output,
+                                              convertOne(input, output, ct,
+                                                         warningLevel,
+                                                         shortMessages,
+                                                         colors));
+                        }
+                    });
+            }
+            runner.finish();
+        } finally {
+            runner.cancel();
+            executor.shutdownNow();
+        }
+        out.println(inputs.length + " files converted, "
+                    + failures[0] + " with a nonzero exit code");
+        return (0 == failures[0]) ? 0 : 52;
+    }
+
+    /** Converts input to output, returning TibetanConverter's exit code
+     *  for it.  Bugs in the converter affect only this file. */
+    private static int convertOne(File input, File output, String ct,
+                                  String warningLevel,
+                                  boolean shortMessages, boolean colors) {
+        InputStream in = null;
+        PrintStream ps = null;
+        try {
+            in = new FileInputStream(input);
+            ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(output)));
+            return TibetanConverter.reallyConvert(in, ps, ct, warningLevel,
+                                                  shortMessages, colors);
+        } catch (IOException e) {
+            System.err.println(input.getPath() + ": " + e.getMessage());
+            return 4;
+        } catch (ThdlLazyException e) {
+            System.err.println("TibetanConverter has a BUG converting "
+                               + input.getPath() + ":");
+            e.getRealException().printStackTrace(System.err);
+            return 7;
+        } catch (RuntimeException e) {
+            System.err.println("TibetanConverter has a BUG converting "
+                               + input.getPath() + ":");
+            e.printStackTrace(System.err);
+            return 7;
+        } catch (Error e) {
+            // The converter's assertions throw Errors, and some
+            // TMW->ACIP conversions overflow the stack.  Only running
+            // out of memory dooms the other files.
+            if (e instanceof OutOfMemoryError)
+                throw e;
+            System.err.println("TibetanConverter has a BUG converting "
+                               + input.getPath() + ":");
+            e.printStackTrace(System.err);
+            return 7;
+        } finally {
+            if (null != ps)
+                ps.close();
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // we have what we read
+                }
+            }
+        }
+    }
+
+    /** Returns the files named by inputSpec, which is described in the
+     *  class comment. */
+    static File[] findInputs(String inputSpec) throws IOException {
+        if (inputSpec.startsWith("@")) {
+            ArrayList files = new ArrayList();
+            BufferedReader r
+                = new BufferedReader(new FileReader(inputSpec.substring(1)));
+            try {
+                String line;
+                while (null != (line = r.readLine())) {
+                    line = line.trim();
+                    if (line.length() > 0 && !line.startsWith("#"))
+                        files.add(new File(line));
+                }
+            } finally {
+                r.close();
+            }
+            return (File[])files.toArray(new File[files.size()]);
+        }
+        File f = new File(inputSpec);
+        if (f.isDirectory())
+            return filesIn(f, null);
+        String name = f.getName();
+        if (name.indexOf('*') < 0 && name.indexOf('?') < 0)
+            return new File[] { f };
+        File parent = f.getParentFile();
+        return filesIn((null == parent) ? new File(".") : parent,
+                       globToRegex(name));
+    }
+
+    /** Returns the plain files in dir whose names match pattern (or all
+     *  of them if pattern is null), sorted by name. */
+    private static File[] filesIn(File dir, Pattern pattern) {
+        File all[] = dir.listFiles();
+        if (null == all)
+            return new File[0];
+        Arrays.sort(all);
+        ArrayList files = new ArrayList();
+        for (int i = 0; i < all.length; i++) {
+            if (all[i].isFile()
+                && (null == pattern
+                    || pattern.matcher(all[i].getName()).matches()))
+                files.add(all[i]);
+        }
+        return (File[])files.toArray(new File[files.size()]);
+    }
+
+    /** Returns a regular expression matching what the shell pattern
+     *  glob matches, with * and ? the only special characters. */
+    static Pattern globToRegex(String glob) {
+        StringBuffer sb = new StringBuffer();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char ch = glob.charAt(i);
+            if ('*' == ch || '?' == ch) {
+                if (i > start)
+                    sb.append(Pattern.quote(glob.substring(start, i)));
+                sb.append(('*' == ch) ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (glob.length() > start)
+            sb.append(Pattern.quote(glob.substring(start)));
+        return Pattern.compile(sb.toString());
+    }
+
+    /** Returns the names of the output files in dir, one per input.
+     *  Inputs with the same name (from different directories in a
+     *  manifest) get distinct outputs. */
+    private static File[] outputFiles(File inputs[], File dir,
+                                      String extension) {
+        File outputs[] = new File[inputs.length];
+        HashSet used = new HashSet();
+        for (int i = 0; i < inputs.length; i++) {
+            String name = inputs[i].getName() + extension;
+            for (int n = 2; !used.add(name); n++)
+                name = inputs[i].getName() + "." + n + extension;
+            outputs[i] = new File(dir, name);
+        }
+        return outputs;
+    }
+
+    /** Returns the file extension for the output of conversion ct. */
+    private static String outputExtension(String ct) {
+        if (TMW_TO_WYLIE == ct || TMW_TO_ACIP == ct || TMW_TO_UNI == ct
+            || TMW_TO_SAME_TMW == ct || TM_TO_TMW == ct || TMW_TO_TM == ct
+            || ACIP_TO_TMW == ct || WYLIE_TO_TMW == ct)
+            return ".rtf";
+        return ".txt";
+    }
+}
@@ -0,0 +1,218 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.input;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+import org.thdl.util.ThdlOptions;
+
+/**
+ * Tests {@link org.thdl.tib.input.TibetanBatchConverter} at the unit
+ * level.
+ */
+public class TibetanBatchConverterTest extends TestCase {
+    private File dir;
+
+    /** Plain vanilla constructor for TibetanBatchConverterTest. */
+    public TibetanBatchConverterTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        ThdlOptions.forTestingOnlyInitializeWithoutDefaultOptionsFile();
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.and.error.severities.are.built.in.defaults", "true");
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.severity.507", "Most");
+        org.thdl.tib.text.ttt.ErrorsAndWarnings.setupSeverityMap();
+        ThdlOptions.setUserPreference("thdl.debug", true);
+
+        dir = File.createTempFile("TibetanBatchConverterTest", "");
+        dir.delete();
+        new File(dir, "in").mkdirs();
+    }
+
+    protected void tearDown() {
+        deleteAll(dir);
+    }
+
+    private static void deleteAll(File f) {
+        File kids[] = f.listFiles();
+        if (null != kids)
+            for (int i = 0; i < kids.length; i++)
+                deleteAll(kids[i]);
+        f.delete();
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TibetanBatchConverterTest.class);
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File f = new File(new File(dir, "in"), name);
+        FileOutputStream fos = new FileOutputStream(f);
+        fos.write(contents.getBytes("US-ASCII"));
+        fos.close();
+        return f;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte buf[] = new byte[4096];
+        int n;
+        while (-1 != (n = in.read(buf)))
+            baos.write(buf, 0, n);
+        in.close();
+        return baos.toString("UTF-8");
+    }
+
+    private static String[] args(String mode, String input) {
+        return new String[] {
+            "--colors", "no",
+            "--warning-level", "All",
+            "--acip-to-tibetan-warning-and-error-messages", "short",
+            mode,
+            input
+        };
+    }
+
+    /** Tests that * and ? are the only special characters in
+     *  patterns. */
+    public void testGlobToRegex() {
+        assertTrue(TibetanBatchConverter.globToRegex("*.acip").matcher("a.acip").matches());
+        assertTrue(!TibetanBatchConverter.globToRegex("*.acip").matcher("aXacip").matches());
+        assertTrue(TibetanBatchConverter.globToRegex("t?.txt").matcher("t1.txt").matches());
+        assertTrue(!TibetanBatchConverter.globToRegex("t?.txt").matcher("t12.txt").matches());
+        assertTrue(TibetanBatchConverter.globToRegex("[a]+.txt").matcher("[a]+.txt").matches());
+    }
+
+    /** Tests that converting a directory gives, file for file, what
+     *  converting each file alone gives. */
+    public void testBatchIsLikeOneAtATime() throws IOException {
+        write("a.acip", "KA KHA GA\nNGA CA\n");
+        write("b.acip", "BKRA SHIS BDE LEGS/\n");
+        write("c.acip", "KA {GA\n"); // an error
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        String outDir = new File(dir, "out").getPath();
+        String batchArgs[] = new String[] { "--threads", "2",
+                                            "--batch", outDir };
+        String rest[] = args("--acip-to-unicode",
+                             new File(dir, "in").getPath());
+        String all[] = new String[batchArgs.length + rest.length];
+        System.arraycopy(batchArgs, 0, all, 0, batchArgs.length);
+        System.arraycopy(rest, 0, all, batchArgs.length, rest.length);
+        assertEquals(52, TibetanConverter.realMain(all, new PrintStream(report)));
+
+        String lines[] = report.toString().split("\n");
+        assertEquals(4, lines.length);
+        String names[] = new String[] { "a.acip", "b.acip", "c.acip" };
+        int failures = 0;
+        for (int i = 0; i < names.length; i++) {
+            File in = new File(new File(dir, "in"), names[i]);
+            ByteArrayOutputStream alone = new ByteArrayOutputStream();
+            int rc = TibetanConverter.realMain(args("--acip-to-unicode",
+                                                    in.getPath()),
+                                               new PrintStream(alone));
+            if (0 != rc)
+                ++failures;
+            File out = new File(outDir, names[i] + ".txt");
+            assertEquals(rc + "\t" + in.getPath() + "\t" + out.getPath(),
+                         lines[i]);
+            assertEquals(alone.toString("UTF-8"),
+                         read(new FileInputStream(out)));
+        }
+        assertEquals("3 files converted, " + failures
+                     + " with a nonzero exit code",
+                     lines[3]);
+    }
+
+    /** Tests manifests, including duplicate file names. */
+    public void testManifest() throws IOException {
+        File a = write("a.acip", "KA\n");
+        File manifest = write("list", "# comment\n\n" + a.getPath() + "\n"
+                              + a.getPath() + "\n");
+        File inputs[]
+            = TibetanBatchConverter.findInputs("@" + manifest.getPath());
+        assertEquals(2, inputs.length);
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        String all[] = new String[] {
+            "--batch", new File(dir, "out").getPath(),
+            "--colors", "no",
+            "--warning-level", "All",
+            "--acip-to-tibetan-warning-and-error-messages", "short",
+            "--acip-to-unicode",
+            "@" + manifest.getPath()
+        };
+        assertEquals(0, TibetanConverter.realMain(all, new PrintStream(report)));
+        assertTrue(new File(new File(dir, "out"), "a.acip.txt").exists());
+        assertTrue(new File(new File(dir, "out"), "a.acip.2.txt").exists());
+    }
+
+    /** Returns the number of file descriptors this JVM has open, or -1
+     *  if the platform does not say. */
+    private static long openFileDescriptors() {
+        java.lang.management.OperatingSystemMXBean os
+            = java.lang.management.ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean)
+            return ((com.sun.management.UnixOperatingSystemMXBean)os).getOpenFileDescriptorCount();
+        return -1;
+    }
+
+    /** Converts count copies of contents in batch mode, returning how
+     *  many more file descriptors are open afterwards. */
+    private long leakedConverting(String mode, String contents, int count)
+        throws IOException {
+        deleteAll(new File(dir, "in"));
+        new File(dir, "in").mkdirs();
+        for (int i = 0; i < count; i++)
+            write("f" + i, contents);
+        long before = openFileDescriptors();
+        String all[] = new String[] {
+            "--batch", new File(dir, "out" + mode).getPath(),
+            "--colors", "no",
+            "--warning-level", "All",
+            "--acip-to-tibetan-warning-and-error-messages", "short",
+            mode,
+            new File(dir, "in").getPath()
+        };
+        TibetanConverter.realMain(all, new PrintStream(new ByteArrayOutputStream()));
+        return openFileDescriptors() - before;
+    }
+
+    /** Tests that each input file is closed, whichever way its
+     *  conversion ends, so that a batch of more files than the process
+     *  may have open converts them all. */
+    public void testInputsAreClosed() throws IOException {
+        if (-1 == openFileDescriptors())
+            return;
+        int count = 300;
+        assertTrue(leakedConverting("--acip-to-unicode", "KA KHA\n", count) < count / 10);
+        assertTrue(leakedConverting("--utf8-text-to-ewts-text", "abc\n", count) < count / 10);
+        // not RTF, so reading it fails:
+        assertTrue(leakedConverting("--to-unicode", "{\\rtf1 {\\f", count) < count / 10);
+    }
+}
@@ -28,6 +28,8 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
@@ -82,6 +84,31 @@ public class TibetanConverter implements FontConverterConstants {
      *  @return the exit code. */
     public static int realMain(String[] args, PrintStream out) {
         try {
+            // --threads N and --batch OUTPUT_DIR may precede the usual
+            // arguments:
+            int threads = 1;
+            String batchOutputDir = null;
+            while (args.length > 2
+                   && (args[0].equals("--threads")
+                       || args[0].equals("--batch"))) {
+                if (args[0].equals("--threads")) {
+                    try {
+                        threads = Integer.parseInt(args[1]);
+                    } catch (NumberFormatException e) {
+                        threads = 0;
+                    }
+                    if (threads < 1) {
+                        out.println("--threads needs a positive number, not " + args[1]);
+                        return 77;
+                    }
+                } else {
+                    batchOutputDir = args[1];
+                }
+                String rest[] = new String[args.length - 2];
+                System.arraycopy(args, 2, rest, 0, rest.length);
+                args = rest;
+            }
+
             boolean convertTmwToTmwMode = false;
             boolean convertToUnicodeMode = false;
             boolean convertToTMMode = false;
@@ -164,7 +191,8 @@ public class TibetanConverter implements FontConverterConstants {
                     out.println("");
                 }
                     
-                out.println("TibetanConverter --colors yes|no");
+                out.println("TibetanConverter [--threads N] [--batch OUTPUT_DIR]");
+                out.println("                 --colors yes|no");
                 out.println("                 --warning-level None|Some|Most|All");
                 out.println("                 --acip-to-tibetan-warning-and-error-messages short|long");  // TODO(DLC)[EWTS->Tibetan]: misnomer, ewts and acip both are affected
                 out.println("                 --find-all-non-tmw | --find-some-non-tmw");
@@ -183,6 +211,18 @@ public class TibetanConverter implements FontConverterConstants {
                 out.println("");
                 out.println(" -h | --help for this message");
                 out.println("");
+                out.println(" --threads N to convert on N threads at once in --acip-to-unicode,");
+                out.println("   --wylie-to-unicode, and --utf8-text-to-ewts-text modes.  The output is");
+                out.println("   the same as with one thread.");
+                out.println("");
+                out.println(" --batch OUTPUT_DIR to convert many files at once.  The last argument is");
+                out.println("   then a directory, a pattern like texts/*.acip, or @MANIFEST, where");
+                out.println("   MANIFEST lists one file per line.  The result for foo.acip is written to");
+                out.println("   OUTPUT_DIR/foo.acip.txt (or .rtf), and a line with the exit code, input,");
+                out.println("   and output is printed for each file.  With --threads N, N files are");
+                out.println("   converted at once.  Exit code is zero if every file's was, 52 otherwise,");
+                out.println("   or 53 if there were no input files.");
+                out.println("");
                 out.println(" --wylie-to-unicode to convert an EWTS text file to a Unicode");
                 out.println("");
                 out.println(" --wylie-to-tmw to convert an EWTS text file to TibetanMachineWeb");
@@ -255,12 +295,6 @@ public class TibetanConverter implements FontConverterConstants {
             }
             String inputRtfPath = args[args.length - 1];
 
-            InputStream in;
-            if (inputRtfPath.equals("-"))
-                in = System.in;
-            else
-                in = new FileInputStream(inputRtfPath);
-            
             String conversionTag = null;
             if (findAllNonTMWMode) {
                 conversionTag = FIND_ALL_NON_TMW;
@@ -300,9 +334,23 @@ public class TibetanConverter implements FontConverterConstants {
                     conversionTag = TMW_TO_TM;
                 }
             }
+            if (null != batchOutputDir) {
+                return TibetanBatchConverter.convert(inputRtfPath,
+                                                     batchOutputDir, out,
+                                                     conversionTag,
+                                                     warningLevel.intern(),
+                                                     shortMessages, colors,
+                                                     threads);
+            }
+
+            InputStream in;
+            if (inputRtfPath.equals("-"))
+                in = System.in;
+            else
+                in = new FileInputStream(inputRtfPath);
             return reallyConvert(in, out, conversionTag,
                                  warningLevel.intern(), shortMessages,
-                                 colors);
+                                 colors, threads);
         } catch (ThdlLazyException e) {
             out.println("TibetanConverter has a BUG:");
             e.getRealException().printStackTrace(out);
@@ -331,6 +379,42 @@ public class TibetanConverter implements FontConverterConstants {
     static int reallyConvert(InputStream in, PrintStream out, String ct,
                              String warningLevel, boolean shortMessages,
                              boolean colors) {
+        return reallyConvert(in, out, ct, warningLevel, shortMessages,
+                             colors, 1);
+    }
+
+    /** Like {@link #reallyConvert(InputStream, PrintStream, String,
+        String, boolean, boolean)}, but text-to-text conversions (from
+        ACIP or EWTS to Unicode or from Unicode to EWTS) break the input
+        into pieces and convert them on a pool of the given number of
+        threads.  The output is the same as with one thread. */
+    static int reallyConvert(InputStream in, PrintStream out, String ct,
+                             String warningLevel, boolean shortMessages,
+                             boolean colors, int threads) {
+        ExecutorService executor = null;
+        if (threads > 1
+            && (UNI_TO_WYLIE_TEXT == ct || ACIP_TO_UNI_TEXT == ct
+                || WYLIE_TO_UNI_TEXT == ct))
+            executor = new ForkJoinPool(threads);
+        try {
+            return reallyConvert(in, out, ct, warningLevel, shortMessages,
+                                 colors, executor);
+        } finally {
+            if (null != executor)
+                executor.shutdownNow();
+            // Not every path closes it, e.g. failing to read the RTF:
+            try {
+                in.close();
+            } catch (IOException e) {
+                ThdlDebug.noteIffyCode();
+            }
+        }
+    }
+
+    private static int reallyConvert(InputStream in, PrintStream out,
+                                     String ct, String warningLevel,
+                                     boolean shortMessages, boolean colors,
+                                     ExecutorService executor) {
         if (UNI_TO_WYLIE_TEXT == ct || WYLIE_TO_ACIP_TEXT == ct || ACIP_TO_WYLIE_TEXT == ct) {
             try {
                 /*String uniText;
@@ -361,7 +445,7 @@ public class TibetanConverter implements FontConverterConstants {
             	BasicTibetanTranscriptionConverter bc = null;
             	if (UNI_TO_WYLIE_TEXT == ct) bc = new BasicTibetanTranscriptionConverter(new BufferedReader(new InputStreamReader(in, "UTF16")), new PrintWriter(out));
             	else bc = new BasicTibetanTranscriptionConverter(new BufferedReader(new InputStreamReader(in)), new PrintWriter(out));
-            	bc.run(ct);
+            	bc.run(ct, executor);
             	return 0;
             } catch (IOException e) {
                 // TODO(dchandler): print it?  where to?
@@ -370,35 +454,46 @@ public class TibetanConverter implements FontConverterConstants {
         } else if (ACIP_TO_UNI_TEXT == ct || ACIP_TO_TMW == ct
                    || WYLIE_TO_UNI_TEXT == ct || WYLIE_TO_TMW == ct) {
             try {
-                ArrayList al
+                TTraits ttraits
                     = ((ACIP_TO_UNI_TEXT == ct || ACIP_TO_TMW == ct)
                        ? (TTraits)ACIPTraits.instance()
-                       : (TTraits)EWTSTraits.instance()).scanner().scanStream(in, null,
-                                                                              ThdlOptions.getIntegerOption((ACIP_TO_UNI_TEXT == ct || ACIP_TO_TMW == ct)
-                                                                                                           ? "thdl.most.errors.a.tibetan.acip.document.can.have"
-                                                                                                           : "thdl.most.errors.a.tibetan.ewts.document.can.have",
-                                                                                                           1000 - 1),
-                                                                              shortMessages,
-                                                                              warningLevel);
-                if (null == al)
-                    return 47;
+                       : (TTraits)EWTSTraits.instance());
+                int maxErrors
+                    = ThdlOptions.getIntegerOption((ACIP_TO_UNI_TEXT == ct || ACIP_TO_TMW == ct)
+                                                   ? "thdl.most.errors.a.tibetan.acip.document.can.have"
+                                                   : "thdl.most.errors.a.tibetan.ewts.document.can.have",
+                                                   1000 - 1);
                 boolean embeddedWarnings = (warningLevel != "None");
                 boolean hasWarnings[] = new boolean[] { false };
                 if (ACIP_TO_UNI_TEXT == ct
                     || WYLIE_TO_UNI_TEXT == ct) {
-                    if (!TConverter.convertToUnicodeText((WYLIE_TO_UNI_TEXT == ct)
-                                                         ? (TTraits)EWTSTraits.instance()
-                                                         : (TTraits)ACIPTraits.instance(),
-                                                         al, out, null,
-                                                         null, hasWarnings,
-                                                         embeddedWarnings,
-                                                         warningLevel,
-                                                         shortMessages))
+                    // Stream it; the input may be huge.
+                    boolean tooManyErrors[] = new boolean[] { false };
+                    BufferedReader rin
+                        = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+                    boolean rv
+                        = TConverter.convertToUnicodeText(ttraits, rin, out,
+                                                          null, null,
+                                                          hasWarnings,
+                                                          embeddedWarnings,
+                                                          warningLevel,
+                                                          shortMessages,
+                                                          maxErrors,
+                                                          tooManyErrors,
+                                                          executor);
+                    rin.close();
+                    if (tooManyErrors[0])
+                        return 47;
+                    if (!rv)
                         return 46;
                 } else {
-                    if (!TConverter.convertToTMW((WYLIE_TO_TMW == ct)
-                                                 ? (TTraits)EWTSTraits.instance()
-                                                 : (TTraits)ACIPTraits.instance(),
+                    ArrayList al
+                        = ttraits.scanner().scanStream(in, null, maxErrors,
+                                                       shortMessages,
+                                                       warningLevel);
+                    if (null == al)
+                        return 47;
+                    if (!TConverter.convertToTMW(ttraits,
                                                  al, out, null, null,
                                                  hasWarnings,
                                                  embeddedWarnings,
@@ -414,6 +509,11 @@ public class TibetanConverter implements FontConverterConstants {
                 // TODO(dchandler): print it?  where to?
                 return 48;
             }
+        } else if ((TMW_TO_UNI == ct || TMW_TO_TM == ct || TM_TO_TMW == ct)
+                   && ThdlOptions.getBooleanOption("thdl.stream.rtf.conversions")) {
+            // One pass, in bounded memory, but a bad glyph does not
+            // stop the conversion:
+            return StreamingRTFConverter.convert(in, out, ct);
         } else {
             TibetanDocument tdoc = new TibetanDocument();
             {
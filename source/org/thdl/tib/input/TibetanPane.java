@@ -24,6 +24,7 @@ import javax.swing.JTextPane;
 import javax.swing.text.rtf.RTFEditorKit;
 
 import org.thdl.tib.text.TibetanDocument;
+import org.thdl.tib.text.TibetanMachineWeb;
 import org.thdl.tib.text.TibetanRTFEditorKit;
 
 /**
@@ -72,6 +73,8 @@ public class TibetanPane extends JTextPane {
 * This method sets up the editor.
 */
     private void setupJustTheEditor() {
+        // Rendering needs the TMW and TM fonts:
+        TibetanMachineWeb.loadFontFiles();
         rtfFlavor = new DataFlavor("text/rtf", "Rich Text Format");
         rtfEd = new TibetanRTFEditorKit();
         setEditorKit(rtfEd);
@@ -0,0 +1,278 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+ */
+package org.thdl.tib.scanner;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Appends the lines logged by the {@link ScannerLogger}s to a log file
+	from a background thread, so that the threads serving requests never
+	wait for the file. Lines are queued in a bounded buffer; if it is full
+	the line is dropped rather than making the caller wait, and the number
+	of lines dropped is logged later.
+
+	<p>The file stays open while there is something to write. The thread
+	closes it and ends after a while without lines, and is started again
+	by the next line. When the file grows past a given size, or when the
+	day changes if so configured, it is renamed to <i>name.1</i> (after
+	<i>name.1</i> is renamed to <i>name.2</i>, and so on up to the number
+	of backups kept) and a new file is started.</p>
+
+	<p>There is one instance per log file, shared by all ScannerLoggers
+	writing to it.</p>
+
+    @see ScannerLogger
+ */
+class AsyncLogWriter implements Runnable
+{
+	/** Lines the buffer holds before it starts dropping them. */
+	private static final int capacity = 8192;
+	/** How long the file stays open without lines, in milliseconds. */
+	private static final long defaultIdleMillis = 30000;
+
+	private static final HashMap writers = new HashMap();
+
+	private final String fileName;
+	private final long maxBytes;
+	private final int backups;
+	private final boolean daily;
+	private final long idleMillis;
+	private final ArrayBlockingQueue queue;
+	private final AtomicInteger dropped;
+	private volatile boolean running;
+
+	/* only used by the writing thread */
+	private PrintStream ps;
+	/** Roughly the size of the file: one byte per character written. */
+	private long size;
+	private int day;
+
+	private AsyncLogWriter(String fileName, long maxBytes, int backups, boolean daily)
+	{
+		this(fileName, maxBytes, backups, daily, defaultIdleMillis);
+	}
+
+	/** Creates a writer that is not shared, whose thread ends after
+	    idleMillis without lines. */
+	AsyncLogWriter(String fileName, long maxBytes, int backups, boolean daily, long idleMillis)
+	{
+		this.fileName = fileName;
+		this.maxBytes = maxBytes;
+		this.backups = backups;
+		this.daily = daily;
+		this.idleMillis = idleMillis;
+		queue = new ArrayBlockingQueue(capacity);
+		dropped = new AtomicInteger();
+		running = false;
+		ps = null;
+		day = -1;
+	}
+
+	/** Returns the writer for fileName, creating it if needed. The
+	    rotation settings of the first caller are the ones used.
+	    @param maxBytes size after which the file is rotated; 0 to
+	    never rotate it because of its size
+	    @param backups number of rotated files kept
+	    @param daily if true, the file is also rotated when the day
+	    changes */
+	static AsyncLogWriter get(String fileName, long maxBytes, int backups, boolean daily)
+	{
+		synchronized (writers)
+		{
+			String key = new File(fileName).getAbsolutePath();
+			AsyncLogWriter writer = (AsyncLogWriter) writers.get(key);
+			if (writer==null)
+			{
+				writer = new AsyncLogWriter(fileName, maxBytes, backups, daily);
+				writers.put(key, writer);
+			}
+			return writer;
+		}
+	}
+
+	/** Queues text to be written to the file. Never waits; if the
+	    buffer is full, text is dropped. */
+	void write(String text)
+	{
+		if (!queue.offer(text)) dropped.incrementAndGet();
+		else if (!running) start();
+	}
+
+	/** Waits until everything queued so far has been written to the file,
+	    or until timeoutMillis have passed.
+	    @return true if everything was written */
+	boolean flush(long timeoutMillis)
+	{
+		CountDownLatch done = new CountDownLatch(1);
+		try
+		{
+			if (!queue.offer(done, timeoutMillis, TimeUnit.MILLISECONDS)) return false;
+			if (!running) start();
+			return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private synchronized void start()
+	{
+		if (running) return;
+		running = true;
+		Thread t = new Thread(this, "ScannerLogger " + fileName);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public void run()
+	{
+		Object o;
+		long idleSince = System.currentTimeMillis();
+
+		try
+		{
+			while (true)
+			{
+				o = queue.poll(Math.min(1000, idleMillis), TimeUnit.MILLISECONDS);
+				if (o==null)
+				{
+					if (System.currentTimeMillis()-idleSince<idleMillis) continue;
+					closeFile();
+					stopped();
+					return;
+				}
+				// write everything that is queued, then flush once
+				do
+				{
+					if (o instanceof CountDownLatch)
+					{
+						if (ps!=null) ps.flush();
+						((CountDownLatch) o).countDown();
+					}
+					else writeLine((String) o);
+				} while ((o = queue.poll())!=null);
+				if (ps!=null) ps.flush();
+				idleSince = System.currentTimeMillis();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// the container is shutting down; let another thread take over
+			closeFile();
+			stopped();
+		}
+	}
+
+	/** Lets the next line start a new thread. A line queued while this
+	    one was ending may have found it still running, and nothing else
+	    would start a thread for it, so one is started here if so. */
+	private void stopped()
+	{
+		synchronized (this)
+		{
+			running = false;
+		}
+		if (!queue.isEmpty()) start();
+	}
+
+	private void writeLine(String text)
+	{
+		int n;
+
+		try
+		{
+			rotateIfNeeded();
+			if (ps==null) openFile();
+			n = dropped.getAndSet(0);
+			if (n>0) ps.println("-\t" + n + " log lines dropped because the buffer was full");
+			ps.print(text);
+			size += text.length();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private void openFile() throws IOException
+	{
+		ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(fileName, true)));
+		size = new File(fileName).length();
+		if (day<0) day = today();
+	}
+
+	private void closeFile()
+	{
+		if (ps!=null)
+		{
+			ps.close();
+			ps = null;
+		}
+	}
+
+	private void rotateIfNeeded()
+	{
+		int today;
+
+		if (daily)
+		{
+			today = today();
+			if (day>=0 && today!=day)
+			{
+				day = today;
+				rotate();
+				return;
+			}
+			day = today;
+		}
+		if (maxBytes>0 && ps!=null && size>=maxBytes) rotate();
+	}
+
+	private void rotate()
+	{
+		int i;
+
+		closeFile();
+		if (backups<1)
+		{
+			new File(fileName).delete();
+			return;
+		}
+		new File(fileName + "." + backups).delete();
+		for (i=backups-1; i>=1; i--)
+			new File(fileName + "." + i).renameTo(new File(fileName + "." + (i+1)));
+		new File(fileName).renameTo(new File(fileName + ".1"));
+	}
+
+	private static int today()
+	{
+		Calendar rightNow = Calendar.getInstance();
+		return rightNow.get(Calendar.YEAR)*1000 + rightNow.get(Calendar.DAY_OF_YEAR);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+ */
+package org.thdl.tib.scanner;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link org.thdl.tib.scanner.AsyncLogWriter} at the unit level.
+ */
+public class AsyncLogWriterTest extends TestCase {
+    private File log;
+
+    /** Plain vanilla constructor for AsyncLogWriterTest. */
+    public AsyncLogWriterTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws IOException {
+        log = File.createTempFile("AsyncLogWriterTest", ".log");
+    }
+
+    protected void tearDown() {
+        log.delete();
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AsyncLogWriterTest.class);
+    }
+
+    /** Tests that a line written just as the thread ends for want of
+     *  lines is still written, without another line coming after it. The
+     *  thread of a writer that is never idle for long ends after every
+     *  line, so each line races with the end of the thread before it. */
+    public void testWriteAsThreadEnds() throws InterruptedException {
+        AsyncLogWriter writer = new AsyncLogWriter(log.getPath(), 0, 0, false, 0);
+        String line = "a line\n";
+        int i;
+
+        for (i = 1; i <= 2000; i++) {
+            writer.write(line);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (log.length() < i * line.length()) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("line " + i + " was not written");
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -27,6 +27,9 @@ import org.thdl.tib.input.*;
 import org.thdl.util.*;
 import java.net.*;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Wrap-up class for the various converters that the Translation Tool needs.
@@ -38,15 +41,14 @@ import java.io.*;
  */
 public class BasicTibetanTranscriptionConverter implements FontConverterConstants
 {
-	private static BufferedReader in;
-	private static PrintWriter out;
+	private BufferedReader in;
+	private PrintWriter out;
 
 	//private static int conversionType=0;
 	private static final int ACIP_TO_WYLIE=1;
 	private static final int WYLIE_TO_ACIP=2;
 	private static final int UNICODE_TO_WYLIE=3;
 	private static final int WYLIE_TO_UNICODE=4;
-	private static final int TIBETAN_UNICODE_RANGE[] = {3840, 4095};
 	
 	/** Converts from the Acip transliteration scheme to EWTS.*/
 	public static String acipToWylie(String acip)
@@ -254,47 +256,16 @@ public class BasicTibetanTranscriptionConverter implements FontConverterConstant
 		return nuevaPalabra;*/
 	}
 	
-	private static int getTibetanUnicodeStart(String unicode, int pos)
-	{
-		for(; pos < unicode.length(); pos++ ) if(unicode.codePointAt(pos)>=TIBETAN_UNICODE_RANGE[0] && unicode.codePointAt(pos)<=TIBETAN_UNICODE_RANGE[1]) return pos;
-		return -1;
-	}
-	
-	private static int getTibetanUnicodeEnd(String unicode, int pos)
-	{
-		for(; pos < unicode.length(); pos++ ) if(unicode.codePointAt(pos)<TIBETAN_UNICODE_RANGE[0] || unicode.codePointAt(pos)>TIBETAN_UNICODE_RANGE[1]) return pos;
-		return pos;
-	}
-    
 	/** Converts Tibetan Unicode to EWTS. */
     public static String unicodeToWylie(String unicode)
     {
-    	
-    	String machineWylie, startString, tibetanString, endString;
-    	TibetanDocument tibDoc;
-    	StringBuffer errors;
-    	int posStart=0, posEnd;
-    	while((posStart = getTibetanUnicodeStart(unicode, posStart))>=0)
-    	{
-    		posEnd = getTibetanUnicodeEnd(unicode, posStart+1);
-    		startString = unicode.substring(0, posStart);
-    		tibetanString = unicode.substring(posStart, posEnd);
-    		endString = unicode.substring(posEnd);
-    		
-        	tibDoc = new TibetanDocument();
-        	errors = new StringBuffer();
-        	machineWylie = Converter.convertToEwtsForComputers(tibetanString, errors);
-        	try
-        	{
-        		TibTextUtils.insertTibetanMachineWebForTranslit(true, machineWylie, tibDoc, 0, false);
-        	}
-        	catch (InvalidTransliterationException e)
-        	{
-        		return null;
-        	}
-        	unicode = startString + tibDoc.getWylie(new boolean[] { false }) + endString;   	
-    	}
-    	return unicode;
+    	return Converter.convertToEwts(unicode, null);
+    }
+    
+    /** Converts Tibetan Unicode to EWTS, appending it to out. */
+    public static void unicodeToWylie(CharSequence unicode, Appendable out) throws IOException
+    {
+    	Converter.convertToEwts(unicode, out, null);
     }
     
     /** Converts EWTS to Tibetan Unicode. */
@@ -322,8 +293,8 @@ public class BasicTibetanTranscriptionConverter implements FontConverterConstant
 	
 	public BasicTibetanTranscriptionConverter(BufferedReader in, PrintWriter out)
 	{
-		BasicTibetanTranscriptionConverter.in = in;
-		BasicTibetanTranscriptionConverter.out = out;
+		this.in = in;
+		this.out = out;
 	}
 	
 	
@@ -442,7 +413,9 @@ public class BasicTibetanTranscriptionConverter implements FontConverterConstant
 				result = wylieToAcip(linea);
 			break;			
 			case UNICODE_TO_WYLIE: 
-				result = unicodeToWylie(linea);
+				// straight into the output, no need for the intermediate string
+				unicodeToWylie(linea, out);
+				result = "";
 			break;
 			case WYLIE_TO_UNICODE: 
 				result = wylieToUnicode(linea);
@@ -457,6 +430,88 @@ public class BasicTibetanTranscriptionConverter implements FontConverterConstant
 		}
 	}
 	
+	/** Like {@link #run(int)}, but if executor is non-null and the
+	    conversion needs no TibetanDocument (Unicode to EWTS and EWTS to
+	    Unicode), batches of lines are converted on executor's threads.
+	    The output is the same. */
+	public void run(String conversionType, ExecutorService executor) throws IOException
+	{
+		if (executor==null || (conversionType!=UNI_TO_WYLIE_TEXT && conversionType!=WYLIE_TO_UNI_TEXT))
+		{
+			run(conversionType);
+			return;
+		}
+		final int tipo = (conversionType==UNI_TO_WYLIE_TEXT) ? UNICODE_TO_WYLIE : WYLIE_TO_UNICODE;
+		OrderedTaskRunner runner = new OrderedTaskRunner(executor, new OrderedTaskRunner.Consumer()
+		{
+			public void consume(Object result)
+			{
+				out.print((String) result);
+				out.flush();
+			}
+		});
+		String linea;
+		ArrayList lineas = new ArrayList();
+		try
+		{
+			while ((linea=in.readLine())!=null)
+			{
+				lineas.add(linea);
+				if (lineas.size()>=linesPerBatch)
+				{
+					runner.submit(new LineBatch(lineas, tipo));
+					lineas = new ArrayList();
+				}
+			}
+			if (!lineas.isEmpty()) runner.submit(new LineBatch(lineas, tipo));
+			runner.finish();
+		}
+		catch (IOException e)
+		{
+			runner.cancel();
+			throw e;
+		}
+	}
+	
+	/** Number of lines converted by each task of {@link #run(String, ExecutorService)}. */
+	private static final int linesPerBatch = 500;
+	
+	/** Converts some lines the same way {@link #run(int)} does, returning
+	    what it would print. */
+	private static class LineBatch implements Callable
+	{
+		private ArrayList lineas;
+		private int tipo;
+		
+		public LineBatch(ArrayList lineas, int tipo)
+		{
+			this.lineas = lineas;
+			this.tipo = tipo;
+		}
+		
+		public Object call() throws IOException
+		{
+			String lineSeparator = System.getProperty("line.separator"), result;
+			StringBuilder sb = new StringBuilder();
+			int i, n = lineas.size();
+			
+			for (i=0; i<n; i++)
+			{
+				if (tipo==UNICODE_TO_WYLIE)
+				{
+					unicodeToWylie((String) lineas.get(i), sb);
+					sb.append(lineSeparator);
+				}
+				else
+				{
+					result = wylieToUnicode((String) lineas.get(i));
+					if (result!=null) sb.append(result).append(lineSeparator);
+				}
+			}
+			return sb.toString();
+		}
+	}
+	
 	public static BufferedReader getBufferedReader(String s, String format) throws Exception
 	{
 	    InputStream is;
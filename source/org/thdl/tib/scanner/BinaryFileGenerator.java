@@ -18,10 +18,14 @@ Contributor(s): ______________________________________.
 package org.thdl.tib.scanner;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.util.Vector;
 
 import org.thdl.util.Link;
 import org.thdl.util.SimplifiedLinkedList;
@@ -146,7 +150,35 @@ command:
 as dash-separated, <i>myglossary_rdzogs-chen.txt</i> as tab-separated and <i>
 myglossary_uma.txt</i> in the transliteration format explained above.<br>
 &nbsp;</li>
+  <li>
+<p>The files are written in version 4 of the format, which older versions of the
+translation tool cannot read. To write them in version 3, start the command with
+<b>-v3</b>, as in:
+<pre>java -cp DictionarySearchStandalone.jar org.thdl.tib.scanner.BinaryFileGenerator -v3 alldicts ry-dic99 -acip myglossary_uma</pre>
+</li>
+  <li>
+<p>To add dictionaries to an existing database without processing all of
+its sources again, start the command with <b>-merge</b> followed by the
+name of the existing database. The new dictionaries are numbered after the
+existing ones, and a new database containing both is written, as in:
+<pre>java -cp DictionarySearchStandalone.jar org.thdl.tib.scanner.BinaryFileGenerator -merge alldicts alldicts2 -tab myglossary_tantra</pre>
+<p>The result is the same as processing all the sources together. The
+existing database is read from its files as it is copied, so only the new
+dictionaries are loaded into memory. If there is an <i>alldicts.dic</i>
+file, <i>alldicts2.dic</i> is written with a line added for each new
+dictionary.</p>
+</li>
+  <li>
+<p>Dictionaries too big to be loaded into memory can be processed with the
+<b>-external</b> option (after <b>-v3</b>, if used), as in:
+<pre>java -cp DictionarySearchStandalone.jar org.thdl.tib.scanner.BinaryFileGenerator -external alldicts ry-dic99 -acip myglossary_uma</pre>
+<p>The sources are then read in parallel and sorted using temporary files,
+so memory use does not grow with their size. It cannot be combined with
+<b>-merge</b>.</p>
+</li>
 </ul>
+<p>Dictionaries sorted alphabetically are processed in linear time; other
+orders take longer.</p>
 
     @author Andr&eacute;s Montano Pellegrini
     @see SyllableListTree
@@ -155,10 +187,22 @@ myglossary_uma.txt</i> in the transliteration format explained above.<br>
 */
 public class BinaryFileGenerator extends SimplifiedLinkedList
 {
-    private static final int versionNumber = 3;
+    /** Version 4 starts each list of siblings with their count and
+        a table with the position of each of them, so they can be
+        searched with a binary search. Version 3 is still written
+        when requested, for older readers. Only used by the root. */
+    private int versionNumber;
     
 	private long posHijos;
 	private String sil, def[];
+	/** The child a word was last added to. Words usually come in
+	    alphabetical order, so the next one is searched from there. */
+	private Link finger;
+	/** When merging, the node of the old database this node stands
+	    for; null if there is none. */
+	private FileSyllableListTree old;
+	/** True once the definitions of old were copied into this node. */
+	private boolean oldDefsCopied;
     public final static int delimiterGeneric=0;
     public final static int delimiterAcip=1;
     public final static int delimiterDash=2;
@@ -182,9 +226,34 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 		def = null;
 		posHijos=-1;
 		sourceDef = null;
+		versionNumber = 4;
+	}
+
+	/** Creates the root of the tree of words to be merged into the
+	    database opened by old. */
+	public BinaryFileGenerator(DictionaryHandle old) throws IOException
+	{
+		this();
+		if (old.getVersionNumber()<3)
+			throw new IOException(old.getFileName() + " must be converted to a newer version of the format before merging");
+		this.old = new FileSyllableListTree(old);
+		oldDefsCopied = true;
+	}
+
+	/** Stands for a node of the old database to which no words were added. */
+	private BinaryFileGenerator(FileSyllableListTree old)
+	{
+		super();
+		sil = old.toString();
+		def = null;
+		posHijos=-1;
+		sourceDef = new ByteDictionarySource();
+		this.old = old;
 	}
 
-	private BinaryFileGenerator(String sil, String def, int numDef)
+	/** @param oldParent the node of the old database standing for the
+	    parent of this node, or null */
+	private BinaryFileGenerator(String sil, String def, int numDef, FileSyllableListTree oldParent)
 	{
 		super();
 		int marker;
@@ -198,21 +267,41 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 		
 		// fix for updates
 		this.sourceDef = new ByteDictionarySource();
+		this.def = null;
+		this.sil = (marker<0) ? sil : sil.substring(0, marker);
+		if (oldParent!=null) old = (FileSyllableListTree) oldParent.lookUp(this.sil);
 
-		if (marker<0)
-		{
-			this.sil = sil;
-			this.def = new String[1];
-			this.def[0] = def;
-			this.sourceDef.addNewDef(numDef);
-		}
-		else
-		{
-			this.sil = sil.substring(0, marker);
-			this.def = null;
-			addLast(new BinaryFileGenerator(sil.substring(marker+1).trim(), def, numDef));
-		}
+		if (marker<0) addMoreDef(def, numDef);
+		else addLast(new BinaryFileGenerator(sil.substring(marker+1).trim(), def, numDef, old));
+		posHijos=-1;
+	}
+
+	/** Creates a node on its own, for {@link DictionaryCompiler} to group
+	    the definitions of one word with addDefinition. */
+	BinaryFileGenerator(String sil)
+	{
+		super();
+		this.sil = sil;
+		def = null;
 		posHijos=-1;
+		sourceDef = new ByteDictionarySource();
+	}
+
+	/** Adds a definition to this node, grouping it with the ones
+	    it already has. */
+	void addDefinition(String def, int numDef)
+	{
+		addMoreDef(def, numDef);
+	}
+
+	String[] getDefinitions()
+	{
+		return def;
+	}
+
+	ByteDictionarySource getDictionarySource()
+	{
+		return sourceDef;
 	}
 
 	public String toString()
@@ -544,7 +633,8 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 	}
 
 
-	private void add(String word, String def, int defNum)
+	/** Adds an entry read by addFile. */
+	void add(String word, String def, int defNum)
 	{
 		Link link, newLink;
 		BinaryFileGenerator ultimo;
@@ -566,7 +656,7 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 		/* usa orden alfabetico */
 		if (isEmpty() || ((comp = firstSillable.compareTo((ultimo = (BinaryFileGenerator) getLast()).toString()))<0))
 		{
-			super.addLast(new BinaryFileGenerator(word, def, defNum));
+			super.addLast(new BinaryFileGenerator(word, def, defNum, old));
 		}
 		else
 		{
@@ -576,31 +666,60 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 			else
 			{
 				link = cabeza;
-				while(link.siguiente!=null)
+				// no need to look before the child the last word went to
+				if (finger!=null)
+				{
+					comp = firstSillable.compareTo(finger.toString());
+					if (comp==0) link = null;
+					else if (comp>0) link = finger;
+				}
+				while(link!=null && link.siguiente!=null)
 				{
 					comp = firstSillable.compareTo(link.siguiente.toString());
 					if (comp<0)
 					{
-						newLink = new Link(new BinaryFileGenerator(word, def, defNum));
+						newLink = new Link(new BinaryFileGenerator(word, def, defNum, old));
 						newLink.siguiente = link.siguiente;
 						link.siguiente = newLink;
+						finger = newLink;
 						return;
 					}
 					else
 						if (comp==0)
 						{
-							ultimo = (BinaryFileGenerator) link.siguiente.get();
-							if (marker<0) ultimo.addMoreDef(def, defNum);
-							else ultimo.add(word.substring(marker+1).trim(), def, defNum);
-							return;
+							finger = link.siguiente;
+							link = null;
+							break;
 						}
 					link = link.siguiente;
 				}
-				newLink = new Link(new BinaryFileGenerator(word, def, defNum));
+				if (link==null)
+				{
+					ultimo = (BinaryFileGenerator) finger.get();
+					if (marker<0) ultimo.addMoreDef(def, defNum);
+					else ultimo.add(word.substring(marker+1).trim(), def, defNum);
+					return;
+				}
+				newLink = new Link(new BinaryFileGenerator(word, def, defNum, old));
 				link.siguiente = newLink;
+				finger = newLink;
 			}
 		}
 	}
+
+	/** When merging, copies the definitions of the node of the old
+	    database into this one before any are added or it is written. */
+	private void copyOldDefs()
+	{
+		Definitions defs;
+
+		if (old==null || oldDefsCopied) return;
+		oldDefsCopied = true;
+		defs = old.getDefs(BitDictionarySource.getAllDictionaries(), false);
+		if (defs==null) return;
+		def = defs.def;
+		sourceDef = (ByteDictionarySource) old.getDictionarySource();
+	}
 	
 	private void reGroup (int n)
 	{
@@ -732,6 +851,7 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 	    boolean notAlreadyThere, changed;
 	    int i, pos, posEnd;
 	    
+		copyOldDefs();
 		if (this.def==null)
 		{
 		    // add a new definition for this dictionary
@@ -847,6 +967,7 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 	{
 		int i;
 
+		copyOldDefs();
 		wordRaf.writeInt((int) posHijos);
 		wordRaf.writeUTF(sil);
 		sourceDef.print(hasNext, wordRaf);
@@ -861,35 +982,150 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 				}
 				catch (Exception e)
 				{
-				    System.out.println(def[i]);
+				    System.err.println(def[i]);
 				}
 			}
 	}
 
-	private void print() throws Exception
+	/** Returns true if this node has children, either added or in the
+	    old database. */
+	private boolean hasChildren()
+	{
+		return !isEmpty() || (old!=null && old.posLista!=-1);
+	}
+
+	/** Returns the children of this node in alphabetical order. When
+	    merging, those added are merged with those of the node of the old
+	    database, which are read from its file. */
+	private BinaryFileGenerator[] getChildren() throws IOException
 	{
-		long pos;
 		SimplifiedListIterator i = listIterator();
-		
-		BinaryFileGenerator silHijos;
-		boolean hasNext;
+		Vector hijos = new Vector();
+		FileSyllableListTree oldHijos[];
+		BinaryFileGenerator silHijo = null;
+		int n=0, comp;
+
+		if (old==null) oldHijos = new FileSyllableListTree[0];
+		else oldHijos = readChildren(old);
+		while (true)
+		{
+			if (silHijo==null && i.hasNext()) silHijo = (BinaryFileGenerator) i.next();
+			if (silHijo==null)
+			{
+				if (n>=oldHijos.length) break;
+				comp = 1;
+			}
+			else if (n>=oldHijos.length) comp = -1;
+			else comp = silHijo.sil.compareTo(oldHijos[n].sil);
+
+			if (comp>0) hijos.addElement(new BinaryFileGenerator(oldHijos[n++]));
+			else
+			{
+				// if comp==0, silHijo already stands for oldHijos[n]
+				if (comp==0) n++;
+				hijos.addElement(silHijo);
+				silHijo = null;
+			}
+		}
+		BinaryFileGenerator array[] = new BinaryFileGenerator[hijos.size()];
+		hijos.copyInto(array);
+		return array;
+	}
+
+	/** Reads the children of a node of the old database. */
+	private static FileSyllableListTree[] readChildren(FileSyllableListTree node) throws IOException
+	{
+		DictionaryHandle handle = node.getDictionaryHandle();
+		DataInputStream raf;
+		FileSyllableListTree hijo, hijos[];
+		Vector v;
+		int n;
+
+		if (node.posLista==-1) return new FileSyllableListTree[0];
+		raf = handle.openWordStream(node.posLista);
+		if (handle.isIndexed())
+		{
+			hijos = new FileSyllableListTree[raf.readInt()];
+			raf.skipBytes(4*hijos.length);
+			for (n=0; n<hijos.length; n++)
+				hijos[n] = FileSyllableListTree.readNode(handle, raf);
+			return hijos;
+		}
+		v = new Vector();
+		do
+		{
+			hijo = FileSyllableListTree.readNode(handle, raf);
+			v.addElement(hijo);
+		} while (hijo.defSource.hasBrothers());
+		hijos = new FileSyllableListTree[v.size()];
+		v.copyInto(hijos);
+		return hijos;
+	}
+
+	/** Returns the number of dictionaries in the old database: the lines
+	    of its <i>.dic</i> file or, if there is none, one more than the
+	    highest dictionary used by a definition. */
+	private static int countDictionaries(DictionaryHandle handle) throws IOException
+	{
+		String descriptions[] = handle.getDictionaryDescriptions();
+		int dicts, n=0;
 
-		while (i.hasNext())
+		if (descriptions!=null) return descriptions.length;
+		dicts = countDictionaries(new FileSyllableListTree(handle));
+		while (dicts!=0)
 		{
-			silHijos = (BinaryFileGenerator) i.next();
-			if (!silHijos.isEmpty()) silHijos.print();
+			n++;
+			dicts>>>=1;
 		}
+		return n;
+	}
+
+	/** Returns the dictionaries used by the descendants of node. */
+	private static int countDictionaries(FileSyllableListTree node) throws IOException
+	{
+		FileSyllableListTree hijos[] = readChildren(node);
+		int n, dicts=0;
+
+		for (n=0; n<hijos.length; n++)
+			dicts |= hijos[n].defSource.getDicts() | countDictionaries(hijos[n]);
+		return dicts;
+	}
+
+	private void print(int versionNumber) throws Exception
+	{
+		long pos, tablePos=0;
+		int n, posSilHijos[]=null;
+		BinaryFileGenerator silHijos[] = getChildren();
+
+		for (n=0; n<silHijos.length; n++)
+			if (silHijos[n].hasChildren()) silHijos[n].print(versionNumber);
 		pos = wordRaf.getFilePointer();
-		if (!isEmpty())
+		if (silHijos.length>0)
 		{
 			posHijos=pos;
-			i = listIterator();
-			hasNext = true;
-			while (hasNext)
+			
+			// reserve the table with the position of each child
+			if (versionNumber>=4)
+			{
+				posSilHijos = new int[silHijos.length];
+				wordRaf.writeInt(posSilHijos.length);
+				tablePos = wordRaf.getFilePointer();
+				wordRaf.write(new byte[4*posSilHijos.length]);
+			}
+			
+			for (n=0; n<silHijos.length; n++)
 			{
-				silHijos = (BinaryFileGenerator) i.next();
-				hasNext=i.hasNext();
-				silHijos.printMe(hasNext);
+				if (posSilHijos!=null) posSilHijos[n] = (int) wordRaf.getFilePointer();
+				silHijos[n].printMe(n+1<silHijos.length);
+			}
+			
+			if (posSilHijos!=null)
+			{
+				pos = wordRaf.getFilePointer();
+				wordRaf.seek(tablePos);
+				for (n=0; n<posSilHijos.length; n++)
+					wordRaf.writeInt(posSilHijos[n]);
+				wordRaf.seek(pos);
 			}
 		}
 	}
@@ -904,6 +1140,11 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 		System.out.println("-For one dictionary");
 		System.out.println("  java BinaryFileGenerator [-delimiter] arch-dict");
 		System.out.println("Dictionary files are assumed to be .txt. Don't include extensions!");
+		System.out.println("  -v3: write the files in the format read by older versions of the tool.");
+		System.out.println("  -external: for dictionaries too big to fit in memory. Uses temporary");
+		System.out.println("             files and all processors. Goes after -v3.");
+		System.out.println("-To add dictionaries to an existing database:");
+		System.out.println("  java BinaryFileGenerator -merge old-arch arch-dest [-delimiter1] arch-dict1 ...");
 		System.out.println("  -delimiter: default value is \'-\'. -tab takes \'\\t\' as delimiter.");
 		System.out.println("  -acip: use this to process dictionaries entered using the ACIP standard");
 		System.out.println("         to mark page numbers, comments, etc. Make sure to convert it to");
@@ -917,7 +1158,7 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
 		defF.delete();
 		wordRaf = new RandomAccessFile(wordF,"rw");
 		defRaf = new RandomAccessFile(defF,"rw");
-		print();
+		print(versionNumber);
 		wordRaf.writeInt((int)posHijos);
         
         // write version marker
@@ -928,22 +1169,61 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
         wordRaf.writeByte(versionNumber);
     }
 
+    /** Selects the version of the format written by generateDatabase;
+        either 3 or 4 (the default). */
+    public void setVersionNumber(int version)
+    {
+        versionNumber = version;
+    }
+
 	public static void main(String args[]) throws Exception
 	{
 	    int delimiterType;
 	    String delimiter;
 	    
-	    int i, n=0, a;
+	    int i, n=0, a, versionNumber=4;
+	    DictionaryHandle old = null;
+	    boolean external = false;
+	    Vector files = new Vector(), delimiterTypes = new Vector(), delimiters = new Vector();
 	    
         delimiter = "-";
         delimiterType=delimiterDash;
 
+		if (args.length>0 && args[0].equals("-v3"))
+		{
+		    versionNumber = 3;
+		    String newArgs[] = new String[args.length-1];
+		    System.arraycopy(args, 1, newArgs, 0, newArgs.length);
+		    args = newArgs;
+		}
+
+		if (args.length>0 && args[0].equals("-external"))
+		{
+		    external = true;
+		    String newArgs[] = new String[args.length-1];
+		    System.arraycopy(args, 1, newArgs, 0, newArgs.length);
+		    args = newArgs;
+		}
+
+		if (args.length>0 && args[0].equals("-merge"))
+		{
+		    if (args.length<4 || external)
+		    {
+		        printSintax();
+		        return;
+		    }
+		    old = new DictionaryHandle(args[1], false);
+		    n = countDictionaries(old);
+		    String newArgs[] = new String[args.length-2];
+		    System.arraycopy(args, 2, newArgs, 0, newArgs.length);
+		    args = newArgs;
+		}
+
 		if (args.length==0)
 		{
 		    printSintax();
 		    return;
 		}
-		BinaryFileGenerator sl = new BinaryFileGenerator();
         if (args[0].charAt(0)=='-')
         {
             if (args[0].equals("-tab"))
@@ -963,7 +1243,9 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
                 printSintax();
                 return;
             }
-            sl.addFile(args[1] + ".txt",delimiterType, delimiter, 0);
+            files.addElement(args[1]);
+            delimiterTypes.addElement(Integer.valueOf(delimiterType));
+            delimiters.addElement(delimiter);
             a=1;
         }
         else
@@ -971,7 +1253,9 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
             a=0;
 		    if (args.length==1)
 		    {
-                sl.addFile(args[0] + ".txt", delimiterType, delimiter, 0);
+                files.addElement(args[0]);
+                delimiterTypes.addElement(Integer.valueOf(delimiterType));
+                delimiters.addElement(delimiter);
 		    }
 		    else
             {
@@ -999,14 +1283,66 @@ public class BinaryFileGenerator extends SimplifiedLinkedList
                     {
                         delimiterType=delimiterDash;
                     }
-                    System.out.println("\nProcessing " + args[i] + "...");
-                    sl.addFile(args[i] + ".txt", delimiterType, delimiter, n);
-                    n++; i++;
+                    files.addElement(args[i]);
+                    delimiterTypes.addElement(Integer.valueOf(delimiterType));
+                    delimiters.addElement(delimiter);
+                    i++;
                 }
             }
 		}
+
+		if (external)
+		{
+		    String fileNames[] = new String[files.size()], delims[] = new String[files.size()];
+		    int types[] = new int[files.size()], dicts[] = new int[files.size()];
+		    for (i=0; i<fileNames.length; i++)
+		    {
+		        fileNames[i] = files.elementAt(i) + ".txt";
+		        types[i] = ((Integer) delimiterTypes.elementAt(i)).intValue();
+		        delims[i] = (String) delimiters.elementAt(i);
+		        dicts[i] = i;
+		    }
+		    new DictionaryCompiler(versionNumber).compile(fileNames, types, delims, dicts, args[a]);
+		    return;
+		}
+
+		BinaryFileGenerator sl = (old==null) ? new BinaryFileGenerator() : new BinaryFileGenerator(old);
+		sl.setVersionNumber(versionNumber);
+		for (i=0; i<files.size(); i++)
+		{
+		    if (files.size()>1) System.out.println("\nProcessing " + files.elementAt(i) + "...");
+		    sl.addFile(files.elementAt(i) + ".txt", ((Integer) delimiterTypes.elementAt(i)).intValue(), (String) delimiters.elementAt(i), n);
+		    n++;
+		}
 		System.out.println("Writing to file " + args[a] + "...");
 		System.out.flush();
 		sl.generateDatabase(args[a]);
+		if (old!=null)
+		{
+		    writeDictionaryDescriptions(old.getFileName(), args);
+		    old.close();
+		}
+	}
+
+	/** Writes the <i>.dic</i> file of a merged database: the one of the old
+	    database followed by the name of each new dictionary. args are
+	    the arguments after the name of the old database. */
+	private static void writeDictionaryDescriptions(String oldName, String args[]) throws IOException
+	{
+		File oldDic = new File(oldName + ".dic");
+		BufferedReader br;
+		PrintWriter pw;
+		String line;
+		int i;
+
+		if (!oldDic.exists()) return;
+		br = new BufferedReader(new InputStreamReader(new FileInputStream(oldDic)));
+		pw = new PrintWriter(new File(args[0] + ".dic"));
+		while ((line = br.readLine())!=null)
+		    pw.println(line);
+		br.close();
+		for (i=1; i<args.length; i++)
+		    if (args[i].charAt(0)!='-') pw.println(args[i]);
+		pw.close();
 	}
 }
@@ -0,0 +1,140 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+ */
+package org.thdl.tib.scanner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests merging dictionaries into a database with {@link
+ * org.thdl.tib.scanner.BinaryFileGenerator} at the unit level.
+ */
+public class BinaryFileGeneratorTest extends TestCase {
+    /** Words looked up, including ones in both the old database and the
+     *  merged dictionary, words one of them extends, and words in
+     *  neither. */
+    private static final String WORDS[] = {
+        "bkra", "bkra shis", "bkra shis bde legs", "bde", "bde legs",
+        "bde ba", "bde ba can", "ka", "kha", "ga", "sangs rgyas",
+        "sangs", "rgyas", "nga", "bkra shis ka"
+    };
+
+    private File dir;
+
+    /** Plain vanilla constructor for BinaryFileGeneratorTest. */
+    public BinaryFileGeneratorTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("BinaryFileGeneratorTest", "");
+        dir.delete();
+        dir.mkdirs();
+        write("a", "bkra shis - auspicious\n"
+              + "bde legs - well-being\n"
+              + "bde ba - bliss\n"
+              + "ka - the first letter\n"
+              + "ka - a pillar\n"
+              + "sangs rgyas - buddha\n");
+        write("b", "bde ba - happiness\n"
+              + "bde ba can - sukhavati\n"
+              + "bkra shis bde legs - good fortune\n"
+              + "kha - mouth\n"
+              + "bkra shis - blessing\n"
+              + "ga - the third letter\n");
+    }
+
+    protected void tearDown() {
+        File kids[] = dir.listFiles();
+        if (null != kids)
+            for (int i = 0; i < kids.length; i++)
+                kids[i].delete();
+        dir.delete();
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(BinaryFileGeneratorTest.class);
+    }
+
+    private void write(String name, String contents) throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(dir, name + ".txt"));
+        fos.write(contents.getBytes("US-ASCII"));
+        fos.close();
+    }
+
+    private String path(String name) {
+        return new File(dir, name).getPath();
+    }
+
+    /** Returns what looking up each of WORDS in the database name
+     *  finds. */
+    private static String lookUps(String name) throws Exception {
+        DictionaryHandle handle = new DictionaryHandle(name, false);
+        StringBuffer sb = new StringBuffer();
+        try {
+            for (int i = 0; i < WORDS.length; i++) {
+                String sils[] = WORDS[i].split(" ");
+                SyllableListTree node = new FileSyllableListTree(handle);
+                for (int j = 0; j < sils.length && null != node; j++)
+                    node = node.lookUp(sils[j]);
+                sb.append(WORDS[i]).append(": ");
+                if (null == node)
+                    sb.append("not found");
+                else if (node.hasDef())
+                    sb.append(node.getDef());
+                else
+                    sb.append("no definition");
+                sb.append('\n');
+            }
+        } finally {
+            handle.close();
+        }
+        return sb.toString();
+    }
+
+    /** Tests that merging a dictionary into a database finds the same
+     *  definitions, from the same dictionaries, as building the database
+     *  again from all of them. */
+    public void testMergeSameAsRebuild() throws Exception {
+        BinaryFileGenerator sl = new BinaryFileGenerator();
+        sl.addFile(path("a.txt"), BinaryFileGenerator.delimiterDash, "-", 0);
+        sl.addFile(path("b.txt"), BinaryFileGenerator.delimiterDash, "-", 1);
+        sl.generateDatabase(path("rebuilt"));
+
+        sl = new BinaryFileGenerator();
+        sl.addFile(path("a.txt"), BinaryFileGenerator.delimiterDash, "-", 0);
+        sl.generateDatabase(path("old"));
+
+        DictionaryHandle old = new DictionaryHandle(path("old"), false);
+        try {
+            sl = new BinaryFileGenerator(old);
+            sl.addFile(path("b.txt"), BinaryFileGenerator.delimiterDash, "-", 1);
+            sl.generateDatabase(path("merged"));
+        } finally {
+            old.close();
+        }
+
+        String expected = lookUps(path("rebuilt"));
+        assertTrue(expected.indexOf("(2) happiness") >= 0);
+        assertEquals(expected, lookUps(path("merged")));
+    }
+}
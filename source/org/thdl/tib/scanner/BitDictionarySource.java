@@ -134,6 +134,7 @@ public class BitDictionarySource extends DictionarySource
 	{
 		BitDictionarySource ds = new BitDictionarySource(), dsOB = (BitDictionarySource) dsO;
 		ds.setDicts(this.dicts & dsOB.dicts);
+		ds.setDefTags(getDefTags());
 		return ds;
 	}
 	
@@ -167,6 +168,7 @@ public class BitDictionarySource extends DictionarySource
 	public String getTag(int i)
 	{
 	    int source[] = this.untangleDefs();
+	    String defTags[] = getDefTags();
 		if (defTags==null) return Integer.toString(source[i]+1);
 		return defTags[source[i]];
 	}	
@@ -290,6 +290,7 @@ public class ByteDictionarySource extends DictionarySource
 	public DictionarySource intersection(DictionarySource dsO)
 	{
 	    BitDictionarySource newDicts[], dsOB;
+	    ByteDictionarySource ds;
 	    int i;
 	    
 	    newDicts = new BitDictionarySource[dicts.length];
@@ -298,13 +299,15 @@ public class ByteDictionarySource extends DictionarySource
 	    for (i=0; i<dicts.length; i++)
 	        newDicts[i] = (BitDictionarySource) dicts[i].intersection(dsOB);
 	    
-		return new ByteDictionarySource(newDicts, hasBrother);
+		ds = new ByteDictionarySource(newDicts, hasBrother);
+		ds.setDefTags(getDefTags());
+		return ds;
 	}
 
 	public String getTag(int n)
 	{
 	    int i, source[] = dicts[n].untangleDefs();
-	    String tag;
+	    String tag, defTags[] = getDefTags();
 	    
 	    if (defTags==null) tag = Integer.toString(source[0]+1);
 	    else
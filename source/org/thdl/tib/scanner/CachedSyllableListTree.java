@@ -17,6 +17,8 @@ Contributor(s): ______________________________________.
 */
 package org.thdl.tib.scanner;
 
+import java.io.DataInputStream;
+
 import org.thdl.util.SimplifiedLinkedList;
 import org.thdl.util.SimplifiedListIterator;
 
@@ -35,6 +37,7 @@ import org.thdl.util.SimplifiedListIterator;
 public class CachedSyllableListTree implements SyllableListTree
 {
 	SyllableListTree syllables[];
+	private DictionaryHandle handle;
 	
 	public CachedSyllableListTree(String archivo) throws Exception
 	{
@@ -43,36 +46,29 @@ public class CachedSyllableListTree implements SyllableListTree
 
 	public CachedSyllableListTree(String archivo, boolean backwardCompatible) throws Exception
 	{
-		String sil;
-		long pos, defSources[];
-		DictionarySource sourceDef;
-		int i;
+		this (new DictionaryHandle(archivo, backwardCompatible));
+	}
+
+	/** Loads the first level of a dictionary that is already open. Once
+	    loaded, the trunk is never modified so it can be shared by any
+	    number of scanners. */
+	public CachedSyllableListTree(DictionaryHandle handle) throws Exception
+	{
+		FileSyllableListTree node;
+		DataInputStream raf;
+		
+		this.handle = handle;
+		raf = handle.openWordStream(handle.getRootPosition());
 		
-		FileSyllableListTree.openFiles(archivo, backwardCompatible);
+		// the siblings are read in order, so the table of positions is not needed
+		if (handle.isIndexed()) raf.skipBytes(4*raf.readInt());
 				
 		SimplifiedLinkedList syllables = new SimplifiedLinkedList();		
 		do
 		{
-		    // get "link" to children
-			pos = (long) FileSyllableListTree.wordRaf.readInt();
-			// get syllable
-			sil = FileSyllableListTree.wordRaf.readUTF();
-			// get dictionary information for each definition
-			if (FileSyllableListTree.versionNumber==2) sourceDef = new BitDictionarySource();
-			else sourceDef = new ByteDictionarySource();
-			sourceDef.read(FileSyllableListTree.wordRaf);
-
-			if (sourceDef.isEmpty()) defSources = null;
-			else
-			{
-				defSources = new long[sourceDef.countDefs()];
-				for (i=0; i<defSources.length; i++)
-				{
-					defSources[i] = (long) FileSyllableListTree.wordRaf.readInt();
-				}
-			}
-			syllables.addLast(new FileSyllableListTree(sil, defSources, sourceDef, pos));
-		}while(sourceDef.hasBrothers());
+			node = FileSyllableListTree.readNode(handle, raf);
+			syllables.addLast(node);
+		}while(node.getDictionarySource().hasBrothers());
 
 		int n = syllables.size();
 		this.syllables = new SyllableListTree[n];
@@ -84,6 +80,11 @@ public class CachedSyllableListTree implements SyllableListTree
 		}
 	}
 
+	public DictionaryHandle getDictionaryHandle()
+	{
+		return handle;
+	}
+
 	public String getDef()
 	{
 		return null;
@@ -99,6 +100,11 @@ public class CachedSyllableListTree implements SyllableListTree
 		return null;
 	}
 	
+	public Definitions getDefs(BitDictionarySource wanted, Boolean includeDefaultDefinition)
+	{
+		return null;
+	}
+	
 	public DictionarySource getDictionarySource()
 	{
 	    return null;
@@ -106,7 +112,7 @@ public class CachedSyllableListTree implements SyllableListTree
 	
 	public BitDictionarySource getDictionarySourcesWanted()
 	{
-		return FileSyllableListTree.defSourcesWanted;
+		return handle.getDictionarySourcesWanted();
 	}
 
 	public boolean hasDef()
@@ -114,6 +120,11 @@ public class CachedSyllableListTree implements SyllableListTree
 		return false;
 	}
 
+	public boolean hasDef(BitDictionarySource wanted)
+	{
+		return false;
+	}
+
 	public SyllableListTree lookUp(String silStr)
 	{
 		int principio=0, medio, fin=syllables.length-1, comp;
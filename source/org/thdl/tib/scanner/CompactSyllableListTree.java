@@ -0,0 +1,402 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+package org.thdl.tib.scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Loads the whole dictionary into a few flat arrays, so that words are
+	searched without touching the files. Unlike the {@link
+	MemorySyllableListTree}, there is no object per node: each syllable is
+	stored once and referred to by a number, the nodes are numbered
+	breadth-first so that the children of each node are consecutive, and
+	the definitions are kept undecoded in one array of bytes (the contents
+	of the <i>.def</i> file).
+
+	<p>Syllables are numbered in alphabetical order, so the children of a
+	node are searched with a binary search on their numbers. Looking up a
+	syllable with {@link #getSyllableId} and {@link #findChild} allocates
+	nothing; {@link #lookUp(String)} only creates the small object
+	standing for the node found.</p>
+
+	<p>The memory needed is about 16 bytes per node and 8 per definition,
+	plus the size of the <i>.def</i> file and of the distinct syllables.
+	The words must be stored in a binary file tree structure format.
+	This can be done using the {@link BinaryFileGenerator}.</p>
+
+    @see TibetanScanner
+    @see MappedSyllableListTree
+    @see BinaryFileGenerator
+*/
+public class CompactSyllableListTree implements SyllableListTree
+{
+	/** Used by BitDictionarySource to mark brothers and the available dictionaries. */
+	private static final int bitLastBit=1073741824;
+	private static final int bitAllDicts=bitLastBit-1;
+	/** Used by ByteDictionarySource to mark brothers and the available dictionaries. */
+	private static final int byteLastBit=64;
+	private static final int byteAllDicts=byteLastBit-1;
+
+	/** The arrays of one dictionary, shared by all of its nodes. */
+	private static class Tables
+	{
+		DictionaryHandle handle;
+		boolean bitFormat;
+		/** The distinct syllables, in alphabetical order. */
+		String syllables[];
+		/** Maps each syllable to its position in syllables. */
+		HashMap syllableIds;
+		/** Number of the syllable of each node. */
+		int sil[];
+		/** The children of node n are the nodes from child[n] to child[n+1]-1. */
+		int child[];
+		/** Dictionaries in which each node has definitions. */
+		int dicts[];
+		/** The definitions of node n are the ones from firstDef[n] to firstDef[n+1]-1. */
+		int firstDef[];
+		/** Dictionaries of each definition. */
+		int defDicts[];
+		/** Position of each definition in defs. */
+		int defPos[];
+		/** The contents of the <i>.def</i> file. */
+		ByteBuffer defs;
+	}
+
+	private Tables t;
+	/** Number of this node; 0 for the root. */
+	private int node;
+
+	/** Creates the root. */
+	public CompactSyllableListTree(String archivo) throws Exception
+	{
+		this(new DictionaryHandle(archivo));
+	}
+
+	/** Creates the root of a dictionary that is already open, loading
+	    its files into memory. The handle is only used to read them and
+	    for the dictionary selection; the files are not read again. */
+	public CompactSyllableListTree(DictionaryHandle handle) throws IOException
+	{
+		t = new Tables();
+		t.handle = handle;
+		t.bitFormat = handle.getVersionNumber()==2;
+		load(handle.getWordBuffer(), handle.isIndexed(), (int) handle.getRootPosition());
+		ByteBuffer mapped = handle.getDefBuffer();
+		byte blob[] = new byte[mapped.limit()];
+		mapped.duplicate().get(blob);
+		t.defs = ByteBuffer.wrap(blob);
+		node = 0;
+	}
+
+	private CompactSyllableListTree(Tables t, int node)
+	{
+		this.t = t;
+		this.node = node;
+	}
+
+	/** Reads the tree breadth-first from the <i>.wrd</i> file. */
+	private void load(ByteBuffer wrd, boolean indexed, int rootPos) throws IOException
+	{
+		HashMap ids = new HashMap();
+		int posLista[], sil[], dicts[], child[], firstDef[], defDicts[], defPos[];
+		int nodes=1, nDefs=0, n, i, k, rec, pos, b, mask, newId[];
+		boolean brother;
+		String s;
+		Integer id;
+
+		posLista = new int[1024];
+		sil = new int[1024];
+		dicts = new int[1024];
+		child = new int[1025];
+		firstDef = new int[1025];
+		defDicts = new int[4096];
+		defPos = new int[4096];
+		posLista[0] = rootPos;
+
+		for (n=0; n<nodes; n++)
+		{
+			child[n] = nodes;
+			if (posLista[n]==-1) continue;
+
+			// the siblings are either listed in a table or one after the other
+			k = indexed ? wrd.getInt(posLista[n]) : Integer.MAX_VALUE;
+			rec = posLista[n];
+			brother = true;
+			for (i=0; i<k && brother; i++)
+			{
+				if (indexed) rec = wrd.getInt(posLista[n]+4+4*i);
+				if (nodes==sil.length)
+				{
+					posLista = grow(posLista);
+					sil = grow(sil);
+					dicts = grow(dicts);
+					child = grow(child);
+					firstDef = grow(firstDef);
+				}
+				posLista[nodes] = wrd.getInt(rec);
+				s = MappedSyllableListTree.decodeUTF(wrd, rec+6, wrd.getShort(rec+4) & 0xFFFF);
+				id = (Integer) ids.get(s);
+				if (id==null)
+				{
+					id = Integer.valueOf(ids.size());
+					ids.put(s, id);
+				}
+				sil[nodes] = id.intValue();
+				firstDef[nodes] = nDefs;
+
+				// the dictionaries of each definition, then their positions
+				pos = rec + 6 + (wrd.getShort(rec+4) & 0xFFFF);
+				if (t.bitFormat)
+				{
+					mask = wrd.getInt(pos);
+					pos+=4;
+					brother = (mask & bitLastBit)!=0;
+					mask &= bitAllDicts;
+					dicts[nodes] = mask;
+					for (b=0; b<30; b++)
+					{
+						if ((mask & (1 << b))==0) continue;
+						if (nDefs==defDicts.length)
+						{
+							defDicts = grow(defDicts);
+							defPos = grow(defPos);
+						}
+						defDicts[nDefs++] = 1 << b;
+					}
+				}
+				else
+				{
+					b = wrd.get(pos++);
+					brother = (b & byteLastBit)!=0;
+					dicts[nodes] = 0;
+					for (b &= byteAllDicts; b>0; b--)
+					{
+						if (nDefs==defDicts.length)
+						{
+							defDicts = grow(defDicts);
+							defPos = grow(defPos);
+						}
+						mask = 0;
+						do
+						{
+							mask |= 1 << (wrd.get(pos) & byteAllDicts);
+						} while ((wrd.get(pos++) & byteLastBit)!=0);
+						defDicts[nDefs++] = mask;
+						dicts[nodes] |= mask;
+					}
+				}
+				for (b=firstDef[nodes]; b<nDefs; b++)
+				{
+					defPos[b] = wrd.getInt(pos);
+					pos+=4;
+				}
+				rec = pos;
+				nodes++;
+			}
+		}
+		child[nodes] = nodes;
+		firstDef[nodes] = nDefs;
+
+		// number the syllables in alphabetical order
+		t.syllables = (String[]) ids.keySet().toArray(new String[ids.size()]);
+		Arrays.sort(t.syllables);
+		newId = new int[t.syllables.length];
+		t.syllableIds = new HashMap();
+		for (i=0; i<t.syllables.length; i++)
+		{
+			id = Integer.valueOf(i);
+			newId[((Integer) ids.get(t.syllables[i])).intValue()] = i;
+			t.syllableIds.put(t.syllables[i], id);
+		}
+		for (n=1; n<nodes; n++)
+			sil[n] = newId[sil[n]];
+		for (n=0; n<nodes; n++)
+			for (i=child[n]+1; i<child[n+1]; i++)
+				if (sil[i-1]>=sil[i]) throw new IOException("The syllables in " + t.handle.getFileName() + ".wrd are not sorted");
+
+		t.sil = Arrays.copyOf(sil, nodes);
+		t.dicts = Arrays.copyOf(dicts, nodes);
+		t.child = Arrays.copyOf(child, nodes+1);
+		t.firstDef = Arrays.copyOf(firstDef, nodes+1);
+		t.defDicts = Arrays.copyOf(defDicts, nDefs);
+		t.defPos = Arrays.copyOf(defPos, nDefs);
+	}
+
+	private static int[] grow(int arr[])
+	{
+		return Arrays.copyOf(arr, arr.length*2);
+	}
+
+	public DictionaryHandle getDictionaryHandle()
+	{
+		return t.handle;
+	}
+
+	/** Returns the number of the syllable, or -1 if no word in the
+	    dictionary contains it. */
+	public int getSyllableId(String silStr)
+	{
+		Integer id = (Integer) t.syllableIds.get(silStr);
+		if (id==null) return -1;
+		return id.intValue();
+	}
+
+	/** Returns the syllable numbered id. */
+	public String getSyllable(int id)
+	{
+		return t.syllables[id];
+	}
+
+	/** Returns the number of this node; 0 for the root. */
+	public int getNode()
+	{
+		return node;
+	}
+
+	/** Returns the object standing for the node numbered n. */
+	public CompactSyllableListTree getNode(int n)
+	{
+		if (n==node) return this;
+		return new CompactSyllableListTree(t, n);
+	}
+
+	/** Returns the number of the child of node n whose syllable is
+	    numbered silId, or -1 if there is none. */
+	public int findChild(int n, int silId)
+	{
+		int principio = t.child[n], fin = t.child[n+1]-1, medio, s;
+
+		while (principio<=fin)
+		{
+			medio = (principio+fin) >>> 1;
+			s = t.sil[medio];
+			if (s==silId) return medio;
+			if (s<silId) principio = medio+1;
+			else fin = medio-1;
+		}
+		return -1;
+	}
+
+	/** Returns true if node n has definitions in the dictionaries in
+	    wanted. */
+	public boolean hasDef(int n, BitDictionarySource wanted)
+	{
+		return (t.dicts[n] & wanted.getDicts() & bitAllDicts)!=0;
+	}
+
+	public String toString()
+	{
+		if (node==0) return null;
+		return t.syllables[t.sil[node]];
+	}
+
+	public SyllableListTree lookUp(String silStr)
+	{
+		int id, n;
+
+		if (silStr==null) return null;
+		id = getSyllableId(silStr);
+		if (id<0) return null;
+		n = findChild(node, id);
+		if (n<0) return null;
+		return new CompactSyllableListTree(t, n);
+	}
+
+	public boolean hasDef()
+	{
+		return hasDef(t.handle.getDictionarySourcesWanted());
+	}
+
+	public boolean hasDef(BitDictionarySource wanted)
+	{
+		return hasDef(node, wanted);
+	}
+
+	/** Returns the dictionaries of the definitions of this node. Whether
+	    the node has brothers is not kept. */
+	public DictionarySource getDictionarySource()
+	{
+		if (node==0) return null;
+		return getDictionarySource(0xFFFFFFFF);
+	}
+
+	/** Returns the dictionaries of the definitions of this node that are
+	    in the dictionaries of wanted. */
+	private DictionarySource getDictionarySource(int wanted)
+	{
+		int i, lo = t.firstDef[node], hi = t.firstDef[node+1];
+		BitDictionarySource avail[];
+		DictionarySource ds;
+
+		if (t.bitFormat) ds = new BitDictionarySource(t.dicts[node] & wanted);
+		else if (lo==hi) ds = new ByteDictionarySource();
+		else
+		{
+			avail = new BitDictionarySource[hi-lo];
+			for (i=lo; i<hi; i++)
+				avail[i-lo] = new BitDictionarySource(t.defDicts[i] & wanted);
+			ds = new ByteDictionarySource(avail, false);
+		}
+		ds.setDefTags(t.handle.getDictionaryTags());
+		return ds;
+	}
+
+	public BitDictionarySource getDictionarySourcesWanted()
+	{
+		return t.handle.getDictionarySourcesWanted();
+	}
+
+	public String getDef()
+	{
+		return getDefs().toString();
+	}
+
+	public Definitions getDefs()
+	{
+		return getDefs(false);
+	}
+
+	public Definitions getDefs(Boolean includeDefault)
+	{
+		return getDefs(t.handle.getDictionarySourcesWanted(), includeDefault);
+	}
+
+	public Definitions getDefs(BitDictionarySource wanted, Boolean includeDefault)
+	{
+		int i, n, w, pos, lo = t.firstDef[node], hi = t.firstDef[node+1];
+		String defs[];
+
+		if (lo==hi) return null;
+		w = wanted.getDicts();
+		if (includeDefault) w |= 1;
+		n = 0;
+		for (i=lo; i<hi; i++)
+			if ((t.defDicts[i] & w)!=0) n++;
+		defs = new String[n];
+		n = 0;
+		for (i=lo; i<hi; i++)
+		{
+			if ((t.defDicts[i] & w)==0) continue;
+			pos = t.defPos[i];
+			defs[n++] = MappedSyllableListTree.decodeUTF(t.defs, pos+2, t.defs.getShort(pos) & 0xFFFF);
+		}
+		return new Definitions(defs, getDictionarySource(w));
+	}
+}
@@ -65,7 +65,7 @@ public class Definitions
 		if (def==null) return null;
 		if (source==null) return def[0];
 		
-		if (FileSyllableListTree.versionNumber==2)
+		if (source instanceof BitDictionarySource)
 		{
 		    s = "(" + source.getTag(0) + ") " + def[0];
 		    for (i=1; i<def.length; i++)
@@ -0,0 +1,627 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+package org.thdl.tib.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Does what {@link BinaryFileGenerator} does without loading the
+	dictionaries into memory, for dictionaries too big for it.
+
+	<p>The sources are read in parallel, one thread for each. The entries
+	read are gathered in buffers of bounded size which, when full, are
+	sorted by another pool of threads and written to temporary files
+	(runs). The runs are then merged, giving every entry in the order of
+	the tree; the definitions of each word are grouped as
+	BinaryFileGenerator groups them, and the tree is written as the words
+	come, keeping in memory only the nodes from the root to the current
+	word and their children. The files written are equivalent to those of
+	BinaryFileGenerator, though the definitions are stored in a different
+	order.</p>
+
+	<p>It is used through the <b>-external</b> option of BinaryFileGenerator.</p>
+
+    @see BinaryFileGenerator
+*/
+class DictionaryCompiler
+{
+	/** Most runs read at the same time; if there are more they are
+	    first merged into bigger ones. */
+	private static final int maxRunsOpen = 64;
+	/** Bytes of memory an entry takes besides its strings, roughly. */
+	private static final int entryOverhead = 96;
+
+	/** One definition read from a source. */
+	private static class Entry
+	{
+		/** The syllables of the word, separated by one space. */
+		final String key;
+		final String def;
+		final int dict;
+		/** Position of the entry in its source. */
+		final int seq;
+
+		Entry(String key, String def, int dict, int seq)
+		{
+			this.key = key;
+			this.def = def;
+			this.dict = dict;
+			this.seq = seq;
+		}
+
+		int size()
+		{
+			return entryOverhead + 2*(key.length() + def.length());
+		}
+	}
+
+	/** Orders entries as the words are in the tree, and the definitions
+	    of each word in the order BinaryFileGenerator would have added them:
+	    by dictionary and then as they are in the source. */
+	private static final Comparator entryOrder = new Comparator()
+	{
+		public int compare(Object o1, Object o2)
+		{
+			Entry e1 = (Entry) o1, e2 = (Entry) o2;
+			int comp = compareKeys(e1.key, e2.key);
+			if (comp!=0) return comp;
+			if (e1.dict!=e2.dict) return e1.dict<e2.dict ? -1 : 1;
+			return e1.seq<e2.seq ? -1 : (e1.seq==e2.seq ? 0 : 1);
+		}
+	};
+
+	/** A node of the tree from the root to the word being written. */
+	private static class Node
+	{
+		final String sil;
+		ByteDictionarySource sourceDef;
+		int defPos[];
+		int posHijos;
+		/** Children already written, or null. */
+		Vector hijos;
+
+		Node(String sil)
+		{
+			this.sil = sil;
+			sourceDef = new ByteDictionarySource();
+			defPos = null;
+			posHijos = -1;
+			hijos = null;
+		}
+	}
+
+	/** Reads a source sending its entries to the runs instead of to a tree. */
+	private class SourceReader extends BinaryFileGenerator
+	{
+		private final int dict;
+		private Entry buffer[];
+		private int n, seq;
+		private long size;
+
+		SourceReader(int dict)
+		{
+			this.dict = dict;
+			buffer = new Entry[1024];
+			n = seq = 0;
+			size = 0;
+		}
+
+		void add(String word, String def, int defNum)
+		{
+			Entry e = new Entry(key(word), def, dict, seq++);
+
+			if (n==buffer.length)
+			{
+				Entry temp[] = new Entry[2*n];
+				System.arraycopy(buffer, 0, temp, 0, n);
+				buffer = temp;
+			}
+			buffer[n++] = e;
+			size += e.size();
+			if (size>=bufferSize) spill();
+		}
+
+		/** Hands the buffer to be sorted and written. */
+		void spill()
+		{
+			final Entry full[] = buffer;
+			final int count = n;
+
+			if (count==0) return;
+			buffer = new Entry[1024];
+			n = 0;
+			size = 0;
+			try
+			{
+				buffers.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			addFuture(sorters.submit(new Callable()
+			{
+				public Object call() throws IOException
+				{
+					try
+					{
+						Arrays.sort(full, 0, count, entryOrder);
+						addRun(writeRun(full, count));
+					}
+					finally
+					{
+						buffers.release();
+					}
+					return null;
+				}
+			}));
+		}
+	}
+
+	private final int threads;
+	/** Bytes of entries each buffer holds before it is sorted. */
+	private final long bufferSize;
+	private final File tempDir;
+	private final int versionNumber;
+	/** Buffers that can be full at the same time, besides the ones being filled. */
+	private final Semaphore buffers;
+	private ExecutorService sorters;
+	/** The runs written, and the sorting of buffers. */
+	private final Vector runs, futures;
+
+	private DataOutputStream wordOut, defOut;
+
+	/** @param threads number of sources read at the same time, and of
+	    buffers sorted at the same time
+	    @param memory bytes of entries held in memory at most, roughly
+	    @param tempDir where the runs are written; null for the default
+	    temporary directory
+	    @param versionNumber version of the format to write, 3 or 4 */
+	DictionaryCompiler(int threads, long memory, File tempDir, int versionNumber)
+	{
+		this.threads = threads;
+		this.tempDir = tempDir;
+		this.versionNumber = versionNumber;
+		// each thread fills a buffer while at most as many are being sorted
+		bufferSize = Math.max(memory/(2*threads), 1<<20);
+		buffers = new Semaphore(threads);
+		runs = new Vector();
+		futures = new Vector();
+	}
+
+	/** Uses as many threads as there are processors and a quarter of the
+	    memory the virtual machine may use. */
+	DictionaryCompiler(int versionNumber)
+	{
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory()/4, null, versionNumber);
+	}
+
+	/** Reads the sources and writes <i>name.wrd</i> and <i>name.def</i>.
+	    @param files the sources
+	    @param delimiterTypes for each source, one of the delimiter constants
+	    of BinaryFileGenerator
+	    @param delimiters for each source, the delimiter
+	    @param dicts for each source, its number of dictionary */
+	void compile(final String files[], final int delimiterTypes[], final String delimiters[], final int dicts[], String name) throws Exception
+	{
+		ExecutorService readers = Executors.newFixedThreadPool(Math.min(threads, files.length));
+		Future reading[] = new Future[files.length];
+		int i;
+
+		sorters = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for (i=0; i<files.length; i++)
+			{
+				final int n = i;
+				reading[i] = readers.submit(new Callable()
+				{
+					public Object call() throws Exception
+					{
+						SourceReader reader = new SourceReader(dicts[n]);
+						System.out.println("\nProcessing " + files[n] + "...");
+						reader.addFile(files[n], delimiterTypes[n], delimiters[n], dicts[n]);
+						reader.spill();
+						return null;
+					}
+				});
+			}
+			for (i=0; i<files.length; i++) waitFor(reading[i]);
+			// the readers are done, so no more buffers are being sorted
+			for (i=0; i<futures.size(); i++) waitFor((Future) futures.elementAt(i));
+
+			System.out.println("Writing to file " + name + "...");
+			System.out.flush();
+			while (runs.size()>maxRunsOpen) mergeRuns();
+			writeDatabase(name);
+		}
+		finally
+		{
+			readers.shutdownNow();
+			sorters.shutdownNow();
+			for (i=0; i<runs.size(); i++) ((File) runs.elementAt(i)).delete();
+			runs.removeAllElements();
+		}
+	}
+
+	private synchronized void addFuture(Future f)
+	{
+		futures.addElement(f);
+	}
+
+	private synchronized void addRun(File run)
+	{
+		runs.addElement(run);
+	}
+
+	private static void waitFor(Future f) throws Exception
+	{
+		try
+		{
+			f.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/** Returns the syllables of word, as BinaryFileGenerator separates
+	    them, joined by one space. */
+	static String key(String word)
+	{
+		StringBuffer key = new StringBuffer();
+		int marker;
+
+		while (true)
+		{
+			while (true)
+			{
+			    marker = Manipulate.indexOfExtendedEndOfSyllableMark(word);
+			    if (marker==0) word = word.substring(1);
+			    else if (marker==word.length()-1) word = word.substring(0,word.length()-1);
+			    else break;
+			}
+			if (marker<0)
+			{
+				key.append(word);
+				return key.toString();
+			}
+			key.append(word.substring(0, marker));
+			key.append(' ');
+			word = word.substring(marker+1).trim();
+		}
+	}
+
+	/** Compares keys syllable by syllable. Since syllables contain no
+	    spaces, it is enough to take the space as smaller than any other
+	    character. */
+	static int compareKeys(String key1, String key2)
+	{
+		int i, len = Math.min(key1.length(), key2.length());
+		char ch1, ch2;
+
+		for (i=0; i<len; i++)
+		{
+			ch1 = key1.charAt(i);
+			ch2 = key2.charAt(i);
+			if (ch1!=ch2)
+			{
+				if (ch1==' ') return -1;
+				if (ch2==' ') return 1;
+				return ch1 - ch2;
+			}
+		}
+		return key1.length() - key2.length();
+	}
+
+	private File writeRun(Entry entries[], int count) throws IOException
+	{
+		File run = File.createTempFile("dict", ".run", tempDir);
+		DataOutputStream out;
+		int i;
+
+		run.deleteOnExit();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1<<16));
+		try
+		{
+			for (i=0; i<count; i++) writeEntry(out, entries[i]);
+			out.writeBoolean(false);
+		}
+		finally
+		{
+			out.close();
+		}
+		return run;
+	}
+
+	private static void writeEntry(DataOutputStream out, Entry e) throws IOException
+	{
+		out.writeBoolean(true);
+		writeString(out, e.key);
+		out.writeInt(e.dict);
+		out.writeInt(e.seq);
+		writeString(out, e.def);
+	}
+
+	/** Unlike writeUTF, takes strings of any length. */
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte bytes[] = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte bytes[] = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/** Reads the entries of several runs, in order. */
+	private static class MergedRuns
+	{
+		private final PriorityQueue queue;
+
+		MergedRuns(Vector runs) throws IOException
+		{
+			RunReader r;
+			int i;
+
+			queue = new PriorityQueue(Math.max(runs.size(), 1), new Comparator()
+			{
+				public int compare(Object o1, Object o2)
+				{
+					return entryOrder.compare(((RunReader) o1).head, ((RunReader) o2).head);
+				}
+			});
+			for (i=0; i<runs.size(); i++)
+			{
+				r = new RunReader((File) runs.elementAt(i));
+				if (r.head!=null) queue.add(r);
+			}
+		}
+
+		/** Returns the next entry, or null if there are no more. */
+		Entry next() throws IOException
+		{
+			RunReader r = (RunReader) queue.poll();
+			Entry e;
+
+			if (r==null) return null;
+			e = r.head;
+			r.advance();
+			if (r.head!=null) queue.add(r);
+			return e;
+		}
+
+		void close() throws IOException
+		{
+			RunReader r;
+			while ((r = (RunReader) queue.poll())!=null) r.in.close();
+		}
+	}
+
+	private static class RunReader
+	{
+		final DataInputStream in;
+		Entry head;
+
+		RunReader(File run) throws IOException
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1<<16));
+			advance();
+		}
+
+		void advance() throws IOException
+		{
+			String key;
+			int dict, seq;
+
+			if (!in.readBoolean())
+			{
+				head = null;
+				in.close();
+				return;
+			}
+			key = readString(in);
+			dict = in.readInt();
+			seq = in.readInt();
+			head = new Entry(key, readString(in), dict, seq);
+		}
+	}
+
+	/** Merges the first maxRunsOpen runs into one. */
+	private void mergeRuns() throws IOException
+	{
+		Vector some = new Vector();
+		MergedRuns merged;
+		File run = File.createTempFile("dict", ".run", tempDir);
+		DataOutputStream out;
+		Entry e;
+		int i;
+
+		for (i=0; i<maxRunsOpen; i++) some.addElement(runs.elementAt(i));
+		run.deleteOnExit();
+		merged = new MergedRuns(some);
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1<<16));
+		try
+		{
+			while ((e = merged.next())!=null) writeEntry(out, e);
+			out.writeBoolean(false);
+		}
+		finally
+		{
+			out.close();
+			merged.close();
+		}
+		for (i=0; i<maxRunsOpen; i++) ((File) runs.elementAt(i)).delete();
+		runs.subList(0, maxRunsOpen).clear();
+		runs.addElement(run);
+	}
+
+	private void writeDatabase(String name) throws IOException
+	{
+		File wordF = new File(name + ".wrd"), defF = new File(name + ".def");
+		MergedRuns merged = new MergedRuns(runs);
+		Vector path = new Vector();
+		BinaryFileGenerator word;
+		Entry e;
+		String key, sils[];
+		int depth;
+
+		wordF.delete();
+		defF.delete();
+		wordOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(wordF), 1<<16));
+		defOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(defF), 1<<16));
+		try
+		{
+			path.addElement(new Node(null));
+			e = merged.next();
+			while (e!=null)
+			{
+				sils = e.key.split(" ", -1);
+
+				// close the nodes that are not part of this word
+				depth = 0;
+				while (depth<sils.length && depth+1<path.size() && sils[depth].equals(((Node) path.elementAt(depth+1)).sil))
+					depth++;
+				while (path.size()>depth+1) close(path);
+				for (; depth<sils.length; depth++) path.addElement(new Node(sils[depth]));
+
+				// group the definitions of the word
+				word = new BinaryFileGenerator(sils[sils.length-1]);
+				key = e.key;
+				do
+				{
+					word.addDefinition(e.def, e.dict);
+					e = merged.next();
+				} while (e!=null && e.key.equals(key));
+				writeDefs((Node) path.lastElement(), word);
+			}
+			while (path.size()>1) close(path);
+			writeChildren((Node) path.elementAt(0));
+			wordOut.writeInt(((Node) path.elementAt(0)).posHijos);
+
+			// write version marker
+			wordOut.writeShort(-1);
+			wordOut.writeByte(-1);
+
+			// write version number
+			wordOut.writeByte(versionNumber);
+		}
+		finally
+		{
+			merged.close();
+			wordOut.close();
+			defOut.close();
+		}
+	}
+
+	/** Writes the children of the last node of path, and removes it from
+	    path to be a child of the one before. */
+	private void close(Vector path) throws IOException
+	{
+		Node node = (Node) path.lastElement(), parent;
+
+		path.removeElementAt(path.size()-1);
+		writeChildren(node);
+		parent = (Node) path.lastElement();
+		if (parent.hijos==null) parent.hijos = new Vector();
+		parent.hijos.addElement(node);
+	}
+
+	private void writeDefs(Node node, BinaryFileGenerator word) throws IOException
+	{
+		String defs[] = word.getDefinitions();
+		int i;
+
+		node.sourceDef = word.getDictionarySource();
+		node.defPos = new int[defs.length];
+		for (i=0; i<defs.length; i++)
+		{
+			node.defPos[i] = defOut.size();
+			try
+			{
+				defOut.writeUTF(defs[i]);
+			}
+			catch (UTFDataFormatException ex)
+			{
+				// too long; left out, like BinaryFileGenerator.printMe does
+				System.err.println(defs[i]);
+			}
+		}
+	}
+
+	/** Writes the list of children of node, like BinaryFileGenerator.print. */
+	private void writeChildren(Node node) throws IOException
+	{
+		ByteArrayOutputStream buffer;
+		DataOutputStream records;
+		Node hijo;
+		int i, n, pos[], start;
+
+		if (node.hijos==null) return;
+		n = node.hijos.size();
+		pos = new int[n];
+		buffer = new ByteArrayOutputStream();
+		records = new DataOutputStream(buffer);
+		for (i=0; i<n; i++)
+		{
+			hijo = (Node) node.hijos.elementAt(i);
+			pos[i] = records.size();
+			records.writeInt(hijo.posHijos);
+			records.writeUTF(hijo.sil);
+			hijo.sourceDef.print(i+1<n, records);
+			if (hijo.defPos!=null)
+				for (start=0; start<hijo.defPos.length; start++)
+					records.writeInt(hijo.defPos[start]);
+		}
+		node.hijos = null;
+
+		node.posHijos = wordOut.size();
+		if (versionNumber>=4)
+		{
+			wordOut.writeInt(n);
+			start = wordOut.size() + 4*n;
+			for (i=0; i<n; i++) wordOut.writeInt(start + pos[i]);
+		}
+		buffer.writeTo(wordOut);
+	}
+}
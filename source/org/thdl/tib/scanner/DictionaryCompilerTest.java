@@ -0,0 +1,132 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+ */
+package org.thdl.tib.scanner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link org.thdl.tib.scanner.DictionaryCompiler} at the unit level,
+ * against the databases BinaryFileGenerator builds in memory.
+ */
+public class DictionaryCompilerTest extends TestCase {
+    /** Words looked up, including ones in both dictionaries, parts of
+     *  words, and words in neither. */
+    private static final String WORDS[] = {
+        "bkra", "bkra shis", "bkra shis bde legs", "bde", "bde legs",
+        "bde ba", "bde ba can", "ka", "kha", "ga", "sangs rgyas",
+        "sangs", "rgyas", "legs", "shis", "nga", "bkra shis ka"
+    };
+
+    private File dir;
+
+    /** Plain vanilla constructor for DictionaryCompilerTest. */
+    public DictionaryCompilerTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("DictionaryCompilerTest", "");
+        dir.delete();
+        dir.mkdirs();
+        write("a", "bkra shis - auspicious\n"
+              + "bde legs - well-being\n"
+              + "bde ba - bliss\n"
+              + "bkra shis bde legs - good fortune\n"
+              + "ka - the first letter\n"
+              + "ka - a pillar\n"
+              + "sangs rgyas - buddha\n");
+        write("b", "bde ba - happiness\n"
+              + "bde ba can - sukhavati\n"
+              + "kha - mouth\n"
+              + "bkra shis - blessing\n"
+              + "ga - the third letter\n");
+    }
+
+    protected void tearDown() {
+        File kids[] = dir.listFiles();
+        if (null != kids)
+            for (int i = 0; i < kids.length; i++)
+                kids[i].delete();
+        dir.delete();
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(DictionaryCompilerTest.class);
+    }
+
+    private void write(String name, String contents) throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(dir, name + ".txt"));
+        fos.write(contents.getBytes("US-ASCII"));
+        fos.close();
+    }
+
+    private String path(String name) {
+        return new File(dir, name).getPath();
+    }
+
+    /** Returns what looking up each of WORDS in the database name
+     *  finds. */
+    private static String lookUps(String name) throws Exception {
+        DictionaryHandle handle = new DictionaryHandle(name, false);
+        StringBuffer sb = new StringBuffer();
+        try {
+            for (int i = 0; i < WORDS.length; i++) {
+                String sils[] = WORDS[i].split(" ");
+                SyllableListTree node = new FileSyllableListTree(handle);
+                for (int j = 0; j < sils.length && null != node; j++)
+                    node = node.lookUp(sils[j]);
+                sb.append(WORDS[i]).append(": ");
+                if (null == node)
+                    sb.append("not found");
+                else if (node.hasDef())
+                    sb.append(node.getDef());
+                else
+                    sb.append("no definition");
+                sb.append('\n');
+            }
+        } finally {
+            handle.close();
+        }
+        return sb.toString();
+    }
+
+    /** Tests that a database compiled with -external finds the same
+     *  definitions, from the same dictionaries, as one built in
+     *  memory. */
+    public void testSameAsInMemory() throws Exception {
+        BinaryFileGenerator sl = new BinaryFileGenerator();
+        sl.addFile(path("a.txt"), BinaryFileGenerator.delimiterDash, "-", 0);
+        sl.addFile(path("b.txt"), BinaryFileGenerator.delimiterDash, "-", 1);
+        sl.generateDatabase(path("memory"));
+
+        new DictionaryCompiler(4).compile(new String[] { path("a.txt"), path("b.txt") },
+                                          new int[] { BinaryFileGenerator.delimiterDash, BinaryFileGenerator.delimiterDash },
+                                          new String[] { "-", "-" },
+                                          new int[] { 0, 1 },
+                                          path("external"));
+
+        String expected = lookUps(path("memory"));
+        assertTrue(expected.indexOf("bde ba: ") >= 0);
+        assertEquals(expected, lookUps(path("external")));
+    }
+}
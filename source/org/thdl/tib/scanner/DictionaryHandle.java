@@ -0,0 +1,328 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+package org.thdl.tib.scanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Owns the open <i>.wrd</i> and <i>.def</i> files of one dictionary
+	generated by the {@link BinaryFileGenerator}.
+
+	<p>All reads are positional ({@link FileChannel#read(ByteBuffer, long)}),
+	so no seek pointer is shared and any number of threads can look up
+	words in the same dictionary at once. Several handles (i.e. several
+	dictionaries) can be open in the same virtual machine.</p>
+
+    @see FileSyllableListTree
+    @see CachedSyllableListTree
+*/
+public class DictionaryHandle
+{
+	/** Bytes fetched per positional read while decoding word records. */
+	private static final int bufferSize = 512;
+
+	private String archivo;
+	private RandomAccessFile wordRaf, defRaf;
+	private FileChannel wordChannel, defChannel;
+	private volatile MappedByteBuffer wordBuffer, defBuffer;
+	private int versionNumber;
+	private long rootPos;
+	private BitDictionarySource defSourcesWanted;
+	private final String dictionaries[], tags[];
+
+	public DictionaryHandle(String archivo) throws Exception
+	{
+		this(archivo, true);
+	}
+
+	/** Opens the dictionary files. If backwardCompatible is true and the
+	    dictionary carries no version marker, the marker is appended
+	    to the <i>.wrd</i> file. */
+	public DictionaryHandle(String archivo, boolean backwardCompatible) throws Exception
+	{
+		long fileSize;
+		int pos;
+
+		this.archivo = archivo;
+		wordRaf = new RandomAccessFile(archivo + ".wrd", "r");
+		defRaf = new RandomAccessFile(archivo + ".def", "r");
+
+		fileSize = wordRaf.length();
+		wordRaf.seek(fileSize-4L);
+		pos = wordRaf.readInt();
+
+		if (pos >> 8 == -1)
+		{
+			versionNumber = pos & 255;
+
+			// for now, only versions 2, 3 & 4 should be expected
+			if (versionNumber != 3 && versionNumber != 4) versionNumber=2;
+			wordRaf.seek(fileSize-8L);
+			pos = wordRaf.readInt();
+		}
+		else
+		{
+			// Updates the dictionary for backward compatibility.
+			try
+			{
+				if (backwardCompatible)
+				{
+					wordRaf.close();
+					wordRaf = new RandomAccessFile(archivo + ".wrd", "rw");
+					wordRaf.seek(fileSize);
+					wordRaf.writeShort(-1);
+					wordRaf.writeByte(-1);
+
+					// Because it didn't have a version number, must be version 2.
+					versionNumber = 2;
+					wordRaf.writeByte(versionNumber);
+					wordRaf.close();
+					wordRaf = new RandomAccessFile(archivo + ".wrd", "r");
+				}
+				else
+				{
+					// something is wrong
+					ScannerLogger sl = new ScannerLogger();
+					sl.writeLog("1\tDictionaryHandle\t" + "size: " + fileSize + "; bytes: " + Integer.toHexString(pos));
+
+					// try to open again, but not corrupting the file
+					wordRaf.close();
+					wordRaf = new RandomAccessFile(archivo + ".wrd", "r");
+
+					fileSize = wordRaf.length();
+					wordRaf.seek(fileSize-8L);
+					pos = wordRaf.readInt();
+					versionNumber = 3;
+				}
+			}
+			catch (Exception e)
+			{
+				// dictionary is stored on a non-writable media. Do nothing.
+			}
+		}
+
+		rootPos = pos;
+		wordChannel = wordRaf.getChannel();
+		defChannel = defRaf.getChannel();
+		defSourcesWanted = BitDictionarySource.getAllDictionaries();
+
+		String dic[][] = FileSyllableListTree.readDictionaryFile(archivo);
+		if (dic==null)
+		{
+			dictionaries = null;
+			tags = null;
+		}
+		else
+		{
+			dictionaries = dic[0];
+			tags = dic[1];
+		}
+	}
+
+	public String getFileName()
+	{
+		return archivo;
+	}
+
+	public int getVersionNumber()
+	{
+		return versionNumber;
+	}
+
+	/** Returns true if each list of siblings starts with their count and
+	    the table of their positions (version 4 and later), so that it can
+	    be searched with a binary search. */
+	public boolean isIndexed()
+	{
+		return versionNumber>=4;
+	}
+
+	/** Returns the position in the <i>.wrd</i> file where the siblings
+	    of the first level of the tree are stored. */
+	public long getRootPosition()
+	{
+		return rootPos;
+	}
+
+	/** Returns the dictionaries selected for this handle. */
+	public BitDictionarySource getDictionarySourcesWanted()
+	{
+		return defSourcesWanted;
+	}
+
+	/** Returns a new DictionarySource of the type used by this dictionary's
+	    version of the file format, with this dictionary's tags. */
+	public DictionarySource newDictionarySource()
+	{
+		DictionarySource ds;
+		if (versionNumber==2) ds = new BitDictionarySource();
+		else ds = new ByteDictionarySource();
+		ds.setDefTags(tags);
+		return ds;
+	}
+
+	/** Returns a stream positioned at pos in the <i>.wrd</i> file. The
+	    stream keeps its own position, so it must not be shared among
+	    threads, but any number of them may be open at once. */
+	public DataInputStream openWordStream(long pos)
+	{
+		return new DataInputStream(new ChannelInputStream(wordChannel, pos));
+	}
+
+	/** Maps the <i>.wrd</i> and <i>.def</i> files into memory, if they
+	    were not already. From then on definitions are decoded straight
+	    from the mapped <i>.def</i> file. */
+	public synchronized void map() throws IOException
+	{
+		if (wordBuffer!=null) return;
+		defBuffer = defChannel.map(FileChannel.MapMode.READ_ONLY, 0, defChannel.size());
+		wordBuffer = wordChannel.map(FileChannel.MapMode.READ_ONLY, 0, wordChannel.size());
+	}
+
+	/** Returns the mapped <i>.wrd</i> file. Only absolute get methods
+	    should be used on it, since it is shared among threads. */
+	public ByteBuffer getWordBuffer() throws IOException
+	{
+		if (wordBuffer==null) map();
+		return wordBuffer;
+	}
+
+	/** Returns the mapped <i>.def</i> file. Only absolute get methods
+	    should be used on it, since it is shared among threads. */
+	public ByteBuffer getDefBuffer() throws IOException
+	{
+		if (defBuffer==null) map();
+		return defBuffer;
+	}
+
+	/** Reads the int stored at pos in the <i>.wrd</i> file. */
+	public int readWordInt(long pos) throws IOException
+	{
+		ByteBuffer mapped = wordBuffer;
+		if (mapped!=null) return mapped.getInt((int) pos);
+
+		ByteBuffer buf = ByteBuffer.allocate(4);
+		readFully(wordChannel, buf, pos);
+		return buf.getInt(0);
+	}
+
+	/** Reads the definition stored at pos in the <i>.def</i> file. */
+	public String readDef(long pos) throws IOException
+	{
+		ByteBuffer mapped = defBuffer;
+		if (mapped!=null)
+			return MappedSyllableListTree.decodeUTF(mapped, (int) pos+2, mapped.getShort((int) pos) & 0xFFFF);
+
+		ByteBuffer buf = ByteBuffer.allocate(2);
+		readFully(defChannel, buf, pos);
+		int len = buf.getShort(0) & 0xFFFF;
+		byte utf[] = new byte[len+2];
+		buf = ByteBuffer.wrap(utf);
+		readFully(defChannel, buf, pos);
+		return new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+	}
+
+	/** Returns the dictionary descriptions read from the <i>.dic</i> file
+	    when the dictionary was opened, or null if there was none. */
+	public String[] getDictionaryDescriptions()
+	{
+		return dictionaries;
+	}
+
+	/** Returns the tags of the dictionaries, read from the <i>.dic</i> file
+	    along with their descriptions, or null if there was none. Unlike
+	    {@link DictionarySource#defTags} they belong to this dictionary
+	    only. */
+	public String[] getDictionaryTags()
+	{
+		return tags;
+	}
+
+	public void close()
+	{
+		try
+		{
+			wordRaf.close();
+			defRaf.close();
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException
+	{
+		int n;
+		while (buf.hasRemaining())
+		{
+			n = channel.read(buf, pos);
+			if (n<0) throw new EOFException();
+			pos+=n;
+		}
+	}
+
+	/** Buffered stream over a file channel that only uses positional reads. */
+	private static class ChannelInputStream extends InputStream
+	{
+		private FileChannel channel;
+		private ByteBuffer buf;
+		private long pos;
+
+		public ChannelInputStream(FileChannel channel, long pos)
+		{
+			this.channel = channel;
+			this.pos = pos;
+			buf = ByteBuffer.allocate(bufferSize);
+			buf.flip();
+		}
+
+		private boolean fill() throws IOException
+		{
+			int n;
+			buf.clear();
+			n = channel.read(buf, pos);
+			buf.flip();
+			if (n<=0) return false;
+			pos+=n;
+			return true;
+		}
+
+		public int read() throws IOException
+		{
+			if (!buf.hasRemaining() && !fill()) return -1;
+			return buf.get() & 0xFF;
+		}
+
+		public int read(byte b[], int off, int len) throws IOException
+		{
+			if (len==0) return 0;
+			if (!buf.hasRemaining() && !fill()) return -1;
+			if (len>buf.remaining()) len = buf.remaining();
+			buf.get(b, off, len);
+			return len;
+		}
+	}
+}
@@ -28,17 +28,36 @@ import java.io.IOException;
 */
 public abstract class DictionarySource
 {
+	/** Tags used by sources that were given none of their own. */
 	public static String[] defTags;
 	static
 	{
 		defTags=null;
 	}
 	
+	/** Tags of the dictionary this source belongs to, or null. */
+	private String tags[];
+	
 	public static void setTags(String tags[])
 	{
 		defTags = tags;
 	}
 	
+	/** Sets the tags of the dictionary this source belongs to, which are
+	    used instead of the ones set for all sources. */
+	public void setDefTags(String tags[])
+	{
+		this.tags = tags;
+	}
+	
+	/** Returns the tags of the dictionary this source belongs to or, if
+	    it was given none, the ones set for all sources. */
+	public String[] getDefTags()
+	{
+		if (tags!=null) return tags;
+		return defTags;
+	}
+	
 	/** Get the tag or tags associated to definition number i. */
 	public abstract String getTag(int i);
     
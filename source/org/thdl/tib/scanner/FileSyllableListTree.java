@@ -18,9 +18,10 @@ Contributor(s): ______________________________________.
 package org.thdl.tib.scanner;
 
 import java.io.BufferedReader;
+import java.io.DataInput;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
 
 import org.thdl.util.SimplifiedLinkedList;
 
@@ -31,9 +32,14 @@ import org.thdl.util.SimplifiedLinkedList;
 	<p>The words must be stored in a binary file tree structure format.
 	This can be done using the {@link BinaryFileGenerator}.</p>
 
+	<p>Each node refers to the {@link DictionaryHandle} of the dictionary
+	it was read from, so several dictionaries can be searched at once and
+	the same dictionary can be searched from several threads.</p>
+
     @author Andr&eacute;s Montano Pellegrini
     @see TibetanScanner
     @see CachedSyllableListTree
+    @see DictionaryHandle
     @see BinaryFileGenerator
 */
 
@@ -43,26 +49,30 @@ public class FileSyllableListTree implements SyllableListTree
 	private long def[];
 	protected long posLista;
 	protected DictionarySource defSource;
-	public static BitDictionarySource defSourcesWanted;
-	public static RandomAccessFile wordRaf=null;
-	private static RandomAccessFile defRaf=null;
-	public static int versionNumber;
+	protected DictionaryHandle handle;
 	
 	/** Creates the root. */
 	public FileSyllableListTree(String archivo) throws Exception
+	{
+		this(new DictionaryHandle(archivo));
+	}
+	
+	/** Creates the root of a dictionary that is already open. */
+	public FileSyllableListTree(DictionaryHandle handle)
 	{
 		sil = null;
 		def = null;
 		defSource = null;
 		
-		this.openFiles(archivo);
-		posLista = this.wordRaf.getFilePointer();
+		this.handle = handle;
+		posLista = handle.getRootPosition();
 	}
 	
 	/** Used to create each node (except the root)
 	*/
-	protected FileSyllableListTree(String sil, long []def, DictionarySource defSource, long posLista)
+	protected FileSyllableListTree(DictionaryHandle handle, String sil, long []def, DictionarySource defSource, long posLista)
 	{
+		this.handle=handle;
 		this.sil=sil;
 		this.def=def;
 		this.defSource = defSource;
@@ -81,99 +91,56 @@ public class FileSyllableListTree implements SyllableListTree
 	
 	public BitDictionarySource getDictionarySourcesWanted()
 	{
-	    return this.defSourcesWanted;
-	}
-	
-	public static void openFiles(String archivo) throws Exception
-	{
-	    openFiles(archivo, true);
+	    return handle.getDictionarySourcesWanted();
 	}
 	
-	public static void closeFiles()
+	public DictionaryHandle getDictionaryHandle()
 	{
-	    try
-	    {
-	        wordRaf.close();
-	        defRaf.close();
-	    }
-	    catch (Exception e)
-	    {
-	        e.printStackTrace();
-	    }
+		return handle;
 	}
 	
-	/** Initiates all static variables, it is called by the constructor of the root
-	    FileSyllableListTree (in the case of a pure file tree) or by the 
-	    constructor of CachedSyllableListTree in the case of the root being loaded
-	    into memory.
-	*/
-	public static void openFiles(String archivo, boolean backwardCompatible) throws Exception
+	/** Reads the node stored at the current position of raf. Whether it
+	    has more brothers can be found out through its dictionary source. */
+	static FileSyllableListTree readNode(DictionaryHandle handle, DataInput raf) throws IOException
 	{
-	    long fileSize;
-	    int pos;
+		String sil;
+		long pos, defSource[];
+		DictionarySource sourceDef;
+		int i;
 		
-		wordRaf = new RandomAccessFile(archivo + ".wrd", "r");
-		defRaf = new RandomAccessFile(archivo + ".def", "r");
-
-		fileSize = wordRaf.length();
-		wordRaf.seek(fileSize-4L);
-		pos = wordRaf.readInt();
+		// get "link" to children
+		pos = (long) raf.readInt();
+		// get syllable
+		sil = raf.readUTF();
+		// get dictionary information for each definition
+		sourceDef = handle.newDictionarySource();
+		sourceDef.read(raf);
 		
-		if (pos >> 8 == -1)
-		{
-		    versionNumber = pos & 255;
-		    
-		    // for now, only version 2 & 3 should be expected
-		    if (versionNumber != 3) versionNumber=2;
-		    wordRaf.seek(fileSize-8L);
-		    pos = wordRaf.readInt();
-		}
+		if (sourceDef.isEmpty()) defSource = null;
 		else
 		{
-		    // Updates the dictionary for backward compatibility.		    
-		    try
-		    {
-		        if (backwardCompatible)
-		        {
-    		        wordRaf.close();
-	    	        wordRaf = new RandomAccessFile(archivo + ".wrd", "rw");
-    		        wordRaf.seek(fileSize);    	    
-		            wordRaf.writeShort(-1);
-		            wordRaf.writeByte(-1);
-    		        
-		            // Because it didn't have a version number, must be version 2.
-		            versionNumber = 2;
-		            wordRaf.writeByte(versionNumber);
-		            wordRaf.close();
-		            wordRaf = new RandomAccessFile(archivo + ".wrd", "r");
-		        }
-		        else
-		        {
-		            // something is wrong
-		            ScannerLogger sl = new ScannerLogger();
-		            sl.writeLog("1\tFileSyllableListTree\t" + "size: " + fileSize + "; bytes: " + Integer.toHexString(pos));
-		            
-		            // try to open again, but not corrupting the file
-		            wordRaf = new RandomAccessFile(archivo + ".wrd", "r");
-
-		            fileSize = wordRaf.length();
-		            wordRaf.seek(fileSize-8L);
-		            pos = wordRaf.readInt();
-            		versionNumber = 3;
-		        }
-		    }
-		    catch (Exception e)
-		    {
-		        // dictionary is stored on a non-writable media. Do nothing.
-		    }
+			defSource = new long[sourceDef.countDefs()];
+			for (i=0; i<defSource.length; i++)
+			{
+				defSource[i] = (long) raf.readInt();
+			}
 		}
-		
-		defSourcesWanted = BitDictionarySource.getAllDictionaries();
-		
-	    wordRaf.seek(pos);		
+		return new FileSyllableListTree(handle, sil, defSource, sourceDef, pos);
 	}
 	
+	/** Reads the <i>.dic</i> file and returns the dictionary descriptions.
+	    Also updates the definition tags in the DictionarySource class. */
 	public static String[] getDictionaryDescriptions(String archivo)
+	{
+		String dic[][] = readDictionaryFile(archivo);
+		if (dic==null) return null;
+		DictionarySource.setTags(dic[1]);
+		return dic[0];
+	}
+	
+	/** Reads the <i>.dic</i> file and returns the dictionary descriptions
+	    followed by the definition tags, or null if it cannot be read. */
+	static String[][] readDictionaryFile(String archivo)
 	{
 		int n;
 		try
@@ -195,8 +162,8 @@ public class FileSyllableListTree implements SyllableListTree
 					ll2.addLast(s.substring(n+1).trim());
 				}
 			}
-			DictionarySource.setTags(ll2.toStringArray());
-			return ll1.toStringArray();
+			br.close();
+			return new String[][] {ll1.toStringArray(), ll2.toStringArray()};
 		}
 		catch (Exception e)
 		{
@@ -215,6 +182,19 @@ public class FileSyllableListTree implements SyllableListTree
 	}
 	
 	public Definitions getDefs(Boolean includeDefault)
+	{
+		return getDefs(handle.getDictionarySourcesWanted(), includeDefault);
+	}
+	
+	public Definitions getDefs(BitDictionarySource wanted, Boolean includeDefault)
+	{
+		return getDefs(handle, def, defSource, wanted, includeDefault);
+	}
+	
+	/** Reads the definitions stored at the positions in def that belong
+	    to the dictionaries in defSourcesWanted. Shared by the
+	    implementations of SyllableListTree that read the binary format. */
+	static Definitions getDefs(DictionaryHandle handle, long def[], DictionarySource defSource, BitDictionarySource defSourcesWanted, Boolean includeDefault)
 	{
             if (def==null) return null;
             DictionarySource defSourceAvail;
@@ -223,7 +203,7 @@ public class FileSyllableListTree implements SyllableListTree
             String defs[];
             int i, n=0;
 
-            if (versionNumber==2)
+            if (handle.getVersionNumber()==2)
             {
                 int defsAvail[] = ((BitDictionarySource) defSourceAvail).untangleDefs(), defsFound[] = ((BitDictionarySource) defSource).untangleDefs(def.length);
 
@@ -233,8 +213,7 @@ public class FileSyllableListTree implements SyllableListTree
                     for (i=0; i<defsAvail.length; i++)
                     {
                         while(defsAvail[i]!=defsFound[n]) n++;
-                        defRaf.seek(def[n]);
-                        defs[i] = defRaf.readUTF();
+                        defs[i] = handle.readDef(def[n]);
                     }
                 }
                 catch (Exception e)
@@ -255,8 +234,7 @@ public class FileSyllableListTree implements SyllableListTree
                         {
                                 if (!defSourceAvailBy.isEmpty(i))
                                 {
-                                    defRaf.seek(def[i]);
-                                    defs[n] = defRaf.readUTF();
+                                    defs[n] = handle.readDef(def[i]);
                                     n++;
                                 }
                             }
@@ -272,53 +250,66 @@ public class FileSyllableListTree implements SyllableListTree
 	}
 
 	public boolean hasDef()
+	{
+		return hasDef(handle.getDictionarySourcesWanted());
+	}
+
+	public boolean hasDef(BitDictionarySource wanted)
 	{
 		if (def==null) return false;
-		DictionarySource defSourceAvail = defSource.intersection(defSourcesWanted);
+		DictionarySource defSourceAvail = defSource.intersection(wanted);
 		return !defSourceAvail.isEmpty();
 	}
 
 	public SyllableListTree lookUp(String silStr)
 	{
-		String sil;
-		long pos, defSource[];
-		DictionarySource sourceDef;
-		
-		int i;
+		DataInput raf;
+		FileSyllableListTree node;
+		int comp;
 
 		if (silStr==null || posLista==-1) return null;
 		try
 		{
-			wordRaf.seek(posLista);
+			if (handle.isIndexed()) return binarySearch(silStr);
+			
+			raf = handle.openWordStream(posLista);
 			do
 			{
-				pos = (long) wordRaf.readInt();
-				sil = wordRaf.readUTF();
-				
-				if (versionNumber==2) sourceDef = new BitDictionarySource();
-				else sourceDef = new ByteDictionarySource();
-				sourceDef.read(wordRaf);
-				
-				if (sourceDef.isEmpty()) defSource = null;
-				else
-				{
-					defSource = new long[sourceDef.countDefs()];
-					for (i=0; i<defSource.length; i++)
-					{
-						defSource[i] = (long) wordRaf.readInt();
-					}
-				}
+				node = readNode(handle, raf);
+				comp = node.sil.compareTo(silStr);
 
-				if (sil.compareTo(silStr)>0)
+				if (comp>0)
 					return null;
-				if (sil.equals(silStr))
-					return new FileSyllableListTree(sil, defSource, sourceDef, pos);
+				if (comp==0)
+					return node;
 
-			}while(sourceDef.hasBrothers());
+			}while(node.defSource.hasBrothers());
 		}
 		catch (Exception e)
 		{
 		}
 		return null;
 	}	
+	
+	/** Searches the table of positions that precedes the siblings in
+	    version 4 of the format. */
+	private SyllableListTree binarySearch(String silStr) throws IOException
+	{
+		int principio=0, medio, fin, comp;
+		FileSyllableListTree node;
+		
+		// only the entries of the table that are probed are read
+		fin = handle.readWordInt(posLista)-1;
+		while (principio<=fin)
+		{
+			medio = (principio+fin)/2;
+			node = readNode(handle, handle.openWordStream(handle.readWordInt(posLista+4+4L*medio)));
+			comp = node.sil.compareTo(silStr);
+			if (comp==0) return node;
+			else
+				if (comp<0) principio = medio+1;
+				else fin = medio-1;
+		}
+		return null;
+	}
 }
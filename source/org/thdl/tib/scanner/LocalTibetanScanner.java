@@ -17,7 +17,9 @@
  */
 
 package org.thdl.tib.scanner;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Vector;
 
 /** Loads dictionary stored in tree format and searches for words recursively.
@@ -29,19 +31,54 @@ import java.util.Vector;
  */
 public class LocalTibetanScanner extends TibetanScanner
 {
-	public static String archivo;
-	private SyllableListTree raiz, silActual, lastCompSil, silAnterior;
-	private String wordActual, lastCompWord;
-	private Vector floatingSil;
-	
-	static
+	/** Number of distinct syllables remembered before starting over. */
+	private static final int maxSyllables = 16384;
+	private static final String noForms[] = new String[0];
+	private static final int noIds[] = new int[0];
+
+	/** A syllable of the input, with the forms it could have without its
+	    declension, in the order in which they are looked up. */
+	private static class Syllable
 	{
-		archivo = null;
+		String text;
+		/** Number of the syllable in a {@link CompactSyllableListTree}. */
+		int id;
+		/** Null until they are needed. */
+		String dec[];
+		int decIds[];
 	}
+
+	private DictionaryHandle handle;
+	private boolean ownsHandle;
+	private SyllableListTree raiz;
+	/** Set when raiz is a CompactSyllableListTree, whose nodes and
+	    syllables are searched by number. */
+	private CompactSyllableListTree compact;
+	/** Otherwise, the nodes found since the last word, which are then
+	    referred to by their position here. The first is raiz. */
+	private SyllableListTree visited[];
+	private int nVisited, root;
+	/** Nodes, numbered as lookUp returns them; -1 for none. */
+	private int silActual, lastCompSil, silAnterior;
+	/** The syllables of the word being scanned. */
+	private String wordActual[];
+	private int nSils;
+	/** The longest word found so far is made of the first lastCompLen-1
+	    syllables of wordActual followed by lastCompLast. */
+	private int lastCompLen;
+	private String lastCompLast;
+	private Vector floatingSil;
+	private HashMap syllables;
+	/** The dictionaries whose definitions this scanner looks for. */
+	private BitDictionarySource wanted;
 	
+	/** Returns the dictionaries this scanner looks up words in. Changing
+	    it only affects this scanner, unless the scanner opened the
+	    dictionary itself, in which case it is the selection of the
+	    whole dictionary. */
 	public BitDictionarySource getDictionarySource()
 	{
-		return raiz.getDictionarySourcesWanted();
+		return wanted;
 	}
 	
 	public LocalTibetanScanner(String arch) throws Exception
@@ -52,18 +89,224 @@ public class LocalTibetanScanner extends TibetanScanner
 	public LocalTibetanScanner(String arch, boolean backwardCompatible) throws Exception
 	{
 		super();
-		archivo = arch;
-		// raiz = new MemorySyllableListTree(archivo);
-		// raiz = new FileSyllableListTree(archivo);
-		raiz = new CachedSyllableListTree(archivo, backwardCompatible);
+		handle = new DictionaryHandle(arch, backwardCompatible);
+		ownsHandle = true;
+		// raiz = new MemorySyllableListTree(arch);
+		// raiz = new FileSyllableListTree(handle);
+		init(new CachedSyllableListTree(handle));
+		wanted = raiz.getDictionarySourcesWanted();
+	}
+	
+	/** Creates a scanner over a tree that was already loaded, for instance
+	    a {@link MappedSyllableListTree}. The tree is only read, so it
+	    can be shared by any number of scanners. The handle is not closed
+	    when this scanner is destroyed. */
+	public LocalTibetanScanner(SyllableListTree raiz, DictionaryHandle handle)
+	{
+		this(raiz, handle, BitDictionarySource.getAllDictionaries());
+	}
+	
+	/** Creates a scanner over a tree that was already loaded that only
+	    looks for definitions in the dictionaries in wanted. Scanners
+	    sharing the tree can each look in different dictionaries at the
+	    same time. If the tree is a {@link CompactSyllableListTree}, it
+	    is searched by the numbers of the syllables, without comparing
+	    strings. */
+	public LocalTibetanScanner(SyllableListTree raiz, DictionaryHandle handle, BitDictionarySource wanted)
+	{
+		super();
+		this.handle = handle;
+		ownsHandle = false;
+		init(raiz);
+		this.wanted = wanted;
+	}
+	
+	private void init(SyllableListTree raiz)
+	{
+		this.raiz = raiz;
+		if (raiz instanceof CompactSyllableListTree)
+		{
+			compact = (CompactSyllableListTree) raiz;
+			root = compact.getNode();
+		}
+		else
+		{
+			compact = null;
+			visited = new SyllableListTree[16];
+			visited[0] = raiz;
+			root = 0;
+		}
+		wordActual = new String[16];
 		floatingSil = new Vector();
+		syllables = new HashMap();
 		resetAll();
 	}
 	
+	public DictionaryHandle getDictionaryHandle()
+	{
+		return handle;
+	}
+	
 	private void resetAll()
 	{
-		silAnterior = silActual = lastCompSil = null;
-		wordActual = lastCompWord = null;
+		silAnterior = silActual = lastCompSil = -1;
+		nSils = lastCompLen = 0;
+		lastCompLast = null;
+		nVisited = 1;
+	}
+
+	/** Returns the child of node whose syllable is text (numbered id), or
+	    -1 if there is none. */
+	private int lookUp(int node, String text, int id)
+	{
+		SyllableListTree child;
+
+		if (compact!=null)
+		{
+			if (id<0) return -1;
+			return compact.findChild(node, id);
+		}
+		child = visited[node].lookUp(text);
+		if (child==null) return -1;
+		if (nVisited==visited.length)
+		{
+			SyllableListTree temp[] = new SyllableListTree[visited.length*2];
+			System.arraycopy(visited, 0, temp, 0, nVisited);
+			visited = temp;
+		}
+		visited[nVisited] = child;
+		return nVisited++;
+	}
+
+	private boolean hasDef(int node)
+	{
+		if (compact!=null) return compact.hasDef(node, wanted);
+		return visited[node].hasDef(wanted);
+	}
+
+	private Definitions getDefs(int node, Boolean includeDefaultDefinition)
+	{
+		if (compact!=null) return compact.getNode(node).getDefs(wanted, includeDefaultDefinition);
+		return visited[node].getDefs(wanted, includeDefaultDefinition);
+	}
+
+	/** Returns the syllable. With a compact tree, syllables are only
+	    numbered the first time they are seen. */
+	private Syllable intern(String text)
+	{
+		Syllable sil;
+
+		if (compact==null)
+		{
+			sil = new Syllable();
+			sil.text = text;
+			sil.id = -1;
+			return sil;
+		}
+		sil = (Syllable) syllables.get(text);
+		if (sil!=null) return sil;
+		if (syllables.size()>=maxSyllables) syllables.clear();
+		sil = new Syllable();
+		sil.text = text;
+		sil.id = compact.getSyllableId(text);
+		syllables.put(text, sil);
+		return sil;
+	}
+
+	/** Works out the forms of sil without declension the first time they
+	    are needed. */
+	private void findForms(Syllable sil)
+	{
+		String dec[], temp;
+		int decIds[], n=0;
+
+		if (sil.dec!=null) return;
+		temp = withOutDec(sil.text);
+		if (temp==null)
+		{
+			sil.dec = noForms;
+			sil.decIds = noIds;
+			return;
+		}
+		dec = new String[8];
+		decIds = new int[8];
+		// while to take into account very weird cases like le'u'i'o
+		while (temp!=null)
+		{
+			if (n+2>dec.length)
+			{
+				dec = Arrays.copyOf(dec, dec.length*2);
+				decIds = Arrays.copyOf(decIds, decIds.length*2);
+			}
+			n = addForm(dec, decIds, n, temp);
+			n = addForm(dec, decIds, n, temp + "\'");
+			temp = withOutDec(temp);
+		}
+		sil.decIds = Arrays.copyOf(decIds, n);
+		sil.dec = Arrays.copyOf(dec, n);
+	}
+
+	/** Adds form to the list of forms, unless the compact tree says
+	    it is not in the dictionary. Returns the new count. */
+	private int addForm(String dec[], int decIds[], int n, String form)
+	{
+		int id = -1;
+
+		if (compact!=null)
+		{
+			id = compact.getSyllableId(form);
+			if (id<0) return n;
+		}
+		dec[n] = form;
+		decIds[n] = id;
+		return n+1;
+	}
+
+	/** Returns the syllables of the word being scanned followed by last,
+	    separated by spaces. */
+	private String getWord(int count, String last)
+	{
+		StringBuffer sb;
+		int i;
+
+		if (count==0) return last;
+		sb = new StringBuffer();
+		for (i=0; i<count; i++)
+		{
+			sb.append(wordActual[i]);
+			sb.append(' ');
+		}
+		sb.append(last);
+		return sb.toString();
+	}
+
+	/** Returns the syllables of the word being scanned separated by spaces. */
+	private String getWordActual()
+	{
+		if (nSils==0) return null;
+		return getWord(nSils-1, wordActual[nSils-1]);
+	}
+
+	private String getLastCompWord()
+	{
+		return getWord(lastCompLen-1, lastCompLast);
+	}
+
+	private void addSyllable(String sil)
+	{
+		if (nSils==wordActual.length)
+			wordActual = Arrays.copyOf(wordActual, nSils*2);
+		wordActual[nSils++] = sil;
+	}
+
+	/** Emits the longest word found so far. */
+	private void addLastCompWord(Boolean includeDefaultDefinition)
+	{
+		Word w;
+
+		if ((lastCompLen==nSils && lastCompLast.equals(wordActual[nSils-1])) || !floatingSil.isEmpty()) w = new Word(getLastCompWord(), getDefs(lastCompSil, includeDefaultDefinition));
+		else w = new Word(getLastCompWord(), getWordActual(), getDefs(lastCompSil, includeDefaultDefinition));
+		addToken(w);
 	}
 
 	private void scanSyllable(String sil)
@@ -73,132 +316,103 @@ public class LocalTibetanScanner extends TibetanScanner
 	
 	private void scanSyllable(String sil, Boolean includeDefaultDefinition)
 	{
-		SyllableListTree resultado=null;
+		scanSyllable(intern(sil), includeDefaultDefinition);
+	}
+
+	private void scanSyllable(Syllable sil, Boolean includeDefaultDefinition)
+	{
+		int resultado, i;
 		Enumeration enumeration;
 		Word w;
-		String silSinDec;
-		boolean aadded;
 		Definitions defs;
 		
-		if (silActual==null)
-			silActual = raiz;
+		if (silActual<0)
+			silActual = root;
 		
 		silAnterior = silActual;
-		silActual = silActual.lookUp(sil);
+		silActual = lookUp(silActual, sil.text, sil.id);
 		
-		if (silActual != null)
+		if (silActual>=0)
 		{
-			if (silActual.hasDef())
+			if (hasDef(silActual))
 			{
-				lastCompWord = concatWithSpace(wordActual, sil);
+				lastCompLen = nSils+1;
+				lastCompLast = sil.text;
 				lastCompSil = silActual;
 				floatingSil.removeAllElements();
 			}
 			else
 			{
-				silSinDec = withOutDec(sil);
-				resultado=null;	
-				// while to take into account very weird cases like le'u'i'o
-				while (resultado == null && silSinDec!=null)
+				findForms(sil);
+				for (i=0; i<sil.dec.length; i++)
 				{
-					resultado = silAnterior.lookUp(silSinDec);
-					if (resultado == null || !resultado.hasDef())
+					resultado = lookUp(silAnterior, sil.dec[i], sil.decIds[i]);
+					if (resultado>=0 && hasDef(resultado))
 					{
-						silSinDec += "\'";
-						resultado = silAnterior.lookUp(silSinDec);
-						aadded=true;
-					}
-					else aadded=false;
-					
-					if (resultado!=null && resultado.hasDef())
-					{
-						lastCompWord = concatWithSpace(wordActual, silSinDec);
+						lastCompLen = nSils+1;
+						lastCompLast = sil.dec[i];
 						lastCompSil = resultado;
-						wordActual = concatWithSpace(wordActual, sil);
+						addSyllable(sil.text);
 						floatingSil.removeAllElements();
-					}
-					else
-					{
-						resultado = null;
-						if (aadded) silSinDec = silSinDec.substring(0, silSinDec.length()-1);
-						silSinDec = withOutDec(silSinDec);
+						return;
 					}
 				}
-				if (resultado!=null) return;
 				
-				if (lastCompSil!=null)
+				if (lastCompSil>=0)
 					floatingSil.addElement(sil);
 			}
-			wordActual = concatWithSpace(wordActual, sil);
+			addSyllable(sil.text);
 		}
 		else
 		{
-			silSinDec = withOutDec(sil);
-			resultado = null;
-			// while to take into account very weird cases like le'u'i'o
-			while (resultado==null && silSinDec!=null)
+			findForms(sil);
+			for (i=0; i<sil.dec.length; i++)
 			{
-				resultado = silAnterior.lookUp(silSinDec);
+				resultado = lookUp(silAnterior, sil.dec[i], sil.decIds[i]);
 				/*  here we don't have to worry about being in the middle of a
 				 word since the declension marks that it is the end of a
 				 word.
 				 */
-				if (resultado == null || !resultado.hasDef())
-				{
-					silSinDec += "\'";
-					resultado = silAnterior.lookUp(silSinDec);
-					aadded=true;
-				}
-				else aadded=false;
 				// si funciona sin declension arreglado problema
-				if (resultado!=null && resultado.hasDef())
+				if (resultado>=0 && hasDef(resultado))
 				{
-					wordList.addLast(new Word(concatWithSpace(wordActual, silSinDec), concatWithSpace(wordActual,sil), resultado.getDefs(includeDefaultDefinition)));
+					addToken(new Word(getWord(nSils, sil.dec[i]), getWord(nSils, sil.text), getDefs(resultado, includeDefaultDefinition)));
 					resetAll();
 					floatingSil.removeAllElements();
+					return;
 				}
-				else
-				{
-					resultado = null;
-					if (aadded) silSinDec = silSinDec.substring(0, silSinDec.length()-1);
-					silSinDec = withOutDec(silSinDec);
-				}
-				
 			}
-			if (resultado!=null) return;
 			
-			if (lastCompSil!=null)
+			if (lastCompSil>=0)
 			{
-				if (lastCompWord.equals(wordActual) || !floatingSil.isEmpty()) w = new Word(lastCompWord, lastCompSil.getDefs(includeDefaultDefinition));
-				else w = new Word(lastCompWord, wordActual, lastCompSil.getDefs(includeDefaultDefinition));
-				wordList.addLast(w);
+				addLastCompWord(includeDefaultDefinition);
 				this.resetAll();
 				
 				enumeration = floatingSil.elements();
 				floatingSil = new Vector();
 				while (enumeration.hasMoreElements())
-					scanSyllable((String)enumeration.nextElement(), includeDefaultDefinition);
+					scanSyllable((Syllable)enumeration.nextElement(), includeDefaultDefinition);
 				
 				scanSyllable(sil, includeDefaultDefinition);
 			}
 			else
 			{
-				if (silAnterior!=raiz)
+				if (silAnterior!=root)
 				{
 					if (includeDefaultDefinition)
 					{
-						defs = silAnterior.getDefs(includeDefaultDefinition);
-						if (defs.def.length>0) w = new Word(wordActual, defs);
-						else w = new Word(wordActual, "[incomplete word]");
-					} else w = new Word(wordActual, "[incomplete word]"); 
-					wordList.addLast(w);
+						defs = getDefs(silAnterior, includeDefaultDefinition);
+						if (defs.def.length>0) w = new Word(getWordActual(), defs);
+						else w = new Word(getWordActual(), "[incomplete word]");
+					} else w = new Word(getWordActual(), "[incomplete word]"); 
+					addToken(w);
 					this.resetAll();
 					scanSyllable(sil, includeDefaultDefinition);
 				}
 				else
 				{
-					w = new Word(sil, "[not found]");
-					wordList.addLast(w);
+					w = new Word(sil.text, "[not found]");
+					addToken(w);
 					this.resetAll();
 				}
 			}
@@ -213,36 +427,25 @@ public class LocalTibetanScanner extends TibetanScanner
 	public void finishUp(Boolean includeDefaultDefinition)
 	{
 		Enumeration enumeration;
-		Word w;
 		
-		while (lastCompSil!=null)
+		while (lastCompSil>=0)
 		{
-			if (lastCompWord.equals(wordActual) || !floatingSil.isEmpty()) w = new Word(lastCompWord, lastCompSil.getDefs(includeDefaultDefinition));
-			else w = new Word(lastCompWord, wordActual, lastCompSil.getDefs(includeDefaultDefinition));
-			wordList.addLast(w);
+			addLastCompWord(includeDefaultDefinition);
 			this.resetAll();
 			
 			enumeration = floatingSil.elements();
 			floatingSil = new Vector();
 			while (enumeration.hasMoreElements())
-				scanSyllable((String)enumeration.nextElement(), includeDefaultDefinition);
+				scanSyllable((Syllable)enumeration.nextElement(), includeDefaultDefinition);
 		}
 		
-		if (silActual!=null)
+		if (silActual>=0)
 		{
-			wordList.addLast(new Word(wordActual, "[incomplete word]"));
+			addToken(new Word(getWordActual(), "[incomplete word]"));
 			this.resetAll();
 		}
 	}
 	
-	private static String concatWithSpace(String s1, String s2)
-	{
-		if (s1==null || s1.equals(""))
-			return s2;
-		else
-			return s1 + ' ' + s2;
-	}
-	
 	private static String withOutDec(String sil)
 	{
 		boolean isDeclined =false;
@@ -299,7 +502,7 @@ public class LocalTibetanScanner extends TibetanScanner
 				if (linea.equals(""))
 				{
 					finishUp();
-					wordList.addLast(new PunctuationMark('\n'));
+					addToken(new PunctuationMark('\n'));
 				}
 				else
 					scanLine(linea);
@@ -325,7 +528,7 @@ public class LocalTibetanScanner extends TibetanScanner
 		if (linea.equals(""))
 		{
 			finishUp(includeDefaultDefinition);
-			wordList.addLast(new PunctuationMark('\n'));
+			addToken(new PunctuationMark('\n'));
 			return;
 		}
 		
@@ -347,7 +550,7 @@ public class LocalTibetanScanner extends TibetanScanner
 							finishUp(includeDefaultDefinition);
 							doNotFinishUp=false;
 						}
-						wordList.addLast(new PunctuationMark(ch));
+						addToken(new PunctuationMark(ch));
 					}
 					else if (!Manipulate.isEndOfSyllableMark(ch))
 						break;
@@ -388,23 +591,27 @@ public class LocalTibetanScanner extends TibetanScanner
 				if (!doNotFinishUp)
 				{
 					finishUp(includeDefaultDefinition);
-					wordList.addLast(new PunctuationMark(ch));
+					addToken(new PunctuationMark(ch));
 				}
 				init = fin+1;
 			}
 	}
 	
-	/** Looks for .dic file, and returns the dictionary descriptions.
-	 Also updates the definitionTags in the Definitions class.
+	/** Returns the dictionary descriptions read from the .dic file.
 	 */
 	public String[] getDictionaryDescriptions()
 	{
-		return FileSyllableListTree.getDictionaryDescriptions(archivo);
+		return handle.getDictionaryDescriptions();
+	}
+	
+	public String[] getDictionaryTags()
+	{
+		return handle.getDictionaryTags();
 	}
 	
 	public void destroy()
 	{
-		FileSyllableListTree.closeFiles();
+		if (ownsHandle) handle.close();
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,343 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+package org.thdl.tib.scanner;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** Searches the words in the binary files mapped into memory. Unlike
+	the {@link FileSyllableListTree}, siblings are compared in place
+	against the bytes of the file (in the modified UTF-8 written by
+	<code>writeUTF</code>), so no Strings or {@link DictionarySource}s
+	are created for the siblings that are skipped. The syllable and the
+	definitions of a node are only decoded when they are requested.
+
+	<p>The words must be stored in a binary file tree structure format.
+	This can be done using the {@link BinaryFileGenerator}.</p>
+
+    @see TibetanScanner
+    @see DictionaryHandle
+    @see BinaryFileGenerator
+*/
+public class MappedSyllableListTree implements SyllableListTree
+{
+	/** Used by BitDictionarySource to mark brothers and the available dictionaries. */
+	private static final int bitLastBit=1073741824;
+	private static final int bitAllDicts=bitLastBit-1;
+	/** Used by ByteDictionarySource to mark brothers and the available dictionaries. */
+	private static final int byteLastBit=64;
+	private static final int byteAllDicts=byteLastBit-1;
+
+	private DictionaryHandle handle;
+	private ByteBuffer wrd;
+	private boolean bitFormat, indexed;
+
+	/** Position of the node's record in the <i>.wrd</i> file; -1 for the root. */
+	private int recPos;
+	/** Position of the first child; -1 if it has none. */
+	private int posLista;
+
+	/** Creates the root. */
+	public MappedSyllableListTree(String archivo) throws Exception
+	{
+		this(new DictionaryHandle(archivo));
+	}
+
+	/** Creates the root of a dictionary that is already open, mapping
+	    its files into memory. */
+	public MappedSyllableListTree(DictionaryHandle handle) throws IOException
+	{
+		this.handle = handle;
+		wrd = handle.getWordBuffer();
+		bitFormat = handle.getVersionNumber()==2;
+		indexed = handle.isIndexed();
+		recPos = -1;
+		posLista = (int) handle.getRootPosition();
+	}
+
+	/** Used to create each node (except the root). */
+	private MappedSyllableListTree(MappedSyllableListTree parent, int recPos)
+	{
+		handle = parent.handle;
+		wrd = parent.wrd;
+		bitFormat = parent.bitFormat;
+		indexed = parent.indexed;
+		this.recPos = recPos;
+		posLista = wrd.getInt(recPos);
+	}
+
+	public DictionaryHandle getDictionaryHandle()
+	{
+		return handle;
+	}
+
+	public String toString()
+	{
+		if (recPos<0) return null;
+		return decodeUTF(wrd, recPos+6, wrd.getShort(recPos+4) & 0xFFFF);
+	}
+
+	/** Returns the position of the dictionary information of the record
+	    at pos. */
+	private int getSourcePos(int pos)
+	{
+		return pos + 6 + (wrd.getShort(pos+4) & 0xFFFF);
+	}
+
+	private boolean hasBrothers(int pos)
+	{
+		int sourcePos = getSourcePos(pos);
+		if (bitFormat) return (wrd.getInt(sourcePos) & bitLastBit)!=0;
+		return (wrd.get(sourcePos) & byteLastBit)!=0;
+	}
+
+	private int countDefs(int sourcePos)
+	{
+		if (bitFormat) return Integer.bitCount(wrd.getInt(sourcePos) & bitAllDicts);
+		return wrd.get(sourcePos) & byteAllDicts;
+	}
+
+	/** Returns the position of the positions of the definitions of the
+	    record whose dictionary information is at sourcePos. */
+	private int getDefsPos(int sourcePos)
+	{
+		int i, n;
+		if (bitFormat) return sourcePos + 4;
+		n = wrd.get(sourcePos) & byteAllDicts;
+		sourcePos++;
+		for (i=0; i<n; i++)
+			while ((wrd.get(sourcePos++) & byteLastBit)!=0);
+		return sourcePos;
+	}
+
+	/** Returns the position of the record following the one at pos. */
+	private int nextRecord(int pos)
+	{
+		int sourcePos = getSourcePos(pos);
+		return getDefsPos(sourcePos) + 4*countDefs(sourcePos);
+	}
+
+	public SyllableListTree lookUp(String silStr)
+	{
+		int pos, comp;
+
+		if (silStr==null || posLista==-1) return null;
+		if (indexed) return binarySearch(silStr);
+		pos = posLista;
+		while (true)
+		{
+			comp = compareUTF(wrd, pos+6, wrd.getShort(pos+4) & 0xFFFF, silStr);
+			if (comp>0) return null;
+			if (comp==0) return new MappedSyllableListTree(this, pos);
+			if (!hasBrothers(pos)) return null;
+			pos = nextRecord(pos);
+		}
+	}
+
+	/** Searches the table of positions that precedes the siblings in
+	    version 4 of the format. */
+	private SyllableListTree binarySearch(String silStr)
+	{
+		int principio=0, medio, fin, comp, pos;
+
+		fin = wrd.getInt(posLista)-1;
+		while (principio<=fin)
+		{
+			medio = (principio+fin)/2;
+			pos = wrd.getInt(posLista + 4 + 4*medio);
+			comp = compareUTF(wrd, pos+6, wrd.getShort(pos+4) & 0xFFFF, silStr);
+			if (comp==0) return new MappedSyllableListTree(this, pos);
+			else
+				if (comp<0) principio = medio+1;
+				else fin = medio-1;
+		}
+		return null;
+	}
+
+	public boolean hasDef()
+	{
+		return hasDef(handle.getDictionarySourcesWanted());
+	}
+
+	public boolean hasDef(BitDictionarySource wantedSource)
+	{
+		int sourcePos, n, i, b, dicts, wanted;
+
+		if (recPos<0) return false;
+		sourcePos = getSourcePos(recPos);
+		wanted = wantedSource.getDicts() & bitAllDicts;
+		if (bitFormat) return (wrd.getInt(sourcePos) & wanted)!=0;
+
+		n = wrd.get(sourcePos++) & byteAllDicts;
+		for (i=0; i<n; i++)
+		{
+			dicts = 0;
+			do
+			{
+				b = wrd.get(sourcePos++);
+				dicts |= 1 << (b & byteAllDicts);
+			} while ((b & byteLastBit)!=0);
+			if ((dicts & wanted)!=0) return true;
+		}
+		return false;
+	}
+
+	public DictionarySource getDictionarySource()
+	{
+		DictionarySource sourceDef;
+
+		if (recPos<0) return null;
+		sourceDef = handle.newDictionarySource();
+		try
+		{
+			sourceDef.read(new DataInputStream(new BufferInputStream(wrd, getSourcePos(recPos))));
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		return sourceDef;
+	}
+
+	public BitDictionarySource getDictionarySourcesWanted()
+	{
+		return handle.getDictionarySourcesWanted();
+	}
+
+	public String getDef()
+	{
+		return getDefs().toString();
+	}
+
+	public Definitions getDefs()
+	{
+		return getDefs(false);
+	}
+
+	public Definitions getDefs(Boolean includeDefault)
+	{
+		return getDefs(handle.getDictionarySourcesWanted(), includeDefault);
+	}
+
+	public Definitions getDefs(BitDictionarySource wanted, Boolean includeDefault)
+	{
+		int i, n, sourcePos, defsPos;
+		long def[];
+
+		if (recPos<0) return null;
+		sourcePos = getSourcePos(recPos);
+		n = countDefs(sourcePos);
+		if (n==0) return null;
+		defsPos = getDefsPos(sourcePos);
+		def = new long[n];
+		for (i=0; i<n; i++)
+			def[i] = wrd.getInt(defsPos + 4*i);
+		return FileSyllableListTree.getDefs(handle, def, getDictionarySource(), wanted, includeDefault);
+	}
+
+	/** Compares the string stored at pos in buf in modified UTF-8 with s,
+	    without decoding it. The result has the same sign as the one of
+	    String.compareTo. */
+	static int compareUTF(ByteBuffer buf, int pos, int len, String s)
+	{
+		int i, n = s.length(), end = pos + len, c, b, comp;
+
+		for (i=0; i<n; i++)
+		{
+			c = s.charAt(i);
+			if (c>0 && c<0x80)
+			{
+				if (pos>=end) return -1;
+				comp = (buf.get(pos++) & 0xFF) - c;
+				if (comp!=0) return comp;
+			}
+			else if (c<0x800)
+			{
+				if (pos>=end) return -1;
+				b = 0xC0 | (c >> 6);
+				comp = (buf.get(pos++) & 0xFF) - b;
+				if (comp!=0) return comp;
+				if (pos>=end) return -1;
+				b = 0x80 | (c & 0x3F);
+				comp = (buf.get(pos++) & 0xFF) - b;
+				if (comp!=0) return comp;
+			}
+			else
+			{
+				if (pos>=end) return -1;
+				b = 0xE0 | (c >> 12);
+				comp = (buf.get(pos++) & 0xFF) - b;
+				if (comp!=0) return comp;
+				if (pos>=end) return -1;
+				b = 0x80 | ((c >> 6) & 0x3F);
+				comp = (buf.get(pos++) & 0xFF) - b;
+				if (comp!=0) return comp;
+				if (pos>=end) return -1;
+				b = 0x80 | (c & 0x3F);
+				comp = (buf.get(pos++) & 0xFF) - b;
+				if (comp!=0) return comp;
+			}
+		}
+		if (pos<end) return 1;
+		return 0;
+	}
+
+	/** Decodes the len bytes of modified UTF-8 stored at pos in buf. */
+	static String decodeUTF(ByteBuffer buf, int pos, int len)
+	{
+		char chars[] = new char[len];
+		int n=0, end = pos + len, b;
+
+		while (pos<end)
+		{
+			b = buf.get(pos++) & 0xFF;
+			if (b<0x80) chars[n++] = (char) b;
+			else if ((b & 0xE0)==0xC0)
+			{
+				chars[n++] = (char) (((b & 0x1F) << 6) | (buf.get(pos++) & 0x3F));
+			}
+			else
+			{
+				chars[n++] = (char) (((b & 0x0F) << 12) | ((buf.get(pos) & 0x3F) << 6) | (buf.get(pos+1) & 0x3F));
+				pos+=2;
+			}
+		}
+		return new String(chars, 0, n);
+	}
+
+	/** Reads a shared buffer from a given position using only absolute gets. */
+	private static class BufferInputStream extends InputStream
+	{
+		private ByteBuffer buf;
+		private int pos;
+
+		public BufferInputStream(ByteBuffer buf, int pos)
+		{
+			this.buf = buf;
+			this.pos = pos;
+		}
+
+		public int read()
+		{
+			if (pos>=buf.limit()) return -1;
+			return buf.get(pos++) & 0xFF;
+		}
+	}
+}
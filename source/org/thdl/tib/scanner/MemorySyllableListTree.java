@@ -165,11 +165,25 @@ public class MemorySyllableListTree extends SimplifiedLinkedList implements Syll
 		return getDefs();
 	}
 	
+	/** Same as getDefs() because it does not support multiple dictionaries.
+	*/
+	public Definitions getDefs(BitDictionarySource wanted, Boolean includeDefault)
+	{
+		return getDefs();
+	}
+	
 	public boolean hasDef()
 	{
 		return def!=null;
 	}
 
+	/** Same as hasDef() because it does not support multiple dictionaries.
+	*/
+	public boolean hasDef(BitDictionarySource wanted)
+	{
+		return hasDef();
+	}
+
 	private void println(PrintStream ps)
 	{
 		println(ps, "");
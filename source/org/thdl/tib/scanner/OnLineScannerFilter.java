@@ -19,6 +19,8 @@
 package org.thdl.tib.scanner;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
@@ -40,6 +42,7 @@ public class OnLineScannerFilter extends HttpServlet
 {
 	private final static String propertyFile = "dictionary";
 	private final static String dictNameProperty = "onlinescannerfilter.dict-file-name";
+	private final static String inMemoryProperty = "onlinescannerfilter.dict-in-memory";
 	private final static String otherLinksProperty = "onlinescannerfilter.links-to-other-stuff";
 	private final static String moreLinksProperty = "onlinescannerfilter.links-to-more-stuff";
 	private final static String smallerLinksProperty = "onlinescannerfilter.links-to-smaller-stuff";
@@ -49,8 +52,11 @@ public class OnLineScannerFilter extends HttpServlet
 	private final static String tibetanStr = "tibetan";
 	
 	ResourceBundle rb;
-	private TibetanScanner scanner;
-	private String dictionaries[];
+	/* The dictionary is opened once and its tree is shared, read-only,
+	   by all requests; each request scans with its own scanner. */
+	private DictionaryHandle handle;
+	private SyllableListTree root;
+	private String dictionaries[], tags[];
 	private ScannerLogger sl;
 	
 	public OnLineScannerFilter() //throws Exception
@@ -61,7 +67,9 @@ public class OnLineScannerFilter extends HttpServlet
 		
 		try
 		{
-			scanner = new LocalTibetanScanner(rb.getString(dictNameProperty), false);
+			handle = new DictionaryHandle(rb.getString(dictNameProperty), false);
+			if (isInMemory(rb)) root = new CompactSyllableListTree(handle);
+			else root = new MappedSyllableListTree(handle);
 		}
 		catch (Exception e)
 		{
@@ -69,11 +77,26 @@ public class OnLineScannerFilter extends HttpServlet
 			sl.writeException(e);
 		}
 		
-		dictionaries = scanner.getDictionaryDescriptions();
+		dictionaries = handle.getDictionaryDescriptions();
+		tags = handle.getDictionaryTags();
 		sl.writeLog("2\t1");
 	}
+
+	/** Returns true if the whole dictionary should be loaded into memory
+	    instead of being read from the mapped files. */
+	static boolean isInMemory(ResourceBundle rb)
+	{
+		try
+		{
+			return rb.getString(inMemoryProperty).trim().toLowerCase().equals("yes");
+		}
+		catch (MissingResourceException e)
+		{
+			return false;
+		}
+	}
 	
-	synchronized public void doGet(HttpServletRequest request,
+	public void doGet(HttpServletRequest request,
 			HttpServletResponse response) //throws IOException, ServletException
 	{
 		String answer, parrafo = null, checkboxName;
@@ -174,8 +197,7 @@ public class OnLineScannerFilter extends HttpServlet
 			}
 			out.println("  </td></tr>");
 			int i;
-			ds = scanner.getDictionarySource();
-			ds.reset();
+			ds = new BitDictionarySource();
 			checkedDicts = new boolean[dictionaries.length];
 			allUnchecked=true;
 			for (i=0; i<dictionaries.length; i++)
@@ -209,9 +231,9 @@ public class OnLineScannerFilter extends HttpServlet
 					ds.add(i);
 				}
 				if (dictionaries[i]!=null)
-					out.print(">" + dictionaries[i] + " (" + DictionarySource.defTags[i] + ")&nbsp;&nbsp;&nbsp;");
+					out.print(">" + dictionaries[i] + " (" + tags[i] + ")&nbsp;&nbsp;&nbsp;");
 				else
-					out.print(">" + DictionarySource.defTags[i] + "&nbsp;&nbsp;&nbsp;");
+					out.print(">" + tags[i] + "&nbsp;&nbsp;&nbsp;");
 //				out.println(" + "</td>");
 			}
 			out.println("  </td></tr>");
@@ -276,7 +298,7 @@ public class OnLineScannerFilter extends HttpServlet
 			sl.writeLog("4\t1");
 			if (ds!=null && !ds.isEmpty())
 			{
-				desglosar(parrafo, out, wantsTibetan);
+				desglosar(parrafo, ds, out, wantsTibetan);
 			}
 		}
 		else sl.writeLog("3\t1");
@@ -292,11 +314,15 @@ public class OnLineScannerFilter extends HttpServlet
 		doGet(request, response);
 	}
 	
-	synchronized public void desglosar(String in, PrintWriter pw, boolean tibetan)
+	/** Scans in looking only for the definitions in the dictionaries
+	    in ds, and prints the results to pw. */
+	public void desglosar(String in, BitDictionarySource ds, PrintWriter pw, boolean tibetan)
 	{
 		//boolean hayMasLineas=true;
 		//int init = 0, fin;
 		String tmp;
+		TibetanScanner scanner;
+		TextPrinter printer;
 		
 		if (!in.equals(""))
 		{
@@ -315,13 +341,15 @@ public class OnLineScannerFilter extends HttpServlet
 			 
 			 init = fin+1;
 			 }	*/
-			scanner.clearTokens();
+			scanner = new LocalTibetanScanner(root, handle, ds);
+			printer = new TextPrinter(pw, tibetan);
+			scanner.setTokenSink(printer);
 			in = Manipulate.NCR2UnicodeString(in);
 			if (Manipulate.guessIfUnicode(in)) in = BasicTibetanTranscriptionConverter.unicodeToWylie(in);
 			else if (Manipulate.guessIfAcip(in)) in = BasicTibetanTranscriptionConverter.acipToWylie(in);
 			scanner.scanBody(in);
 			scanner.finishUp();
-			printText(pw, tibetan);
+			printer.finish();
 			try
 			{
 				tmp = rb.getString(moreLinksProperty);
@@ -333,36 +361,52 @@ public class OnLineScannerFilter extends HttpServlet
 			{
 				// do nothing
 			}
-			printAllDefs(pw, tibetan);
-			scanner.clearTokens();
+			printAllDefs(printer.getWords(), pw, tibetan);
 		}
 	}
 	
-	public void printText(PrintWriter pw, boolean tibetan)
+	/** Prints the text with links to the definitions as the scanner finds
+	    each token, keeping the first occurrence of each word for the
+	    table of definitions. */
+	private static class TextPrinter implements TokenSink
 	{
-		Token words[] = scanner.getTokenArray();
-		SwingWord word;
-		char pm;
-		int i;
+		private PrintWriter pw;
+		private boolean tibetan, started;
+		private ArrayList words;
+		private HashSet seen;
 		
-		if (words==null) return;
+		public TextPrinter(PrintWriter pw, boolean tibetan)
+		{
+			this.pw = pw;
+			this.tibetan = tibetan;
+			started = false;
+			words = new ArrayList();
+			seen = new HashSet();
+		}
 		
-		pw.print("<p>");
-		for (i=0; i < words.length; i++)
+		public void add(Token token)
 		{
+			SwingWord word;
+			char pm;
 			
-			if (words[i] instanceof Word)
+			if (!started)
+			{
+				pw.print("<p>");
+				started = true;
+			}
+			if (token instanceof Word)
 			{
-				word = new SwingWord((Word)words[i]);
+				if (seen.add(token)) words.add(token);
+				word = new SwingWord((Word)token);
 				// if (word.getDefs().getDictionarySource()!=null)
 				pw.print(word.getLink(tibetan));
 				// else pw.print(word.getWylie() + " ");
 			}
 			else
 			{
-				if (words[i] instanceof PunctuationMark)
+				if (token instanceof PunctuationMark)
 				{
-					pm = words[i].toString().charAt(0);
+					pm = token.toString().charAt(0);
 					switch (pm)
 					{
 					case '\n':
@@ -381,20 +425,30 @@ public class OnLineScannerFilter extends HttpServlet
 				}
 			}
 		}
-		pw.println("</p>");
+		
+		/** Called after the last token. */
+		public void finish()
+		{
+			if (started) pw.println("</p>");
+		}
+		
+		/** Returns the words found, without repetitions, or null if
+		    there were none. */
+		public Word[] getWords()
+		{
+			if (words.isEmpty()) return null;
+			return (Word[]) words.toArray(new Word[words.size()]);
+		}
 	}
 	
-	public void printAllDefs(PrintWriter pw, boolean tibetan) {
+	public void printAllDefs(Word words[], PrintWriter pw, boolean tibetan) {
 		int i, j, k=0;
-		Word words[];
 		SwingWord word = null;
 		Definitions defs;
 		String tag;
 		DictionarySource ds;
 		ByteDictionarySource sourceb=null;
 		
-		words = scanner.getWordArray(false);
-		
 		if (words == null) return;
 		pw.println("<table border=\"1\" width=\"100%\">");
 		for (j = 0; j < words.length; j++) {
@@ -407,7 +461,7 @@ public class OnLineScannerFilter extends HttpServlet
 					tag = "&nbsp;";
 				}
 				else {
-					if (FileSyllableListTree.versionNumber==2) {
+					if (ds instanceof BitDictionarySource) {
 						tag = ds.getTag(0);
 					}
 					else {
@@ -427,7 +481,7 @@ public class OnLineScannerFilter extends HttpServlet
 				pw.println("  </tr>");
 				for (i = 1; i < defs.def.length; i++) {
 					pw.println("  <tr>");
-					if (FileSyllableListTree.versionNumber==2) {
+					if (ds instanceof BitDictionarySource) {
 						tag = ds.getTag(i);
 					}
 					else {
@@ -453,6 +507,7 @@ public class OnLineScannerFilter extends HttpServlet
 		super.destroy();
 		sl.setUserIP(null);
 		sl.writeLog("5\t1");
-		scanner.destroy();
+		sl.flush();
+		handle.close();
 	}
 }
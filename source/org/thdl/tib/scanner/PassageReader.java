@@ -0,0 +1,331 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+ */
+package org.thdl.tib.scanner;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/** Reads the passages sent in one request to the batch mode of the
+	{@link RemoteScannerFilter}. The input is either a JSON array or a
+	sequence of JSON values, usually one per line (NDJSON). Each value is
+	either the string to scan or an object whose <code>text</code> member
+	is the string to scan and whose optional <code>id</code> member is
+	sent back with the results. Other members are ignored. An id must be
+	a string, a number, true, false or null; a passage with any other id
+	is read, but is not scanned.
+
+	<p>Passages are read one at a time, so the whole input is never held
+	in memory.</p>
+
+    @see RemoteScannerFilter
+ */
+class PassageReader
+{
+	/** One passage of the input. */
+	static class Passage
+	{
+		/** Position of the passage in the input, starting with 0. */
+		final int index;
+		/** The <code>id</code> member as JSON on a single line, or
+		    null. */
+		final String id;
+		final String text;
+		/** Why the passage cannot be scanned, or null. */
+		final String error;
+
+		Passage(int index, String id, String text, String error)
+		{
+			this.index = index;
+			this.id = id;
+			this.text = text;
+			this.error = error;
+		}
+	}
+
+	private Reader in;
+	/** The next character, -1 at the end of the input, or -2 if it has not
+	    been read yet. */
+	private int next;
+	private boolean started, inArray, finished;
+	private int count;
+	private long pos;
+
+	PassageReader(Reader in)
+	{
+		this.in = in;
+		next = -2;
+		started = inArray = finished = false;
+		count = 0;
+		pos = 0;
+	}
+
+	/** Returns the next passage, or null if there are no more.
+	    @throws IOException if the input cannot be read or is not
+	    what was expected */
+	Passage next() throws IOException
+	{
+		int c;
+
+		if (finished) return null;
+		skipSpace();
+		if (!started)
+		{
+			started = true;
+			if (peek()=='[')
+			{
+				read();
+				inArray = true;
+				skipSpace();
+				if (peek()==']')
+				{
+					read();
+					finished = true;
+					return null;
+				}
+			}
+		}
+		else if (inArray)
+		{
+			c = read();
+			if (c==']')
+			{
+				finished = true;
+				return null;
+			}
+			if (c!=',') throw error("expected , or ]");
+			skipSpace();
+		}
+		if (peek()<0)
+		{
+			if (inArray) throw error("unexpected end of input");
+			finished = true;
+			return null;
+		}
+		return readPassage();
+	}
+
+	private Passage readPassage() throws IOException
+	{
+		String id = null, text = null, error = null, key;
+		int c = peek();
+
+		if (c=='"') return new Passage(count++, null, readString(), null);
+		if (c!='{') throw error("expected a string or an object");
+		read();
+		skipSpace();
+		if (peek()=='}') read();
+		else while (true)
+		{
+			skipSpace();
+			key = readString();
+			skipSpace();
+			if (read()!=':') throw error("expected :");
+			skipSpace();
+			if (key.equals("text"))
+			{
+				if (peek()!='"') throw error("text must be a string");
+				text = readString();
+			}
+			else if (key.equals("id"))
+			{
+				id = readId();
+				if (id==null) error = "id must be a string, a number, true, false or null";
+			}
+			else skipValue();
+			skipSpace();
+			c = read();
+			if (c=='}') break;
+			if (c!=',') throw error("expected , or }");
+		}
+		if (text==null) throw error("passage without text");
+		return new Passage(count++, id, text, error);
+	}
+
+	/** Reads the value of an <code>id</code> member and returns it as
+	    JSON without any white space, or skips it and returns null if it
+	    is not a string, a number, true, false or null. */
+	private String readId() throws IOException
+	{
+		String literal;
+		int c = peek();
+
+		if (c=='"') return "\"" + Manipulate.toJSON(readString()) + "\"";
+		if (c=='{' || c=='[')
+		{
+			skipValue();
+			return null;
+		}
+		literal = readLiteral();
+		if (isValidLiteral(literal)) return literal;
+		return null;
+	}
+
+	private String readString() throws IOException
+	{
+		StringBuffer sb = new StringBuffer();
+		int c;
+
+		if (read()!='"') throw error("expected a string");
+		while (true)
+		{
+			c = read();
+			if (c<0) throw error("unexpected end of input");
+			if (c=='"') return sb.toString();
+			if (c!='\\')
+			{
+				sb.append((char) c);
+				continue;
+			}
+			c = read();
+			switch (c)
+			{
+			case '"': case '\\': case '/':
+				sb.append((char) c);
+				break;
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'u':
+				sb.append((char) (hexDigit()<<12 | hexDigit()<<8 | hexDigit()<<4 | hexDigit()));
+				break;
+			default:
+				throw error("bad escape sequence");
+			}
+		}
+	}
+
+	private int hexDigit() throws IOException
+	{
+		int d = Character.digit((char) read(), 16);
+		if (d<0) throw error("bad escape sequence");
+		return d;
+	}
+
+	/** Skips any JSON value. */
+	private void skipValue() throws IOException
+	{
+		int c = peek(), close;
+
+		if (c=='"')
+		{
+			readString();
+			return;
+		}
+		if (c=='{' || c=='[')
+		{
+			read();
+			close = (c=='{') ? '}' : ']';
+			skipSpace();
+			if (peek()==close)
+			{
+				read();
+				return;
+			}
+			while (true)
+			{
+				skipSpace();
+				if (close=='}')
+				{
+					readString();
+					skipSpace();
+					if (read()!=':') throw error("expected :");
+					skipSpace();
+				}
+				skipValue();
+				skipSpace();
+				c = read();
+				if (c==close) return;
+				if (c!=',') throw error("expected , or " + (char) close);
+			}
+		}
+		if (!isValidLiteral(readLiteral())) throw error("expected a value");
+	}
+
+	/** Reads what should be a number, true, false or null. */
+	private String readLiteral() throws IOException
+	{
+		StringBuffer sb = new StringBuffer();
+
+		if (!isLiteralChar(peek())) throw error("expected a value");
+		while (isLiteralChar(peek())) sb.append((char) read());
+		return sb.toString();
+	}
+
+	private static boolean isLiteralChar(int c)
+	{
+		return (c>='0' && c<='9') || (c>='a' && c<='z') || (c>='A' && c<='Z') || c=='-' || c=='+' || c=='.';
+	}
+
+	/** Returns true if s is a JSON number, true, false or null. */
+	private static boolean isValidLiteral(String s)
+	{
+		int i=0, len=s.length(), start;
+
+		if (s.equals("true") || s.equals("false") || s.equals("null")) return true;
+		if (i<len && s.charAt(i)=='-') i++;
+		if (i<len && s.charAt(i)=='0') i++;
+		else
+		{
+			start = i;
+			while (i<len && Character.isDigit(s.charAt(i))) i++;
+			if (i==start) return false;
+		}
+		if (i<len && s.charAt(i)=='.')
+		{
+			start = ++i;
+			while (i<len && Character.isDigit(s.charAt(i))) i++;
+			if (i==start) return false;
+		}
+		if (i<len && (s.charAt(i)=='e' || s.charAt(i)=='E'))
+		{
+			i++;
+			if (i<len && (s.charAt(i)=='+' || s.charAt(i)=='-')) i++;
+			start = i;
+			while (i<len && Character.isDigit(s.charAt(i))) i++;
+			if (i==start) return false;
+		}
+		return i==len;
+	}
+
+	private void skipSpace() throws IOException
+	{
+		int c;
+		while ((c = peek())==' ' || c=='\n' || c=='\r' || c=='\t') read();
+	}
+
+	private int peek() throws IOException
+	{
+		if (next==-2) next = in.read();
+		return next;
+	}
+
+	private int read() throws IOException
+	{
+		int c = peek();
+		next = -2;
+		if (c>=0) pos++;
+		return c;
+	}
+
+	private IOException error(String message)
+	{
+		return new IOException("Passage " + count + ", character " + pos + ": " + message);
+	}
+}
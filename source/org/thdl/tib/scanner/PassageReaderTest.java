@@ -0,0 +1,112 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved.
+
+Contributor(s): ______________________________________.
+ */
+package org.thdl.tib.scanner;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link org.thdl.tib.scanner.PassageReader} at the unit level.
+ */
+public class PassageReaderTest extends TestCase {
+    /** Plain vanilla constructor for PassageReaderTest. */
+    public PassageReaderTest(String arg0) {
+        super(arg0);
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PassageReaderTest.class);
+    }
+
+    private static PassageReader.Passage[] read(String input) throws IOException {
+        PassageReader reader = new PassageReader(new StringReader(input));
+        ArrayList passages = new ArrayList();
+        PassageReader.Passage p;
+        while ((p = reader.next()) != null)
+            passages.add(p);
+        return (PassageReader.Passage[]) passages.toArray(new PassageReader.Passage[passages.size()]);
+    }
+
+    /** Tests that ids that are strings, numbers, true, false or null are
+     *  sent back as JSON on a single line. */
+    public void testValidIds() throws IOException {
+        PassageReader.Passage p[]
+            = read("{\"id\":\"a\\nb\",\"text\":\"bkra shis\"}\n"
+                   + "{\"id\" : -1.5e3 , \"text\":\"bde legs\"}\n"
+                   + "{\"text\":\"ka\",\"id\":true}\n"
+                   + "{\"id\":null,\"text\":\"kha\"}\n"
+                   + "\"ga\"\n");
+        assertEquals(5, p.length);
+        assertEquals("\"a\\nb\"", p[0].id);
+        assertEquals("bkra shis", p[0].text);
+        assertEquals("-1.5e3", p[1].id);
+        assertEquals("true", p[2].id);
+        assertEquals("null", p[3].id);
+        assertNull(p[4].id);
+        for (int i = 0; i < p.length; i++) {
+            assertEquals(i, p[i].index);
+            assertNull(p[i].error);
+        }
+    }
+
+    /** Tests that an object or array id, which could span several lines,
+     *  makes only its own passage fail. */
+    public void testStructuredIds() throws IOException {
+        PassageReader.Passage p[]
+            = read("{\"id\":{\"doc\": 1,\n \"line\": 2},\"text\":\"ka\"}\n"
+                   + "{\"id\":[1,\n 2],\"text\":\"kha\"}\n"
+                   + "{\"id\":3,\"text\":\"ga\"}\n");
+        assertEquals(3, p.length);
+        assertNull(p[0].id);
+        assertNotNull(p[0].error);
+        assertNull(p[1].id);
+        assertNotNull(p[1].error);
+        assertEquals("3", p[2].id);
+        assertNull(p[2].error);
+    }
+
+    /** Tests that an id that is not valid JSON makes only its own passage
+     *  fail. */
+    public void testBareWordIds() throws IOException {
+        PassageReader.Passage p[]
+            = read("{\"id\":foo,\"text\":\"ka\"}\n"
+                   + "{\"id\":01,\"text\":\"kha\"}\n"
+                   + "{\"id\":\"foo\",\"text\":\"ga\"}\n");
+        assertEquals(3, p.length);
+        assertNull(p[0].id);
+        assertNotNull(p[0].error);
+        assertNull(p[1].id);
+        assertNotNull(p[1].error);
+        assertEquals("\"foo\"", p[2].id);
+        assertNull(p[2].error);
+    }
+
+    /** Tests that a bare word anywhere else is a syntax error. */
+    public void testBareWordElsewhere() {
+        try {
+            read("{\"text\":\"ka\",\"page\":foo}\n");
+            fail("foo is not JSON");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -19,7 +19,13 @@ package org.thdl.tib.scanner;
 
 import java.io.BufferedReader;
 import java.io.PrintWriter;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.servlet.GenericServlet;
 import javax.servlet.ServletRequest;
@@ -29,16 +35,32 @@ import javax.servlet.ServletResponse;
     the client and sends them the words with their definitions through the Internet.
     Requests are made through {@link RemoteTibetanScanner}.
 
+    <p>If the parameter <code>batch</code> is present, the body of the
+    request holds many passages, as read by {@link PassageReader}. They
+    are scanned by a pool of worker threads, and the results for each
+    passage are sent back as soon as it is scanned, one JSON object per
+    line (NDJSON), with the <code>index</code> of the passage in the input
+    and its <code>id</code> if it had one. The order of the lines is the
+    order in which the passages finished, not necessarily the order in
+    which they were sent. The size of the pool is given by the property
+    <code>remotescannerfilter.batch-threads</code> and defaults to the
+    number of processors.</p>
+
     @author Andr&eacute;s Montano Pellegrini
     @see RemoteTibetanScanner
  */
 public class RemoteScannerFilter extends GenericServlet
 {
-	private LocalTibetanScanner scanner;
-	private BitDictionarySource ds;
+	/* The dictionary is opened once and its tree is shared, read-only,
+	   by all requests; each request scans with its own scanner. */
+	private DictionaryHandle handle;
+	private SyllableListTree root;
 	private ScannerLogger sl;
+	private ExecutorService workers;
+	private int batchThreads;
 	private static final int INTERNAL = 1;
 	private static final int JSON = 2;
+	private static final int BATCH = 3;
 
 	public RemoteScannerFilter()
 	{
@@ -48,22 +70,36 @@ public class RemoteScannerFilter extends GenericServlet
 
 		try
 		{
-			scanner = new LocalTibetanScanner(rb.getString("onlinescannerfilter.dict-file-name"),false);
+			handle = new DictionaryHandle(rb.getString("onlinescannerfilter.dict-file-name"),false);
+			if (OnLineScannerFilter.isInMemory(rb)) root = new CompactSyllableListTree(handle);
+			else root = new MappedSyllableListTree(handle);
 		}
 		catch (Exception e)
 		{
 			sl.writeLog("1\t2");
 			sl.writeException(e);
 		}
-		scanner.getDictionaryDescriptions();
-		ds = scanner.getDictionarySource();
+		try
+		{
+			batchThreads = Integer.parseInt(rb.getString("remotescannerfilter.batch-threads").trim());
+		}
+		catch (MissingResourceException e)
+		{
+			batchThreads = 0;
+		}
+		catch (NumberFormatException e)
+		{
+			batchThreads = 0;
+		}
+		if (batchThreads<1) batchThreads = Runtime.getRuntime().availableProcessors();
+		workers = Executors.newFixedThreadPool(batchThreads);
 		sl.writeLog("Creation\t2");
 	}
 
 	public void service(ServletRequest req, ServletResponse res) //throws ServletException, IOException
 	{
 		BufferedReader br;
-		int format, i, j, k;
+		int format, i;
 		try
 		{
 		  req.setCharacterEncoding("UTF8");
@@ -73,11 +109,11 @@ public class RemoteScannerFilter extends GenericServlet
 		{
 			// do nothing
 		}
-		String linea = null, dicts = req.getParameter("dicts"), dicDescrip[], jwf = req.getParameter("jwf"), tag, definitions[];
+		String linea = null, dicts = req.getParameter("dicts"), dicDescrip[], jwf = req.getParameter("jwf");
 		Boolean includeDefaultDefinition=false;
-		Definitions defs;
-		ByteDictionarySource dict_source;
-		if (jwf!=null) format = JSON;
+		BitDictionarySource ds = BitDictionarySource.getAllDictionaries();
+		if (req.getParameter("batch")!=null) format = BATCH;
+		else if (jwf!=null) format = JSON;
 		else format = INTERNAL;
 		switch (format)
 		{
@@ -87,12 +123,14 @@ public class RemoteScannerFilter extends GenericServlet
 		case JSON:
 		  res.setContentType ("text/x-json");
 		  includeDefaultDefinition=true;
+		  break;
+		case BATCH:
+		  res.setContentType ("application/x-ndjson");
 		}
 		sl.setUserIP(req.getRemoteAddr());
 
-		Word word = null, words[] = null;
+		Word words[] = null;
 		PrintWriter out;
-		String localWord=null;
 
 		try
 		{
@@ -111,16 +149,17 @@ public class RemoteScannerFilter extends GenericServlet
 			if (dicts.equals("names"))
 			{
 				sl.writeLog("3\t2");
-				dicDescrip = scanner.getDictionaryDescriptions();
+				dicDescrip = handle.getDictionaryDescriptions();
 				if (dicDescrip==null)
 				{
 					out.close();
 					return;
 				}
 
+				String tags[] = handle.getDictionaryTags();
 				for (i=0; i<dicDescrip.length; i++)
 				{
-					out.println(dicDescrip[i] + "," + DictionarySource.defTags[i]);
+					out.println(dicDescrip[i] + "," + tags[i]);
 				}
 				out.close();
 				return;
@@ -131,11 +170,20 @@ public class RemoteScannerFilter extends GenericServlet
 			}
 		}
 
+		if (format==BATCH)
+		{
+			sl.writeLog("4\t2");
+			scanBatch(req, out, ds);
+			out.close();
+			return;
+		}
 		if (format==JSON)
 		{
 			out.println(jwf + "({\"words\":{");
 		}
-		scanner.clearTokens();
+		LocalTibetanScanner scanner = new LocalTibetanScanner(root, handle, ds);
+		// words are sent back as soon as they are found
+		if (format==INTERNAL) scanner.setTokenSink(new WordPrinter(out));
 		try
 		{
 			switch (format)
@@ -166,67 +214,16 @@ public class RemoteScannerFilter extends GenericServlet
 		scanner.finishUp(includeDefaultDefinition);
 		try
 		{
-			words = scanner.getWordArray();
-			if (words!=null)
-			{
-				for (i=0; i<words.length; i++)
-				{
-					word = words[i];
-					linea = word.getDef();
-					if (linea == null) continue;
-					switch (format)
-					{
-					case INTERNAL:
-						out.println(word.getWylie());
-						out.println(linea);
-						out.println();
-						break;
-					case JSON:
-						defs = word.getDefs();
-						dict_source = (ByteDictionarySource)defs.getDictionarySource();
-						if(dict_source==null) out.print("\"" + word.token + "\": [");
-						else
-						{
-							out.print("\"" + BasicTibetanTranscriptionConverter.wylieToHTMLUnicode(word.token) + "\":\n[");
-							k=0;
-							definitions = defs.def;
-							for (j=0; j<definitions.length; j++)
-							{
-								while (dict_source.isEmpty(k)) k++;
-								tag = dict_source.getTag(k);
-								k++;
-								out.print("\"" + tag + "\",\"" + Manipulate.toJSON(definitions[j]) + "\"");
-								if (j<definitions.length-1) out.println(",");
-							}
-						}
-						out.print("]");
-						if (i<words.length-1) out.println(",");
-					}
-				}				
-			}
 			if (format==JSON)
 			{
+				words = scanner.getWordArray();
+				printJSONWords(out, words, true);
 				out.print("}");
-				Token token, tokens[] = scanner.getTokenArray();
+				Token tokens[] = scanner.getTokenArray();
 				if (tokens!=null)
 				{
 					out.println(",\n\"tokens\":[");
-					for (i=0; i<tokens.length; i++)
-					{
-						token = tokens[i];
-						if (token instanceof Word)
-						{
-							word = (Word)token;
-							definitions = word.getDefs().def;
-							if (definitions.length==0) tag = BasicTibetanTranscriptionConverter.wylieToHTMLUnicode(word.token);
-							else tag = definitions[0];
-							if (word.wordSinDec==null) localWord = word.token;
-							else localWord = word.wordSinDec;
-							out.print("\"" + BasicTibetanTranscriptionConverter.wylieToHTMLUnicode(localWord) + "\", \"" + tag + "\"");
-						}
-						else out.print("\"" + token.toString() + "\", \"\"");
-						if (i<tokens.length-1) out.println(",");
-					}
+					printJSONTokens(out, tokens, true);
 					out.print("]");
 				}
 				out.println("});");
@@ -234,18 +231,272 @@ public class RemoteScannerFilter extends GenericServlet
 		}
 		catch (Exception e)
 		{
-			if (word!=null) sl.writeLog("1\t2\t" + word.getWylie());
+			sl.writeLog("1\t2");
 			sl.writeException(e);
 		}
-		scanner.clearTokens();
 		out.close();
 	}
 
+	/** Prints each word with its definitions, as expected by the
+	    {@link RemoteTibetanScanner}, as soon as it is found. */
+	private static class WordPrinter implements TokenSink
+	{
+		private PrintWriter out;
+
+		public WordPrinter(PrintWriter out)
+		{
+			this.out = out;
+		}
+
+		public void add(Token token)
+		{
+			Word word;
+			String def;
+
+			if (!(token instanceof Word)) return;
+			word = (Word) token;
+			def = word.getDef();
+			if (def == null) return;
+			out.println(word.getWylie());
+			out.println(def);
+			out.println();
+		}
+	}
+
+	/** The results of scanning one passage in batch mode. */
+	private static class ScannedPassage
+	{
+		PassageReader.Passage passage;
+		Word words[];
+		Token tokens[];
+		String error;
+	}
+
+	/** Scans the passages in the body of req on the worker threads, only
+	    looking for definitions in the dictionaries in ds. The results
+	    of each passage are written to out, on a line of their own, as
+	    soon as they are ready. At most a few passages per worker are
+	    read ahead of those written, so memory use does not grow with
+	    the size of the request. */
+	private void scanBatch(ServletRequest req, PrintWriter out, final BitDictionarySource ds)
+	{
+		CompletionService done = new ExecutorCompletionService(workers);
+		PassageReader passages;
+		PassageReader.Passage passage;
+		int pending = 0, maxPending = 2*batchThreads;
+
+		try
+		{
+			passages = new PassageReader(req.getReader());
+			while ((passage = passages.next())!=null)
+			{
+				if (pending>=maxPending)
+				{
+					printPassage(out, (ScannedPassage) done.take().get());
+					pending--;
+					// stop reading if the client has gone away
+					if (out.checkError()) break;
+				}
+				final PassageReader.Passage toScan = passage;
+				done.submit(new Callable() {
+					public Object call()
+					{
+						return scanPassage(toScan, ds);
+					}
+				});
+				pending++;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch (Exception e)
+		{
+			// the passages read so far are still sent below
+			out.print("{\"error\":\"");
+			out.print(Manipulate.toJSON(e.getMessage()==null ? e.toString() : e.getMessage()));
+			out.println("\"}");
+			sl.writeLog("1\t2");
+			sl.writeException(e);
+		}
+		try
+		{
+			while (pending>0)
+			{
+				printPassage(out, (ScannedPassage) done.take().get());
+				pending--;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (Exception e)
+		{
+			sl.writeException(e);
+		}
+	}
+
+	/** Scans one passage with a scanner of its own. Runs on a worker
+	    thread. */
+	private ScannedPassage scanPassage(PassageReader.Passage passage, BitDictionarySource ds)
+	{
+		ScannedPassage scanned = new ScannedPassage();
+		String linea = passage.text;
+
+		scanned.passage = passage;
+		if (passage.error!=null)
+		{
+			scanned.error = passage.error;
+			return scanned;
+		}
+		try
+		{
+			LocalTibetanScanner scanner = new LocalTibetanScanner(root, handle, ds);
+			linea = Manipulate.NCR2UnicodeString(linea);
+			if (Manipulate.guessIfUnicode(linea)) linea = BasicTibetanTranscriptionConverter.unicodeToWylie(linea);
+			else if (Manipulate.guessIfAcip(linea)) linea = BasicTibetanTranscriptionConverter.acipToWylie(linea);
+			scanner.scanLine(linea, true);
+			scanner.finishUp(true);
+			scanned.words = scanner.getWordArray();
+			scanned.tokens = scanner.getTokenArray();
+		}
+		catch (Exception e)
+		{
+			scanned.error = e.toString();
+			sl.writeLog("1\t2\t" + linea);
+			sl.writeException(e);
+		}
+		return scanned;
+	}
+
+	/** Prints the results of one passage in batch mode as a JSON object
+	    on a line of its own. */
+	private static void printPassage(PrintWriter out, ScannedPassage scanned)
+	{
+		out.print("{\"index\":");
+		out.print(scanned.passage.index);
+		if (scanned.passage.id!=null)
+		{
+			out.print(",\"id\":");
+			out.print(scanned.passage.id);
+		}
+		if (scanned.error!=null)
+		{
+			out.print(",\"error\":\"");
+			out.print(Manipulate.toJSON(scanned.error));
+			out.print("\"");
+		}
+		else
+		{
+			out.print(",\"words\":{");
+			printJSONWords(out, scanned.words, false);
+			out.print("},\"tokens\":[");
+			if (scanned.tokens!=null) printJSONTokens(out, scanned.tokens, false);
+			out.print("]");
+		}
+		out.println("}");
+		out.flush();
+	}
+
+	/** Prints the words that have a definition, with their definitions,
+	    as the members of a JSON object (without the braces). Unless pretty
+	    is true, everything is printed on the same line. */
+	private static void printJSONWords(PrintWriter out, Word words[], boolean pretty)
+	{
+		int i, j, k;
+		boolean first = true;
+		Word word;
+		Definitions defs;
+		ByteDictionarySource dict_source;
+		String definitions[];
+
+		if (words==null) return;
+		for (i=0; i<words.length; i++)
+		{
+			word = words[i];
+			if (word.getDef() == null) continue;
+			if (!first) printSeparator(out, pretty);
+			first = false;
+			defs = word.getDefs();
+			dict_source = (ByteDictionarySource)defs.getDictionarySource();
+			out.print("\"");
+			if (dict_source==null)
+			{
+				out.print(word.token);
+				out.print("\": [");
+			}
+			else
+			{
+				out.print(BasicTibetanTranscriptionConverter.wylieToHTMLUnicode(word.token));
+				out.print(pretty ? "\":\n[" : "\":[");
+				k=0;
+				definitions = defs.def;
+				for (j=0; j<definitions.length; j++)
+				{
+					while (dict_source.isEmpty(k)) k++;
+					out.print("\"");
+					out.print(dict_source.getTag(k));
+					out.print("\",\"");
+					out.print(Manipulate.toJSON(definitions[j]));
+					out.print("\"");
+					k++;
+					if (j<definitions.length-1) printSeparator(out, pretty);
+				}
+			}
+			out.print("]");
+		}
+	}
+
+	/** Prints each token followed by its first definition (or nothing if
+	    it is not a word) as the elements of a JSON array (without the
+	    brackets). Unless pretty is true, everything is printed on the
+	    same line. */
+	private static void printJSONTokens(PrintWriter out, Token tokens[], boolean pretty)
+	{
+		int i;
+		Token token;
+		Word word;
+		String definitions[];
+
+		for (i=0; i<tokens.length; i++)
+		{
+			token = tokens[i];
+			out.print("\"");
+			if (token instanceof Word)
+			{
+				word = (Word)token;
+				out.print(BasicTibetanTranscriptionConverter.wylieToHTMLUnicode(word.wordSinDec==null ? word.token : word.wordSinDec));
+				out.print("\", \"");
+				definitions = word.getDefs().def;
+				if (definitions.length==0) out.print(BasicTibetanTranscriptionConverter.wylieToHTMLUnicode(word.token));
+				else out.print(Manipulate.toJSON(definitions[0]));
+				out.print("\"");
+			}
+			else
+			{
+				out.print(Manipulate.toJSON(token.toString()));
+				out.print("\", \"\"");
+			}
+			if (i<tokens.length-1) printSeparator(out, pretty);
+		}
+	}
+
+	private static void printSeparator(PrintWriter out, boolean pretty)
+	{
+		if (pretty) out.println(",");
+		else out.print(",");
+	}
+
 	public void destroy()
 	{
 		super.destroy();
 		sl.setUserIP(null);
 		sl.writeLog("5\t2");
-		scanner.destroy();
+		sl.flush();
+		workers.shutdownNow();
+		handle.close();
 	}
 }
\ No newline at end of file
@@ -77,14 +77,14 @@ public class RemoteTibetanScanner extends TibetanScanner
 					eachDef = in.readLine();
 					if (eachDef==null)
 					{
-						wordList.addLast(new Word(word, def));
+						addToken(new Word(word, def));
 						break outside;
 					}
 					if (eachDef.equals("")) break;
 					def+='\n' + eachDef;
 				}
 				while(true);
-				wordList.addLast(new Word(word, def));
+				addToken(new Word(word, def));
 			}
 			in.close();
 		}
@@ -105,6 +105,13 @@ public class RemoteTibetanScanner extends TibetanScanner
 		return defSourcesWanted;
 	}
 	
+	/** Returns the tags set by {@link #getDictionaryDescriptions()} for
+	    all the definitions received from the server. */
+	public String[] getDictionaryTags()
+	{
+		return DictionarySource.defTags;
+	}
+	
 	public String[] getDictionaryDescriptions()
 	{
 		int n;
@@ -17,22 +17,34 @@ Contributor(s): ______________________________________.
  */
 package org.thdl.tib.scanner;
 
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Calendar;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
 /** Designed to keep a log of the transactions taking place in the 
     servlet version of the translation tool.
 
+    <p>Lines are handed to an {@link AsyncLogWriter}, which writes them
+    from a background thread, so logging never makes a request wait for
+    the file. The log file is rotated when it reaches
+    <code>remotescannerfilter.log-max-bytes</code> bytes (10 MB by default;
+    0 for never) and, if <code>remotescannerfilter.log-rotate-daily</code>
+    is "yes", every day. <code>remotescannerfilter.log-backups</code> old
+    files are kept (5 by default).</p>
+
     @author Andr&eacute;s Montano Pellegrini
  */
 
 public class ScannerLogger
 {
 	private String fileName;
-	private String lastIP;
+	/* Each servlet thread logs for the request it is serving. */
+	private ThreadLocal lastIP;
 	private boolean enabled;
+	private AsyncLogWriter writer;
+	private static final String lineSeparator = System.getProperty("line.separator");
 
 	public ScannerLogger()
 	{
@@ -42,7 +54,33 @@ public class ScannerLogger
 		temp = rb.getString("remotescannerfilter.logging-enabled");
 		if (temp==null) enabled = false;
 		else enabled = temp.toLowerCase().equals("yes");
-		lastIP = null;
+		lastIP = new ThreadLocal();
+		if (enabled)
+			writer = AsyncLogWriter.get(fileName, getLong(rb, "remotescannerfilter.log-max-bytes", 10485760L), (int) getLong(rb, "remotescannerfilter.log-backups", 5L), getString(rb, "remotescannerfilter.log-rotate-daily", "no").toLowerCase().equals("yes"));
+	}
+
+	private static String getString(ResourceBundle rb, String key, String defaultValue)
+	{
+		try
+		{
+			return rb.getString(key).trim();
+		}
+		catch (MissingResourceException e)
+		{
+			return defaultValue;
+		}
+	}
+
+	private static long getLong(ResourceBundle rb, String key, long defaultValue)
+	{
+		try
+		{
+			return Long.parseLong(getString(rb, key, Long.toString(defaultValue)));
+		}
+		catch (NumberFormatException e)
+		{
+			return defaultValue;
+		}
 	}
 
 	public String getCurrentTime()
@@ -51,43 +89,35 @@ public class ScannerLogger
 		return Integer.toString(rightNow.get(Calendar.YEAR)) + "\t" + Integer.toString(rightNow.get(Calendar.MONTH)) + "\t" + Integer.toString(rightNow.get(Calendar.DAY_OF_MONTH)) + "\t" + Integer.toString(rightNow.get(Calendar.HOUR_OF_DAY)) + "\t" + Integer.toString(rightNow.get(Calendar.MINUTE)) + "\t" + Integer.toString(rightNow.get(Calendar.SECOND));
 	}
 
+	/** Sets the address that the calling thread's log lines are
+	    attributed to. */
 	public void setUserIP(String lastIP)
 	{
-		this.lastIP = lastIP;
+		this.lastIP.set(lastIP);
 	}
 
-	synchronized public void writeLog(String s)
+	public void writeLog(String s)
 	{
 		if (!enabled) return;
-		PrintStream pw = getPrintStream();
-		if (lastIP!=null) pw.print(lastIP);
-		else pw.print("-");
-		pw.println("\t" + getCurrentTime() + "\t" + s);
-		pw.flush();
-		pw.close();
-	}
-
-	private PrintStream getPrintStream()
-	{
-		PrintStream pw;
-		try
-		{
-			pw = new PrintStream(new FileOutputStream(fileName, true));
-			return pw;
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
-		}
-		return null;
+		String ip = (String) lastIP.get();
+		if (ip==null) ip = "-";
+		writer.write(ip + "\t" + getCurrentTime() + "\t" + s + lineSeparator);
 	}
 
-	synchronized public void writeException(Exception e)
+	public void writeException(Exception e)
 	{
 		if (!enabled) return;
-		PrintStream pw = getPrintStream();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
 		e.printStackTrace(pw);
 		pw.flush();
-		pw.close();        
+		writer.write(sw.toString());
+	}
+
+	/** Waits (a few seconds at most) until everything logged so far is
+	    in the file. Call it before the servlet is taken out of service. */
+	public void flush()
+	{
+		if (enabled) writer.flush(5000);
 	}
 }
\ No newline at end of file
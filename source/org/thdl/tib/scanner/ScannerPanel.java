@@ -118,7 +118,7 @@ public abstract class ScannerPanel extends Panel implements ActionListener
 		int rows, n;
 		
         if (null == scanner) return null;
-		String dictionaries[] = scanner.getDictionaryDescriptions();
+		String dictionaries[] = scanner.getDictionaryDescriptions(), tags[] = scanner.getDictionaryTags();
 		if (dictionaries!=null)
 		{
 			n = dictionaries.length;
@@ -140,9 +140,9 @@ public abstract class ScannerPanel extends Panel implements ActionListener
 			for (i=0; i<dictionaries.length; i++)
 			{
 				if (dictionaries[i]!=null)
-					chkDicts[i] = new Checkbox(dictionaries[i] + " (" + DictionarySource.defTags[i] + ")", true);
+					chkDicts[i] = new Checkbox(dictionaries[i] + " (" + tags[i] + ")", true);
 				else
-					chkDicts[i] = new Checkbox(DictionarySource.defTags[i], true);
+					chkDicts[i] = new Checkbox(tags[i], true);
 				panel2.add(chkDicts[i]);
 			}
 			return panel2;
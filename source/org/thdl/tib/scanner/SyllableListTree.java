@@ -39,6 +39,14 @@ public interface SyllableListTree
 	public Definitions getDefs();
 	public Definitions getDefs(Boolean includeDefaultDefinition);
 	public boolean hasDef();
+	/** Like {@link #getDefs(Boolean)}, but with the definitions from the
+	    dictionaries in wanted instead of those selected for the whole
+	    dictionary. Lets scanners that share a tree each use their own
+	    selection. */
+	public Definitions getDefs(BitDictionarySource wanted, Boolean includeDefaultDefinition);
+	/** Like {@link #hasDef()}, but only counting the dictionaries in
+	    wanted. */
+	public boolean hasDef(BitDictionarySource wanted);
 	public SyllableListTree lookUp(String silStr);	
 	public DictionarySource getDictionarySource();
 	public BitDictionarySource getDictionarySourcesWanted();
@@ -17,6 +17,8 @@ Contributor(s): ______________________________________.
  */
 
 package org.thdl.tib.scanner;
+import java.util.HashSet;
+
 import org.thdl.util.SimplifiedLinkedList;
 import org.thdl.util.SimplifiedListIterator;
 import org.thdl.util.ThdlVersion;
@@ -155,10 +157,28 @@ public abstract class TibetanScanner
 		"YT: Oral commentary by Yeshi Thupten.";
 
 	protected SimplifiedLinkedList wordList;
+	private TokenSink sink;
 
 	public TibetanScanner()
 	{
 		wordList = new SimplifiedLinkedList();
+		sink = null;
+	}
+
+	/** From now on, hands each token found to sink instead of keeping it
+	    for {@link #getTokenArray()} and {@link #getWordArray()}, so that
+	    the results of a long text can be used while it is scanned without
+	    holding them all. If sink is null, tokens are kept again. */
+	public void setTokenSink(TokenSink sink)
+	{
+		this.sink = sink;
+	}
+
+	/** Called by the scanners with each token found. */
+	protected void addToken(Token token)
+	{
+		if (sink!=null) sink.add(token);
+		else wordList.addLast(token);
 	}
 
 	public void clearTokens()
@@ -187,61 +207,27 @@ public abstract class TibetanScanner
 		return getWordArray(true);
 	}
 
+	/** Returns the words found, in the order of the text. If
+	    includeRepeated is false, only the first occurrence of each word
+	    is returned. */
 	public Word[] getWordArray(boolean includeRepeated)
 	{
-		Token token;
-		Word array[], word;
-		int n=0;
-		SimplifiedListIterator li = wordList.listIterator();
-		SimplifiedLinkedList ll2, ll = new SimplifiedLinkedList();
-
-		while(li.hasNext())
-		{
-			token = (Token) li.next();
-
-			if (token instanceof Word)
-			{
-				ll.addLast(token);
-			}
-		}
-
-		if (includeRepeated)
-		{
-			n = ll.size();
-			if (n==0) return null;
-
-			array = new Word[n];
-			li = ll.listIterator();
-
-			n=0;
-			while (li.hasNext())
-			{
-				array[n++] = (Word) li.next();
-			}
-		}
-		else
+		Token tokens[] = getTokenArray();
+		Word array[], words[];
+		HashSet seen = includeRepeated ? null : new HashSet();
+		int i, n=0;
+
+		if (tokens==null) return null;
+		words = new Word[tokens.length];
+		for (i=0; i<tokens.length; i++)
 		{
-			ll2 = new SimplifiedLinkedList();
-			li = ll.listIterator();
-
-			while(li.hasNext())
-			{
-				word = (Word) li.next();
-				if (!ll2.contains(word)) ll2.addLast(word);
-			}
-
-			n = ll2.size();
-
-			if (n==0) return null;
-
-			array = new Word[n];
-			li = ll2.listIterator();
-
-			while (li.hasNext())
-			{
-				array[--n] = (Word) li.next();
-			}   
+			if (tokens[i] instanceof Word && (seen==null || seen.add(tokens[i].token)))
+				words[n++] = (Word) tokens[i];
 		}
+		if (n==0) return null;
+		if (n==words.length) return words;
+		array = new Word[n];
+		System.arraycopy(words, 0, array, 0, n);
 		return array;
 	}
 
@@ -250,5 +236,8 @@ public abstract class TibetanScanner
 	public abstract void finishUp();
 	public abstract BitDictionarySource getDictionarySource();
 	public abstract String[] getDictionaryDescriptions();
+	/** Returns the tags of the dictionaries whose descriptions are
+	    returned by {@link #getDictionaryDescriptions()}. */
+	public abstract String[] getDictionaryTags();
 	public abstract void destroy();
 }
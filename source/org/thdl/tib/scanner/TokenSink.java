@@ -0,0 +1,31 @@
+/*
+The contents of this file are subject to the AMP Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the AMP web site 
+(http://www.tibet.iteso.mx/Guatemala/).
+
+Software distributed under the License is distributed on an "AS IS" basis, 
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the 
+License for the specific terms governing rights and limitations under the 
+License. 
+
+The Initial Developer of this software is Andres Montano Pellegrini. Portions
+created by Andres Montano Pellegrini are Copyright 2001 Andres Montano
+Pellegrini. All Rights Reserved. 
+
+Contributor(s): ______________________________________.
+ */
+
+package org.thdl.tib.scanner;
+
+/** Receives the tokens found by a {@link TibetanScanner} as soon as they
+    are found, in the order of the text, instead of having the scanner
+    keep them until the whole text is scanned.
+
+    @see TibetanScanner#setTokenSink(TokenSink)
+ */
+public interface TokenSink
+{
+	/** Called with each {@link Word} or {@link PunctuationMark} found. */
+	public void add(Token token);
+}
@@ -73,6 +73,11 @@ public class Word extends Token
 		return false;
 	}
 	
+	public int hashCode()
+	{
+		return super.token.hashCode();
+	}
+	
 	public String getWylie()
 	{
 		return super.token;
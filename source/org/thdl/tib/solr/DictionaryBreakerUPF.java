@@ -15,14 +15,73 @@ import org.apache.solr.update.processor.FieldValueMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessorFactory;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.util.plugin.SolrCoreAware;
 
-public class DictionaryBreakerUPF extends FieldMutatingUpdateProcessorFactory {
-	private TibetanScanner scanner;
+public class DictionaryBreakerUPF extends FieldMutatingUpdateProcessorFactory implements SolrCoreAware {
+	private static final String DICTIONARY_PARAM = "dictionary";
+	private static final String DICTIONARY_DEFAULT = "thl-dicts/thl";
+	
 	public static final String wyliePunc = "/;|!:^@#$%=,<>(){}[]";
 	
+	/* The dictionary is opened once and its tree is shared, read-only, by
+	   the scanners of all indexing threads; each thread keeps its own
+	   scanner since a scanner holds the state of the text being scanned. */
+	private DictionaryHandle handle;
+	private SyllableListTree root;
+	private final ThreadLocal<LocalTibetanScanner> scanners = new ThreadLocal<LocalTibetanScanner>() {
+	    @Override
+	    protected LocalTibetanScanner initialValue() {
+	        return new LocalTibetanScanner(root, handle);
+	    }
+	};
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public void init(NamedList args) {
+	    String dictionary;
+	    Object dictionaryParam = args.remove(DICTIONARY_PARAM);
+	    if (null == dictionaryParam || !(dictionaryParam instanceof String)) {
+	        URL location = getClass().getProtectionDomain().getCodeSource().getLocation();
+	        File file = new File(location.getPath());
+	        String prefix = file.getParent();
+	        prefix = (prefix == null) ? "": prefix + File.separator;
+	        dictionary = prefix + DICTIONARY_DEFAULT;
+	    }
+	    else {
+	        dictionary = (String)dictionaryParam;
+	    }
+	    
+	    try {
+	        handle = new DictionaryHandle(dictionary, false);
+	        root = new MappedSyllableListTree(handle);
+	    }
+	    catch (Exception e) {
+	        throw new RuntimeException("Could not open dictionary " + dictionary, e);
+	    }
+	    
+	    super.init(args);
+	}
+	
+	@Override
+	public void inform(SolrCore core) {
+	    super.inform(core);
+	    core.addCloseHook(new CloseHook() {
+	        @Override
+	        public void preClose(SolrCore core) {
+	        }
+	        
+	        @Override
+	        public void postClose(SolrCore core) {
+	            handle.close();
+	        }
+	    });
+	}
+	
   @Override
   public FieldMutatingUpdateProcessor.FieldNameSelector 
     getDefaultSelector(final SolrCore core) {
@@ -47,18 +106,22 @@ public class DictionaryBreakerUPF extends FieldMutatingUpdateProcessorFactory {
                                             UpdateRequestProcessor next) {
     return new FieldValueMutatingUpdateProcessor(getSelector(), next) {
       protected Object mutateValue(final Object src) {
+        return breakValue(src);
+      }
+    };
+  }
+  
+  /** Breaks a value into words with this thread's scanner, which is left
+      with nothing half scanned for the next value. */
+  Object breakValue(final Object src) {
         if (src instanceof CharSequence) {
           CharSequence s = (CharSequence)src;
           
           String wylie = BasicTibetanTranscriptionConverter.unicodeToWylie(s.toString());
 
+		  LocalTibetanScanner scanner = scanners.get();
 		  try {
-			  URL location = getClass().getProtectionDomain().getCodeSource().getLocation();
-			  File file = new File(location.getPath());
-			  String prefix = file.getParent();
-			  prefix = (prefix == null) ? "": prefix + File.separator;
-			  scanner = new LocalTibetanScanner(prefix + "thl-dicts/thl");
-			  scanner.getDictionaryDescriptions();
+			  scanner.clearTokens();
 			  scanner.scanBody(wylie);
 			  Token[] tokens = scanner.getTokenArray();
 			  if (tokens == null) {
@@ -97,15 +160,26 @@ public class DictionaryBreakerUPF extends FieldMutatingUpdateProcessorFactory {
               }
 		  } 
 		  catch (Exception e) {
+		      // the scanner may have been left in the middle of a word
+		      scanners.remove();
 		      final Writer result = new StringWriter();
 		      final PrintWriter printWriter = new PrintWriter(result);
 		      e.printStackTrace(printWriter);
 		      return result.toString();
 		  }
+		  finally {
+		      // a value may end in the middle of a word, which must not
+		      // run on into the next one
+		      try {
+		          scanner.finishUp();
+		          scanner.clearTokens();
+		      }
+		      catch (Exception e) {
+		          scanners.remove();
+		      }
+		  }
         }
         
         return src;
-      }
-    };
   }
 }
@@ -0,0 +1,94 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.solr;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.solr.common.util.NamedList;
+import org.thdl.tib.scanner.BinaryFileGenerator;
+
+/**
+ * Tests {@link org.thdl.tib.solr.DictionaryBreakerUPF} at the unit
+ * level, with a dictionary of a few words.
+ */
+public class DictionaryBreakerUPFTest extends TestCase {
+    /** bkra, the first syllable of bkra shis */
+    private static final String MID_WORD = "བཀྲ་";
+    /** bde legs bde ba */
+    private static final String WORDS = "བདེ་ལེགས་བདེ་བ";
+
+    private File dir;
+
+    /** Plain vanilla constructor for DictionaryBreakerUPFTest. */
+    public DictionaryBreakerUPFTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("DictionaryBreakerUPFTest", "");
+        dir.delete();
+        dir.mkdirs();
+
+        File txt = new File(dir, "dict.txt");
+        FileOutputStream fos = new FileOutputStream(txt);
+        fos.write(("bkra shis - auspicious\n"
+                   + "bde legs - well-being\n"
+                   + "bde ba - bliss\n").getBytes("US-ASCII"));
+        fos.close();
+
+        BinaryFileGenerator generator = new BinaryFileGenerator();
+        generator.addFile(txt.getPath(), BinaryFileGenerator.delimiterDash, "-", 0);
+        generator.generateDatabase(new File(dir, "dict").getPath());
+    }
+
+    protected void tearDown() {
+        File kids[] = dir.listFiles();
+        if (null != kids)
+            for (int i = 0; i < kids.length; i++)
+                kids[i].delete();
+        dir.delete();
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(DictionaryBreakerUPFTest.class);
+    }
+
+    private DictionaryBreakerUPF newFactory() {
+        NamedList<Object> args = new NamedList<Object>();
+        args.add("dictionary", new File(dir, "dict").getPath());
+        DictionaryBreakerUPF factory = new DictionaryBreakerUPF();
+        factory.init(args);
+        return factory;
+    }
+
+    /** Tests that a value ending in the middle of a word does not change
+     *  how the next value scanned by the same thread is broken. */
+    public void testValueEndingMidWord() {
+        Object expected = newFactory().breakValue(WORDS);
+
+        DictionaryBreakerUPF factory = newFactory();
+        factory.breakValue(MID_WORD);
+        assertEquals(expected, factory.breakValue(WORDS));
+        assertEquals(expected, factory.breakValue(WORDS));
+    }
+}
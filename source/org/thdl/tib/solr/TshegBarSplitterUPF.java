@@ -1,11 +1,10 @@
 package org.thdl.tib.solr;
 
+import org.thdl.tib.solr.util.TaggedTokens;
 import org.thdl.tib.solr.util.TshegBarUtils;
 
 import java.util.List;
-import java.util.LinkedList;
-
-import org.apache.commons.lang3.StringUtils;
+import java.util.ArrayList;
 
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldValueMutatingUpdateProcessor;
@@ -20,6 +19,8 @@ import org.apache.solr.response.SolrQueryResponse;
 public class TshegBarSplitterUPF extends FieldMutatingUpdateProcessorFactory {
 	private static final String OUTPUT_DELIMITER_PARAM = "outputDelimiter";
 	private static final String OUTPUT_DELIMITER_DEFAULT = " ";
+	/** Syllables are not tagged; this is only what the taggers after us split on. */
+	private static final String TAG_DELIMITER = "|";
     private String outputDelimiter;
 
 	@SuppressWarnings("unchecked")
@@ -41,35 +42,35 @@ public class TshegBarSplitterUPF extends FieldMutatingUpdateProcessorFactory {
     }
   
     @Override
-    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    public UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
         return new FieldValueMutatingUpdateProcessor(getSelector(), next) {
             protected Object mutateValue(final Object src) {
                 if (src instanceof CharSequence) {
-                    CharSequence s = (CharSequence)src;
-                    String[] tokens = s.toString().split("\\s+");
-                    List<String> syllables = new LinkedList<String>();
+                    TaggedTokens tokens = TaggedTokens.of(req, src, TAG_DELIMITER);
+                    List<String> syllables = new ArrayList<String>();
                     
-                    for (int j=0; j<tokens.length; j++) {
+                    for (int j=0; j<tokens.size(); j++) {
+                        String token = tokens.getToken(j);
                         int start = 0;
-                        for (int i=0; i<tokens[j].length(); i++) {
-                            if (TshegBarUtils.isTshegBar(tokens[j].charAt(i))) { //first tsheg bar part of previous syllable
-                                syllables.add(tokens[j].subSequence(start, i+1).toString());
+                        for (int i=0; i<token.length(); i++) {
+                            if (TshegBarUtils.isTshegBar(token.charAt(i))) { //first tsheg bar part of previous syllable
+                                syllables.add(token.substring(start, i+1));
                                 start = i+1;
                             }
-                            else if (TshegBarUtils.isPunctuation(tokens[j].charAt(i))) { //all other punctuation gets own syllable
+                            else if (TshegBarUtils.isPunctuation(token.charAt(i))) { //all other punctuation gets own syllable
                                 if (start != i) {
-                                    syllables.add(tokens[j].subSequence(start, i).toString());
+                                    syllables.add(token.substring(start, i));
                                 }
-                                syllables.add(tokens[j].substring(i, i+1));
+                                syllables.add(token.substring(i, i+1));
                                 start = i+1;
                             }
-                            else if (i == tokens[j].length()-1) {
-                                syllables.add(tokens[j].subSequence(start, i+1).toString());
+                            else if (i == token.length()-1) {
+                                syllables.add(token.substring(start, i+1));
                                 start = i+1;
                             }
                         }
                     }
-                    return StringUtils.join(syllables.iterator(), outputDelimiter);
+                    return new TaggedTokens(syllables.toArray(new String[syllables.size()]), null, TAG_DELIMITER, outputDelimiter).attach(req);
                 }
                 else 
                 {
@@ -1,12 +1,12 @@
 package org.thdl.tib.solr;
 
+import org.thdl.tib.solr.util.TaggedTokens;
 import org.thdl.tib.solr.util.TshegBarUtils;
 
 import java.util.List;
+import java.util.ArrayList;
 import java.util.LinkedList;
 
-import org.apache.commons.lang3.StringUtils;
-
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldValueMutatingUpdateProcessor;
 import org.apache.solr.update.processor.FieldMutatingUpdateProcessorFactory;
@@ -91,7 +91,7 @@ public class TshegBarTaggerUPF extends FieldMutatingUpdateProcessorFactory {
     }
   
     @Override
-    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    public UpdateRequestProcessor getInstance(final SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
         return new FieldValueMutatingUpdateProcessor(getSelector(), next) {
             protected Object mutateValue(final Object src) {
                 if (src instanceof CharSequence) {
@@ -105,16 +105,17 @@ public class TshegBarTaggerUPF extends FieldMutatingUpdateProcessorFactory {
                     }
                     if (!match) r=0;
         	
-                    CharSequence s = (CharSequence)src;
-                    String[] tokens = s.toString().split(splitInput);
-                    List<String> allSyl = new LinkedList<String>();
+                    TaggedTokens tokens = TaggedTokens.of(req, src, splitInput, tagDelimiter);
+                    List<String> allSyl = new ArrayList<String>();
+                    List<String> allTags = new ArrayList<String>();
                     
-                    for (int j=0; j<tokens.length; j++) {
+                    for (int j=0; j<tokens.size(); j++) {
+                        String token = tokens.getToken(j);
                         int start = 0;
                         List<String> wordSyl = new LinkedList<String>();
-                        for (int i=0; i<tokens[j].length(); i++) {
-                            if (TshegBarUtils.isPunctuation(tokens[j].charAt(i)) || i == tokens[j].length()-1) {
-                                wordSyl.add(tokens[j].subSequence(start, i+1).toString());
+                        for (int i=0; i<token.length(); i++) {
+                            if (TshegBarUtils.isPunctuation(token.charAt(i)) || i == token.length()-1) {
+                                wordSyl.add(token.substring(start, i+1));
                                 start = i+1;
                             }
                         }
@@ -123,14 +124,16 @@ public class TshegBarTaggerUPF extends FieldMutatingUpdateProcessorFactory {
                         if (n <= tagSet.length) {
                             int k=0;
                             for (String syl : wordSyl) {
-                                allSyl.add(syl.concat(tagDelimiter).concat(tagSet[n-1][k++]));
+                                allSyl.add(syl);
+                                allTags.add(tagSet[n-1][k++]);
                             }
                         }
                         else {
                             int m = n - tagSet.length + 1;
                             int k = 0;
                             for (String syl : wordSyl) {
-                                allSyl.add(syl.concat(tagDelimiter).concat(tagSet[tagSet.length-1][k]));
+                                allSyl.add(syl);
+                                allTags.add(tagSet[tagSet.length-1][k]);
                                 if (k == r) {
                                     m--;
                                     if (m == 0) {
@@ -143,7 +146,7 @@ public class TshegBarTaggerUPF extends FieldMutatingUpdateProcessorFactory {
                             }
                         }
                     }
-                    return StringUtils.join(allSyl.iterator(), delimitOutput);
+                    return new TaggedTokens(allSyl.toArray(new String[allSyl.size()]), allTags.toArray(new String[allTags.size()]), tagDelimiter, delimitOutput).attach(req);
                 }
                 else 
                 {
@@ -0,0 +1,292 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2001 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.solr.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.request.SolrQueryRequest;
+
+/**
+ * The tokens of a field value such as <code>word|tag word|tag</code>:
+ * the surface of each token, what follows the first tag delimiter in it
+ * (or null if there is no tag), and the offsets of the surfaces in the
+ * untagged text.
+ *
+ * <p>The update processors in a tagging chain pass these along so that
+ * each one does not have to split and re-parse what the one before it
+ * has just joined. A processor that produces tokens stores their text in
+ * the document as usual, and {@link #attach} remembers the tokens behind
+ * that text in the request context. The next processor asks
+ * {@link #of} for the tokens of the value it finds, and only parses it if
+ * the value is not text that was attached. Field values are therefore
+ * always plain strings, as the update log and any other processor in the
+ * chain expect.</p>
+ *
+ * <p>Instances are immutable, so the arrays of one can be shared with the
+ * tokens derived from it, and a value copied to several fields can share
+ * its tokens too.</p>
+ */
+public final class TaggedTokens {
+    /** The split pattern for which parsing does not use a regex. */
+    public static final String WHITESPACE = "\\s+";
+
+    private static final String CONTEXT_KEY = TaggedTokens.class.getName();
+    /** How many values the context remembers, across documents. */
+    private static final int MAX_ATTACHED = 64;
+
+    private final String[] surfaces;
+    private final String[] tags;
+    private final String tagDelimiter;
+    private final String tokenDelimiter;
+
+    /* computed when first needed */
+    private String text;
+    private int[] starts;
+
+    /**
+     * @param surfaces the surface of each token
+     * @param tags the tag of each token, or null for tokens without one;
+     * the array itself may be null if no token has a tag
+     * @param tagDelimiter what separates a surface from its tag
+     * @param tokenDelimiter what separates tokens
+     */
+    public TaggedTokens(String[] surfaces, String[] tags, String tagDelimiter, String tokenDelimiter) {
+        if (tags != null && tags.length != surfaces.length) {
+            throw new IllegalArgumentException("there are " + surfaces.length + " surfaces but " + tags.length + " tags");
+        }
+        this.surfaces = surfaces;
+        this.tags = tags;
+        this.tagDelimiter = tagDelimiter;
+        this.tokenDelimiter = tokenDelimiter;
+    }
+
+    /** Returns tokens with the same surfaces as these and the given tags,
+     *  joined with the given delimiters. */
+    public TaggedTokens withTags(String[] tags, String tagDelimiter, String tokenDelimiter) {
+        return new TaggedTokens(surfaces, tags, tagDelimiter, tokenDelimiter);
+    }
+
+    /**
+     * Splits text into tokens, and each token into a surface and a tag at
+     * the first tagDelimiter. With {@link #WHITESPACE} as the split
+     * pattern, empty tokens are dropped rather than kept at the start as
+     * String.split keeps them.
+     */
+    public static TaggedTokens parse(String text, String splitPattern, String tagDelimiter) {
+        List<String> tokens;
+        if (WHITESPACE.equals(splitPattern)) {
+            tokens = new ArrayList<String>();
+            int len = text.length();
+            int i = 0;
+            while (i < len) {
+                while (i < len && isWhitespace(text.charAt(i))) i++;
+                int start = i;
+                while (i < len && !isWhitespace(text.charAt(i))) i++;
+                if (i > start) tokens.add(text.substring(start, i));
+            }
+        }
+        else {
+            String[] split = text.split(splitPattern);
+            tokens = new ArrayList<String>(split.length);
+            for (int i=0; i<split.length; i++) tokens.add(split[i]);
+        }
+
+        int n = tokens.size();
+        String[] surfaces = new String[n];
+        String[] tags = null;
+        for (int i=0; i<n; i++) {
+            String token = tokens.get(i);
+            int k = token.indexOf(tagDelimiter);
+            if (k == -1) {
+                surfaces[i] = token;
+            }
+            else {
+                if (tags == null) tags = new String[n];
+                surfaces[i] = token.substring(0, k);
+                tags[i] = token.substring(k + tagDelimiter.length());
+            }
+        }
+        TaggedTokens t = new TaggedTokens(surfaces, tags, tagDelimiter, " ");
+        if (WHITESPACE.equals(splitPattern)) {
+            t.text = text;
+        }
+        return t;
+    }
+
+    /**
+     * Returns the tokens of a field value. If value is the text of tokens
+     * attached to req with the same tag delimiter, and splitting it on
+     * splitPattern would give those tokens back, they are returned;
+     * otherwise value is parsed.
+     * @param req the request, or null to always parse
+     */
+    public static TaggedTokens of(SolrQueryRequest req, Object value, String splitPattern, String tagDelimiter) {
+        String s = value.toString();
+        if (req != null && WHITESPACE.equals(splitPattern)) {
+            Map<String,TaggedTokens> attached = attached(req, false);
+            if (attached != null) {
+                TaggedTokens t = attached.get(s);
+                if (t != null && t.tagDelimiter.equals(tagDelimiter)) {
+                    return t;
+                }
+            }
+        }
+        return parse(s, splitPattern, tagDelimiter);
+    }
+
+    /** Same as {@link #of(SolrQueryRequest, Object, String, String)}
+     *  splitting on whitespace. */
+    public static TaggedTokens of(SolrQueryRequest req, Object value, String tagDelimiter) {
+        return of(req, value, WHITESPACE, tagDelimiter);
+    }
+
+    /**
+     * Returns the text of these tokens, to be stored as a field value,
+     * and remembers them in req's context so that the processors after
+     * this one can get them back with {@link #of}. Tokens that would not
+     * parse back the same, for instance because a tag has a space in it,
+     * are not remembered.
+     * @param req the request, or null to only return the text
+     */
+    public String attach(SolrQueryRequest req) {
+        String s = toString();
+        if (req != null && parsesBack()) {
+            attached(req, true).put(s, this);
+        }
+        return s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,TaggedTokens> attached(SolrQueryRequest req, boolean create) {
+        Map<Object,Object> context = req.getContext();
+        Map<String,TaggedTokens> attached = (Map<String,TaggedTokens>)context.get(CONTEXT_KEY);
+        if (attached == null && create) {
+            attached = new LinkedHashMap<String,TaggedTokens>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String,TaggedTokens> eldest) {
+                    return size() > MAX_ATTACHED;
+                }
+            };
+            context.put(CONTEXT_KEY, attached);
+        }
+        return attached;
+    }
+
+    /** Returns true if parsing the text of these tokens on whitespace
+     *  gives the same surfaces and tags. */
+    private boolean parsesBack() {
+        if (tokenDelimiter.length() == 0 || !isAllWhitespace(tokenDelimiter)
+            || tagDelimiter.length() == 0 || hasWhitespace(tagDelimiter)) {
+            return false;
+        }
+        for (int i=0; i<surfaces.length; i++) {
+            String tag = getTag(i);
+            if (hasWhitespace(surfaces[i]) || surfaces[i].indexOf(tagDelimiter) != -1) {
+                return false;
+            }
+            if (tag == null ? surfaces[i].length() == 0 : hasWhitespace(tag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The characters that \s matches. */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean hasWhitespace(String s) {
+        for (int i=0; i<s.length(); i++) {
+            if (isWhitespace(s.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private static boolean isAllWhitespace(String s) {
+        for (int i=0; i<s.length(); i++) {
+            if (!isWhitespace(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    public int size() {
+        return surfaces.length;
+    }
+
+    public String getSurface(int i) {
+        return surfaces[i];
+    }
+
+    /** Returns the tag of token i, or null if it has none. */
+    public String getTag(int i) {
+        return tags == null ? null : tags[i];
+    }
+
+    /** Returns token i as it appears in the text: its surface, the tag
+     *  delimiter and its tag. */
+    public String getToken(int i) {
+        String tag = getTag(i);
+        return tag == null ? surfaces[i] : surfaces[i] + tagDelimiter + tag;
+    }
+
+    public String getTagDelimiter() {
+        return tagDelimiter;
+    }
+
+    /** Returns the offset of the surface of token i in the text made of
+     *  all the surfaces, without tags or delimiters. */
+    public int getStart(int i) {
+        return starts()[i];
+    }
+
+    /** Returns the offset just past the surface of token i in the text
+     *  made of all the surfaces. */
+    public int getEnd(int i) {
+        return starts()[i + 1];
+    }
+
+    private int[] starts() {
+        if (starts == null) {
+            int[] s = new int[surfaces.length + 1];
+            for (int i=0; i<surfaces.length; i++) {
+                s[i + 1] = s[i] + surfaces[i].length();
+            }
+            starts = s;
+        }
+        return starts;
+    }
+
+    /** Returns the tokens joined with the token delimiter. */
+    public String toString() {
+        if (text == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<surfaces.length; i++) {
+                if (i > 0) sb.append(tokenDelimiter);
+                sb.append(surfaces[i]);
+                String tag = getTag(i);
+                if (tag != null) sb.append(tagDelimiter).append(tag);
+            }
+            text = sb.toString();
+        }
+        return text;
+    }
+}
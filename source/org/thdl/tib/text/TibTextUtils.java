@@ -1390,6 +1390,34 @@ public class TibTextUtils implements THDLWylieConstants {
         int fontSize = ((SizedDuffCode)glyphList.get(0)).getFontSize();
         TGCList gcs
             = breakTshegBarIntoGraphemeClusters(glyphList, noSuch);
+        getTshegBarTranslit(EWTSNotACIP, gcs, fontSize, warnings,
+                            translitBuffer);
+    }
+
+    /** Returns the EWTS for the tsheg bar made of the grapheme
+        clusters gcs, which must not contain punctuation.  This is
+        what {@link #getTranslit(boolean, SizedDuffCode[], boolean[])}
+        does for each tsheg bar, but it needs no TMW glyphs, so
+        converters from other encodings (e.g., Unicode) can build the
+        TGCPairs themselves and still get user-friendly EWTS like
+        {rnams} instead of {r+na+ma+sa}.
+        @param warnings either null or a buffer to which will be
+        appended warnings about illegal tsheg bars */
+    public static String getEwtsForTshegBar(TGCList gcs,
+                                            StringBuffer warnings) {
+        TranslitList translitBuffer = new TranslitList();
+        getTshegBarTranslit(true, gcs, 12, warnings, translitBuffer);
+        return translitBuffer.getString();
+    }
+
+    /** Like {@link #getTshegBarTranslit(boolean, java.util.List,
+        boolean[], StringBuffer, TranslitList)} but for grapheme
+        clusters that have already been built. */
+    private static void getTshegBarTranslit(boolean EWTSNotACIP,
+                                            TGCList gcs,
+                                            int fontSize,
+                                            StringBuffer warnings,
+                                            TranslitList translitBuffer) {
         String candidateType = getClassificationOfTshegBar(gcs, warnings, false);
         if (debug) System.out.println("DEBUG: tsheg bar classification is " + candidateType);
         int sz = gcs.size();
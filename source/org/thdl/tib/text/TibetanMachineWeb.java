@@ -20,17 +20,26 @@ Contributor(s): ______________________________________.
 package org.thdl.tib.text;
 
 import java.awt.Font;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.zip.CRC32;
 
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
@@ -97,6 +106,8 @@ public class TibetanMachineWeb implements THDLWylieConstants {
     /** For mapping codepoints U+F021..U+0FFF to TMW. */
     private static DuffCode[][] NonUnicodeToTMW = new DuffCode[256][1];
     private static String fileName = "tibwn.ini";
+    /** tibwn.ini's tables, precompiled by {@link SnapshotWriter}: */
+    private static final String snapshotFileName = "tibwn.snapshot";
     private static final String DELIMITER = "~";
     /** vowels that appear over the glyph: */
     private static Set top_vowels;
@@ -254,7 +265,7 @@ public class TibetanMachineWeb implements THDLWylieConstants {
     /** If the TMW font files are resources associated with this
      *  class, those font files are loaded.  This means that the user
      *  need not install the fonts on their system, but it does make
-     *  the JAR bigger and takes time at startup.
+     *  the JAR bigger and takes time; see {@link #loadFontFiles()}.
      *  @return true upon successful loading, false otherwise */
     private static boolean readInTMWFontFiles() {
         /* Note the leading slashes on these paths: */
@@ -274,7 +285,7 @@ public class TibetanMachineWeb implements THDLWylieConstants {
     /** If the TM font files are resources associated with this
      *  class, those font files are loaded.  This means that the user
      *  need not install the fonts on their system, but it does make
-     *  the JAR bigger and takes time at startup.
+     *  the JAR bigger and takes time; see {@link #loadFontFiles()}.
      *  @return true upon successful loading, false otherwise */
     private static boolean readInTMFontFiles() {
         /* Note the leading slashes on these paths: */
@@ -334,13 +345,6 @@ public class TibetanMachineWeb implements THDLWylieConstants {
 * performing other acts of initialization.
 */
     private static void readData() {
-        if (!ThdlOptions.getBooleanOption("thdl.rely.on.system.tmw.fonts")) {
-            readInTMWFontFiles();
-        }
-        if (!ThdlOptions.getBooleanOption("thdl.rely.on.system.tm.fonts")) {
-            readInTMFontFiles();
-        }
-
         defaultUnicodeFontAttributeSet = new SimpleAttributeSet();
         StyleConstants.setFontFamily(defaultUnicodeFontAttributeSet,
                                      "Tibetan Machine Uni");
@@ -451,6 +455,13 @@ public class TibetanMachineWeb implements THDLWylieConstants {
         top_vowels.add(au_VOWEL);
         top_vowels.add(reverse_i_VOWEL);
 
+        if (!readSnapshot())
+            readTibwnIni();
+    }
+
+    /** Parses tibwn.ini, filling in the tables that map among
+     *  Wylie, TibetanMachine, TibetanMachineWeb, and Unicode. */
+    private static void readTibwnIni() {
         try {
             URL url = TibetanMachineWeb.class.getResource(fileName);
             if (url == null) {
@@ -795,6 +806,263 @@ public class TibetanMachineWeb implements THDLWylieConstants {
         }
     }
 
+    /** Identifies a snapshot of tibwn.ini and the version of its
+     *  format. */
+    private static final int SNAPSHOT_MAGIC = 0x544D5701;
+
+    /** Returns the CRC-32 of tibwn.ini, or -1 if it cannot be read. */
+    private static long getTibwnIniChecksum() {
+        InputStream is = TibetanMachineWeb.class.getResourceAsStream(fileName);
+        if (null == is)
+            return -1;
+        try {
+            CRC32 crc = new CRC32();
+            byte buf[] = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) > 0)
+                crc.update(buf, 0, n);
+            return crc.getValue();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                ThdlDebug.noteIffyCode();
+            }
+        }
+    }
+
+    /** Fills in the tables from the resource tibwn.snapshot, which
+     *  {@link SnapshotWriter} creates at build time, rather than
+     *  parsing tibwn.ini.  Does nothing if there is no snapshot, if
+     *  the snapshot was made from some other tibwn.ini, or if the
+     *  option thdl.do.not.use.tibwn.snapshot is true.
+     *  @return true iff the tables were filled in */
+    private static boolean readSnapshot() {
+        if (ThdlOptions.getBooleanOption("thdl.do.not.use.tibwn.snapshot"))
+            return false;
+        InputStream is
+            = TibetanMachineWeb.class.getResourceAsStream(snapshotFileName);
+        if (null == is)
+            return false;
+        try {
+            DataInputStream in
+                = new DataInputStream(new BufferedInputStream(is));
+            if (SNAPSHOT_MAGIC != in.readInt()
+                || getTibwnIniChecksum() != in.readLong())
+                return false;
+
+            // Read everything before touching the tables so that a
+            // bad snapshot leaves them for readTibwnIni to fill.
+            DuffCode[] codes = new DuffCode[11*256];
+            Map newTibHash = new HashMap();
+            for (int n = in.readInt(); n > 0; n--) {
+                String wylie = in.readUTF();
+                DuffCode[] duffCodes = new DuffCode[11];
+                for (int i = 0; i < duffCodes.length; i++)
+                    duffCodes[i] = readDuffCode(in, codes);
+                newTibHash.put(wylie, duffCodes);
+            }
+            Map newBinduMap = new HashMap();
+            for (int n = in.readInt(); n > 0; n--) {
+                DuffCode key = readDuffCode(in, codes);
+                newBinduMap.put(key, readDuffCode(in, codes));
+            }
+            String[][] newToHashKey = new String[toHashKey.length][toHashKey[0].length];
+            readStrings(in, newToHashKey);
+            DuffCode[][] newTMtoTMW = new DuffCode[TMtoTMW.length][TMtoTMW[0].length];
+            readDuffCodes(in, codes, newTMtoTMW);
+            DuffCode[][] newTMWtoTM = new DuffCode[TMWtoTM.length][TMWtoTM[0].length];
+            readDuffCodes(in, codes, newTMWtoTM);
+            String[][] newTMWtoUnicode = new String[TMWtoUnicode.length][TMWtoUnicode[0].length];
+            readStrings(in, newTMWtoUnicode);
+            DuffCode[][] newUnicodeToTMW = new DuffCode[UnicodeToTMW.length][1];
+            readDuffCodes(in, codes, newUnicodeToTMW);
+            DuffCode[][] newNonUnicodeToTMW = new DuffCode[NonUnicodeToTMW.length][1];
+            readDuffCodes(in, codes, newNonUnicodeToTMW);
+            String[] newTibSet = new String[in.readInt()];
+            for (int i = 0; i < newTibSet.length; i++)
+                newTibSet[i] = in.readUTF();
+            String[] newSanskritStackSet = new String[in.readInt()];
+            for (int i = 0; i < newSanskritStackSet.length; i++)
+                newSanskritStackSet[i] = in.readUTF();
+            if (SNAPSHOT_MAGIC != in.readInt())
+                return false;
+
+            tibHash = newTibHash;
+            binduMap = newBinduMap;
+            toHashKey = newToHashKey;
+            TMtoTMW = newTMtoTMW;
+            TMWtoTM = newTMWtoTM;
+            TMWtoUnicode = newTMWtoUnicode;
+            UnicodeToTMW = newUnicodeToTMW;
+            NonUnicodeToTMW = newNonUnicodeToTMW;
+            tibSet.addAll(Arrays.asList(newTibSet));
+            sanskritStackSet.addAll(Arrays.asList(newSanskritStackSet));
+            return true;
+        } catch (IOException e) {
+            ThdlDebug.noteIffyCode();
+            return false;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                ThdlDebug.noteIffyCode();
+            }
+        }
+    }
+
+    /** Writes the tables filled in from tibwn.ini to out in the form
+     *  {@link #readSnapshot()} reads. */
+    private static void writeSnapshot(OutputStream os) throws IOException {
+        DataOutputStream out
+            = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(getTibwnIniChecksum());
+        out.writeInt(tibHash.size());
+        Iterator it = tibHash.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry)it.next();
+            out.writeUTF((String)e.getKey());
+            DuffCode[] duffCodes = (DuffCode[])e.getValue();
+            for (int i = 0; i < duffCodes.length; i++)
+                writeDuffCode(out, duffCodes[i]);
+        }
+        out.writeInt(binduMap.size());
+        it = binduMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry)it.next();
+            writeDuffCode(out, (DuffCode)e.getKey());
+            writeDuffCode(out, (DuffCode)e.getValue());
+        }
+        writeStrings(out, toHashKey);
+        writeDuffCodes(out, TMtoTMW);
+        writeDuffCodes(out, TMWtoTM);
+        writeStrings(out, TMWtoUnicode);
+        writeDuffCodes(out, UnicodeToTMW);
+        writeDuffCodes(out, NonUnicodeToTMW);
+        out.writeInt(tibSet.size());
+        it = tibSet.iterator();
+        while (it.hasNext())
+            out.writeUTF((String)it.next());
+        out.writeInt(sanskritStackSet.size());
+        it = sanskritStackSet.iterator();
+        while (it.hasNext())
+            out.writeUTF((String)it.next());
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.flush();
+    }
+
+    /** Writes dc, which may be null, as a short. */
+    private static void writeDuffCode(DataOutputStream out, DuffCode dc)
+        throws IOException
+    {
+        if (null == dc) {
+            out.writeShort(0);
+        } else {
+            if (dc.getFontNum() < 1)
+                throw new Error("tibwn.ini has a glyph that isn't a glyph: " + dc);
+            out.writeShort(dc.getFontNum() * 256 + dc.getCharNum());
+        }
+    }
+
+    /** Reads a DuffCode written by writeDuffCode, sharing the
+     *  instances in codes. */
+    private static DuffCode readDuffCode(DataInputStream in,
+                                         DuffCode[] codes)
+        throws IOException
+    {
+        int x = in.readUnsignedShort();
+        if (0 == x)
+            return null;
+        if (x >= codes.length)
+            throw new IOException("not a DuffCode: " + x);
+        if (null == codes[x])
+            codes[x] = new DuffCode(x / 256, (char)(x % 256));
+        return codes[x];
+    }
+
+    private static void writeDuffCodes(DataOutputStream out,
+                                       DuffCode[][] table)
+        throws IOException
+    {
+        for (int i = 0; i < table.length; i++)
+            for (int j = 0; j < table[i].length; j++)
+                writeDuffCode(out, table[i][j]);
+    }
+
+    private static void readDuffCodes(DataInputStream in, DuffCode[] codes,
+                                      DuffCode[][] table)
+        throws IOException
+    {
+        for (int i = 0; i < table.length; i++)
+            for (int j = 0; j < table[i].length; j++)
+                table[i][j] = readDuffCode(in, codes);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[][] table)
+        throws IOException
+    {
+        for (int i = 0; i < table.length; i++) {
+            for (int j = 0; j < table[i].length; j++) {
+                out.writeBoolean(null != table[i][j]);
+                if (null != table[i][j])
+                    out.writeUTF(table[i][j]);
+            }
+        }
+    }
+
+    private static void readStrings(DataInputStream in, String[][] table)
+        throws IOException
+    {
+        for (int i = 0; i < table.length; i++)
+            for (int j = 0; j < table[i].length; j++)
+                table[i][j] = in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /** Creates the resource tibwn.snapshot.  The build runs this after
+     *  copying tibwn.ini next to the class files. */
+    public static final class SnapshotWriter {
+        private SnapshotWriter() { }
+
+        /** Parses tibwn.ini and writes its tables to the file named by
+         *  the sole argument. */
+        public static void main(String[] args) throws IOException {
+            if (args.length != 1) {
+                System.err.println("Usage: TibetanMachineWeb$SnapshotWriter tibwn.snapshot");
+                System.exit(1);
+            }
+            System.setProperty("java.awt.headless", "true");
+            System.setProperty("thdl.do.not.use.tibwn.snapshot", "true");
+            OutputStream os = new FileOutputStream(args[0]);
+            try {
+                writeSnapshot(os);
+            } finally {
+                os.close();
+            }
+        }
+    }
+
+    private static boolean fontFilesLoaded = false;
+
+    /** Loads the TibetanMachineWeb and TibetanMachine fonts bundled as
+     *  resources unless the options thdl.rely.on.system.tmw.fonts and
+     *  thdl.rely.on.system.tm.fonts say not to.  Only code that
+     *  renders Tibetan needs this; conversions do not, so this is not
+     *  done at startup.  Calls after the first do nothing. */
+    public static synchronized void loadFontFiles() {
+        if (fontFilesLoaded)
+            return;
+        fontFilesLoaded = true;
+        if (!ThdlOptions.getBooleanOption("thdl.rely.on.system.tmw.fonts")) {
+            readInTMWFontFiles();
+        }
+        if (!ThdlOptions.getBooleanOption("thdl.rely.on.system.tm.fonts")) {
+            readInTMFontFiles();
+        }
+    }
+
 /**
 * (Re-)sets the keyboard.
 * @param kb the keyboard to be installed. If null, then the
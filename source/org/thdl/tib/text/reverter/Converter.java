@@ -18,6 +18,7 @@ Contributor(s): ______________________________________.
 
 package org.thdl.tib.text.reverter;
 
+import java.io.IOException;
 import java.text.BreakIterator;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -26,6 +27,10 @@ import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.thdl.tib.text.TGCList;
+import org.thdl.tib.text.TGCPair;
+import org.thdl.tib.text.TibTextUtils;
+import org.thdl.tib.text.TibetanMachineWeb;
 import org.thdl.tib.text.tshegbar.UnicodeUtils;
 
 /** Static methods for converting Unicode to EWTS and
@@ -38,8 +43,9 @@ public class Converter {
         throw new Error("There's no point in instantiating this class.");
     }
 
-    /** Finds combining character sequences. */
-    private static BreakIterator breaker
+    /** Finds combining character sequences.  BreakIterators are not
+     *  thread-safe, so each split uses its own clone. */
+    private static final BreakIterator breaker
     = BreakIterator.getCharacterInstance(new Locale("bo"));
 
 
@@ -74,6 +80,7 @@ public class Converter {
                                + UnicodeUtils.unicodeStringToPrettyString(nfthdl));
         }
         ArrayList al = new ArrayList();
+        BreakIterator breaker = (BreakIterator)Converter.breaker.clone();
         breaker.setText(nfthdl);
         int start = breaker.first();
         boolean just_saw_0f7f = false;
@@ -141,6 +148,133 @@ public class Converter {
         }
         return sb.toString();
     }
+
+    /** Converts Tibetan Unicode to human-friendly EWTS (e.g., {rnams},
+     *  not {r+na+ma+sa}), appending the result to out.  Anything
+     *  outside of the Tibetan range U+0F00-U+0FFF is copied as is.
+     *  Each tsheg bar is transliterated by {@link
+     *  TibTextUtils#getEwtsForTshegBar(TGCList, StringBuffer)} straight
+     *  from its grapheme clusters, so this works in a single pass and
+     *  needs neither TMW glyphs nor a Swing document.  If errors is
+     *  non-null, error messages are appended to it.  (Errors are
+     *  always inline, too.)
+     *  @return true iff every grapheme cluster had an EWTS
+     *  transliteration */
+    public static boolean convertToEwts(CharSequence unicode,
+                                        Appendable out,
+                                        StringBuffer errors)
+        throws IOException
+    {
+        boolean ok = true;
+        int len = unicode.length();
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            if (UnicodeUtils.isInTibetanRange(unicode.charAt(start))) {
+                while (end < len
+                       && UnicodeUtils.isInTibetanRange(unicode.charAt(end)))
+                    ++end;
+                ok &= convertTibetanToEwts(unicode.subSequence(start, end).toString(),
+                                           out, errors);
+            } else {
+                while (end < len
+                       && !UnicodeUtils.isInTibetanRange(unicode.charAt(end)))
+                    ++end;
+                out.append(unicode, start, end);
+            }
+            start = end;
+        }
+        return ok;
+    }
+
+    /** Like {@link #convertToEwts(CharSequence, Appendable,
+     *  StringBuffer)}, but returns a String. */
+    public static String convertToEwts(String unicode, StringBuffer errors) {
+        StringBuilder sb = new StringBuilder(unicode.length() * 2);
+        try {
+            convertToEwts(unicode, sb, errors);
+        } catch (IOException e) {
+            throw new Error("StringBuilders don't throw IOExceptions");
+        }
+        return sb.toString();
+    }
+
+    /** Appends to out the EWTS for tibetan, a stretch of text made
+     *  only of characters from the Tibetan range. */
+    private static boolean convertTibetanToEwts(String tibetan,
+                                                Appendable out,
+                                                StringBuffer errors)
+        throws IOException
+    {
+        boolean ok = true;
+        String decomposed
+            = UnicodeUtils.toMostlyDecomposedUnicode(tibetan,
+                                                     UnicodeUtils.NORM_NFTHDL);
+        GCList tshegBar = new GCList();
+        for (Iterator it = SplitGC(decomposed).iterator(); it.hasNext(); ) {
+            GC gc = (GC)it.next();
+            List pairs = gc.getTGCPairs();
+            if (null == pairs) {
+                tshegBar.flush(out);
+                String error = "[#ERROR 301: The Unicode '"
+                    + gc.getNfthdl()
+                    + "' (has no EWTS transliteration]";
+                if (null != errors) {
+                    errors.append(error);
+                    errors.append('\n');
+                }
+                out.append(error);
+                ok = false;
+                continue;
+            }
+            for (int i = 0; i < pairs.size(); i++) {
+                TGCPair tp = (TGCPair)pairs.get(i);
+                if (TGCPair.OTHER == tp.classification
+                    && isPunctuation(tp.getWylie())) {
+                    tshegBar.flush(out);
+                    out.append(tp.getWylie());
+                } else {
+                    tshegBar.add(tp);
+                }
+            }
+        }
+        tshegBar.flush(out);
+        return ok;
+    }
+
+    /** Returns true if wylie is punctuation that ends a tsheg bar.
+     *  Some Unicode characters, like U+0F0E, are more than one TMW
+     *  punctuation glyph. */
+    private static boolean isPunctuation(String wylie) {
+        if (TibetanMachineWeb.isWylieAdornment(wylie))
+            return false;
+        if (TibetanMachineWeb.isWyliePunc(wylie))
+            return true;
+        for (int i = 0; i < wylie.length(); i++) {
+            if (!TibetanMachineWeb.isWyliePunc(wylie.substring(i, i + 1)))
+                return false;
+        }
+        return true;
+    }
+
+    /** The grapheme clusters of the tsheg bar being converted. */
+    private static class GCList implements TGCList {
+        private ArrayList al = new ArrayList();
+
+        public int size() { return al.size(); }
+
+        public TGCPair get(int i) { return (TGCPair)al.get(i); }
+
+        void add(TGCPair tp) { al.add(tp); }
+
+        /** Appends the EWTS for this tsheg bar to out and empties
+         *  this list. */
+        void flush(Appendable out) throws IOException {
+            if (al.isEmpty()) return;
+            out.append(TibTextUtils.getEwtsForTshegBar(this, null));
+            al.clear();
+        }
+    }
 }
 
 // TODO(dchandler): give a mode where an error is given if non-Tibetan
@@ -62,9 +62,14 @@ public class ConverterTest extends TestCase {
         assertTrue(error);
     }
 
-    /** Tests Converter.convertToEwtsForHumans. */
+    /** Tests Converter.convertToEwts, which gives EWTS for humans. */
     private void hconv(String uni, String ewts) {
-        System.out.println("TODO(dchandler): DLC: implement me");
+        StringBuffer sb = new StringBuffer();
+        String actualEwts = Converter.convertToEwts(uni, sb);
+        assertEquals("Expected " + ewts + " but got " + actualEwts + ":\n",
+                     ewts, actualEwts);
+        boolean error = (sb.length() > 0);
+        assertTrue(!error);
     }
 
     /** Tests Converter.convertToEwtsForComputers. */
@@ -151,6 +156,20 @@ public class ConverterTest extends TestCase {
                               // alone?  warn/error otherwise.
         conv("\u0f05", "#");  // TODO(dchandler): warn or error
     }
+
+    public void testUnicodeToHumanEwts() {
+        hconv("\u0f56\u0f66\u0f92\u0fb2\u0f74\u0f56\u0f66\u0f0b", "bsgrubs ");
+        hconv("\u0f62\u0fa3\u0f58\u0f66", "rnams");
+        hconv("\u0f56\u0f62\u0f9f\u0f42\u0f66\u0f0b", "brtags ");
+        hconv("\u0f58\u0f60\u0f7c\u0f44\u0f66", "ma'ongs");
+        hconv("\u0f54\u0f60\u0f58", "pa'am");
+        hconv("\u0f40\u0fb5\u0f7a", "k+She");
+        hconv("\u0f54\u0f7e", "paM");
+        hconv("\u0f40\u0f0d\u0f0b\u0f42", "ka/ ga");
+        hconv("\u0f22\u0f20\u0f21\u0f23", "2013");
+        hconv("abc \u0f40\u0f0b def\n\u0f42", "abc ka  def\nga");
+        hconv("", "");
+    }
 }
 // TODO(dchandler): DLC: test all these round-trip, i.e. assert that
 // Uni->EWTS->Uni produces the same Uni.
@@ -18,11 +18,15 @@ Contributor(s): ______________________________________.
 
 package org.thdl.tib.text.reverter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import org.thdl.util.ThdlDebug;
+import org.thdl.tib.text.TGCPair;
 import org.thdl.tib.text.THDLWylieConstants;
+import org.thdl.tib.text.TibetanMachineWeb;
 import org.thdl.tib.text.tshegbar.UnicodeUtils;
 import org.thdl.tib.text.tshegbar.UnicodeCodepointToThdlWylie;
 
@@ -189,6 +193,93 @@ class GC {
         return sb;
     }
 
+    /** Returns this grapheme cluster as the (consonant stack,
+     *  vowels) pairs that {@link
+     *  org.thdl.tib.text.TibTextUtils#getEwtsForTshegBar} expects, the
+     *  same ones that it builds out of TMW glyphs, so that the tsheg
+     *  bar this belongs to can be given human-friendly EWTS.  Most
+     *  grapheme clusters give just one pair whose consonant is a TMW
+     *  hash key ({s-g-r}, {k+Sh}).  Numbers, punctuation and marks
+     *  that TMW does not treat as adornment (e.g., U+0F7F) come back
+     *  as pairs of their own.
+     *  @return null if this grapheme cluster has no valid EWTS
+     *  representation, or a list of TGCPairs otherwise */
+    public List/*<TGCPair>*/ getTGCPairs() {
+        if (!valid) {
+            return null;
+        }
+        List pairs = new ArrayList(2);
+        String consonant = null;
+        StringBuffer vowel = new StringBuffer();
+        for (int i = 0; i < nfthdl.length(); i++) {
+            char ch = nfthdl.charAt(i);
+            boolean isRoot
+                = (0 == i && UnicodeUtils.isNonSubjoinedConsonant(ch));
+            String ewts
+                = UnicodeCodepointToThdlWylie.getThdlWylieForUnicodeCodepoint(ch);
+            // The same special cases as getEwtsForComputers():
+            if (i + 1 < nfthdl.length()) {
+                if (('\u0f55' == ch || '\u0fa5' == ch)
+                    && '\u0f39' == nfthdl.charAt(i + 1)) {
+                    ++i;
+                    ewts = "f";  // TODO(dchandler): hard-coded EWTS
+                } else if (('\u0f56' == ch || '\u0fa6' == ch)
+                           && '\u0f39' == nfthdl.charAt(i + 1)) {
+                    ++i;
+                    ewts = "v";  // TODO(dchandler): hard-coded EWTS
+                } else if ('\u0f71' == ch && '\u0f72' == nfthdl.charAt(i + 1)) {
+                    ++i;
+                    ewts = THDLWylieConstants.I_VOWEL;
+                } else if ('\u0f71' == ch && '\u0f74' == nfthdl.charAt(i + 1)) {
+                    ++i;
+                    ewts = THDLWylieConstants.U_VOWEL;
+                }
+            }
+            if (null == ewts) {
+                return null;
+            }
+            if (isRoot) {
+                consonant = ewts;
+            } else if (null != consonant && vowel.length() == 0
+                       && UnicodeUtils.isSubjoinedConsonant(ch)) {
+                consonant += THDLWylieConstants.WYLIE_SANSKRIT_STACKING_KEY + ewts;
+            } else if (null != consonant && vowel.length() == 0
+                       && '\u0f39' == ch) {
+                consonant += ewts;
+            } else if (TibetanMachineWeb.isWylieAdornment(ewts)) {
+                vowel.append(ewts);
+            } else {
+                // number or weird thing, as in TibTextUtils:
+                addTGCPair(pairs, consonant, vowel.toString());
+                pairs.add(new TGCPair(ewts, null, TGCPair.TYPE_OTHER));
+                consonant = null;
+                vowel.setLength(0);
+            }
+        }
+        addTGCPair(pairs, consonant, vowel.toString());
+        return pairs;
+    }
+
+    /** Adds to pairs the pair for the consonant stack with EWTS
+     *  {@code consonant} and the given vowels, if there is anything
+     *  to add. */
+    private static void addTGCPair(List pairs, String consonant,
+                                   String vowel) {
+        if (null == consonant) {
+            if (vowel.length() > 0)
+                pairs.add(new TGCPair(null, vowel, TGCPair.TYPE_OTHER));
+            return;
+        }
+        // Tibetan stacks are known to TMW as {s-g-r}, Sanskrit ones
+        // as {k+Sh}:
+        String tibetanKey = consonant.replace('+', '-');
+        if (TibetanMachineWeb.isKnownHashKey(tibetanKey)
+            && TibetanMachineWeb.isWylieTibetanConsonantOrConsonantStack(TibetanMachineWeb.wylieForGlyph(tibetanKey)))
+            pairs.add(new TGCPair(tibetanKey, vowel, TGCPair.TYPE_TIBETAN));
+        else
+            pairs.add(new TGCPair(consonant, vowel, TGCPair.TYPE_SANSKRIT));
+    }
+
     public int hashCode() { return nfthdl.hashCode(); }
 
     public boolean equals(Object o) {
@@ -540,7 +540,12 @@ public class UnicodeUtils implements UnicodeConstants {
         // over all of unicode_pairs and see if it isn't faster.
         do {
             mutated_this_time_through = false;
-            for (int i = 0; i < len - 1; i++)
+            for (int i = 0; i < len - 1; i++) {
+                // Every unicode_pairs[j][1] is in this range, and most
+                // characters are not:
+                char ch = sb.charAt(i);
+                if (ch < '\u0f71' || ch > '\u0f83')
+                    continue;
                 for (int j = 0; j < unicode_pairs.length; j++)
                     if (unicode_pairs[j][1] == sb.charAt(i)
                         && unicode_pairs[j][0] == sb.charAt(i + 1)) {
@@ -549,6 +554,7 @@ public class UnicodeUtils implements UnicodeConstants {
                         mutated = true;
                         mutated_this_time_through = true;
                     }
+            }
         } while (mutated_this_time_through);
         return mutated;
     }
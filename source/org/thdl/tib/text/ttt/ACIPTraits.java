@@ -42,9 +42,17 @@ public final class ACIPTraits implements TTraits {
     private ACIPTraits() { }
 
     /** Returns the singleton instance of this class. */
-    public static /* synchronized */ ACIPTraits instance() {
+    public static synchronized ACIPTraits instance() {
         if (null == singleton) {
-            singleton = new ACIPTraits();
+            ACIPTraits t = new ACIPTraits();
+            // Fill in the lookup tables now, before any other thread
+            // can see them, so that any number of threads may convert
+            // at once.
+            t.getUnicodeFor(null, false);
+            t.getEwtsForConsonant(null);
+            t.getEwtsForOther(null);
+            t.getEwtsForWowel(null);
+            singleton = t;
         }
         return singleton;
     }
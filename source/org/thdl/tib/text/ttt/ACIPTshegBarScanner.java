@@ -140,6 +140,60 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
      *  would too, like "NYA x" and "(" and ")" and "/NYA" etc.  */
     public ArrayList scan(String s, StringBuffer errors, int maxErrors,
                           boolean shortMessages, String warningLevel) {
+        return scanPart(s, errors, maxErrors, shortMessages, warningLevel,
+                        new int[] { 0, 0, 0 });
+    }
+
+    /** Breaks after a line of Tibetan that ends in the middle of a
+     *  tsheg bar, e.g. "KA\nGA" or "KA\r\nGA", when no bracketed
+     *  section, slash, or parenthesis is open.  There a tsheg is
+     *  always inserted, and nothing looks across the line break. */
+    protected int lastSafeBreak(CharSequence s) {
+        if (!BRACKETED_SECTIONS_PASS_THROUGH_UNMODIFIED)
+            return -1;
+        int best = -1;
+        int sl = s.length();
+        boolean waitingForMatchingIllegalClose = false;
+        boolean slashOpen = false;
+        boolean parenOpen = false;
+        for (int i = 0; i < sl; i++) {
+            char ch = s.charAt(i);
+            if ('[' == ch || '{' == ch) {
+                // Like scan(), skip to the close bracket.
+                char close = ('[' == ch) ? ']' : '}';
+                while (++i < sl && close != s.charAt(i)) {
+                    if (ch == s.charAt(i))
+                        waitingForMatchingIllegalClose = true;
+                }
+                if (i >= sl)
+                    break;
+            } else if (']' == ch || '}' == ch) {
+                waitingForMatchingIllegalClose = false;
+            } else if ('/' == ch) {
+                slashOpen = !slashOpen;
+            } else if ('(' == ch) {
+                parenOpen = true;
+            } else if (')' == ch) {
+                parenOpen = false;
+            } else if (i >= 2 && '\n' == s.charAt(i - 1)
+                       && isAlpha(ch)
+                       && !waitingForMatchingIllegalClose
+                       && !slashOpen && !parenOpen) {
+                char prev = s.charAt(i - 2);
+                if ('\r' == prev && i >= 3)
+                    prev = s.charAt(i - 3);
+                if (isAlpha(prev) || isNumeric(prev))
+                    best = i;
+            }
+        }
+        return best;
+    }
+
+    /** Scans a piece of a larger input.  See the comment in
+     *  TTshegBarScanner. */
+    protected ArrayList scanPart(String s, StringBuffer errors,
+                                 int maxErrors, boolean shortMessages,
+                                 String warningLevel, int position[]) {
         // FIXME: Use less memory and time by not adding in the
         // warnings that are below threshold.
 
@@ -148,7 +202,8 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
         // an underestimate, but not too much of an underestimate.
         ArrayList al = new ArrayList(s.length() / 10);
         
-        int numErrorsArray[] = new int[] { 0 };
+        int offset = position[0];
+        int numErrorsArray[] = new int[] { position[2] };
         boolean waitingForMatchingIllegalClose = false;
         int sl = s.length();
         int currentType = TString.ERROR;
@@ -156,7 +211,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
         Stack bracketTypeStack = new Stack();
         int startSlashIndex = -1;
         int startParenIndex = -1;
-        int numNewlines = 0;
+        int numNewlines = position[1];
         for (int i = 0; i < sl; i++) {
             if (i < startOfString) throw new Error("bad reset");
             char ch;
@@ -165,7 +220,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
             if (TString.COMMENT == currentType && ch != ']') {
                 if ('[' == ch) {
                     if (queueError(102, "" + ch,
-                                   shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                   shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                         return null;
                 }
                 continue;
@@ -181,13 +236,13 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                     }
                     if (!waitingForMatchingIllegalClose) {
                         if (queueError(103, "" + ch,
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     }
                     waitingForMatchingIllegalClose = false;
                     if (queueError(BRACKETED_SECTIONS_PASS_THROUGH_UNMODIFIED ? 140 : 104,
                                    "" + ch,
-                                   shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                   shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                         return null;
                     startOfString = i+1;
                     currentType = TString.ERROR;
@@ -243,7 +298,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                             == s.charAt(indexPastCloseBracket)) { // "[i am [nested], you see]" is not allowed.
                             waitingForMatchingIllegalClose = true;
                             if (queueError(141, "" + ch,
-                                           shortMessages, indexPastCloseBracket, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                           shortMessages, offset + indexPastCloseBracket, numNewlines, maxErrors, al, errors, numErrorsArray))
                                 return null;
                         } else if ((('[' == ch) ? ']' : '}') == s.charAt(indexPastCloseBracket)) {
                             al.add(new TString("ACIP",
@@ -271,7 +326,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                                 }
                             }
                             if (queueError(139, inContext,
-                                           shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                           shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                 return null;
                         }
                         if (queueError(117, "-*-END OF FILE-*-",
@@ -493,7 +548,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                         // this too.
                         if (waitingForMatchingIllegalClose) {
                             if (queueError(105, "" + ch,
-                                           shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                           shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                 return null;
                         }
                         waitingForMatchingIllegalClose = true;
@@ -510,7 +565,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                                 }
                             }
                             if (queueError(106, inContext,
-                                           shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                           shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                 return null;
                         }
                         startOfString = i + 1;
@@ -563,7 +618,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                                         }
                                     }
                                     if (queueError(107, inContext,
-                                                   shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                                   shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                         return null;
                                     startOfString = i+numdigits+3;
                                     i = startOfString - 1;
@@ -588,7 +643,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                                         }
                                     }
                                     if (queueError(108, inContext,
-                                                   shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                                   shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                         return null;
                                     startOfString = i+1; // FIXME: skip over more?  test this code.
                                     currentType = TString.ERROR;
@@ -681,7 +736,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                         }
                     }
                     if (queueError(109, inContext,
-                                   shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                   shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                         return null;
                     startOfString = i+1;
                     currentType = TString.ERROR;
@@ -700,7 +755,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                 if (startSlashIndex >= 0) {
                     if (startSlashIndex + 1 == i) {
                         if (queueError(110, "" + ch,
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     }
                     al.add(new TString("ACIP", s.substring(i, i+1),
@@ -732,7 +787,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                 if (startParenIndex >= 0) {
                     if (ch == '(') {
                         if (queueError(111, "" + ch,
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     } else {
                         al.add(new TString("ACIP", s.substring(i, i+1), TString.END_PAREN));
@@ -743,7 +798,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                 } else {
                     if (ch == ')') {
                         if (queueError(112, "" + ch,
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     } else {
                         startParenIndex = i;
@@ -763,7 +818,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                                            currentType));
                     }
                     if (queueError(113, "" + ch,
-                                   shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                   shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                         return null;
                     startOfString = i+1;
                     currentType = TString.ERROR;
@@ -874,7 +929,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                         al.add(new TString("ACIP", "^", TString.TIBETAN_PUNCTUATION));
                     else {
                         if (queueError(131, "^",
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     }
                 } else {
@@ -889,7 +944,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                         for (int h = 0; h < (realNewline ? 2 : 1); h++) {
                             if (isTshegBarAdornment(ch) && !legalTshegBarAdornment) {
                                 if (queueError(132, "" + ch,
-                                               shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                               shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                     return null;
                             } else {
                                 al.add(new TString("ACIP", rn ? s.substring(i - 1, i+1) : s.substring(i, i+1),
@@ -933,7 +988,7 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                     }
                     if ((int)ch == 65533) {
                         if (queueError(114, "unknown character",
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     } else if ('\\' == ch) {
                         int x = -1;
@@ -956,12 +1011,12 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                             break;
                         } else {
                             if (queueError(115, "\\",
-                                           shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                           shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                                 return null;
                         }
                     } else {
                         if (queueError(116, "" + ch,
-                                       shortMessages, i, numNewlines, maxErrors, al, errors, numErrorsArray))
+                                       shortMessages, offset + i, numNewlines, maxErrors, al, errors, numErrorsArray))
                             return null;
                     }
                     startOfString = i+1;
@@ -999,6 +1054,9 @@ class ACIPTshegBarScanner extends TTshegBarScanner {
                            shortMessages, -1, numNewlines, maxErrors, al, errors, numErrorsArray))
                 return null;
         }
+        position[0] += sl;
+        position[1] = numNewlines;
+        position[2] = numErrorsArray[0];
         return al;
     }
 
@@ -174,42 +174,40 @@ public final class EWTSTraits implements TTraits {
         return haystack;
     }
     
-    private static HashMap bestEwtsMap = null;
+    private static final HashMap bestEwtsMap = new HashMap(20);
+    static {
+        // Unicode-escape sequences are handled early.  To be
+        // correct, we must "unescape" here any Unicode escape to
+        // whatever tibwn.ini has.  (TODO(dchandler): tibwn.ini
+        // has this info, use that instead of duplicating it in
+        // this code.)
+        bestEwtsMap.put("\u0f18", THDLWylieConstants.U0F18);
+        bestEwtsMap.put("\u0f19", THDLWylieConstants.U0F19);
+        bestEwtsMap.put("\u0f35", THDLWylieConstants.U0F35);
+        bestEwtsMap.put("\u0f37", THDLWylieConstants.U0F37);
+        bestEwtsMap.put("\u0f39", THDLWylieConstants.WYLIE_TSA_PHRU);
+        bestEwtsMap.put("\u0f3e", THDLWylieConstants.U0F3E);
+        bestEwtsMap.put("\u0f3f", THDLWylieConstants.U0F3F);
+        bestEwtsMap.put("\u0f84", THDLWylieConstants.U0F84);
+        bestEwtsMap.put("\u0f86", THDLWylieConstants.U0F86);
+        bestEwtsMap.put("\u0f87", THDLWylieConstants.U0F87);
+        bestEwtsMap.put("\u0fc6", THDLWylieConstants.U0FC6);
+
+        bestEwtsMap.put("\u0f71", THDLWylieConstants.A_VOWEL);
+        bestEwtsMap.put("\u0f72", THDLWylieConstants.i_VOWEL);
+        bestEwtsMap.put("\u0f74", THDLWylieConstants.u_VOWEL);
+        bestEwtsMap.put("\u0f7a", THDLWylieConstants.e_VOWEL);
+        bestEwtsMap.put("\u0f7b", THDLWylieConstants.ai_VOWEL);
+        bestEwtsMap.put("\u0f7c", THDLWylieConstants.o_VOWEL);
+        bestEwtsMap.put("\u0f7d", THDLWylieConstants.au_VOWEL);
+        bestEwtsMap.put("\u0f7e", THDLWylieConstants.BINDU);
+        bestEwtsMap.put("\u0f80", THDLWylieConstants.reverse_i_VOWEL);
+        bestEwtsMap.put("\u0f81", THDLWylieConstants.reverse_I_VOWEL);
+
+        bestEwtsMap.put("\u0f73", THDLWylieConstants.I_VOWEL);  // not in tibwn.ini
+        bestEwtsMap.put("\u0f75", THDLWylieConstants.U_VOWEL);  // not in tibwn.ini
+    }
     private static String getBestEwtsForSingleWowel(String wowel) {
-        // NOTE: Not MT-safe
-        if (null == bestEwtsMap) {
-            bestEwtsMap = new HashMap(20);
-            // Unicode-escape sequences are handled early.  To be
-            // correct, we must "unescape" here any Unicode escape to
-            // whatever tibwn.ini has.  (TODO(dchandler): tibwn.ini
-            // has this info, use that instead of duplicating it in
-            // this code.)
-            bestEwtsMap.put("\u0f18", THDLWylieConstants.U0F18);
-            bestEwtsMap.put("\u0f19", THDLWylieConstants.U0F19);
-            bestEwtsMap.put("\u0f35", THDLWylieConstants.U0F35);
-            bestEwtsMap.put("\u0f37", THDLWylieConstants.U0F37);
-            bestEwtsMap.put("\u0f39", THDLWylieConstants.WYLIE_TSA_PHRU);
-            bestEwtsMap.put("\u0f3e", THDLWylieConstants.U0F3E);
-            bestEwtsMap.put("\u0f3f", THDLWylieConstants.U0F3F);
-            bestEwtsMap.put("\u0f84", THDLWylieConstants.U0F84);
-            bestEwtsMap.put("\u0f86", THDLWylieConstants.U0F86);
-            bestEwtsMap.put("\u0f87", THDLWylieConstants.U0F87);
-            bestEwtsMap.put("\u0fc6", THDLWylieConstants.U0FC6);
-
-            bestEwtsMap.put("\u0f71", THDLWylieConstants.A_VOWEL);
-            bestEwtsMap.put("\u0f72", THDLWylieConstants.i_VOWEL);
-            bestEwtsMap.put("\u0f74", THDLWylieConstants.u_VOWEL);
-            bestEwtsMap.put("\u0f7a", THDLWylieConstants.e_VOWEL);
-            bestEwtsMap.put("\u0f7b", THDLWylieConstants.ai_VOWEL);
-            bestEwtsMap.put("\u0f7c", THDLWylieConstants.o_VOWEL);
-            bestEwtsMap.put("\u0f7d", THDLWylieConstants.au_VOWEL);
-            bestEwtsMap.put("\u0f7e", THDLWylieConstants.BINDU);
-            bestEwtsMap.put("\u0f80", THDLWylieConstants.reverse_i_VOWEL);
-            bestEwtsMap.put("\u0f81", THDLWylieConstants.reverse_I_VOWEL);
-
-            bestEwtsMap.put("\u0f73", THDLWylieConstants.I_VOWEL);  // not in tibwn.ini
-            bestEwtsMap.put("\u0f75", THDLWylieConstants.U_VOWEL);  // not in tibwn.ini
-        }
         String mapping = (String)bestEwtsMap.get(wowel);
         if (null != mapping)
             return mapping;
@@ -70,6 +70,25 @@ class EWTSTshegBarScanner extends TTshegBarScanner {
       DOES IT?). */
   public ArrayList scan(String s, StringBuffer errors, int maxErrors, // TODO(DLC)[EWTS->Tibetan]: ignored
                         boolean shortMessages, String warningLevel) {
+    return scanPart(s, errors, maxErrors, shortMessages, warningLevel,
+                    new int[] { 0, 0, 0 });
+  }
+
+  /** Breaks after the last newline.  Nothing in EWTS, not even a
+      Unicode escape, spans a line break. */
+  protected int lastSafeBreak(CharSequence s) {
+    for (int i = s.length(); i > 0; i--) {
+      if ('\n' == s.charAt(i - 1))
+        return i;
+    }
+    return -1;
+  }
+
+  /** Scans a piece of a larger input.  See the comment in
+      TTshegBarScanner. */
+  protected ArrayList scanPart(String s, StringBuffer errors, int maxErrors,
+                               boolean shortMessages, String warningLevel,
+                               int position[]) {
     // the size depends on whether it's mostly Tibetan or mostly
     // Latin and a number of other factors.  This is meant to be
     // an underestimate, but not too much of an underestimate.
@@ -78,6 +97,8 @@ class EWTSTshegBarScanner extends TTshegBarScanner {
     StringBuffer sb = new StringBuffer(s);
     ExpandEscapeSequences(sb);
     int sl = sb.length();
+    int offset = position[0];
+    position[0] += sl;
     // TODO(DLC)[EWTS->Tibetan]:: '@#', in ewts->tmw, is not working (probably because)
     // TODO(DLC)[EWTS->Tibetan]:: '#', in ewts->tmw, is not working
     //
@@ -129,7 +150,7 @@ class EWTSTshegBarScanner extends TTshegBarScanner {
                                                             EWTSTraits.instance()),
                              TString.ERROR));
           if (null != errors) {
-            errors.append("Offset " + i + ": ERROR " + errMsg + "\n");
+            errors.append("Offset " + (offset + i) + ": ERROR " + errMsg + "\n");
           }
         }
       }
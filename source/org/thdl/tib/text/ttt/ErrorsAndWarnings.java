@@ -424,6 +424,10 @@ public class ErrorsAndWarnings {
             severityMap.put(new Integer(num), (null != opt) ? opt : defaultSeverities[num - 501]);
         }
 
+        // Cached conversions may carry warnings that are no longer
+        // wanted, or lack ones that are:
+        TConverter.clearTshegBarCache();
+
  // TODO(DLC)[EWTS->Tibetan] FIXME: make 506 an error?  or a new, super-high priority class of warning?
     }
 
@@ -24,12 +24,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.thdl.tib.text.DuffCode;
 import org.thdl.tib.text.THDLWylieConstants;
 import org.thdl.tib.text.TibetanDocument;
 import org.thdl.tib.text.TibetanMachineWeb;
+import org.thdl.util.OrderedTaskRunner;
 import org.thdl.util.ThdlDebug;
 import org.thdl.util.ThdlOptions;
 
@@ -42,6 +47,29 @@ import org.thdl.util.ThdlOptions;
 */
 public class TConverter {
 
+    /** Remembers the conversions of the most recently seen tsheg
+     *  bars. */
+    private static final TshegBarCache cache = new TshegBarCache();
+
+    /** Returns the number of tsheg bars whose conversion was found in
+     *  the cache of tsheg bars. */
+    public static long getTshegBarCacheHits() {
+        return cache.getHits();
+    }
+
+    /** Returns the number of tsheg bars that had to be parsed and
+     *  converted because they were not in the cache of tsheg bars. */
+    public static long getTshegBarCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /** Empties the cache of tsheg bars.  Call this if something that
+     *  a conversion depends upon, like the severity of a warning,
+     *  changes. */
+    public static void clearTshegBarCache() {
+        cache.clear();
+    }
+
     /** Command-line converter for testing only -- use
      *  org.thdl.tib.input.TibetanConverter for production work.
      *  Gives error messages on standard output about why we can't
@@ -268,10 +296,192 @@ public class TConverter {
                                                boolean shortMessages)
         throws IOException
     {
-        return convertTo(true, false,
-                         ttraits, scan, out, null, errors, warnings,
-                         hasWarnings, writeWarningsToOut, warningLevel,
-                         shortMessages, false, new int[] { -1 } , true);
+        BufferedWriter writer
+            = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        boolean rv = convertTo(true, false,
+                               ttraits, scan, writer, null, errors, warnings,
+                               hasWarnings, writeWarningsToOut, warningLevel,
+                               shortMessages, false, new int[] { -1 } , true);
+        writer.close();
+        return rv;
+    }
+
+    /** Like {@link #convertToUnicodeText(TTraits, ArrayList,
+     *  OutputStream, StringBuffer, StringBuffer, boolean[], boolean,
+     *  String, boolean)}, but scans the transliteration read from in
+     *  as it goes (see {@link TTshegBarScanner#scanIncrementally(Reader,
+     *  TTshegBarScanner.Listener, StringBuffer, int, boolean,
+     *  String)}), so memory use does not grow with the size of the
+     *  input.  Scanning errors are appended to errors, if it is
+     *  non-null, as they are found, so they are interleaved with
+     *  conversion errors.  Does not close in.
+     *  @param maxErrors if nonnegative, then conversion will stop when
+     *  more than maxErrors errors are found in scanning.  In this
+     *  event, tooManyErrors[0] is set to true if tooManyErrors is
+     *  non-null, and what was converted so far has been written to
+     *  out.
+     *  @return true upon perfect success, false if errors occurred
+     *  @throws IOException if we cannot read from in or write to
+     *  out */
+    public static boolean convertToUnicodeText(TTraits ttraits,
+                                               Reader in,
+                                               OutputStream out,
+                                               StringBuffer errors,
+                                               StringBuffer warnings,
+                                               boolean[] hasWarnings,
+                                               boolean writeWarningsToOut,
+                                               String warningLevel,
+                                               boolean shortMessages,
+                                               int maxErrors,
+                                               boolean[] tooManyErrors)
+        throws IOException
+    {
+        return convertToUnicodeText(ttraits, in, out, errors, warnings,
+                                    hasWarnings, writeWarningsToOut,
+                                    warningLevel, shortMessages, maxErrors,
+                                    tooManyErrors, null);
+    }
+
+    /** Like {@link #convertToUnicodeText(TTraits, Reader,
+     *  OutputStream, StringBuffer, StringBuffer, boolean[], boolean,
+     *  String, boolean, int, boolean[])}, but if executor is non-null,
+     *  the batches of the scan are converted on executor's threads.
+     *  Scanning is still done by the calling thread, and the output,
+     *  errors, and warnings are exactly those of a conversion without
+     *  an executor. */
+    public static boolean convertToUnicodeText(final TTraits ttraits,
+                                               Reader in,
+                                               OutputStream out,
+                                               final StringBuffer errors,
+                                               final StringBuffer warnings,
+                                               final boolean[] hasWarnings,
+                                               final boolean writeWarningsToOut,
+                                               final String warningLevel,
+                                               final boolean shortMessages,
+                                               int maxErrors,
+                                               boolean[] tooManyErrors,
+                                               ExecutorService executor)
+        throws IOException
+    {
+        final BufferedWriter writer
+            = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        final boolean[] hasErrors = new boolean[] { false };
+        if (null != hasWarnings) hasWarnings[0] = false;
+        if (null != tooManyErrors) tooManyErrors[0] = false;
+
+        // Scanning errors go here first so that they can be kept with
+        // the conversion errors of the same batch.
+        final StringBuffer scanErrors
+            = (null == errors) ? null : new StringBuffer();
+        final OrderedTaskRunner.Consumer consumer
+            = new OrderedTaskRunner.Consumer() {
+                    public void consume(Object result) throws IOException {
+                        ConvertedBatch b = (ConvertedBatch)result;
+                        writer.write(b.text);
+                        if (!b.noErrors)
+                            hasErrors[0] = true;
+                        if (b.hasWarnings && null != hasWarnings)
+                            hasWarnings[0] = true;
+                        if (null != errors) {
+                            errors.append(b.scanErrors);
+                            errors.append(b.errors);
+                        }
+                        if (null != warnings)
+                            warnings.append(b.warnings);
+                    }
+                };
+        final OrderedTaskRunner runner
+            = ((null == executor)
+               ? null
+               : new OrderedTaskRunner(executor, consumer));
+        boolean scanned;
+        try {
+            scanned
+                = ttraits.scanner().scanIncrementally(in, new TTshegBarScanner.Listener() {
+                        public void scanned(final ArrayList scan) throws IOException {
+                            final String batchScanErrors
+                                = (null == scanErrors) ? "" : scanErrors.toString();
+                            if (null != scanErrors) scanErrors.setLength(0);
+                            Callable task = new Callable() {
+                                    public Object call() throws IOException {
+                                        // Each batch starts afresh, so
+                                        // no state (lastGuy et al.)
+                                        // need be carried over.
+                                        return new ConvertedBatch(ttraits, scan,
+                                                                  batchScanErrors,
+                                                                  null != errors,
+                                                                  null != warnings,
+                                                                  writeWarningsToOut,
+                                                                  warningLevel,
+                                                                  shortMessages);
+                                    }
+                                };
+                            if (null == runner) {
+                                try {
+                                    consumer.consume(task.call());
+                                } catch (IOException e) {
+                                    throw e;
+                                } catch (RuntimeException e) {
+                                    throw e;
+                                } catch (Exception e) {
+                                    throw new Error(e.toString()); // won't happen
+                                }
+                            } else {
+                                runner.submit(task);
+                            }
+                        }
+                    }, scanErrors, maxErrors, shortMessages, warningLevel);
+            if (null != runner) runner.finish();
+        } catch (IOException e) {
+            if (null != runner) runner.cancel();
+            throw e;
+        } catch (RuntimeException e) {
+            if (null != runner) runner.cancel();
+            throw e;
+        }
+        writer.close();
+        if (!scanned) {
+            // The scanning errors of the batch that had too many:
+            if (null != errors) errors.append(scanErrors);
+            if (null != tooManyErrors) tooManyErrors[0] = true;
+            return false;
+        }
+        return !hasErrors[0];
+    }
+
+    /** One batch of a scan converted to Unicode text. */
+    private static class ConvertedBatch {
+        final String text;
+        final boolean noErrors;
+        final boolean hasWarnings;
+        final String scanErrors;
+        final String errors;
+        final String warnings;
+
+        ConvertedBatch(TTraits ttraits, ArrayList scan, String scanErrors,
+                       boolean wantErrors, boolean wantWarnings,
+                       boolean writeWarningsToOut, String warningLevel,
+                       boolean shortMessages)
+            throws IOException
+        {
+            StringWriter sw = new StringWriter();
+            BufferedWriter writer = new BufferedWriter(sw);
+            StringBuffer errors = wantErrors ? new StringBuffer() : null;
+            StringBuffer warnings = wantWarnings ? new StringBuffer() : null;
+            boolean[] hasWarnings = new boolean[] { false };
+            noErrors = convertTo(true, false,
+                                 ttraits, scan, writer, null, errors,
+                                 warnings, hasWarnings,
+                                 writeWarningsToOut, warningLevel,
+                                 shortMessages, false,
+                                 new int[] { -1 } , true);
+            writer.flush();
+            this.text = sw.toString();
+            this.hasWarnings = hasWarnings[0];
+            this.scanErrors = scanErrors;
+            this.errors = wantErrors ? errors.toString() : "";
+            this.warnings = wantWarnings ? warnings.toString() : "";
+        }
     }
 
     private static boolean peekaheadFindsSpacesAndComma(ArrayList /* of TString */ scan,
@@ -296,7 +506,7 @@ public class TConverter {
                                      boolean toRTF, // else to UTF-8-encoded text
                                      TTraits ttraits,
                                      ArrayList scan,
-                                     OutputStream out, // for (toUnicode && !toRTF) mode
+                                     BufferedWriter writer, // for (toUnicode && !toRTF) mode
                                      TibetanDocument tdoc, // for !toUnicode mode or (toUnicode && toRTF) mode
                                      StringBuffer errors,
                                      StringBuffer warnings,
@@ -323,11 +533,11 @@ public class TConverter {
             throw new IllegalArgumentException("ACIP->Uni.rtf, ACIP->Uni.txt, and ACIP->TMW.rtf are supported, but not ACIP->TMW.txt");
         if (toUnicode && toRTF && null == tdoc)
             throw new IllegalArgumentException("ACIP->Uni.rtf requires a TibetanDocument");
-        if (null != out && !(toUnicode && !toRTF))
+        if (null != writer && !(toUnicode && !toRTF))
             throw new IllegalArgumentException("That stream is only used in ACIP->Uni.txt mode");
-        if (null != out && null != tdoc)
+        if (null != writer && null != tdoc)
             throw new IllegalArgumentException("Errors are not treated properly yet; do one conversion and then the other.  Is performance important enough to risk improper output for you?");
-        if (null == out && null == tdoc)
+        if (null == writer && null == tdoc)
             throw new IllegalArgumentException("Why would you?");
         int smallFontSize = -1;
         int regularFontSize = -1;
@@ -353,10 +563,6 @@ public class TConverter {
         int sz = scan.size();
         boolean hasErrors = false;
         if (null != hasWarnings) hasWarnings[0] = false;
-        BufferedWriter writer = null;
-        if (toUnicode && !toRTF)
-            writer
-                = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
         boolean lastGuyWasNonPunct = false;
         TStackList lastGuy = null;
         Color lastColor = Color.black;
@@ -442,169 +648,54 @@ public class TConverter {
                     Object[] duff = null;
                     if (stype == TString.TIBETAN_NON_PUNCTUATION) {
                         lastGuyWasNonPunct = true;
-                        TPairList pls[]
-                            = ttraits.breakTshegBarIntoChunks(s.getText(),
-                                                              false);
-                        String acipError;
-
-                        if ((acipError = pls[0].getACIPError(s.getText(), shortMessages)) != null
-                            && (null == pls[1] || pls[1].getACIPError(s.getText(), shortMessages) != null)) {
+                        TshegBarConversion c
+                            = cache.get(ttraits, s.getText(), null != writer,
+                                        warningLevel, shortMessages);
+                        if (null != c.errorMessage) {
                             hasErrors = true;
-                            String errorMessage = "[#ERROR " + acipError + "]";
-                            if (null != writer) writer.write(errorMessage);
+                            if (null != writer) writer.write(c.errorMessage);
                             if (null != tdoc) {
-                                tdoc.appendRoman(tdocLocation[0], errorMessage,
+                                tdoc.appendRoman(tdocLocation[0], c.errorMessage,
                                                  Color.RED);
-                                tdocLocation[0] += errorMessage.length();
+                                tdocLocation[0] += c.errorMessage.length();
                             }
                             if (null != errors)
-                                errors.append(errorMessage + "\n");
+                                errors.append(c.errorMessage + "\n");
                         } else {
-                            TParseTree pt0 = pls[0].getParseTree();
-                            TParseTree pt1 = ((null == pls[1])
-                                              ? null : pls[1].getParseTree());
-                            if (null == pt0 && null == pt1) {
-                                hasErrors = true;
-                                String errorMessage
-                                    = ("[#ERROR "
-                                       + ErrorsAndWarnings.getMessage(130, shortMessages, s.getText(),
-                                                                      ttraits)
-                                       + "]");
-                                if (null != writer) writer.write(errorMessage);
-                                if (null != tdoc) {
-                                    tdoc.appendRoman(tdocLocation[0], errorMessage,
-                                                     Color.RED);
-                                    tdocLocation[0] += errorMessage.length();
-                                }
-                                if (null != errors)
-                                    errors.append(errorMessage + "\n");
-                            } else {
-                                TStackList sl0 = pt0.getBestParse();
-                                TStackList sl1 = ((null == pt1)
-                                                  ? null : pt1.getBestParse());
-                                if (null == sl0 && null == sl1) {
-                                    // ACIP {A-DZU} causes this, for example.
-                                    hasErrors = true;
-                                    String errorMessage =
-                                        "[#ERROR "
-                                        + ErrorsAndWarnings.getMessage(134,
-                                                                       shortMessages,
-                                                                       s.getText(),
-                                                                       ttraits)
-                                        + "]";
-                                    if (null != writer)
-                                        writer.write(errorMessage);
+                            lastGuy = c.stackList;
+                            if (null != c.warning) {
+                                if (writeWarningsToOut) {
+                                    String text
+                                        = ("[#WARNING "
+                                           + c.warning + "]");
+                                    if (null != writer) writer.write(text);
                                     if (null != tdoc) {
                                         tdoc.appendRoman(tdocLocation[0],
-                                                         errorMessage,
+                                                         text,
                                                          Color.RED);
-                                        tdocLocation[0] += errorMessage.length();
-                                    }
-                                    if (null != errors)
-                                        errors.append(errorMessage + "\n");
-                                } else {
-                                    TStackList sl = sl0;
-                                    TPairList pl = pls[0];
-                                    TParseTree pt = pt0;
-                                    // set sl equal to the best choice of sl0 and sl1.
-                                    if (null != sl1) {
-                                        BoolTriple sl0bt = sl0.isLegalTshegBar(false);
-                                        BoolTriple sl1bt = sl1.isLegalTshegBar(false);
-                                        int ct;
-                                        if ((ct = sl0bt.compareTo(sl1bt)) < 0) {
-                                            sl = sl1;
-                                            pl = pls[1];
-                                            pt = pt1;
-                                        } else if (0 == ct) {
-                                            // sl remains sl0 -- '* is
-                                            // a vowel unless it's
-                                            // clearly part of an
-                                            // appendage like 'AM.
-                                        }
+                                        tdocLocation[0] += text.length();
                                     }
-                                    lastGuy = sl;
-                                    String warning = null;
-                                    if ("None" != warningLevel) {
-                                        warning = pt.getWarning(warningLevel,
-                                                                pl,
-                                                                s.getText(),
-                                                                shortMessages,
-                                                                ttraits);
-                                    }
-                                    if (null != warning) {
-                                        if (writeWarningsToOut) {
-                                            String text
-                                                = ("[#WARNING "
-                                                   + warning + "]");
-                                            if (null != writer) writer.write(text);
-                                            if (null != tdoc) {
-                                                tdoc.appendRoman(tdocLocation[0],
-                                                                 text,
-                                                                 Color.RED);
-                                                tdocLocation[0] += text.length();
-                                            }
-                                        }
-                                        if (null != hasWarnings) hasWarnings[0] = true;
-                                        if (null != warnings) {
-                                            warnings.append(warning);
-                                            warnings.append('\n');
-                                        }
-                                    }
-                                    if (null != writer) {
-                                        unicode = sl.getUnicode();
-                                        if (null == unicode) throw new Error("FIXME: make this an assertion 4");
-                                        // Warn if any of the stacks
-                                        // in this tsheg bar do not
-                                        // have corresponding glyphs
-                                        // in TMW.  That means there
-                                        // was probably a typo in the
-                                        // input.
-                                        if (ErrorsAndWarnings.isEnabled(511, warningLevel)) {
-                                            Object[] trialDuff
-                                                = sl.getDuff(shortMessages,
-                                                             false);
-                                            for (int ii = 0; ii < trialDuff.length; ii++) {
-                                                if (trialDuff[ii] instanceof String) {
-                                                    if (!((String)trialDuff[ii]).startsWith("511"))
-                                                        throw new Error("I thought 511 was the only beast like this; FIXME: make this an assertion 324xd3");
-                                                    String bwarning
-                                                        = "[#WARNING "
-                                                        + (String)trialDuff[ii] + "]";
-                                                    unicode = bwarning + unicode;
-                                                    if (null != hasWarnings) hasWarnings[0] = true;
-                                                    if (null != warnings) {
-                                                        warnings.append(bwarning);
-                                                        warnings.append('\n');
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                    if (null != tdoc) {
-                                        duff = sl.getDuff(shortMessages, true);
-                                        BoolTriple bt;
-                                        if (colors && sl.isLegalTshegBar(true).isLegal && !sl.isLegalTshegBar(false).isLegal) {
-                                            color = Color.YELLOW;
-                                        } else if (colors && (bt = sl.isLegalTshegBar(false)).isLegal && !bt.isLegalButSanskrit()) {
-                                            color = Color.black;
-                                        } else {
-                                            // Sanskrit.
-
-                                            // FIXME: should a funny
-                                            // vowel cause green to
-                                            // appear too?  G'EEm is
-                                            // black, not green, right
-                                            // now, though GA: is
-                                            // green.
-                                            color = Color.GREEN;
-                                        }
-
-                                        if (0 == duff.length) {
-                                            throw new Error("No DuffCodes for stack list " + sl); // FIXME: make this an assertion
-                                        }
+                                }
+                                if (null != hasWarnings) hasWarnings[0] = true;
+                                if (null != warnings) {
+                                    warnings.append(c.warning);
+                                    warnings.append('\n');
+                                }
+                            }
+                            if (null != writer) {
+                                unicode = c.unicode;
+                                for (int ii = 0; ii < c.glyphWarnings.length; ii++) {
+                                    if (null != hasWarnings) hasWarnings[0] = true;
+                                    if (null != warnings) {
+                                        warnings.append(c.glyphWarnings[ii]);
+                                        warnings.append('\n');
                                     }
                                 }
                             }
+                            if (null != tdoc) {
+                                duff = c.duff;
+                                color = (colors ? c.color : Color.GREEN);
+                            }
                         }
                     } else {
                         color = Color.black;
@@ -831,9 +922,6 @@ public class TConverter {
             }
             lastColor = color;
         }
-        if (null != writer) {
-            writer.close();
-        }
         if (isCleanDoc && null != tdoc && tdocLocation[0] != tdoc.getLength())
             throw new Error("Oops -- we dropped something from the output!  tdocLocation[0]++; and tdocLocation[0]+=xyz; are not being used correctly.");
         return !hasErrors;
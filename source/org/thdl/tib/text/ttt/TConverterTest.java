@@ -0,0 +1,166 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.text.ttt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.thdl.util.ThdlOptions;
+
+/**
+ * Tests {@link org.thdl.tib.text.ttt.TConverter} at the unit level.
+ */
+public class TConverterTest extends TestCase {
+    /** Plain vanilla constructor for TConverterTest. */
+    public TConverterTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() {
+        ThdlOptions.forTestingOnlyInitializeWithoutDefaultOptionsFile();
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.and.error.severities.are.built.in.defaults", "true");
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.severity.507", "Most");
+        ErrorsAndWarnings.setupSeverityMap();
+        ThdlOptions.setUserPreference("thdl.debug", true);
+        // many small pieces, so that the threads have work to share
+        ThdlOptions.setUserPreference("thdl.ttt.scan.chunk.size", 64);
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TConverterTest.class);
+    }
+
+    /** Returns many paragraphs made of lines, the ones in bad
+     *  alternating with the ones in good. */
+    private static String paragraphs(String good[], String bad[]) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 200; i++) {
+            sb.append(good[i % good.length]).append('\n');
+            if (0 == i % 7)
+                sb.append(bad[(i / 7) % bad.length]).append('\n');
+            if (0 == i % 5)
+                sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** Returns a reader of text that reads at most a few characters at
+     *  a time, as a pipe might, so that text is scanned in many chunks. */
+    private static Reader trickle(String text) {
+        return new FilterReader(new StringReader(text)) {
+            public int read(char cbuf[], int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 16));
+            }
+        };
+    }
+
+    /** Converts text on executor, or on this thread if it is null,
+     *  returning the output, errors, warnings, and result. */
+    private static String convert(TTraits ttraits, String text,
+                                  boolean shortMessages,
+                                  ExecutorService executor)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuffer errors = new StringBuffer();
+        StringBuffer warnings = new StringBuffer();
+        boolean hasWarnings[] = new boolean[] { false };
+        boolean tooManyErrors[] = new boolean[] { false };
+        boolean rv
+            = TConverter.convertToUnicodeText(ttraits, trickle(text),
+                                              out, errors, warnings,
+                                              hasWarnings, true, "All",
+                                              shortMessages, -1,
+                                              tooManyErrors, executor);
+        assertTrue(errors.length() > 0);
+        return out.toString("UTF-8") + "\nerrors:\n" + errors
+            + "\nwarnings:\n" + warnings + "\nresult: " + rv + " "
+            + hasWarnings[0] + " " + tooManyErrors[0];
+    }
+
+    /** Returns the number of pieces text is scanned in. */
+    private static int batches(TTraits ttraits, String text)
+        throws IOException
+    {
+        final int n[] = new int[] { 0 };
+        ttraits.scanner().scanIncrementally(trickle(text),
+                                            new TTshegBarScanner.Listener() {
+                                                public void scanned(ArrayList scan) {
+                                                    ++n[0];
+                                                }
+                                            }, null, -1, false, "All");
+        return n[0];
+    }
+
+    private static void assertSameOnThreads(TTraits ttraits, String text)
+        throws IOException
+    {
+        assertTrue(batches(ttraits, text) > 10);
+        ExecutorService executor = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 2; i++) {
+                boolean shortMessages = (0 == i);
+                assertEquals(convert(ttraits, text, shortMessages, null),
+                             convert(ttraits, text, shortMessages, executor));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Tests that converting ACIP on four threads gives the same
+     *  output, errors, and warnings as on one. */
+    public void testACIPOnThreads() throws IOException {
+        assertSameOnThreads(ACIPTraits.instance(),
+                            paragraphs(new String[] {
+                                "BKRA SHIS BDE LEGS",
+                                "[#COMMENT] SANGS RGYAS KYI BSTAN PA",
+                                "DANG,\nLHAG MTHONG /NYA/ PHYIR",
+                                "G-YA' 'OG NA (BZHUGS) SO,,"
+                            }, new String[] {
+                                "KAf KHA",
+                                "BKRA }SHIS",
+                                "SHI@S MA"
+                            }));
+    }
+
+    /** Tests that converting EWTS on four threads gives the same
+     *  output, errors, and warnings as on one. */
+    public void testEWTSOnThreads() throws IOException {
+        assertSameOnThreads(EWTSTraits.instance(),
+                            paragraphs(new String[] {
+                                "bkra shis bde legs/",
+                                "sangs rgyas kyi bstan pa/",
+                                "g.yag 'og na bzhugs so//"
+                            }, new String[] {
+                                "kaQ kha/",
+                                "bkra [shis",
+                                "bde legs}"
+                            }));
+    }
+}
@@ -29,6 +29,15 @@ class TParseTree {
     /** a fast, non-thread-safe, random-access list implementation: */
     private ArrayList al = new ArrayList();
 
+    /** The parses that are not ruled out by a clearly illegal stack,
+     *  or null if not yet computed since this tree last changed. */
+    private TStackList candidates[] = null;
+
+    /** False if {@link #getCandidateParses()} is to return every parse,
+     *  freshly made, as {@link #getParseIterator()} does.  Only tests
+     *  change this, to check that pruning changes no result. */
+    static boolean pruneParses = true;
+
     /** Creates an empty list. */
     public TParseTree() { }
 
@@ -41,6 +50,7 @@ class TParseTree {
     {
         if (p.isEmpty())
             throw new IllegalArgumentException("p is empty");
+        candidates = null;
         al.add(p);
     }
 
@@ -81,6 +91,51 @@ class TParseTree {
         return new ParseIterator(al);
     }
 
+    /** Returns the parses of this tree, in the order {@link
+     *  #getParseIterator()} gives them, leaving out those that have a
+     *  stack that is illegal by itself.  Those are neither legal nor
+     *  non-illegal, so they are pruned as soon as such a stack is
+     *  chosen instead of being classified.  The same objects are
+     *  returned on every call so that each parse is classified at most
+     *  once; see {@link TStackList#isLegalTshegBar(boolean)}. */
+    private TStackList[] getCandidateParses() {
+        if (!pruneParses) {
+            ArrayList parses = new ArrayList(2);
+            ParseIterator pi = getParseIterator();
+            while (pi.hasNext())
+                parses.add(pi.next());
+            return (TStackList[])parses.toArray(new TStackList[parses.size()]);
+        }
+        if (null == candidates) {
+            ArrayList parses = new ArrayList(2);
+            if (!al.isEmpty())
+                addCandidateParses(0, new TStackList(), parses);
+            candidates
+                = (TStackList[])parses.toArray(new TStackList[parses.size()]);
+        }
+        return candidates;
+    }
+
+    /** Adds to parses every candidate parse that begins with prefix
+     *  and continues with a choice from each of the TStackListLists
+     *  from the ith one on. */
+    private void addCandidateParses(int i, TStackList prefix,
+                                    ArrayList parses) {
+        TStackListList choices = get(i);
+        for (int j = 0; j < choices.size(); j++) {
+            TStackList choice = choices.get(j);
+            if (choice.isVeryClearlyIllegal())
+                continue;
+            TStackList sl = new TStackList(prefix.size() + choice.size());
+            sl.addAll(prefix);
+            sl.addAll(choice);
+            if (i + 1 < size())
+                addCandidateParses(i + 1, sl, parses);
+            else
+                parses.add(sl);
+        }
+    }
+
     /** Returns a list containing the legal parses of this parse tree.
      *  By &quot;legal&quot;, we mean a sequence of stacks that is
      *  legal by the rules of Tibetan tsheg bar syntax (sometimes
@@ -88,9 +143,9 @@ class TParseTree {
      *  as well as the {GYA} parse, so watch yourself. */
     public TStackListList getLegalParses() {
         TStackListList sll = new TStackListList(2); // save memory
-        ParseIterator pi = getParseIterator();
-        while (pi.hasNext()) {
-            TStackList sl = pi.next();
+        TStackList parses[] = getCandidateParses();
+        for (int i = 0; i < parses.length; i++) {
+            TStackList sl = parses[i];
             if (sl.isLegalTshegBar(false).isLegal) {
                 sll.add(sl);
             }
@@ -102,9 +157,9 @@ class TParseTree {
      *  parse tree that are not clearly illegal. */
     public TStackListList getNonIllegalParses() {
         TStackListList sll = new TStackListList(2); // save memory
-        ParseIterator pi = getParseIterator();
-        while (pi.hasNext()) {
-            TStackList sl = pi.next();
+        TStackList parses[] = getCandidateParses();
+        for (int i = 0; i < parses.length; i++) {
+            TStackList sl = parses[i];
             BoolTriple bt = sl.isLegalTshegBar(false);
             if (!sl.isClearlyIllegal(bt.candidateType)) {
                 sll.add(sl);
@@ -227,9 +282,9 @@ class TParseTree {
         TStackListList allStrictlyLegalParses = new TStackListList(2); // save memory
 
         TStackListList legalParsesWithVowelOnRoot = new TStackListList(1);
-        ParseIterator pi = getParseIterator();
-        while (pi.hasNext()) {
-            TStackList sl = pi.next();
+        TStackList parses[] = getCandidateParses();
+        for (int i = 0; i < parses.length; i++) {
+            TStackList sl = parses[i];
             BoolTriple bt = sl.isLegalTshegBar(noPrefixTests);
             if (bt.isLegal) {
                 if (bt.isLegalAndHasAVowelOnRoot)
@@ -0,0 +1,128 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.text.ttt;
+
+import junit.framework.TestCase;
+
+import org.thdl.util.ThdlOptions;
+
+/**
+ * Tests {@link org.thdl.tib.text.ttt.TParseTree} at the unit level:
+ * pruning the candidate parses and remembering the legality of each
+ * parse must not change which parse is best or what is warned about.
+ */
+public class TParseTreeTest extends TestCase {
+    /** Ambiguous and Sanskrit-heavy tsheg bars, most of them from
+     *  {@link LotsOfTshegBarsTest}. */
+    private static final String ACIP[] = {
+        "GYA", "G-YA", "BGYI", "DGA'", "'AM", "BSGRUBS", "PADMA",
+        "BDZRA", "MANTRA", "DHARMA", "SARBA", "BHAGAWAN", "D+WA",
+        "NGA'I", "SRAS", "GRV'I", "RONYAKshA", "KsHA'I", "BIBH'U",
+        "NIBAR", "GRNAGS", "BRiKsh'NRA", "JU'U'I", "BHRING+GA'I",
+        "t'IKKAS", "SGORL", "GRTZUB", "BRKUBA'I", "ANYDZI", "tIKKA'I",
+        "BRLAR", "AAGNI'I", "BNYTZU", "GHR'I", "'KHYUIG", "RAKsh'A",
+        "PANYDZI", "BEE-d'URYA", "BRiTA", "7SMRA", "BLE'I", "''GA''",
+        "d'AUR+YA", "BRIKsh", "'IPRU", "ASTI'I'O", "DARBAn", "SENYA",
+        "KARnI", "TIN-DU", "KHYI'US", "GRNNGS", "BH-YE", "KART'A'O",
+        "BRADZI", "KYI'NG", "TZANDRA", "AUT-PAL", "AABRA", "DZ'AS",
+        "BSKYABS", "MGRON", "'GYUR", "DBANG", "LGYA", "BRGYA", "SGYA",
+        "BRTAN", "GDAMS", "DWAGS", "SHRI", "HUM", "OM", "HR'I"
+    };
+
+    /** Plain vanilla constructor for TParseTreeTest. */
+    public TParseTreeTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() {
+        ThdlOptions.forTestingOnlyInitializeWithoutDefaultOptionsFile();
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.and.error.severities.are.built.in.defaults", "true");
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.severity.507", "Most");
+        ErrorsAndWarnings.setupSeverityMap();
+        ThdlOptions.setUserPreference("thdl.debug", true);
+    }
+
+    protected void tearDown() {
+        TParseTree.pruneParses = true;
+        TStackList.rememberLegality = true;
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TParseTreeTest.class);
+    }
+
+    /** Returns, for each tsheg bar and each of its lexes, the legal,
+     *  non-illegal, and best parses and the warnings at every level,
+     *  each asked for twice. */
+    private static String parse(TTraits ttraits, String tshegBars[]) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < tshegBars.length; i++) {
+            TPairList pls[]
+                = ttraits.breakTshegBarIntoChunks(tshegBars[i], false);
+            for (int j = 0; j < pls.length; j++) {
+                if (null == pls[j])
+                    continue;
+                TParseTree pt = pls[j].getParseTree();
+                sb.append(tshegBars[i]).append(' ').append(j).append(": ");
+                if (null == pt) {
+                    sb.append("no parse tree\n");
+                    continue;
+                }
+                for (int k = 0; k < 2; k++) {
+                    sb.append(pt.getLegalParses()).append(' ');
+                    sb.append(pt.getNonIllegalParses()).append(' ');
+                    sb.append(pt.getBestParse()).append(' ');
+                    sb.append(pt.getWarning("All", pls[j], tshegBars[i],
+                                            false, ttraits)).append(' ');
+                    sb.append(pt.getWarning("Most", pls[j], tshegBars[i],
+                                            true, ttraits)).append(' ');
+                    sb.append(pt.getWarning("Some", pls[j], tshegBars[i],
+                                            false, ttraits)).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Asserts that the parses and warnings of tshegBars do not depend
+     *  on pruning or on remembering legality. */
+    private static void assertSameUnoptimized(TTraits ttraits,
+                                              String tshegBars[]) {
+        String expected = parse(ttraits, tshegBars);
+        for (int i = 0; i < 3; i++) {
+            TParseTree.pruneParses = (1 == i);
+            TStackList.rememberLegality = (2 == i);
+            assertEquals(expected, parse(ttraits, tshegBars));
+        }
+    }
+
+    /** Tests ACIP tsheg bars with the optimizations on and off. */
+    public void testACIPUnoptimized() {
+        assertSameUnoptimized(ACIPTraits.instance(), ACIP);
+    }
+
+    /** Tests EWTS tsheg bars with the optimizations on and off. */
+    public void testEWTSUnoptimized() {
+        String ewts[] = new String[ACIP.length];
+        for (int i = 0; i < ACIP.length; i++)
+            ewts[i] = ACIP[i].toLowerCase();
+        assertSameUnoptimized(EWTSTraits.instance(), ewts);
+    }
+}
@@ -36,6 +36,16 @@ class TStackList {
     /** a fast, non-thread-safe, random-access list implementation: */
     private ArrayList al;
 
+    /** The results of {@link #isLegalTshegBar(boolean)
+     *  isLegalTshegBar(false)} and isLegalTshegBar(true), or null if
+     *  not yet computed since this list last changed. */
+    private BoolTriple legality = null, legalityWithoutPrefixTests = null;
+
+    /** False if {@link #isLegalTshegBar(boolean)} is to classify the
+     *  tsheg bar every time it is asked.  Only tests change this, to
+     *  check that remembering the result changes no result. */
+    static boolean rememberLegality = true;
+
     /** Creates an empty list. */
     public TStackList() { al = new ArrayList(INITIAL_SIZE); }
 
@@ -54,14 +64,19 @@ class TStackList {
     public TPairList get(int i) { return (TPairList)al.get(i); }
 
     /** Adds p to the end of this list. */
-    public void add(TPairList p) { al.add(p); }
+    public void add(TPairList p) { changed(); al.add(p); }
 
     /** Adds all the stacks in c to the end of this list. */
-    public void addAll(TStackList c) { al.addAll(c.al); }
+    public void addAll(TStackList c) { changed(); al.addAll(c.al); }
 
     /** Adds all the stacks in c to this list, inserting them at
      *  position k. */
-    public void addAll(int k, TStackList c) { al.addAll(k, c.al); }
+    public void addAll(int k, TStackList c) { changed(); al.addAll(k, c.al); }
+
+    /** Forgets what we know about the legality of this list. */
+    private void changed() {
+        legality = legalityWithoutPrefixTests = null;
+    }
 
     /** Returns the number of TPairLists in this list. */
     public int size() { return al.size(); }
@@ -131,6 +146,23 @@ class TStackList {
      *  stack can take every prefix, which is not the case in
      *  reality */
     public BoolTriple isLegalTshegBar(boolean noPrefixTests) {
+        // Classifying the tsheg bar is expensive, and the same parse
+        // is asked about several times while choosing and warning
+        // about it.
+        if (!rememberLegality)
+            return computeLegality(noPrefixTests);
+        BoolTriple bt = noPrefixTests ? legalityWithoutPrefixTests : legality;
+        if (null == bt) {
+            bt = computeLegality(noPrefixTests);
+            if (noPrefixTests)
+                legalityWithoutPrefixTests = bt;
+            else
+                legality = bt;
+        }
+        return bt;
+    }
+
+    private BoolTriple computeLegality(boolean noPrefixTests) {
         // FIXME: Should we handle PADMA and other Tibetanized Sanskrit fellows consistently?  Right now we only treat single-stack Sanskrit guys as legal.
 
         TTGCList tgcList = new TTGCList(this);
@@ -211,7 +243,10 @@ class TStackList {
         return false;
     }
 
-    private boolean isVeryClearlyIllegal() {
+    /** Returns true if and only if some stack in this list is
+     *  illegal by itself, so that any tsheg bar using it is clearly
+     *  illegal. */
+    boolean isVeryClearlyIllegal() {
         // check for {D}{VA} sorts of things:
         for (int i = 0; i < size(); i++) {
             if (get(i).getACIPError("THIS MAKES IT FASTER AND IS SAFE, DON'T WORRY",
@@ -298,13 +333,13 @@ class BoolTriple implements Comparable {
         concept.  You cannot derive isLegal() from it because {@link
         TStackList#isClearlyIllegal()} and more (think {BNA}) comes
         into play. */
-    String candidateType;
+    final String candidateType;
 
 
     /** True if and only if the tsheg bar is a native Tibetan tsheg
         bar or is a single Sanskrit grapheme cluster.
         @see #isLegalButSanskrit() */
-    boolean isLegal;
+    final boolean isLegal;
 
 
     /** Some subset of tsheg bars are legal but legal Sanskrit -- the
@@ -320,7 +355,7 @@ class BoolTriple implements Comparable {
 
     /** True if and only if {@link #isLegal} is true and there may be
         an TTraits.aVowel() on the root stack. */
-    boolean isLegalAndHasAVowelOnRoot;
+    final boolean isLegalAndHasAVowelOnRoot;
     BoolTriple(boolean isLegal,
                boolean isLegalAndHasAVowelOnRoot,
                String candidateType) {
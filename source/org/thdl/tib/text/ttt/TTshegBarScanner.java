@@ -23,8 +23,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 
+import org.thdl.util.ThdlOptions;
+
 /**
 * A TTshegBarScanner is able to break up Strings of transliterated
 * Tibetan text (for example, an entire sutra) into bite-sized
@@ -33,6 +36,21 @@ import java.util.ArrayList;
 * @author David Chandler */
 public abstract class TTshegBarScanner {
 
+    /** Receives the TStrings of an incremental scan a batch at a
+     *  time.  See {@link TTshegBarScanner#scanIncrementally(Reader,
+     *  TTshegBarScanner.Listener, StringBuffer, int, boolean,
+     *  String)}. */
+    public interface Listener {
+        /** Called with the next batch of TStrings, in the order in
+         *  which they occur in the input.  A batch always ends at the
+         *  end of a line, and no batch depends on TStrings of another
+         *  batch for its meaning, so you can convert each batch and
+         *  then forget it.
+         *  @throws IOException if the listener cannot write its
+         *  output */
+        void scanned(ArrayList /* of TString */ scan) throws IOException;
+    }
+
     /** Default constructor. */
     public TTshegBarScanner() { }
 
@@ -95,6 +113,123 @@ public abstract class TTshegBarScanner {
                     warningLevel);
     }
 
+    /** Like {@link #scanStream(InputStream, StringBuffer, int,
+     *  boolean, String)}, but hands the scan to listener a piece at a
+     *  time instead of reading the whole stream into memory.  Closes
+     *  the stream.
+     *  @return false if maxErrors is nonnegative and more than
+     *  maxErrors errors occur, true otherwise
+     *  @throws IOException if we cannot read the whole stream or if
+     *  listener throws it */
+    public final boolean scanStream(InputStream stream,
+                                    Listener listener,
+                                    StringBuffer errors,
+                                    int maxErrors,
+                                    boolean shortMessages,
+                                    String warningLevel)
+        throws IOException
+    {
+        BufferedReader in
+            = new BufferedReader(new InputStreamReader(stream, "US-ASCII"));
+        try {
+            return scanIncrementally(in, listener, errors, maxErrors,
+                                     shortMessages, warningLevel);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Scans the transliteration read from in, handing the TStrings
+     *  to listener as soon as they are known, so that memory use
+     *  does not grow with the size of the input.  The input is read
+     *  a chunk at a time (the option
+     *  <code>thdl.ttt.scan.chunk.size</code> gives the size in
+     *  characters) and each chunk is cut at a line break where the
+     *  scanner has no unfinished business (see {@link
+     *  #lastSafeBreak(CharSequence)}).  If no such line break exists,
+     *  more is read first, so the result is exactly that of {@link
+     *  #scan(String, StringBuffer, int, boolean, String)} on the
+     *  whole input, and the offsets in the error messages appended to
+     *  errors are relative to the start of the whole input.  Does not
+     *  close in.
+     *  @return false if maxErrors is nonnegative and more than
+     *  maxErrors errors occur, in which case scanning stops early,
+     *  true otherwise
+     *  @throws IOException if we cannot read in or if listener throws
+     *  it */
+    public final boolean scanIncrementally(Reader in,
+                                           Listener listener,
+                                           StringBuffer errors,
+                                           int maxErrors,
+                                           boolean shortMessages,
+                                           String warningLevel)
+        throws IOException
+    {
+        int chunkSize
+            = ThdlOptions.getIntegerOption("thdl.ttt.scan.chunk.size",
+                                           64*1024);
+        int threshold = chunkSize;
+        // offset, number of newlines, and number of errors so far:
+        int position[] = new int[] { 0, 0, 0 };
+        StringBuffer s = new StringBuffer();
+        char ch[] = new char[8192];
+        int amt;
+        while (-1 != (amt = in.read(ch))) {
+            s.append(ch, 0, amt);
+            if (s.length() >= threshold) {
+                int cut = lastSafeBreak(s);
+                if (cut > 0) {
+                    String chunk = s.substring(0, cut);
+                    s.delete(0, cut);
+                    ArrayList al = scanPart(chunk, errors, maxErrors,
+                                            shortMessages, warningLevel,
+                                            position);
+                    if (null == al)
+                        return false;
+                    listener.scanned(al);
+                    threshold = chunkSize;
+                } else {
+                    // Read more and try again later.  Doubling keeps
+                    // this linear for pathological inputs.
+                    threshold = 2*s.length();
+                }
+            }
+        }
+        ArrayList al = scanPart(s.toString(), errors, maxErrors,
+                                shortMessages, warningLevel, position);
+        if (null == al)
+            return false;
+        listener.scanned(al);
+        return true;
+    }
+
+    /** Returns the largest index i such that scanning s.subSequence(0,
+     *  i) and s.subSequence(i, s.length()) separately is the same as
+     *  scanning s, or -1 if there is no such index or if this scanner
+     *  does not know.  Each part scanned separately must also be
+     *  convertible without knowledge of the other part.  This
+     *  implementation returns -1, which means the input is never
+     *  broken up. */
+    protected int lastSafeBreak(CharSequence s) {
+        return -1;
+    }
+
+    /** Scans s, which is a piece of a larger input, for {@link
+     *  #scanIncrementally(Reader, TTshegBarScanner.Listener,
+     *  StringBuffer, int, boolean, String)}.
+     *  @param position an input-output parameter.  position[0] is the
+     *  offset (as used in error messages) at which s begins,
+     *  position[1] is the number of newlines before s, and
+     *  position[2] is the number of errors found before s.  On
+     *  output, they describe the end of s.  This implementation
+     *  ignores position, which is fine for scanners that never break
+     *  up the input. */
+    protected ArrayList scanPart(String s, StringBuffer errors,
+                                 int maxErrors, boolean shortMessages,
+                                 String warningLevel, int position[]) {
+        return scan(s, errors, maxErrors, shortMessages, warningLevel);
+    }
+
     /** Returns a list of {@link TString TStrings} corresponding
      *  to s, possibly the empty list (when the empty string is the
      *  input).  Each String is either a Latin comment, some Latin
@@ -0,0 +1,187 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.text.ttt;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.thdl.util.ThdlOptions;
+
+/**
+ * Tests {@link
+ * org.thdl.tib.text.ttt.TTshegBarScanner#scanIncrementally(Reader,
+ * TTshegBarScanner.Listener, StringBuffer, int, boolean, String)} at
+ * the unit level: scanning in chunks must give what scanning the
+ * whole input at once gives.
+ */
+public class TTshegBarScannerTest extends TestCase {
+    /** ACIP with brackets, a comment, slashes, parentheses, a '^', a
+     *  line ending in a shad, and errors on both sides of line breaks
+     *  where chunks might be cut. */
+    private static final String ACIP
+        = "BKRA SHIS BDE\nLEGS [#COMMENT] SANGS\nRGYAS KYI BSTAN PA\n"
+        + "DANG,\nLHAG MTHONG /NYA\nPHYIR/ KA^\nKHA (NGA\nPA) MA\n"
+        + "KAf\nKHA [BDE\nLEGS} SHI@S\nMA [#SA]\nBON\n\nG-YA' 'OG NA\n"
+        + "BZHUGS SO,,\n";
+
+    /** EWTS with errors on both sides of line breaks. */
+    private static final String EWTS
+        = "bkra shis bde\nlegs/ sangs rgyas\nkyi bstan pa/ kaQ\nkha/ bkra [shis\n"
+        + "bde legs} ka^\nkha\n\ng.yag 'og na\nbzhugs so//\n";
+
+    /** Plain vanilla constructor for TTshegBarScannerTest. */
+    public TTshegBarScannerTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() {
+        ThdlOptions.forTestingOnlyInitializeWithoutDefaultOptionsFile();
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.and.error.severities.are.built.in.defaults", "true");
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.severity.507", "Most");
+        ErrorsAndWarnings.setupSeverityMap();
+        ThdlOptions.setUserPreference("thdl.debug", true);
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TTshegBarScannerTest.class);
+    }
+
+    /** Returns the scan of text, all at once, and its errors. */
+    private static String scanWhole(TTshegBarScanner scanner, String text,
+                                    int maxErrors, boolean shortMessages) {
+        StringBuffer errors = new StringBuffer();
+        ArrayList al = scanner.scan(text, errors, maxErrors, shortMessages,
+                                    "All");
+        return al + "\nerrors:\n" + errors;
+    }
+
+    /** Returns the scan of text, chunkSize characters at a time, read a
+     *  character at a time, and its errors. */
+    private static String scanChunked(TTshegBarScanner scanner, String text,
+                                      int maxErrors, boolean shortMessages,
+                                      int chunkSize)
+        throws IOException
+    {
+        ThdlOptions.setUserPreference("thdl.ttt.scan.chunk.size", chunkSize);
+        Reader in = new FilterReader(new StringReader(text)) {
+                public int read(char cbuf[], int off, int len)
+                    throws IOException
+                {
+                    return super.read(cbuf, off, Math.min(len, 1));
+                }
+            };
+        StringBuffer errors = new StringBuffer();
+        final ArrayList all = new ArrayList();
+        boolean ok
+            = scanner.scanIncrementally(in, new TTshegBarScanner.Listener() {
+                    public void scanned(ArrayList scan) {
+                        all.addAll(scan);
+                    }
+                }, errors, maxErrors, shortMessages, "All");
+        return (ok ? all.toString() : "null") + "\nerrors:\n" + errors;
+    }
+
+    /** Asserts that scanning text in chunks of every size from one
+     *  character to all of them gives the same TStrings and the same
+     *  error messages, offsets included, as scanning it at once. */
+    private static void assertChunksScanLikeWhole(TTshegBarScanner scanner,
+                                                  String text,
+                                                  int maxErrors)
+        throws IOException
+    {
+        for (int i = 0; i < 2; i++) {
+            boolean shortMessages = (0 == i);
+            String whole = scanWhole(scanner, text, maxErrors, shortMessages);
+            for (int chunkSize = 1; chunkSize <= text.length() + 1; chunkSize++) {
+                assertEquals("chunk size " + chunkSize, whole,
+                             scanChunked(scanner, text, maxErrors,
+                                         shortMessages, chunkSize));
+            }
+        }
+    }
+
+    /** Asserts that scanning text in two parts, split at
+     *  lastSafeBreak(text), gives what scanning it at once gives. */
+    private static void assertScanPartsLikeWhole(TTshegBarScanner scanner,
+                                                 String text) {
+        int cut = scanner.lastSafeBreak(text);
+        assertTrue(cut > 0);
+        StringBuffer errors = new StringBuffer();
+        int position[] = new int[] { 0, 0, 0 };
+        ArrayList al = scanner.scanPart(text.substring(0, cut), errors, -1,
+                                        false, "All", position);
+        al.addAll(scanner.scanPart(text.substring(cut), errors, -1, false,
+                                   "All", position));
+        assertEquals(scanWhole(scanner, text, -1, false),
+                     al + "\nerrors:\n" + errors);
+    }
+
+    /** Tests that ACIP scanned in chunks is scanned as if whole. */
+    public void testACIPChunks() throws IOException {
+        TTshegBarScanner scanner = ACIPTraits.instance().scanner();
+        assertChunksScanLikeWhole(scanner, ACIP, -1);
+        assertChunksScanLikeWhole(scanner, ACIP, 3);
+    }
+
+    /** Tests that EWTS scanned in chunks is scanned as if whole. */
+    public void testEWTSChunks() throws IOException {
+        TTshegBarScanner scanner = EWTSTraits.instance().scanner();
+        assertChunksScanLikeWhole(scanner, EWTS, -1);
+        assertChunksScanLikeWhole(scanner, EWTS, 2);
+    }
+
+    /** Tests where ACIP may be cut. */
+    public void testACIPLastSafeBreak() {
+        TTshegBarScanner scanner = ACIPTraits.instance().scanner();
+        assertEquals(3, scanner.lastSafeBreak("KA\nKHA"));
+        assertEquals(4, scanner.lastSafeBreak("KA\r\nKHA"));
+        assertEquals(7, scanner.lastSafeBreak("KA\nKHA\nGA,\nNGA"));
+        // after a shad or a blank line, nothing says where the tsheg
+        // bar ends:
+        assertEquals(-1, scanner.lastSafeBreak("DANG,\nLHAG"));
+        assertEquals(-1, scanner.lastSafeBreak("KA\n\nKHA"));
+        // nothing open may span the cut:
+        assertEquals(-1, scanner.lastSafeBreak("[KA\nKHA"));
+        assertEquals(-1, scanner.lastSafeBreak("[#KA\nKHA"));
+        assertEquals(-1, scanner.lastSafeBreak("/KA\nKHA"));
+        assertEquals(-1, scanner.lastSafeBreak("(KA\nKHA"));
+        assertEquals(-1, scanner.lastSafeBreak("[KA [KHA] GA\nNGA"));
+        assertEquals(18, scanner.lastSafeBreak("[#KA\nKHA] (GA) KA\nNGA"));
+        assertEquals(8, scanner.lastSafeBreak("/KA/ GA\nNGA"));
+
+        assertScanPartsLikeWhole(scanner, "KA^ KHA\nGA [#COMMENT\nHERE] /GA/ NGA\nCA");
+        assertScanPartsLikeWhole(scanner, "KAf\nKHA} SHI@S\nMA");
+    }
+
+    /** Tests where EWTS may be cut. */
+    public void testEWTSLastSafeBreak() {
+        TTshegBarScanner scanner = EWTSTraits.instance().scanner();
+        assertEquals(3, scanner.lastSafeBreak("ka\nkha"));
+        assertEquals(8, scanner.lastSafeBreak("ka\nkha/\nga"));
+        assertEquals(-1, scanner.lastSafeBreak("ka kha"));
+
+        assertScanPartsLikeWhole(scanner, "kaQ\nkha [shis\nbde}");
+    }
+}
@@ -0,0 +1,143 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.text.ttt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.thdl.util.ThdlOptions;
+
+/** A bounded cache of {@link TshegBarConversion TshegBarConversions}
+ *  used by {@link TConverter}.  Real texts use a few thousand
+ *  distinct tsheg bars over and over again, and parsing one is
+ *  expensive, so the least recently used conversions are kept
+ *  around.  All methods are thread-safe.
+ *
+ *  <p>The number of tsheg bars kept is given by the option
+ *  <code>thdl.ttt.tsheg.bar.cache.size</code>; zero turns caching
+ *  off.</p>
+ */
+class TshegBarCache {
+    /** Key of the cache.  Everything a conversion depends upon. */
+    private static class Key {
+        private final TTraits ttraits;
+        private final String tshegBar;
+        private final String warningLevel;
+        private final boolean shortMessages;
+        private final boolean toUnicode;
+        private final int hash;
+
+        Key(TTraits ttraits, String tshegBar, String warningLevel,
+            boolean shortMessages, boolean toUnicode) {
+            this.ttraits = ttraits;
+            this.tshegBar = tshegBar;
+            this.warningLevel = warningLevel;
+            this.shortMessages = shortMessages;
+            this.toUnicode = toUnicode;
+            this.hash = ((tshegBar.hashCode() * 31
+                          + ttraits.hashCode()) * 31
+                         + warningLevel.hashCode()) * 4
+                + (shortMessages ? 2 : 0) + (toUnicode ? 1 : 0);
+        }
+
+        public int hashCode() { return hash; }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return (hash == k.hash
+                    && ttraits == k.ttraits
+                    && shortMessages == k.shortMessages
+                    && toUnicode == k.toUnicode
+                    && tshegBar.equals(k.tshegBar)
+                    && warningLevel.equals(k.warningLevel));
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap map;
+    private long hits = 0;
+    private long misses = 0;
+
+    /** Creates a cache holding the number of tsheg bars given by the
+     *  option <code>thdl.ttt.tsheg.bar.cache.size</code>. */
+    TshegBarCache() {
+        this(ThdlOptions.getIntegerOption("thdl.ttt.tsheg.bar.cache.size",
+                                          10000));
+    }
+
+    /** Creates a cache holding at most capacity tsheg bars. */
+    TshegBarCache(int capacity) {
+        this.capacity = capacity;
+        final int max = capacity;
+        this.map = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > max;
+                }
+            };
+    }
+
+    /** Returns the conversion of tshegBar, converting it and
+     *  remembering the result if it's not already in the cache. */
+    TshegBarConversion get(TTraits ttraits, String tshegBar,
+                           boolean toUnicode, String warningLevel,
+                           boolean shortMessages) {
+        if (capacity <= 0) {
+            synchronized (this) { ++misses; }
+            return TshegBarConversion.convert(ttraits, tshegBar, toUnicode,
+                                              warningLevel, shortMessages);
+        }
+        Key key = new Key(ttraits, tshegBar, warningLevel, shortMessages,
+                          toUnicode);
+        TshegBarConversion c;
+        synchronized (this) {
+            c = (TshegBarConversion)map.get(key);
+            if (null != c) {
+                ++hits;
+                return c;
+            }
+            ++misses;
+        }
+        // Converting takes a while, so we don't hold the lock.  Two
+        // threads may convert the same tsheg bar at once, but they
+        // get equal results.
+        c = TshegBarConversion.convert(ttraits, tshegBar, toUnicode,
+                                       warningLevel, shortMessages);
+        synchronized (this) {
+            map.put(key, c);
+        }
+        return c;
+    }
+
+    /** Forgets all conversions, e.g. because the severities of the
+     *  warnings have changed.  The counters are not reset. */
+    synchronized void clear() {
+        map.clear();
+    }
+
+    /** Returns the number of tsheg bars found in the cache. */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of tsheg bars that had to be converted. */
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.text.ttt;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.thdl.util.ThdlOptions;
+
+/**
+ * Tests {@link org.thdl.tib.text.ttt.TshegBarCache} at the unit level.
+ */
+public class TshegBarCacheTest extends TestCase {
+    /** Legal, ambiguous, warned-about, and erroneous ACIP tsheg bars. */
+    private static final String ACIP[] = {
+        "BKRA", "SHIS", "GYA", "G-YA", "'AM", "PADMA", "BDZRA", "D+WA",
+        "DHARMA", "GRNNGS", "A-DZU", "KsHA'I", "BH-YE", "SGORL", "NGA'I"
+    };
+
+    /** Plain vanilla constructor for TshegBarCacheTest. */
+    public TshegBarCacheTest(String arg0) {
+        super(arg0);
+    }
+
+    protected void setUp() {
+        ThdlOptions.forTestingOnlyInitializeWithoutDefaultOptionsFile();
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.and.error.severities.are.built.in.defaults", "true");
+        ThdlOptions.setUserPreference("thdl.acip.to.tibetan.warning.severity.507", "Most");
+        ErrorsAndWarnings.setupSeverityMap();
+        ThdlOptions.setUserPreference("thdl.debug", true);
+        ThdlOptions.setUserPreference("thdl.rely.on.system.tmw.fonts", true);
+        ThdlOptions.setUserPreference("thdl.rely.on.system.tm.fonts", true);
+    }
+
+    /** Invokes a text UI and runs all this class's tests. */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TshegBarCacheTest.class);
+    }
+
+    /** Returns everything c tells about a tsheg bar. */
+    private static String describe(TshegBarConversion c) {
+        return c.errorMessage + " | " + c.stackList + " | " + c.warning
+            + " | " + c.unicode
+            + " | " + ((null == c.glyphWarnings) ? "null" : Arrays.asList(c.glyphWarnings).toString())
+            + " | " + ((null == c.duff) ? "null" : Arrays.asList(c.duff).toString())
+            + " | " + c.color;
+    }
+
+    /** Returns the conversions of every tsheg bar in every way, each
+     *  done twice so that the second comes from cache if it can. */
+    private static String convertAll(TshegBarCache cache, TTraits ttraits,
+                                     String tshegBars[]) {
+        String warningLevels[] = { "None", "Some", "Most", "All" };
+        StringBuffer sb = new StringBuffer();
+        for (int n = 0; n < 2; n++) {
+            for (int i = 0; i < tshegBars.length; i++) {
+                for (int j = 0; j < warningLevels.length; j++) {
+                    for (int k = 0; k < 4; k++) {
+                        boolean toUnicode = (0 == k % 2);
+                        boolean shortMessages = (k >= 2);
+                        sb.append(describe(cache.get(ttraits, tshegBars[i],
+                                                     toUnicode,
+                                                     warningLevels[j],
+                                                     shortMessages)));
+                        sb.append('\n');
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Tests that conversions from cache, even from a cache too small
+     *  to hold them all, are those made without one, warnings and
+     *  errors included. */
+    public void testSameAsUncached() {
+        TshegBarCache uncached = new TshegBarCache(0);
+        String expected = convertAll(uncached, ACIPTraits.instance(), ACIP);
+        assertEquals(0, uncached.getHits());
+        assertTrue(expected.indexOf("[#ERROR ") >= 0);
+
+        TshegBarCache cache = new TshegBarCache(1000);
+        assertEquals(expected, convertAll(cache, ACIPTraits.instance(), ACIP));
+        assertEquals(cache.getHits(), cache.getMisses());
+
+        assertEquals(expected,
+                     convertAll(new TshegBarCache(5), ACIPTraits.instance(),
+                                ACIP));
+
+        String ewts[] = new String[ACIP.length];
+        for (int i = 0; i < ACIP.length; i++)
+            ewts[i] = ACIP[i].toLowerCase();
+        assertEquals(convertAll(uncached, EWTSTraits.instance(), ewts),
+                     convertAll(cache, EWTSTraits.instance(), ewts));
+    }
+
+    /** Tests that the cache keeps no more than its size and forgets the
+     *  least recently used tsheg bar first. */
+    public void testLeastRecentlyUsed() {
+        TTraits ttraits = ACIPTraits.instance();
+        TshegBarCache cache = new TshegBarCache(2);
+        cache.get(ttraits, "KA", true, "All", false);
+        cache.get(ttraits, "KHA", true, "All", false);
+        cache.get(ttraits, "KA", true, "All", false);
+        assertEquals(1, cache.getHits());
+        // GA pushes out KHA, the least recently used:
+        cache.get(ttraits, "GA", true, "All", false);
+        cache.get(ttraits, "KA", true, "All", false);
+        cache.get(ttraits, "GA", true, "All", false);
+        assertEquals(3, cache.getHits());
+        cache.get(ttraits, "KHA", true, "All", false);
+        assertEquals(3, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        // and KHA pushed out KA:
+        cache.get(ttraits, "KA", true, "All", false);
+        assertEquals(3, cache.getHits());
+
+        // the same tsheg bar converted otherwise is another entry:
+        cache.get(ttraits, "KA", false, "All", false);
+        cache.get(ttraits, "KA", true, "Most", false);
+        cache.get(ttraits, "KA", true, "All", true);
+        assertEquals(3, cache.getHits());
+
+        cache.clear();
+        cache.get(ttraits, "KA", true, "All", true);
+        assertEquals(3, cache.getHits());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003-2004 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.tib.text.ttt;
+
+import java.awt.Color;
+import java.util.ArrayList;
+
+/** The result of converting one TString of type {@link
+ *  TString#TIBETAN_NON_PUNCTUATION} to Unicode or to TMW: either an
+ *  error message or the best parse along with its output and
+ *  warnings.  Instances are immutable so that {@link TshegBarCache}
+ *  can hand them to any number of threads.
+ */
+class TshegBarConversion {
+    /** Non-null iff the tsheg bar could not be converted.  Looks like
+     *  "[#ERROR ...]". */
+    final String errorMessage;
+
+    /** The best parse, or null if errorMessage is non-null. */
+    final TStackList stackList;
+
+    /** The warning for the parse (not surrounded by "[#WARNING ...]"),
+     *  or null. */
+    final String warning;
+
+    /** For conversions to Unicode, the Unicode preceded by any
+     *  "[#WARNING 511 ...]" warnings; null otherwise. */
+    final String unicode;
+
+    /** For conversions to Unicode, the "[#WARNING 511 ...]" warnings
+     *  found in unicode. */
+    final String[] glyphWarnings;
+
+    /** For conversions to TMW, DuffCodes and error messages; null
+     *  otherwise. */
+    final Object[] duff;
+
+    /** For conversions to TMW, the color to use when colors are
+     *  enabled. */
+    final Color color;
+
+    private TshegBarConversion(String errorMessage, TStackList stackList,
+                               String warning, String unicode,
+                               String[] glyphWarnings, Object[] duff,
+                               Color color) {
+        this.errorMessage = errorMessage;
+        this.stackList = stackList;
+        this.warning = warning;
+        this.unicode = unicode;
+        this.glyphWarnings = glyphWarnings;
+        this.duff = duff;
+        this.color = color;
+    }
+
+    private static TshegBarConversion error(String errorMessage) {
+        return new TshegBarConversion(errorMessage, null, null, null,
+                                      null, null, null);
+    }
+
+    /** Converts the tsheg bar tshegBar to Unicode if toUnicode is
+     *  true, or to TMW otherwise. */
+    static TshegBarConversion convert(TTraits ttraits, String tshegBar,
+                                      boolean toUnicode,
+                                      String warningLevel,
+                                      boolean shortMessages) {
+        TPairList pls[]
+            = ttraits.breakTshegBarIntoChunks(tshegBar, false);
+        String acipError;
+
+        if ((acipError = pls[0].getACIPError(tshegBar, shortMessages)) != null
+            && (null == pls[1] || pls[1].getACIPError(tshegBar, shortMessages) != null)) {
+            return error("[#ERROR " + acipError + "]");
+        }
+        TParseTree pt0 = pls[0].getParseTree();
+        TParseTree pt1 = ((null == pls[1])
+                          ? null : pls[1].getParseTree());
+        if (null == pt0 && null == pt1) {
+            return error("[#ERROR "
+                         + ErrorsAndWarnings.getMessage(130, shortMessages, tshegBar,
+                                                        ttraits)
+                         + "]");
+        }
+        TStackList sl0 = pt0.getBestParse();
+        TStackList sl1 = ((null == pt1)
+                          ? null : pt1.getBestParse());
+        if (null == sl0 && null == sl1) {
+            // ACIP {A-DZU} causes this, for example.
+            return error("[#ERROR "
+                         + ErrorsAndWarnings.getMessage(134,
+                                                        shortMessages,
+                                                        tshegBar,
+                                                        ttraits)
+                         + "]");
+        }
+        TStackList sl = sl0;
+        TPairList pl = pls[0];
+        TParseTree pt = pt0;
+        // set sl equal to the best choice of sl0 and sl1.
+        if (null != sl1) {
+            BoolTriple sl0bt = sl0.isLegalTshegBar(false);
+            BoolTriple sl1bt = sl1.isLegalTshegBar(false);
+            int ct;
+            if ((ct = sl0bt.compareTo(sl1bt)) < 0) {
+                sl = sl1;
+                pl = pls[1];
+                pt = pt1;
+            } else if (0 == ct) {
+                // sl remains sl0 -- '* is a vowel unless it's clearly
+                // part of an appendage like 'AM.
+            }
+        }
+        String warning = null;
+        if ("None" != warningLevel) {
+            warning = pt.getWarning(warningLevel,
+                                    pl,
+                                    tshegBar,
+                                    shortMessages,
+                                    ttraits);
+        }
+        String unicode = null;
+        String[] glyphWarnings = null;
+        Object[] duff = null;
+        Color color = null;
+        if (toUnicode) {
+            unicode = sl.getUnicode();
+            if (null == unicode) throw new Error("FIXME: make this an assertion 4");
+            // Warn if any of the stacks in this tsheg bar do not have
+            // corresponding glyphs in TMW.  That means there was
+            // probably a typo in the input.
+            ArrayList bwarnings = new ArrayList();
+            if (ErrorsAndWarnings.isEnabled(511, warningLevel)) {
+                Object[] trialDuff
+                    = sl.getDuff(shortMessages,
+                                 false);
+                for (int ii = 0; ii < trialDuff.length; ii++) {
+                    if (trialDuff[ii] instanceof String) {
+                        if (!((String)trialDuff[ii]).startsWith("511"))
+                            throw new Error("I thought 511 was the only beast like this; FIXME: make this an assertion 324xd3");
+                        String bwarning
+                            = "[#WARNING "
+                            + (String)trialDuff[ii] + "]";
+                        unicode = bwarning + unicode;
+                        bwarnings.add(bwarning);
+                    }
+                }
+            }
+            glyphWarnings
+                = (String[])bwarnings.toArray(new String[bwarnings.size()]);
+        } else {
+            duff = sl.getDuff(shortMessages, true);
+            BoolTriple bt;
+            if (sl.isLegalTshegBar(true).isLegal && !sl.isLegalTshegBar(false).isLegal) {
+                color = Color.YELLOW;
+            } else if ((bt = sl.isLegalTshegBar(false)).isLegal && !bt.isLegalButSanskrit()) {
+                color = Color.black;
+            } else {
+                // Sanskrit.
+
+                // FIXME: should a funny vowel cause green to appear
+                // too?  G'EEm is black, not green, right now, though
+                // GA: is green.
+                color = Color.GREEN;
+            }
+
+            if (0 == duff.length) {
+                throw new Error("No DuffCodes for stack list " + sl); // FIXME: make this an assertion
+            }
+        }
+        return new TshegBarConversion(null, sl, warning, unicode,
+                                      glyphWarnings, duff, color);
+    }
+}
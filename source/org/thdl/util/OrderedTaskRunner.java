@@ -0,0 +1,130 @@
+/*
+The contents of this file are subject to the THDL Open Community License
+Version 1.0 (the "License"); you may not use this file except in compliance
+with the License. You may obtain a copy of the License on the THDL web site
+(http://www.thdl.org/).
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+License for the specific terms governing rights and limitations under the
+License.
+
+The Initial Developer of this software is the Tibetan and Himalayan Digital
+Library (THDL). Portions created by the THDL are Copyright 2003 THDL.
+All Rights Reserved.
+
+Contributor(s): ______________________________________.
+*/
+
+package org.thdl.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/** Runs tasks on an ExecutorService and hands their results to a
+ *  {@link OrderedTaskRunner.Consumer} in the order in which the tasks
+ *  were submitted, no matter in which order they finish.  This is how
+ *  a long input is converted a piece at a time on several threads
+ *  while the output is still written in order.  At most a fixed
+ *  number of tasks are pending at once, so memory use is bounded no
+ *  matter how long the input is.
+ *
+ *  <p>An OrderedTaskRunner is meant to be used by one thread.</p>
+ */
+public class OrderedTaskRunner {
+    /** Receives the results of the tasks, in order. */
+    public interface Consumer {
+        /** Called with the result of the next task.
+         *  @throws IOException if the result cannot be written */
+        void consume(Object result) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Consumer consumer;
+    private final int maxPending;
+    private final LinkedList pending = new LinkedList();
+
+    /** Creates a runner that runs tasks on executor and lets at most
+     *  maxPending of them be unconsumed at once. */
+    public OrderedTaskRunner(ExecutorService executor, Consumer consumer,
+                             int maxPending) {
+        if (maxPending < 1)
+            throw new IllegalArgumentException("maxPending must be positive");
+        this.executor = executor;
+        this.consumer = consumer;
+        this.maxPending = maxPending;
+    }
+
+    /** Creates a runner that runs tasks on executor and lets at most
+     *  twice as many of them be unconsumed at once as executor has
+     *  threads, which is enough to keep them all busy. */
+    public OrderedTaskRunner(ExecutorService executor, Consumer consumer) {
+        this(executor, consumer, 2*threadsOf(executor));
+    }
+
+    /** Returns the number of threads executor runs tasks on, or the
+     *  number of processors if that cannot be told. */
+    static int threadsOf(ExecutorService executor) {
+        if (executor instanceof ForkJoinPool)
+            return ((ForkJoinPool)executor).getParallelism();
+        if (executor instanceof ThreadPoolExecutor) {
+            int n = ((ThreadPoolExecutor)executor).getMaximumPoolSize();
+            if (n < Integer.MAX_VALUE/2)
+                return n;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Submits task, first waiting for and consuming the result of the
+     *  oldest task if too many are pending.
+     *  @throws IOException if a task or the consumer throws it */
+    public void submit(Callable task) throws IOException {
+        while (pending.size() >= maxPending)
+            consumeOldest();
+        pending.addLast(executor.submit(task));
+    }
+
+    /** Waits for all pending tasks and consumes their results.
+     *  @throws IOException if a task or the consumer throws it */
+    public void finish() throws IOException {
+        while (!pending.isEmpty())
+            consumeOldest();
+    }
+
+    /** Cancels all pending tasks without consuming their results.
+     *  Call this if you give up midway. */
+    public void cancel() {
+        while (!pending.isEmpty())
+            ((Future)pending.removeFirst()).cancel(true);
+    }
+
+    private void consumeOldest() throws IOException {
+        Future f = (Future)pending.removeFirst();
+        Object result;
+        try {
+            result = f.get();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a task");
+        } catch (ExecutionException e) {
+            cancel();
+            Throwable t = e.getCause();
+            if (t instanceof IOException)
+                throw (IOException)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            throw new ThdlLazyException(t);
+        }
+        consumer.consume(result);
+    }
+}
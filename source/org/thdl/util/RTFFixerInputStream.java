@@ -18,28 +18,29 @@ Contributor(s): ______________________________________.
 
 package org.thdl.util;
 
-import java.io.BufferedInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 
 
 /** Provides an input stream that fixes another RTF input stream so
     that it no longer contains hexadecimal escapes that {@link
     javax.swing.text.rtf#RTFEditorKit} cannot understand.  Instead,
-    Unicode escapes (that can be understood) are used.  This is almost
-    as fast as possible.
+    Unicode escapes (that can be understood) are used.
+
+    <p>The input is read a block at a time.  Each block is scanned for
+    backslashes, the bytes between them are copied in bulk, and the
+    escapes are rewritten into an output buffer that is reused, so
+    this costs little more than the copying.  An escape split between
+    two blocks is kept until the next block is read.  A backslash
+    escaped by another one ("\\\\'80") does not begin an escape.</p>
 
     @author David Chandler */
 public class RTFFixerInputStream extends FilterInputStream {
-    /** Holds onto the bytes we've read that we haven't yet passed
-        along to the user. */
-    private ArrayList ourBuffer = new ArrayList(21);
-
-    /** if true, then all hexadecimal escapes are replaced; if false,
-        then just the 32 "\\\'8X" and "\\\'9X" escapes are replaced. */
-    private boolean replaceAllHexEscapes = false;
+    /** if true, then just the 32 "\\\'8X" and "\\\'9X" escapes are
+        replaced; if false, then all hexadecimal escapes are
+        replaced. */
+    private boolean replaceOnly8XAnd9X = true;
 
     /** The number of bytes in the Unicode RTF escape sequence that we
         will use after processing.  I.e., 7, as in "\\u255 ?" (KEEP THIS IN
@@ -50,38 +51,53 @@ public class RTFFixerInputStream extends FilterInputStream {
         SYNC WITH bytesInNewEscape) */
     private static final boolean addASpace = true;
 
-    private boolean weSubstitutedAtLeastOnce = false;
-
     /** The number of bytes in the RTF hexadecimal escape.  I.e., 4,
         as in "\\\'ff". */
     static final int bytesInOldEscape = 4;
-    /** an instance field just to avoid needless heap allocation */
-    private final byte readHelper[] = new byte[bytesInNewEscape];
 
-    /** Constructs an RTFFixerInputStream that will fix in.  No
-        hexadecimal escapes will remain. */
+    /** The number of bytes read from the underlying stream at once */
+    static final int blockSize = 8192;
+
+    /** The bytes read but not yet scanned, at inBuf[0] through
+        inBuf[inEnd-1].  Only the start of an escape is ever left
+        unscanned. */
+    private final byte inBuf[] = new byte[blockSize + bytesInOldEscape];
+    private int inEnd = 0;
+    private boolean sawEOF = false;
+
+    /** The fixed bytes not yet passed along to the user are
+        outBuf[outPos] through outBuf[outEnd-1]. */
+    private final byte outBuf[]
+        = new byte[((blockSize + bytesInOldEscape) / bytesInOldEscape + 1)
+                   * bytesInNewEscape];
+    private int outPos = 0;
+    private int outEnd = 0;
+
+    /** The number of bytes passed along to the user so far */
+    private long numDelivered = 0;
+    /** Where, in the bytes passed along to the user, the first
+        substitution begins, or -1 if none has been made */
+    private long firstSubstitution = -1;
+
+    /** Constructs an RTFFixerInputStream that will fix in.  The
+        "\\\'8X" and "\\\'9X" escapes will be replaced. */
     public RTFFixerInputStream(InputStream in) {
-        // our read(..) methods may do multiple reads, so buffer this guy:
-        super(new BufferedInputStream(in));
-        replaceAllHexEscapes = true;
+        this(in, true);
     }
 
     /** Constructs an RTFFixerInputStream that will fix in.  No
-        hexadecimal escapes will remain if replaceAllHexEscapes is
-        true; only "\\\'8X" and "\\\'9X" will be replaced otherwise.
+        hexadecimal escapes will remain if replaceOnly8XAnd9X is
+        false; only "\\\'8X" and "\\\'9X" will be replaced otherwise.
         (This is private, but you can make it public if you test it.)  */
-    private RTFFixerInputStream(InputStream in, boolean replaceAllHexEscapes) {
+    private RTFFixerInputStream(InputStream in, boolean replaceOnly8XAnd9X) {
         super(in);
-        this.replaceAllHexEscapes = replaceAllHexEscapes;
+        this.replaceOnly8XAnd9X = replaceOnly8XAnd9X;
     }
     public int available() throws IOException {
         // We might have to hold on to "\\'9", so report 3 less than
         // the super says.
         int x = super.available();
-        if (x > 3)
-            return x - 3;
-        else
-            return 0;
+        return (outEnd - outPos) + ((x > 3) ? x - 3 : 0);
     }
     /** I don't want to think about marking and resetting if I don't
         have to, so this stream doesn't support mark and reset.
@@ -104,174 +120,119 @@ public class RTFFixerInputStream extends FilterInputStream {
     }
 
     public int read() throws IOException {
-        if (ourBuffer.size() > 0) {
-            int rv = ((Integer)ourBuffer.get(0)).intValue();
-            ourBuffer.remove(0);
-            return rv;
-        }
-        int ch1 = super.read();
-        if (ch1 == (int)'\\') {
-            // we might be staring at an escape sequence.
-            
-            readHelper[0] = (byte)ch1;
-            int x = readAndConvertEscapeSequence(readHelper, 0, 1);
-            int j = 0;
-            while (x > 0) {
-                ourBuffer.add(new Integer(readHelper[j++]));
-                --x;
-            }
-            // Return ourBuffer's first element:
-            return read();
-        } else {
-            return ch1;
-        }
+        if (outPos == outEnd && !fill())
+            return -1;
+        ++numDelivered;
+        return outBuf[outPos++] & 0xff;
     }
     public int read(byte[] bb) throws IOException {
         return read(bb, 0, bb.length);
     }
 
     public int read(byte[] bb, int off, int len) throws IOException {
-        if (ourBuffer.size() > 0) {
-            // return as much as we can of this.
-            int i;
-            for (i = 0; (i < len) && (ourBuffer.size() > 0); i++) {
-                bb[off + i] = (byte)((Integer)ourBuffer.get(0)).intValue();
-                ourBuffer.remove(0);
-            }
-            return i;
-        }
-        int superRV = super.read(bb, off, len);
-        ThdlDebug.verify(superRV == -1 || len == 0 || superRV > 0);
-        if (superRV == -1 || superRV == 0)
-            return superRV;
-        byte temp[]
-            = new byte[(superRV*bytesInNewEscape)/bytesInOldEscape + bytesInNewEscape + 10];
-        // number of elements used in temp:
-        int len_used = superRV;
-        System.arraycopy(bb, off, temp, 0, superRV);
-
-        // Now see if the last characters might be part of a hex
-        // escape sequence by reading ahead enough to say one way or
-        // the other.  We do this before we replace the full hex
-        // escape sequences so that we never have parts of a hex
-        // escape sequence living in ourBuffer.  If the last
-        // characters might be, put them into temp.  Eventually, we'll
-        // take the part of temp that can't fit in bb and put it into
-        // ourBuffer.  We return as many bytes as super.read(..) did
-        // so that we don't ever return 0.
+        if (len <= 0)
+            return 0;
+        if (outPos == outEnd && !fill())
+            return -1;
+        int n = outEnd - outPos;
+        if (n > len)
+            n = len;
+        System.arraycopy(outBuf, outPos, bb, off, n);
+        outPos += n;
+        numDelivered += n;
+        return n;
+    }
 
-        // Three cases: (1) \\'8 ends the writable space of bb
-        //              (2) \\' ends it
-        //              (3) \\ ends it
-        for (int k = 3; k >= 1; k--) {
-            if (len_used >= k) {
-                if (temp[len_used - k] == '\\') {
-                    len_used += readAndConvertEscapeSequence(temp, len_used - k, k) - k;
-                }
+    /** Reads and fixes blocks until there are fixed bytes to pass
+        along, which is only after the whole of outBuf has been passed
+        along.
+        @return false at the end of the stream */
+    private boolean fill() throws IOException {
+        outPos = outEnd = 0;
+        while (outEnd == 0) {
+            if (sawEOF && inEnd == 0)
+                return false;
+            if (!sawEOF) {
+                int n = in.read(inBuf, inEnd, blockSize);
+                if (n < 0)
+                    sawEOF = true;
+                else
+                    inEnd += n;
             }
+            fixBlock();
         }
+        return true;
+    }
 
-        // Now replace any full escape sequences in temp.
-        for (int i = 0; i < len_used - (bytesInOldEscape - 1); i++) {
-            // Replace the escape sequence beginning at i, if there is
-            // one we care about beginning there.
-            if (temp[i] == '\\' && temp[i+1] == '\'') {
-                for (int h = 0; h < bytesInOldEscape; h++) {
-                    readHelper[h] = temp[i + h];
-                }
-                int y = readAndConvertEscapeSequence(readHelper, 0, bytesInOldEscape);
-                ThdlDebug.verify(y == bytesInOldEscape
-                                 || y == bytesInNewEscape);
-                if (y == bytesInNewEscape) {
-                    len_used += (bytesInNewEscape - bytesInOldEscape);
-                    // Shift everything past the old escape down by one:
-                    System.arraycopy(temp,
-                                     i+bytesInOldEscape,
-                                     temp,
-                                     i+bytesInNewEscape,
-                                     len_used - (i+bytesInOldEscape));
-                    System.arraycopy(readHelper,
-                                     0,
-                                     temp,
-                                     i,
-                                     bytesInNewEscape);
-                }
+    /** Copies inBuf to outBuf, replacing the hex escapes we care
+        about, but leaving in inBuf an escape that may continue in the
+        next block. */
+    private void fixBlock() {
+        int i = 0;
+        while (i < inEnd) {
+            // Copy in bulk up to the next backslash:
+            int j = i;
+            while (j < inEnd && inBuf[j] != '\\')
+                ++j;
+            System.arraycopy(inBuf, i, outBuf, outEnd, j - i);
+            outEnd += j - i;
+            i = j;
+            if (i == inEnd)
+                break;
+
+            // inBuf[i] is a backslash.  Look at enough to say whether
+            // it begins an escape we care about:
+            int have = inEnd - i;
+            if (!sawEOF
+                && (have < 2
+                    || (inBuf[i+1] == '\'' && have < bytesInOldEscape)))
+                break;
+            if (have >= bytesInOldEscape && isEscapeWeCareAbout(i)) {
+                if (firstSubstitution < 0)
+                    firstSubstitution = numDelivered + outEnd;
+                writeUnicodeEscape(getHexValue(inBuf[i+2])*16
+                                   + getHexValue(inBuf[i+3]));
+                i += bytesInOldEscape;
+            } else {
+                // A backslash and whatever it escapes, which may be
+                // another backslash:
+                int k = (have >= 2) ? 2 : 1;
+                System.arraycopy(inBuf, i, outBuf, outEnd, k);
+                outEnd += k;
+                i += k;
             }
         }
-        // Copy temp into bb, with overflow going into ourBuffer:
-        System.arraycopy(temp,
-                         0,
-                         bb,
-                         off,
-                         superRV);
-        int g = 0;
-        ThdlDebug.verify(ourBuffer.size() == 0);
-        while (len_used-- > superRV) {
-            ourBuffer.add(new Integer(temp[superRV + g++]));
-        }
-        return superRV;
+        // Keep the start of an escape for the next block:
+        System.arraycopy(inBuf, i, inBuf, 0, inEnd - i);
+        inEnd -= i;
     }
 
-    /** Given that old[offset] through old[offset+num_valid-1]
-        contain valid characters, the first being a backslash,
-        this routine reads as much as is needed from in to
-        determine whether we're looking at a hex escape we care
-        about.  If we are, then old[offset] through old[offset+4]
-        will hold it.  old better be able to hold up to 4 more
-        it's currently using, or you'll get an
-        ArrayBoundsException.
-        @return the number now valid in old on or after offset */
-    private int readAndConvertEscapeSequence(byte old[], int offset,
-                                             int num_valid)
-        throws IOException {
-        ThdlDebug.verify(old[offset] == '\\');
-
-        while (num_valid < 4) {
-            int x = super.read();
-            if (x == -1)
-                return num_valid;
-            old[offset+num_valid++] = (byte)x;
-        }
-        if (old[offset+1] != (int)'\'') {
-            // This is not a hex escape we care about.
-            return num_valid;
-        }
-        if (replaceAllHexEscapes) {
-            if (old[offset+2] != (int)'8'
-                && old[offset+2] != (int)'9') {
-                // This is not a hex escape we care about.
-                return num_valid;
-            }
+    /** Returns true iff inBuf[i] through inBuf[i+3] are a hex escape
+        we replace. */
+    private boolean isEscapeWeCareAbout(int i) {
+        if (inBuf[i+1] != '\'')
+            return false;
+        if (replaceOnly8XAnd9X) {
+            if (inBuf[i+2] != '8' && inBuf[i+2] != '9')
+                return false;
         } else {
-            if (!isHexChar(old[offset+2])) {
-                // This is not a hex escape we care about.
-                return num_valid;
-            }
-        }
-        if (!isHexChar(old[offset+3])) {
-            // This is not a hex escape we care about.
-            return num_valid;
+            if (!isHexChar(inBuf[i+2]))
+                return false;
         }
+        return isHexChar(inBuf[i+3]);
+    }
 
-        // We got here, so it's a hex escape we care about.
-        weSubstitutedAtLeastOnce = true;
-
-        // Go from \\' to \\u:
-        old[offset+1] = 'u';
-
-        int decimalValue = getHexValue(old[offset+2])*16 + getHexValue(old[offset+3]);
-        // We'll use \\uXXX, i.e. we'll always use three digits.
-        // \\u156, \\u200, \\u049, \\u001, e.g.
-        int hundreds, tens, ones;
-        char saved2 = (char)old[offset+2];
-        char saved3 = (char)old[offset+3];
-        old[offset+2] = (byte)('0' + (hundreds = (decimalValue / 100))); // replace
-        old[offset+3] = (byte)('0' + (tens = ((decimalValue - 100*hundreds) / 10))); // replace
-        old[offset+4] = (byte)('0' + (ones = (decimalValue - 100*hundreds - 10*tens))); ++num_valid;
+    /** Appends to outBuf "\\uXXX ?"; we always use three digits.
+        \\u156, \\u200, \\u049, \\u001, e.g. */
+    private void writeUnicodeEscape(int decimalValue) {
+        outBuf[outEnd++] = '\\';
+        outBuf[outEnd++] = 'u';
+        outBuf[outEnd++] = (byte)('0' + decimalValue / 100);
+        outBuf[outEnd++] = (byte)('0' + (decimalValue / 10) % 10);
+        outBuf[outEnd++] = (byte)('0' + decimalValue % 10);
         if (addASpace)
-            old[offset+5] = (byte)' '; ++num_valid;
-        old[offset+6] = (byte)'?'; ++num_valid;
-        return num_valid;
+            outBuf[outEnd++] = ' ';
+        outBuf[outEnd++] = '?';
     }
         
     /** Returns true iff (char)e is one of
@@ -293,8 +254,9 @@ public class RTFFixerInputStream extends FilterInputStream {
     }
 
     /** Returns true if and only if at least one substitution was
-        performed.  Returns false if none have been performed. */
+        performed in the bytes read so far.  Returns false if none
+        have been performed. */
     public boolean performedSubstitutions() {
-        return weSubstitutedAtLeastOnce;
+        return firstSubstitution >= 0 && firstSubstitution < numDelivered;
     }
 }